@@ -0,0 +1,184 @@
+/*
+ * $RCSfile$
+ *
+ * Copyright (c) 2007 Sun Microsystems, Inc. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * - Redistribution of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * - Redistribution in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in
+ *   the documentation and/or other materials provided with the
+ *   distribution.
+ *
+ * Neither the name of Sun Microsystems, Inc. or the names of
+ * contributors may be used to endorse or promote products derived
+ * from this software without specific prior written permission.
+ *
+ * This software is provided "AS IS," without a warranty of any
+ * kind. ALL EXPRESS OR IMPLIED CONDITIONS, REPRESENTATIONS AND
+ * WARRANTIES, INCLUDING ANY IMPLIED WARRANTY OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE OR NON-INFRINGEMENT, ARE HEREBY
+ * EXCLUDED. SUN MICROSYSTEMS, INC. ("SUN") AND ITS LICENSORS SHALL
+ * NOT BE LIABLE FOR ANY DAMAGES SUFFERED BY LICENSEE AS A RESULT OF
+ * USING, MODIFYING OR DISTRIBUTING THIS SOFTWARE OR ITS
+ * DERIVATIVES. IN NO EVENT WILL SUN OR ITS LICENSORS BE LIABLE FOR
+ * ANY LOST REVENUE, PROFIT OR DATA, OR FOR DIRECT, INDIRECT, SPECIAL,
+ * CONSEQUENTIAL, INCIDENTAL OR PUNITIVE DAMAGES, HOWEVER CAUSED AND
+ * REGARDLESS OF THE THEORY OF LIABILITY, ARISING OUT OF THE USE OF OR
+ * INABILITY TO USE THIS SOFTWARE, EVEN IF SUN HAS BEEN ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGES.
+ *
+ * You acknowledge that this software is not designed, licensed or
+ * intended for use in the design, construction, operation or
+ * maintenance of any nuclear facility.
+ *
+ * $Revision$
+ * $Date$
+ * $State$
+ */
+
+package com.sun.j3d.utils.behaviors.interpolators;
+
+import java.util.Arrays;
+import java.util.Random;
+import javax.media.j3d.Alpha;
+import javax.media.j3d.Transform3D;
+import javax.media.j3d.TransformGroup;
+import javax.vecmath.Point3f;
+import javax.vecmath.Quat4f;
+
+/**
+ * Drives 10K KB and 10K TCB spline path interpolators per frame through
+ * computeTransform, as the behavior scheduler does, and times the knot
+ * lookup alone with the linear scan and with the hinted binary search
+ * of KnotSearch.  Each interpolator has its own knots and alpha phase.
+ * Run with the Java 3D and vecmath jars on the class path:
+ * <pre>
+ *   java com.sun.j3d.utils.behaviors.interpolators.SplineInterpolatorBenchmark
+ *        [interpolators] [keys] [frames]
+ * </pre>
+ */
+public class SplineInterpolatorBenchmark {
+
+    public static void main(String args[]) {
+	int count = (args.length > 0) ? Integer.parseInt(args[0]) : 10000;
+	int numKeys = (args.length > 1) ? Integer.parseInt(args[1]) : 200;
+	int frames = (args.length > 2) ? Integer.parseInt(args[2]) : 600;
+
+	Random random = new Random(1);
+	KBRotPosScaleSplinePathInterpolator kb[] =
+	    new KBRotPosScaleSplinePathInterpolator[count];
+	RotPosScaleTCBSplinePathInterpolator tcb[] =
+	    new RotPosScaleTCBSplinePathInterpolator[count];
+	float knots[][] = new float[count][];
+	float phase[] = new float[count];
+	for (int i = 0; i < count; i++) {
+	    knots[i] = knots(numKeys, random);
+	    phase[i] = random.nextFloat();
+	    kb[i] = new KBRotPosScaleSplinePathInterpolator(
+		new Alpha(), new TransformGroup(), new Transform3D(),
+		kbKeys(knots[i], random));
+	    tcb[i] = new RotPosScaleTCBSplinePathInterpolator(
+		new Alpha(), new TransformGroup(), new Transform3D(),
+		tcbKeys(knots[i], random));
+	}
+
+	Transform3D transform = new Transform3D();
+	System.out.println(count + " interpolators of " + numKeys +
+			   " keys, " + frames + " frames");
+
+	long start = System.nanoTime();
+	for (int f = 0; f < frames; f++) {
+	    for (int i = 0; i < count; i++)
+		kb[i].computeTransform(alpha(f, frames, phase[i]), transform);
+	}
+	print("KB computeTransform", frames, System.nanoTime() - start);
+
+	start = System.nanoTime();
+	for (int f = 0; f < frames; f++) {
+	    for (int i = 0; i < count; i++)
+		tcb[i].computeTransform(alpha(f, frames, phase[i]), transform);
+	}
+	print("TCB computeTransform", frames, System.nanoTime() - start);
+
+	// The knot lookup alone; unsorted is the linear scan.  Both must
+	// find the same knots.
+	int hints[] = new int[count];
+	long sums[] = new long[2];
+	for (int pass = 0; pass < 2; pass++) {
+	    boolean sorted = (pass == 1);
+	    Arrays.fill(hints, 1);
+	    start = System.nanoTime();
+	    for (int f = 0; f < frames; f++) {
+		for (int i = 0; i < count; i++) {
+		    hints[i] = KnotSearch.findKnot(knots[i], numKeys,
+						   alpha(f, frames, phase[i]),
+						   hints[i], sorted);
+		    sums[pass] += hints[i];
+		}
+	    }
+	    print(sorted ? "knot lookup, hinted binary search" :
+		  "knot lookup, linear scan", frames,
+		  System.nanoTime() - start);
+	}
+	if (sums[0] != sums[1])
+	    throw new IllegalStateException("knot lookups differ");
+    }
+
+    // Alpha of an interpolator for a frame, wrapping around from 1 to 0
+    private static float alpha(int frame, int frames, float phase) {
+	float alpha = (float)frame / frames + phase;
+	return (alpha > 1f) ? alpha - 1f : alpha;
+    }
+
+    // Increasing knots from 0 to 1, with the leading and trailing copies
+    // of the interpolators
+    private static float[] knots(int numKeys, Random random) {
+	float knots[] = new float[numKeys + 2];
+	float total = 0f;
+	for (int k = 2; k < numKeys + 1; k++)
+	    knots[k] = total += random.nextFloat() + 0.1f;
+	for (int k = 2; k < numKeys + 1; k++)
+	    knots[k] /= total;
+	knots[numKeys] = knots[numKeys + 1] = 1f;
+	return knots;
+    }
+
+    private static KBKeyFrame[] kbKeys(float knots[], Random random) {
+	KBKeyFrame keys[] = new KBKeyFrame[knots.length - 2];
+	for (int k = 0; k < keys.length; k++) {
+	    keys[k] = new KBKeyFrame(knots[k + 1], 0, point(random),
+				     random.nextFloat(), random.nextFloat(),
+				     random.nextFloat(),
+				     new Point3f(1f, 1f, 1f), 0f, 0f, 0f);
+	}
+	return keys;
+    }
+
+    private static TCBKeyFrame[] tcbKeys(float knots[], Random random) {
+	TCBKeyFrame keys[] = new TCBKeyFrame[knots.length - 2];
+	for (int k = 0; k < keys.length; k++) {
+	    Quat4f quat = new Quat4f(random.nextFloat(), random.nextFloat(),
+				     random.nextFloat(), 1f);
+	    quat.normalize();
+	    keys[k] = new TCBKeyFrame(knots[k + 1], 0, point(random), quat,
+				      new Point3f(1f, 1f, 1f), 0f, 0f, 0f);
+	}
+	return keys;
+    }
+
+    private static Point3f point(Random random) {
+	return new Point3f(random.nextFloat(), random.nextFloat(),
+			   random.nextFloat());
+    }
+
+    private static void print(String what, int frames, long nanos) {
+	System.out.println(what + ": " + (float)(nanos / 1000000.0 / frames) +
+			   " ms per frame");
+    }
+}
@@ -0,0 +1,145 @@
+/*
+ * $RCSfile$
+ *
+ * Copyright (c) 2007 Sun Microsystems, Inc. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * - Redistribution of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * - Redistribution in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in
+ *   the documentation and/or other materials provided with the
+ *   distribution.
+ *
+ * Neither the name of Sun Microsystems, Inc. or the names of
+ * contributors may be used to endorse or promote products derived
+ * from this software without specific prior written permission.
+ *
+ * This software is provided "AS IS," without a warranty of any
+ * kind. ALL EXPRESS OR IMPLIED CONDITIONS, REPRESENTATIONS AND
+ * WARRANTIES, INCLUDING ANY IMPLIED WARRANTY OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE OR NON-INFRINGEMENT, ARE HEREBY
+ * EXCLUDED. SUN MICROSYSTEMS, INC. ("SUN") AND ITS LICENSORS SHALL
+ * NOT BE LIABLE FOR ANY DAMAGES SUFFERED BY LICENSEE AS A RESULT OF
+ * USING, MODIFYING OR DISTRIBUTING THIS SOFTWARE OR ITS
+ * DERIVATIVES. IN NO EVENT WILL SUN OR ITS LICENSORS BE LIABLE FOR
+ * ANY LOST REVENUE, PROFIT OR DATA, OR FOR DIRECT, INDIRECT, SPECIAL,
+ * CONSEQUENTIAL, INCIDENTAL OR PUNITIVE DAMAGES, HOWEVER CAUSED AND
+ * REGARDLESS OF THE THEORY OF LIABILITY, ARISING OUT OF THE USE OF OR
+ * INABILITY TO USE THIS SOFTWARE, EVEN IF SUN HAS BEEN ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGES.
+ *
+ * You acknowledge that this software is not designed, licensed or
+ * intended for use in the design, construction, operation or
+ * maintenance of any nuclear facility.
+ *
+ * $Revision$
+ * $Date$
+ * $State$
+ */
+
+package com.sun.j3d.utils.behaviors.picking;
+
+import java.util.Random;
+import javax.media.j3d.PickRay;
+import javax.vecmath.Point3d;
+import javax.vecmath.Vector3d;
+
+/**
+ * Measures the ray/triangle throughput of Intersect on triangles held
+ * in a packed float coordinate array, as by-reference geometry holds
+ * them.  The point test copies every triangle into new Point3ds, as
+ * PickResult used to; the packed test reads it with loadVertices into a
+ * reused array.  Run with the Java 3D and vecmath jars on the class
+ * path:
+ * <pre>
+ *   java com.sun.j3d.utils.behaviors.picking.IntersectBenchmark
+ *        [triangles] [passes]
+ * </pre>
+ * Both tests must report the same number of hits.
+ */
+public class IntersectBenchmark {
+
+    public static void main(String args[]) {
+	int numTris = (args.length > 0) ? Integer.parseInt(args[0]) : 1000000;
+	int passes = (args.length > 1) ? Integer.parseInt(args[1]) : 10;
+
+	// Triangles scattered around the z axis, so that about half of
+	// them are hit
+	Random random = new Random(1);
+	float coords[] = new float[numTris * 9];
+	for (int i = 0; i < numTris; i++) {
+	    float cx = random.nextFloat() - 0.5f;
+	    float cy = random.nextFloat() - 0.5f;
+	    float cz = random.nextFloat() * 10f;
+	    for (int v = 0; v < 3; v++) {
+		int c = (i * 3 + v) * 3;
+		coords[c] = cx + random.nextFloat() - 0.5f;
+		coords[c + 1] = cy + random.nextFloat() - 0.5f;
+		coords[c + 2] = cz + random.nextFloat() - 0.5f;
+	    }
+	}
+
+	Point3d origin = new Point3d(0.0, 0.0, -1.0);
+	Vector3d direction = new Vector3d(0.0, 0.0, 1.0);
+	PickRay ray = new PickRay(origin, direction);
+
+	long bestPoint = Long.MAX_VALUE;
+	long bestPacked = Long.MAX_VALUE;
+	int pointHits = 0;
+	int packedHits = 0;
+	for (int pass = 0; pass < passes; pass++) {
+	    long start = System.nanoTime();
+	    pointHits = pointTest(ray, coords, numTris);
+	    bestPoint = Math.min(bestPoint, System.nanoTime() - start);
+
+	    start = System.nanoTime();
+	    packedHits = packedTest(origin, direction, coords, numTris);
+	    bestPacked = Math.min(bestPacked, System.nanoTime() - start);
+	}
+
+	System.out.println(numTris + " triangles, best of " + passes +
+			   " passes");
+	print("Point3d", numTris, bestPoint, pointHits);
+	print("packed", numTris, bestPacked, packedHits);
+    }
+
+    private static int pointTest(PickRay ray, float coords[], int numTris) {
+	double dist[] = new double[1];
+	int hits = 0;
+	for (int i = 0; i < numTris; i++) {
+	    Point3d pnts[] = new Point3d[3];
+	    for (int v = 0; v < 3; v++) {
+		int c = (i * 3 + v) * 3;
+		pnts[v] = new Point3d(coords[c], coords[c + 1], coords[c + 2]);
+	    }
+	    if (Intersect.rayAndTriangle(ray, pnts, 0, dist))
+		hits++;
+	}
+	return hits;
+    }
+
+    private static int packedTest(Point3d origin, Vector3d direction,
+				  float coords[], int numTris) {
+	double dist[] = new double[1];
+	double vertices[] = new double[9];
+	int hits = 0;
+	for (int i = 0; i < numTris; i++) {
+	    Intersect.loadVertices(coords, i * 9, 3, null, 3, vertices);
+	    if (Intersect.rayAndTriangle(origin, direction, vertices, dist))
+		hits++;
+	}
+	return hits;
+    }
+
+    private static void print(String test, int numTris, long nanos,
+			      int hits) {
+	System.out.println(test + ": " + (nanos / 1000000) + " ms, " +
+			   (float)(numTris * 1000.0 / nanos) +
+			   " Mtriangles/s, " + hits + " hits");
+    }
+}
@@ -0,0 +1,139 @@
+/*
+ * $RCSfile$
+ *
+ * Copyright (c) 2007 Sun Microsystems, Inc. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * - Redistribution of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * - Redistribution in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in
+ *   the documentation and/or other materials provided with the
+ *   distribution.
+ *
+ * Neither the name of Sun Microsystems, Inc. or the names of
+ * contributors may be used to endorse or promote products derived
+ * from this software without specific prior written permission.
+ *
+ * This software is provided "AS IS," without a warranty of any
+ * kind. ALL EXPRESS OR IMPLIED CONDITIONS, REPRESENTATIONS AND
+ * WARRANTIES, INCLUDING ANY IMPLIED WARRANTY OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE OR NON-INFRINGEMENT, ARE HEREBY
+ * EXCLUDED. SUN MICROSYSTEMS, INC. ("SUN") AND ITS LICENSORS SHALL
+ * NOT BE LIABLE FOR ANY DAMAGES SUFFERED BY LICENSEE AS A RESULT OF
+ * USING, MODIFYING OR DISTRIBUTING THIS SOFTWARE OR ITS
+ * DERIVATIVES. IN NO EVENT WILL SUN OR ITS LICENSORS BE LIABLE FOR
+ * ANY LOST REVENUE, PROFIT OR DATA, OR FOR DIRECT, INDIRECT, SPECIAL,
+ * CONSEQUENTIAL, INCIDENTAL OR PUNITIVE DAMAGES, HOWEVER CAUSED AND
+ * REGARDLESS OF THE THEORY OF LIABILITY, ARISING OUT OF THE USE OF OR
+ * INABILITY TO USE THIS SOFTWARE, EVEN IF SUN HAS BEEN ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGES.
+ *
+ * You acknowledge that this software is not designed, licensed or
+ * intended for use in the design, construction, operation or
+ * maintenance of any nuclear facility.
+ *
+ * $Revision$
+ * $Date$
+ * $State$
+ */
+
+package com.sun.j3d.utils.scenegraph.io;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.util.Arrays;
+import java.util.Random;
+import javax.media.j3d.BranchGroup;
+import javax.media.j3d.GeometryArray;
+import javax.media.j3d.Shape3D;
+import javax.media.j3d.TriangleArray;
+
+/**
+ * Times the round trip of a large TriangleArray, with coordinates and
+ * normals, through SceneGraphStreamWriter and SceneGraphStreamReader
+ * using a temporary file, and checks that the coordinates read back are
+ * the ones written.  Run with the Java 3D and vecmath jars on the class
+ * path and a heap large enough for two copies of the geometry:
+ * <pre>
+ *   java -Xmx2g com.sun.j3d.utils.scenegraph.io.GeometryStreamBenchmark
+ *        [vertices] [passes]
+ * </pre>
+ * The vertex count, 10M by default, is rounded up to whole triangles.
+ */
+public class GeometryStreamBenchmark {
+
+    public static void main(String args[]) throws Exception {
+	int vertexCount = (args.length > 0) ?
+	    Integer.parseInt(args[0]) : 10000000;
+	int passes = (args.length > 1) ? Integer.parseInt(args[1]) : 3;
+	vertexCount = (vertexCount + 2) / 3 * 3;
+
+	Random random = new Random(1);
+	float coords[] = new float[vertexCount * 3];
+	float normals[] = new float[vertexCount * 3];
+	for (int i = 0; i < coords.length; i++) {
+	    coords[i] = random.nextFloat();
+	    normals[i] = random.nextFloat();
+	}
+	TriangleArray geom =
+	    new TriangleArray(vertexCount,
+			      GeometryArray.COORDINATES |
+			      GeometryArray.NORMALS);
+	geom.setCoordinates(0, coords);
+	geom.setNormals(0, normals);
+	BranchGroup graph = new BranchGroup();
+	graph.addChild(new Shape3D(geom));
+
+	File file = File.createTempFile("geometry", ".j3f");
+	file.deleteOnExit();
+	long bestWrite = Long.MAX_VALUE;
+	long bestRead = Long.MAX_VALUE;
+	for (int pass = 0; pass < passes; pass++) {
+	    long start = System.nanoTime();
+	    SceneGraphStreamWriter writer =
+		new SceneGraphStreamWriter(new BufferedOutputStream(
+		    new FileOutputStream(file)));
+	    writer.writeBranchGraph(graph, null);
+	    writer.close();
+	    bestWrite = Math.min(bestWrite, System.nanoTime() - start);
+
+	    start = System.nanoTime();
+	    SceneGraphStreamReader reader =
+		new SceneGraphStreamReader(new BufferedInputStream(
+		    new FileInputStream(file)));
+	    BranchGroup read = reader.readBranchGraph(null);
+	    reader.close();
+	    bestRead = Math.min(bestRead, System.nanoTime() - start);
+
+	    check((Shape3D)read.getChild(0), coords);
+	}
+
+	long bytes = file.length();
+	System.out.println(vertexCount + " vertices, " + bytes +
+			   " bytes, best of " + passes + " passes");
+	print("write", bytes, bestWrite);
+	print("read", bytes, bestRead);
+	file.delete();
+    }
+
+    private static void check(Shape3D shape, float coords[]) {
+	GeometryArray geom = (GeometryArray)shape.getGeometry();
+	float read[] = new float[geom.getVertexCount() * 3];
+	geom.getCoordinates(0, read);
+	if (!Arrays.equals(read, coords))
+	    throw new IllegalStateException("coordinates differ");
+    }
+
+    private static void print(String what, long bytes, long nanos) {
+	System.out.println(what + ": " + (nanos / 1000000) + " ms, " +
+			   (float)(bytes * 1000.0 / nanos) + " MB/s");
+    }
+}
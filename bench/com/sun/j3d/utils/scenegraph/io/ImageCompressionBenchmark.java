@@ -0,0 +1,187 @@
+/*
+ * $RCSfile$
+ *
+ * Copyright (c) 2007 Sun Microsystems, Inc. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * - Redistribution of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * - Redistribution in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in
+ *   the documentation and/or other materials provided with the
+ *   distribution.
+ *
+ * Neither the name of Sun Microsystems, Inc. or the names of
+ * contributors may be used to endorse or promote products derived
+ * from this software without specific prior written permission.
+ *
+ * This software is provided "AS IS," without a warranty of any
+ * kind. ALL EXPRESS OR IMPLIED CONDITIONS, REPRESENTATIONS AND
+ * WARRANTIES, INCLUDING ANY IMPLIED WARRANTY OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE OR NON-INFRINGEMENT, ARE HEREBY
+ * EXCLUDED. SUN MICROSYSTEMS, INC. ("SUN") AND ITS LICENSORS SHALL
+ * NOT BE LIABLE FOR ANY DAMAGES SUFFERED BY LICENSEE AS A RESULT OF
+ * USING, MODIFYING OR DISTRIBUTING THIS SOFTWARE OR ITS
+ * DERIVATIVES. IN NO EVENT WILL SUN OR ITS LICENSORS BE LIABLE FOR
+ * ANY LOST REVENUE, PROFIT OR DATA, OR FOR DIRECT, INDIRECT, SPECIAL,
+ * CONSEQUENTIAL, INCIDENTAL OR PUNITIVE DAMAGES, HOWEVER CAUSED AND
+ * REGARDLESS OF THE THEORY OF LIABILITY, ARISING OUT OF THE USE OF OR
+ * INABILITY TO USE THIS SOFTWARE, EVEN IF SUN HAS BEEN ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGES.
+ *
+ * You acknowledge that this software is not designed, licensed or
+ * intended for use in the design, construction, operation or
+ * maintenance of any nuclear facility.
+ *
+ * $Revision$
+ * $Date$
+ * $State$
+ */
+
+package com.sun.j3d.utils.scenegraph.io;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.Random;
+import javax.media.j3d.Appearance;
+import javax.media.j3d.BranchGroup;
+import javax.media.j3d.ImageComponent;
+import javax.media.j3d.ImageComponent2D;
+import javax.media.j3d.Shape3D;
+import javax.media.j3d.Texture;
+import javax.media.j3d.Texture2D;
+import com.sun.j3d.utils.scenegraph.io.state.javax.media.j3d.ImageComponentState;
+
+/**
+ * Reports the compression ratio and decode speed of each image
+ * compression mode of ImageComponentState.  A graph of textures is
+ * written with SceneGraphStreamWriter in each mode and read back with
+ * SceneGraphStreamReader.  Half the textures are photo-like, with smooth
+ * gradients and noise, and half are flat-colored artwork.  The ratio is
+ * that of the pixel bytes to the stream size; the decode speed is the
+ * pixel bytes read per second.  Run with the Java 3D and vecmath jars on
+ * the class path:
+ * <pre>
+ *   java com.sun.j3d.utils.scenegraph.io.ImageCompressionBenchmark
+ *        [textures] [size] [passes]
+ * </pre>
+ * Modes whose encoder is missing, such as JPEG on recent JDKs, are
+ * reported as unavailable.
+ */
+public class ImageCompressionBenchmark {
+
+    private static final String NAMES[] = {
+	"NONE", "GZIP", "JPEG", "DEFLATE", "PNG", "LZ" };
+
+    private static final int MODES[] = {
+	ImageComponentState.NO_COMPRESSION,
+	ImageComponentState.GZIP_COMPRESSION,
+	ImageComponentState.JPEG_COMPRESSION,
+	ImageComponentState.DEFLATE_COMPRESSION,
+	ImageComponentState.PNG_COMPRESSION,
+	ImageComponentState.LZ_COMPRESSION };
+
+    public static void main(String args[]) throws Exception {
+	int textures = (args.length > 0) ? Integer.parseInt(args[0]) : 16;
+	int size = (args.length > 1) ? Integer.parseInt(args[1]) : 512;
+	int passes = (args.length > 2) ? Integer.parseInt(args[2]) : 5;
+
+	Random random = new Random(1);
+	BranchGroup graph = new BranchGroup();
+	for (int i = 0; i < textures; i++) {
+	    BufferedImage image = ((i % 2) == 0) ?
+		photo(size, random) : artwork(size, random);
+	    Texture2D tex = new Texture2D(Texture.BASE_LEVEL, Texture.RGB,
+					  size, size);
+	    tex.setImage(0, new ImageComponent2D(ImageComponent.FORMAT_RGB,
+						 image));
+	    Appearance app = new Appearance();
+	    app.setTexture(tex);
+	    graph.addChild(new Shape3D(null, app));
+	}
+	long pixelBytes = (long)textures * size * size * 3;
+
+	System.out.println(textures + " textures of " + size + "x" + size +
+			   ", best of " + passes + " passes");
+	for (int m = 0; m < MODES.length; m++) {
+	    try {
+		run(NAMES[m], MODES[m], graph, pixelBytes, passes);
+	    } catch (Throwable t) {
+		System.out.println(NAMES[m] + ": unavailable, " + t);
+	    }
+	}
+    }
+
+    private static void run(String name, int mode, BranchGroup graph,
+			    long pixelBytes, int passes) throws Exception {
+	ByteArrayOutputStream out = new ByteArrayOutputStream();
+	long bestWrite = Long.MAX_VALUE;
+	long bestRead = Long.MAX_VALUE;
+	for (int pass = 0; pass < passes; pass++) {
+	    out.reset();
+	    long start = System.nanoTime();
+	    SceneGraphStreamWriter writer = new SceneGraphStreamWriter(out);
+	    writer.setImageCompression(mode);
+	    writer.writeBranchGraph(graph, null);
+	    writer.close();
+	    bestWrite = Math.min(bestWrite, System.nanoTime() - start);
+
+	    start = System.nanoTime();
+	    SceneGraphStreamReader reader = new SceneGraphStreamReader(
+		new ByteArrayInputStream(out.toByteArray()));
+	    reader.readBranchGraph(null);
+	    reader.close();
+	    bestRead = Math.min(bestRead, System.nanoTime() - start);
+	}
+	System.out.println(name + ": " + out.size() + " bytes, ratio " +
+			   (float)pixelBytes / out.size() + ", encode " +
+			   (float)(pixelBytes * 1000.0 / bestWrite) +
+			   " MB/s, decode " +
+			   (float)(pixelBytes * 1000.0 / bestRead) + " MB/s");
+    }
+
+    // Smooth gradients with a little noise, as in photographs
+    private static BufferedImage photo(int size, Random random) {
+	BufferedImage image =
+	    new BufferedImage(size, size, BufferedImage.TYPE_INT_RGB);
+	float fx = random.nextFloat() * 8f / size;
+	float fy = random.nextFloat() * 8f / size;
+	for (int y = 0; y < size; y++) {
+	    for (int x = 0; x < size; x++) {
+		int r = (int)(127 + 100 * Math.sin(x * fx)) +
+		    random.nextInt(16);
+		int g = (int)(127 + 100 * Math.cos(y * fy)) +
+		    random.nextInt(16);
+		int b = (x + y) * 255 / (2 * size) + random.nextInt(16);
+		image.setRGB(x, y, (Math.min(r, 255) << 16) |
+			     (Math.min(g, 255) << 8) | Math.min(b, 255));
+	    }
+	}
+	return image;
+    }
+
+    // Flat-colored rectangles, as in drawn artwork and user interfaces
+    private static BufferedImage artwork(int size, Random random) {
+	BufferedImage image =
+	    new BufferedImage(size, size, BufferedImage.TYPE_INT_RGB);
+	Graphics2D g = image.createGraphics();
+	try {
+	    for (int i = 0; i < 64; i++) {
+		g.setColor(new Color(random.nextInt(0x1000000)));
+		g.fillRect(random.nextInt(size), random.nextInt(size),
+			   random.nextInt(size / 2) + 1,
+			   random.nextInt(size / 2) + 1);
+	    }
+	} finally {
+	    g.dispose();
+	}
+	return image;
+    }
+}
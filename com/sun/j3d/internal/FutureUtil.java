@@ -0,0 +1,122 @@
+/*
+ * $RCSfile$
+ *
+ * Copyright (c) 2007 Sun Microsystems, Inc. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * - Redistribution of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * - Redistribution in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in
+ *   the documentation and/or other materials provided with the
+ *   distribution.
+ *
+ * Neither the name of Sun Microsystems, Inc. or the names of
+ * contributors may be used to endorse or promote products derived
+ * from this software without specific prior written permission.
+ *
+ * This software is provided "AS IS," without a warranty of any
+ * kind. ALL EXPRESS OR IMPLIED CONDITIONS, REPRESENTATIONS AND
+ * WARRANTIES, INCLUDING ANY IMPLIED WARRANTY OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE OR NON-INFRINGEMENT, ARE HEREBY
+ * EXCLUDED. SUN MICROSYSTEMS, INC. ("SUN") AND ITS LICENSORS SHALL
+ * NOT BE LIABLE FOR ANY DAMAGES SUFFERED BY LICENSEE AS A RESULT OF
+ * USING, MODIFYING OR DISTRIBUTING THIS SOFTWARE OR ITS
+ * DERIVATIVES. IN NO EVENT WILL SUN OR ITS LICENSORS BE LIABLE FOR
+ * ANY LOST REVENUE, PROFIT OR DATA, OR FOR DIRECT, INDIRECT, SPECIAL,
+ * CONSEQUENTIAL, INCIDENTAL OR PUNITIVE DAMAGES, HOWEVER CAUSED AND
+ * REGARDLESS OF THE THEORY OF LIABILITY, ARISING OUT OF THE USE OF OR
+ * INABILITY TO USE THIS SOFTWARE, EVEN IF SUN HAS BEEN ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGES.
+ *
+ * You acknowledge that this software is not designed, licensed or
+ * intended for use in the design, construction, operation or
+ * maintenance of any nuclear facility.
+ *
+ * $Revision$
+ * $Date$
+ * $State$
+ */
+
+package com.sun.j3d.internal;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+/**
+ * Utility methods used to wait for the tasks that the loaders and
+ * scene graph I/O classes submit to an ExecutorService.  The tasks of
+ * an operation are waited for in order with get(), in a try block whose
+ * finally clause calls cancel() on all of them, so that no work is left
+ * behind when one task fails or the wait is interrupted.
+ */
+public class FutureUtil {
+
+    /**
+     * Waits for a task and returns its result.  If the calling thread is
+     * interrupted, its interrupt status is restored and an
+     * InterruptedIOException whose cause is the InterruptedException is
+     * thrown.  An IOException, RuntimeException or Error thrown by the
+     * task is rethrown as is; any other exception is wrapped in a
+     * RuntimeException.
+     *
+     * @param future the task to wait for
+     * @param what describes the operation, for the message of the
+     * InterruptedIOException
+     * @return the result of the task
+     * @exception IOException if the task threw it or the wait was
+     * interrupted
+     */
+    public static Object get(Future future, String what) throws IOException {
+	try {
+	    return future.get();
+	}
+	catch (InterruptedException e) {
+	    Thread.currentThread().interrupt();
+	    InterruptedIOException ie =
+		new InterruptedIOException(what + " interrupted");
+	    ie.initCause(e);
+	    throw ie;
+	}
+	catch (ExecutionException e) {
+	    Throwable cause = e.getCause();
+	    if (cause instanceof IOException)
+		throw (IOException)cause;
+	    if (cause instanceof RuntimeException)
+		throw (RuntimeException)cause;
+	    if (cause instanceof Error)
+		throw (Error)cause;
+	    throw new RuntimeException(cause);
+	}
+    }
+
+    /**
+     * Cancels the tasks of a collection of Futures that have not
+     * completed yet, without interrupting the running ones.  Completed
+     * tasks and null elements are ignored.
+     *
+     * @param futures the tasks to cancel
+     */
+    public static void cancel(Collection futures) {
+	for (Iterator i = futures.iterator(); i.hasNext();) {
+	    Future future = (Future)i.next();
+	    if (future != null)
+		future.cancel(false);
+	}
+    }
+
+
+    /**
+     * Do not construct an instance of this class.
+     */
+    private FutureUtil() {
+    }
+}
@@ -0,0 +1,572 @@
+/*
+ * $RCSfile$
+ *
+ * Copyright (c) 2007 Sun Microsystems, Inc. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * - Redistribution of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * - Redistribution in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in
+ *   the documentation and/or other materials provided with the
+ *   distribution.
+ *
+ * Neither the name of Sun Microsystems, Inc. or the names of
+ * contributors may be used to endorse or promote products derived
+ * from this software without specific prior written permission.
+ *
+ * This software is provided "AS IS," without a warranty of any
+ * kind. ALL EXPRESS OR IMPLIED CONDITIONS, REPRESENTATIONS AND
+ * WARRANTIES, INCLUDING ANY IMPLIED WARRANTY OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE OR NON-INFRINGEMENT, ARE HEREBY
+ * EXCLUDED. SUN MICROSYSTEMS, INC. ("SUN") AND ITS LICENSORS SHALL
+ * NOT BE LIABLE FOR ANY DAMAGES SUFFERED BY LICENSEE AS A RESULT OF
+ * USING, MODIFYING OR DISTRIBUTING THIS SOFTWARE OR ITS
+ * DERIVATIVES. IN NO EVENT WILL SUN OR ITS LICENSORS BE LIABLE FOR
+ * ANY LOST REVENUE, PROFIT OR DATA, OR FOR DIRECT, INDIRECT, SPECIAL,
+ * CONSEQUENTIAL, INCIDENTAL OR PUNITIVE DAMAGES, HOWEVER CAUSED AND
+ * REGARDLESS OF THE THEORY OF LIABILITY, ARISING OUT OF THE USE OF OR
+ * INABILITY TO USE THIS SOFTWARE, EVEN IF SUN HAS BEEN ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGES.
+ *
+ * You acknowledge that this software is not designed, licensed or
+ * intended for use in the design, construction, operation or
+ * maintenance of any nuclear facility.
+ *
+ * $Revision: 150 $
+ * $Date: 2007-02-10 02:20:46 +0900 (土, 10 2 2007) $
+ * $State$
+ */
+
+package com.sun.j3d.loaders;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import javax.media.j3d.GeometryArray;
+import javax.media.j3d.GeometryStripArray;
+import javax.media.j3d.TriangleArray;
+import javax.media.j3d.TriangleFanArray;
+import javax.media.j3d.TriangleStripArray;
+
+/**
+ * An optional on-disk cache for the geometry built by a loader.  When a
+ * loader is given a MeshCache, it looks for a cache file for the source
+ * file before parsing it.  If the cache file was written from the same
+ * source file (same path, size and modification time) with the same
+ * loader parameters, the final GeometryArrays are read back from it,
+ * skipping tokenizing, triangulation, normal generation and
+ * stripification.  Otherwise the source file is loaded as usual and the
+ * cache file is (re)written.<P>
+ *
+ * By default the cache file is written next to the source file, with
+ * ".j3dmesh" appended to its name.  A cache directory can be given
+ * instead.  Cache files are read through memory mapping.  Failing to read
+ * or write a cache file is never an error; the source file is simply
+ * loaded as usual.<P>
+ *
+ * Only non-indexed triangle, triangle strip and triangle fan arrays with
+ * float data, either copied or by reference in a single interleaved
+ * array, are cached.  A cache may be shared by several loaders and
+ * threads.
+ */
+public class MeshCache {
+
+    // "J3DM"
+    private static final int MAGIC = 0x4a33444d;
+
+    /**
+     * Version of the cache file format.  Files written with another
+     * version are ignored and rewritten.
+     */
+    public static final int VERSION = 2;
+
+    private static final String SUFFIX = ".j3dmesh";
+
+    private static final int TRIANGLES = 0;
+    private static final int TRIANGLE_STRIPS = 1;
+    private static final int TRIANGLE_FANS = 2;
+
+    // Formats that aren't cached
+    private static final int UNSUPPORTED_FORMATS =
+	GeometryArray.USE_NIO_BUFFER | GeometryArray.USE_COORD_INDEX_ONLY |
+	GeometryArray.VERTEX_ATTRIBUTES;
+
+    private File directory = null;
+    private long hitCount = 0;
+    private long missCount = 0;
+
+    /**
+     * The contents of one cache file: the material libraries used by the
+     * source file, and each mesh with its name, material name, appearance
+     * attributes and geometry.  Names, material names and attributes are
+     * up to the loader and may be null.
+     */
+    public static class Contents {
+	private ArrayList libraries = new ArrayList();
+	private ArrayList names = new ArrayList();
+	private ArrayList materials = new ArrayList();
+	private ArrayList attributes = new ArrayList();
+	private ArrayList geometry = new ArrayList();
+
+	public void addLibrary(String library) {
+	    libraries.add(library);
+	}
+
+	public void addMesh(String name, String material,
+			    GeometryArray geometryArray) {
+	    addMesh(name, material, null, geometryArray);
+	}
+
+	public void addMesh(String name, String material,
+			    float meshAttributes[],
+			    GeometryArray geometryArray) {
+	    names.add(name);
+	    materials.add(material);
+	    attributes.add(meshAttributes);
+	    geometry.add(geometryArray);
+	}
+
+	public int numLibraries() {
+	    return libraries.size();
+	}
+
+	public String getLibrary(int i) {
+	    return (String)libraries.get(i);
+	}
+
+	public int numMeshes() {
+	    return geometry.size();
+	}
+
+	public String getName(int i) {
+	    return (String)names.get(i);
+	}
+
+	public String getMaterial(int i) {
+	    return (String)materials.get(i);
+	}
+
+	public float[] getAttributes(int i) {
+	    return (float[])attributes.get(i);
+	}
+
+	public GeometryArray getGeometry(int i) {
+	    return (GeometryArray)geometry.get(i);
+	}
+    }
+
+    /**
+     * Creates a cache that keeps each cache file next to its source file.
+     */
+    public MeshCache() {
+    }
+
+    /**
+     * Creates a cache that keeps its files in the given directory.
+     */
+    public MeshCache(File directory) {
+	this.directory = directory;
+    }
+
+    /**
+     * Returns the cache directory, or null if cache files are kept next
+     * to their source files.
+     */
+    public File getDirectory() {
+	return directory;
+    }
+
+    /**
+     * Returns the cache file used for the given source file.
+     */
+    public File getCacheFile(File source) {
+	String path = canonicalPath(source);
+	if (directory == null)
+	    return new File(path + SUFFIX);
+	return new File(directory, source.getName() + "-" +
+			Integer.toHexString(path.hashCode()) + SUFFIX);
+    }
+
+    /**
+     * Returns the number of successful reads.
+     */
+    public synchronized long getHitCount() {
+	return hitCount;
+    }
+
+    /**
+     * Returns the number of reads that found no valid cache file.
+     */
+    public synchronized long getMissCount() {
+	return missCount;
+    }
+
+    private synchronized void count(boolean hit) {
+	if (hit) hitCount++;
+	else missCount++;
+    }
+
+    private static String canonicalPath(File file) {
+	try {
+	    return file.getCanonicalPath();
+	}
+	catch (IOException e) {
+	    return file.getAbsolutePath();
+	}
+    }
+
+    /**
+     * Reads the cached contents for the given source file.  Returns null
+     * if there is no cache file, or if it was written for another version
+     * of the source file or with other parameters.  The parameters
+     * describe the loader settings that affect the geometry.
+     */
+    public Contents read(File source, String parameters) {
+	Contents contents = null;
+	File file = getCacheFile(source);
+	if (file.isFile()) {
+	    try {
+		contents = readFile(file, source, parameters);
+	    }
+	    catch (IOException e) {
+	    }
+	    catch (RuntimeException e) {
+		// Truncated or corrupt file
+	    }
+	}
+	count(contents != null);
+	return contents;
+    }
+
+    /**
+     * Returns true if the given geometry can be stored in a cache file.
+     */
+    public static boolean isCacheable(GeometryArray geometry) {
+	if (!(geometry instanceof TriangleArray) &&
+	    !(geometry instanceof TriangleStripArray) &&
+	    !(geometry instanceof TriangleFanArray))
+	    return false;
+	int format = geometry.getVertexFormat();
+	if ((format & UNSUPPORTED_FORMATS) != 0)
+	    return false;
+	if ((format & GeometryArray.BY_REFERENCE) != 0 &&
+	    ((format & GeometryArray.INTERLEAVED) == 0 ||
+	     geometry.getInterleavedVertices() == null))
+	    return false;
+	return true;
+    }
+
+    /**
+     * Writes the contents for the given source file.  Returns false if a
+     * mesh isn't cacheable or the file couldn't be written.
+     */
+    public boolean write(File source, String parameters, Contents contents) {
+	for (int i = 0 ; i < contents.numMeshes() ; i++) {
+	    if (!isCacheable(contents.getGeometry(i)))
+		return false;
+	}
+
+	File file = getCacheFile(source);
+	File temp = null;
+	FileOutputStream out = null;
+	try {
+	    File dir = file.getAbsoluteFile().getParentFile();
+	    temp = File.createTempFile(file.getName(), ".tmp", dir);
+	    out = new FileOutputStream(temp);
+	    Writer writer = new Writer(out.getChannel());
+	    writeFile(writer, source, parameters, contents);
+	    writer.flush();
+	    out.close();
+	    out = null;
+	    file.delete();
+	    if (temp.renameTo(file)) {
+		temp = null;
+		return true;
+	    }
+	}
+	catch (IOException e) {
+	}
+	catch (SecurityException e) {
+	}
+	finally {
+	    if (out != null) {
+		try {
+		    out.close();
+		}
+		catch (IOException e) {
+		}
+	    }
+	    if (temp != null) temp.delete();
+	}
+	return false;
+    }
+
+    /**
+     * Writes big-endian values to a channel through a fixed size buffer.
+     */
+    private static class Writer {
+	private FileChannel channel;
+	private ByteBuffer buffer = ByteBuffer.allocate(65536);
+
+	Writer(FileChannel channel) {
+	    this.channel = channel;
+	}
+
+	void flush() throws IOException {
+	    buffer.flip();
+	    while (buffer.hasRemaining()) channel.write(buffer);
+	    buffer.clear();
+	}
+
+	private void room(int bytes) throws IOException {
+	    if (buffer.remaining() < bytes) flush();
+	}
+
+	void putInt(int i) throws IOException {
+	    room(4);
+	    buffer.putInt(i);
+	}
+
+	void putLong(long l) throws IOException {
+	    room(8);
+	    buffer.putLong(l);
+	}
+
+	void putString(String s) throws IOException {
+	    if (s == null) {
+		putInt(-1);
+		return;
+	    }
+	    byte b[] = s.getBytes("UTF-8");
+	    putInt(b.length);
+	    for (int i = 0 ; i < b.length ; ) {
+		room(1);
+		int n = Math.min(b.length - i, buffer.remaining());
+		buffer.put(b, i, n);
+		i += n;
+	    }
+	}
+
+	void putInts(int a[]) throws IOException {
+	    putInt(a.length);
+	    for (int i = 0 ; i < a.length ; i++) putInt(a[i]);
+	}
+
+	void putFloats(float a[]) throws IOException {
+	    if (a == null) {
+		putInt(-1);
+		return;
+	    }
+	    putInt(a.length);
+	    for (int i = 0 ; i < a.length ; ) {
+		room(4);
+		int n = Math.min(a.length - i, buffer.remaining() / 4);
+		buffer.asFloatBuffer().put(a, i, n);
+		buffer.position(buffer.position() + n * 4);
+		i += n;
+	    }
+	}
+    }
+
+    private static int texCoordDim(int format) {
+	if ((format & GeometryArray.TEXTURE_COORDINATE_4) ==
+	    GeometryArray.TEXTURE_COORDINATE_4) return 4;
+	if ((format & GeometryArray.TEXTURE_COORDINATE_3) ==
+	    GeometryArray.TEXTURE_COORDINATE_3) return 3;
+	if ((format & GeometryArray.TEXTURE_COORDINATE_2) ==
+	    GeometryArray.TEXTURE_COORDINATE_2) return 2;
+	return 0;
+    }
+
+    private static int colorSize(int format) {
+	if ((format & GeometryArray.COLOR_4) == GeometryArray.COLOR_4)
+	    return 4;
+	if ((format & GeometryArray.COLOR_3) == GeometryArray.COLOR_3)
+	    return 3;
+	return 0;
+    }
+
+    private static void writeFile(Writer w, File source, String parameters,
+				  Contents contents) throws IOException {
+	w.putInt(MAGIC);
+	w.putInt(VERSION);
+	w.putString(canonicalPath(source));
+	w.putLong(source.length());
+	w.putLong(source.lastModified());
+	w.putString(parameters);
+
+	w.putInt(contents.numLibraries());
+	for (int i = 0 ; i < contents.numLibraries() ; i++)
+	    w.putString(contents.getLibrary(i));
+
+	w.putInt(contents.numMeshes());
+	for (int i = 0 ; i < contents.numMeshes() ; i++) {
+	    GeometryArray ga = contents.getGeometry(i);
+	    int format = ga.getVertexFormat();
+	    int vertexCount = ga.getVertexCount();
+	    int texCoordSetCount = ga.getTexCoordSetCount();
+	    int texCoordSetMap[] = new int[ga.getTexCoordSetMapLength()];
+	    ga.getTexCoordSetMap(texCoordSetMap);
+
+	    w.putString(contents.getName(i));
+	    w.putString(contents.getMaterial(i));
+	    w.putFloats(contents.getAttributes(i));
+	    if (ga instanceof TriangleArray) w.putInt(TRIANGLES);
+	    else if (ga instanceof TriangleStripArray) w.putInt(TRIANGLE_STRIPS);
+	    else w.putInt(TRIANGLE_FANS);
+	    w.putInt(format);
+	    w.putInt(vertexCount);
+	    w.putInt(texCoordSetCount);
+	    w.putInts(texCoordSetMap);
+	    if (ga instanceof GeometryStripArray) {
+		GeometryStripArray gsa = (GeometryStripArray)ga;
+		int stripCounts[] = new int[gsa.getNumStrips()];
+		gsa.getStripVertexCounts(stripCounts);
+		w.putInts(stripCounts);
+	    }
+
+	    if ((format & GeometryArray.BY_REFERENCE) != 0) {
+		w.putFloats(ga.getInterleavedVertices());
+	    } else {
+		float coords[] = new float[vertexCount * 3];
+		ga.getCoordinates(0, coords);
+		w.putFloats(coords);
+		if (colorSize(format) != 0) {
+		    float colors[] = new float[vertexCount * colorSize(format)];
+		    ga.getColors(0, colors);
+		    w.putFloats(colors);
+		}
+		if ((format & GeometryArray.NORMALS) != 0) {
+		    float normals[] = new float[vertexCount * 3];
+		    ga.getNormals(0, normals);
+		    w.putFloats(normals);
+		}
+		for (int set = 0 ; set < texCoordSetCount ; set++) {
+		    float texCoords[] = new float[vertexCount * texCoordDim(format)];
+		    ga.getTextureCoordinates(set, 0, texCoords);
+		    w.putFloats(texCoords);
+		}
+	    }
+	}
+    }
+
+    private static String getString(ByteBuffer b) throws IOException {
+	int length = b.getInt();
+	if (length < 0) return null;
+	if (length > b.remaining()) throw new BufferUnderflowException();
+	byte bytes[] = new byte[length];
+	b.get(bytes);
+	return new String(bytes, "UTF-8");
+    }
+
+    private static int[] getInts(ByteBuffer b) {
+	int length = b.getInt();
+	if (length < 0 || length > b.remaining() / 4)
+	    throw new BufferUnderflowException();
+	int a[] = new int[length];
+	b.asIntBuffer().get(a);
+	b.position(b.position() + a.length * 4);
+	return a;
+    }
+
+    private static float[] getFloats(ByteBuffer b) {
+	int length = b.getInt();
+	if (length < 0 || length > b.remaining() / 4)
+	    throw new BufferUnderflowException();
+	float a[] = new float[length];
+	b.asFloatBuffer().get(a);
+	b.position(b.position() + a.length * 4);
+	return a;
+    }
+
+    private static float[] getOptionalFloats(ByteBuffer b) {
+	if (b.getInt(b.position()) == -1) {
+	    b.getInt();
+	    return null;
+	}
+	return getFloats(b);
+    }
+
+    private static Contents readFile(File file, File source, String parameters)
+	throws IOException {
+	ByteBuffer b;
+	FileInputStream in = new FileInputStream(file);
+	try {
+	    FileChannel channel = in.getChannel();
+	    b = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+	}
+	finally {
+	    // The mapping stays valid after the channel is closed
+	    in.close();
+	}
+	b.order(ByteOrder.BIG_ENDIAN);
+
+	if (b.getInt() != MAGIC || b.getInt() != VERSION ||
+	    !canonicalPath(source).equals(getString(b)) ||
+	    b.getLong() != source.length() ||
+	    b.getLong() != source.lastModified() ||
+	    !parameters.equals(getString(b)))
+	    return null;
+
+	Contents contents = new Contents();
+	int numLibraries = b.getInt();
+	for (int i = 0 ; i < numLibraries ; i++)
+	    contents.addLibrary(getString(b));
+
+	int numMeshes = b.getInt();
+	for (int i = 0 ; i < numMeshes ; i++) {
+	    String name = getString(b);
+	    String material = getString(b);
+	    float meshAttributes[] = getOptionalFloats(b);
+	    int type = b.getInt();
+	    int format = b.getInt();
+	    int vertexCount = b.getInt();
+	    int texCoordSetCount = b.getInt();
+	    int texCoordSetMap[] = getInts(b);
+
+	    GeometryArray ga;
+	    switch (type) {
+	    case TRIANGLES:
+		ga = new TriangleArray(vertexCount, format,
+				       texCoordSetCount, texCoordSetMap);
+		break;
+	    case TRIANGLE_STRIPS:
+		ga = new TriangleStripArray(vertexCount, format,
+					    texCoordSetCount, texCoordSetMap,
+					    getInts(b));
+		break;
+	    case TRIANGLE_FANS:
+		ga = new TriangleFanArray(vertexCount, format,
+					  texCoordSetCount, texCoordSetMap,
+					  getInts(b));
+		break;
+	    default:
+		return null;
+	    }
+
+	    if ((format & GeometryArray.BY_REFERENCE) != 0) {
+		ga.setInterleavedVertices(getFloats(b));
+	    } else {
+		ga.setCoordinates(0, getFloats(b));
+		if (colorSize(format) != 0) ga.setColors(0, getFloats(b));
+		if ((format & GeometryArray.NORMALS) != 0)
+		    ga.setNormals(0, getFloats(b));
+		for (int set = 0 ; set < texCoordSetCount ; set++)
+		    ga.setTextureCoordinates(set, 0, getFloats(b));
+	    }
+	    contents.addMesh(name, material, meshAttributes, ga);
+	}
+	return contents;
+    }
+}
@@ -146,25 +146,56 @@ abstract class FloatValueInterpolator extends Interpolator {
     protected void computePathInterpolation() {
         float alphaValue = (this.getAlpha()).value();
 
-        for (int i = 0; i < knotsLength; i++) {
-            if ((i == 0 && alphaValue <= knots[i]) ||
-                (i > 0 && alphaValue >= knots[i-1] && alphaValue <= knots[i])) {
-
-                if (i==0) {
-                    currentInterpolationRatio = 0f;
-                    currentKnotIndex = 0;
-	            currentValue = values[0];
-                }
-                else {
-                    currentInterpolationRatio =
-                        (alphaValue - knots[i-1])/(knots[i] - knots[i-1]);
-                    currentKnotIndex = i - 1;
-	            currentValue = values[i-1] +
-	 	          currentInterpolationRatio * (values[i] - values[i-1]);
-                }
-                break;
-            }
+        int i = findKnot(alphaValue);
+        if (i < 0) {
+            return;
+        }
+
+        if (i==0) {
+            currentInterpolationRatio = 0f;
+            currentKnotIndex = 0;
+            currentValue = values[0];
+        }
+        else {
+            currentInterpolationRatio =
+                (alphaValue - knots[i-1])/(knots[i] - knots[i-1]);
+            currentKnotIndex = i - 1;
+            currentValue = values[i-1] +
+                currentInterpolationRatio * (values[i] - values[i-1]);
+        }
+    }
+
+    /**
+     * Returns the index of the first knot that alphaValue is not greater
+     * than, or -1 if there is none.  The knots are sorted, so the pair
+     * used for the previous frame is tried first and a binary search is
+     * only needed when alpha has moved on to another pair.
+     */
+    private int findKnot(float alphaValue) {
+        if (alphaValue <= knots[0]) {
+            return 0;
+        }
+
+        int i = currentKnotIndex + 1;
+        if (i > 0 && i < knotsLength && alphaValue > knots[i-1] &&
+            alphaValue <= knots[i]) {
+            return i;
+        }
+
+        if (!(alphaValue <= knots[knotsLength-1])) {
+            return -1;
+        }
+
+        int lo = 1;
+        int hi = knotsLength - 1;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (alphaValue <= knots[mid])
+                hi = mid;
+            else
+                lo = mid + 1;
         }
+        return lo;
     }
 
 }
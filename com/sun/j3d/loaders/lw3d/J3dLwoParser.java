@@ -48,11 +48,18 @@ import java.awt.Component;
 import java.awt.Image;
 import java.util.Enumeration;
 import java.util.Vector;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 import com.sun.j3d.utils.geometry.GeometryInfo;
 import com.sun.j3d.utils.geometry.NormalGenerator;
 import com.sun.j3d.utils.geometry.Stripifier;
 import com.sun.j3d.utils.image.TextureLoader;
 import com.sun.j3d.loaders.IncorrectFormatException;
+import com.sun.j3d.loaders.MeshCache;
+import com.sun.j3d.loaders.ParsingErrorException;
+import java.io.File;
 import java.io.FileNotFoundException;
 
 import javax.media.j3d.*;
@@ -76,6 +83,22 @@ import java.net.*;
  */
 
 class J3dLwoParser extends LwoParser {
+
+    // Tells mesh cache files written by this class apart
+    static final String CACHE_PARAMETERS = "J3dLwoParser";
+
+    // Layout of the surface parameters stored with each cached mesh:
+    // color, emissive, diffuse and specular rgb, shininess, transparency
+    // and the texture mode (NO_TEXTURE_MODE if the surface is untextured)
+    static final int ATTRIBUTE_COLOR = 0;
+    static final int ATTRIBUTE_EMISSIVE = 3;
+    static final int ATTRIBUTE_DIFFUSE = 6;
+    static final int ATTRIBUTE_SPECULAR = 9;
+    static final int ATTRIBUTE_SHININESS = 12;
+    static final int ATTRIBUTE_TRANSPARENCY = 13;
+    static final int ATTRIBUTE_TEXTURE_MODE = 14;
+    static final int ATTRIBUTE_COUNT = 15;
+    static final int NO_TEXTURE_MODE = -1;
 	
     float normalCoordsArray[];
     int normalIndicesArray[];
@@ -87,14 +110,14 @@ class J3dLwoParser extends LwoParser {
     /**
      * Constructor: Calls LwoObject to parse file and create data structures
      */   
-    J3dLwoParser(String fileName, 
+    J3dLwoParser(String fileName, Lw3dResourceCache cache,
 		 int debugVals) throws FileNotFoundException {
-		     super(fileName, debugVals);
+		     super(fileName, cache, debugVals);
     }
 
-    J3dLwoParser(URL url, int debugVals) 
+    J3dLwoParser(URL url, Lw3dResourceCache cache, int debugVals) 
 	throws FileNotFoundException {
-	    super(url, debugVals);
+	    super(url, cache, debugVals);
     }
 
     void getSurf(int length) throws FileNotFoundException {
@@ -107,21 +130,58 @@ class J3dLwoParser extends LwoParser {
      * file) into Java3d objects
      */
     void createJava3dGeometry() throws IncorrectFormatException {
+	createJava3dGeometry(null);
+    }
+
+    /**
+     * Turns LwoObject's data structures into Java3d objects.  If executor
+     * is not null, the normal generation and stripification of each
+     * polygonal shape is run as a separate task on it; the resulting
+     * Shape3Ds are identical and in the same order as in the serial case.
+     */
+    void createJava3dGeometry(ExecutorService executor)
+	throws IncorrectFormatException {
+	createJava3dGeometry(executor, null, null);
+    }
+
+    /**
+     * Same as createJava3dGeometry(ExecutorService), but if cache and
+     * source are not null the resulting shapes are written to the mesh
+     * cache file of the source file, so that createShapesFromCache() can
+     * rebuild them without parsing the file again.  Only objects made of
+     * polygonal shapes are cached; each entry holds the geometry of one
+     * shape together with its surface name, texture image file and the
+     * surface parameters its appearance is built from.
+     */
+    void createJava3dGeometry(ExecutorService executor, MeshCache cache,
+			      File source)
+	throws IncorrectFormatException {
 	
 	GeometryArray object;
 	LwoTexture texture;
+	Vector pendingShapes = new Vector();
+	Vector pendingGeometry = new Vector();
+	MeshCache.Contents contents = null;
+	Vector polygonShapes = new Vector();
+
+	if (cache != null && source != null)
+	    contents = new MeshCache.Contents();
+
+	if (format == FORMAT_LWO2) {
+	    // Group the faces of the polygon table by surface tag.
+	    // FIXME: Currently a PTCH treated as if it is a FACE
+	    ShapeHolder shapes[] =
+		polygonTable.createShapes(tagList.size(),
+					  debugPrinter.getValidOutput());
+	    for (int i = 0; i < shapes.length; ++i)
+		shapeList.addElement(shapes[i]);
+	    polygonTable = null;
+	}
 
 	for (Enumeration e = shapeList.elements();
 	     e.hasMoreElements() ;) {
 	    int vertexFormat = javax.media.j3d.GeometryArray.COORDINATES;
 	    ShapeHolder shape = (ShapeHolder)e.nextElement();
-	    if (format == FORMAT_LWO2) {
-	    	if (((Lwo2Polygon) shape).getType() == Lwo2Polygon.TYPE_UNKNOWN) {
-	    		// FIXME: Currently a PTCH treated as if it is a FACE
-			    debugOutputLn(LINE_TRACE, "skipping polygon with unknown type");
-	    		continue;
-	    	}
-	    }
 	    debugOutputLn(LINE_TRACE, "about to create Arrays for Shape");
 	    debugOutputLn(VALUES, "shape = " + shape);
 	    shape.createArrays(true);
@@ -131,7 +191,7 @@ class J3dLwoParser extends LwoParser {
 		indexCount = shape.facetIndices.length;
 	    debugOutputLn(VALUES, "numSurf = " + shape.numSurf);
 	    LwoSurface surf = null;
-	    String surfName;
+	    String surfName = null;
 	    if (format == FORMAT_LWOB) {
 	    // Find the right surface.  Note: surfaces are indexed by
 	    // name.  So take this surf number, look up the name of that
@@ -151,9 +211,9 @@ class J3dLwoParser extends LwoParser {
 		}
 	    }
 	    }
-	    else {
-	    	surf = ((Lwo2Polygon) shape).getSurface();
-	    	surfName = ((Lwo2Polygon) shape).getSurfName();
+	    else if (shape.numSurf != Lwo2PolygonTable.NO_TAG) {
+	    	surfName = tagList.get(shape.numSurf);
+	    	surf = getLwo2Surface(surfName);
 	    }
 	    if (surf == null) {
 		(new IncorrectFormatException(
@@ -166,6 +226,9 @@ class J3dLwoParser extends LwoParser {
 	    // Get the LwoTexture object (if any) for the surface
 	    texture = surf.getTexture();
 
+	    Future geometryTask = null;
+	    boolean cacheable = false;
+	    float attributes[] = null;
 	    Appearance appearance = new Appearance();
 	    if (shape.facetSizes[0] == 1) {
 		// This case happens if the objects are points
@@ -205,6 +268,7 @@ class J3dLwoParser extends LwoParser {
 		if (shape.facetIndices != null) {
 		    float[] textureCoords = null;
 		    int[] textureIndices = null;
+		    cacheable = true;
 		    
 		    debugOutputLn(LINE_TRACE, "setting vertexCount, normind = " + shape.normalIndices);
 		    // If these are null we're going direct (non-indexed)
@@ -223,27 +287,30 @@ class J3dLwoParser extends LwoParser {
 			debugOutputLn(LINE_TRACE, "textureCoords:");
 			debugOutputLn(LINE_TRACE, "texture Coords, Indices.length = " + textureCoords.length + ", " + textureIndices.length);
 		    }
-		    debugOutputLn(LINE_TRACE, "about to create GeometryInfo");
-
-		    // Use the GeometryInfo utility to calculate smooth normals
-		    GeometryInfo gi =
-			new GeometryInfo(GeometryInfo.TRIANGLE_FAN_ARRAY);
-		    gi.setCoordinates(shape.coordsArray);
-		    gi.setCoordinateIndices(shape.facetIndices);
-		    gi.setStripCounts(shape.facetSizes);
-		    if (texture != null) {
-			gi.setTextureCoordinateParams(1, 2);
-			gi.setTextureCoordinates(0, textureCoords);
-			gi.setTextureCoordinateIndices(0, textureIndices);
+		    if (executor != null) {
+			final ShapeHolder taskShape = shape;
+			final float taskCreaseAngle = surf.getCreaseAngle();
+			final float[] taskTextureCoords = textureCoords;
+			final int[] taskTextureIndices = textureIndices;
+			geometryTask = executor.submit(new Callable() {
+			    public Object call() {
+				GeometryArray ga =
+				    createPolygonGeometry(taskShape,
+							  taskCreaseAngle,
+							  taskTextureCoords,
+							  taskTextureIndices);
+				taskShape.nullify();
+				return ga;
+			    }
+			});
+			object = null;
+		    }
+		    else {
+			object = createPolygonGeometry(shape,
+						       surf.getCreaseAngle(),
+						       textureCoords,
+						       textureIndices);
 		    }
-		    gi.recomputeIndices();
-		    NormalGenerator ng =
-			new NormalGenerator(surf.getCreaseAngle());
-		    ng.generateNormals(gi);
-		    Stripifier st = new Stripifier();
-		    st.stripify(gi);
-		    object = gi.getGeometryArray(true, true, false);
-		    debugOutputLn(LINE_TRACE, "done.");
 		}
 		else {
 		    // This case is called if LwoObject did not create facet
@@ -266,46 +333,216 @@ class J3dLwoParser extends LwoParser {
 		debugOutputLn(LINE_TRACE, "created fan array");
 
 		// Setup Appearance given the surface parameters
-		Material material = new Material(surf.getColor(),
-						 surf.getEmissiveColor(),
-						 surf.getDiffuseColor(),
-						 surf.getSpecularColor(),
-						 surf.getShininess());
-		material.setLightingEnable(true);
-		appearance.setMaterial(material);
-		if (surf.getTransparency() != 0f) {
-		    TransparencyAttributes ta = new TransparencyAttributes();
-		    ta.setTransparency(surf.getTransparency());
-		    ta.setTransparencyMode(ta.BLENDED);
-		    appearance.setTransparencyAttributes(ta);
-		}
+		attributes = getPolygonAttributes(surf, texture);
 		if (texture != null) {
 		    debugOutputLn(LINE_TRACE, "texture != null, enable texturing");
-		    Texture tex = texture.getTexture();
-		    tex.setEnable(true);
-		    appearance.setTexture(tex);
-		    TextureAttributes ta = new TextureAttributes();
-		    if (texture.getType().equals("DTEX"))
-			ta.setTextureMode(TextureAttributes.MODULATE);
-		    else if (texture.getType().equals("CTEX"))
-			ta.setTextureMode(TextureAttributes.DECAL);
-		    appearance.setTextureAttributes(ta);
+		    appearance = createPolygonAppearance(attributes,
+							 texture.getTexture());
 		}
 		else {
 		    debugOutputLn(LINE_TRACE, "texture == null, no texture to use");
+		    appearance = createPolygonAppearance(attributes, null);
 		}
 	    }
 	    debugOutputLn(LINE_TRACE, "done creating object");
 	   
-	    // This does gc 
-	    shape.nullify();
+	    // This does gc (done by the task if the geometry is pending)
+	    if (geometryTask == null)
+		shape.nullify();
 
 	    objectShape = new Shape3D(object);
 
 	    // Combine the appearance and geometry
 	    objectShape.setAppearance(appearance);
 	    objectShapeList.addElement(objectShape);
+	    if (contents != null) {
+		if (cacheable) {
+		    polygonShapes.addElement(new Object[] {
+			objectShape, surfName,
+			texture == null ? null : texture.imageFile,
+			attributes });
+		}
+		else {
+		    // Points, lines and unindexed polygons are not cached
+		    contents = null;
+		}
+	    }
+	    if (geometryTask != null) {
+		pendingShapes.addElement(objectShape);
+		pendingGeometry.addElement(geometryTask);
+	    }
+	}
+
+	// Wait for the pending geometry and attach it in the original order
+	for (int i = 0; i < pendingShapes.size(); ++i) {
+	    Shape3D pendingShape = (Shape3D)pendingShapes.elementAt(i);
+	    Future task = (Future)pendingGeometry.elementAt(i);
+	    try {
+		pendingShape.setGeometry((GeometryArray)task.get());
+	    }
+	    catch (InterruptedException ex) {
+		throw new ParsingErrorException(ex.getMessage());
+	    }
+	    catch (ExecutionException ex) {
+		Throwable cause = ex.getCause();
+		if (cause instanceof RuntimeException)
+		    throw (RuntimeException)cause;
+		if (cause instanceof Error)
+		    throw (Error)cause;
+		throw new ParsingErrorException(cause.getMessage());
+	    }
+	}
+
+	if (contents != null) {
+	    // Each element holds the shape, surface name, image file and
+	    // surface parameters of a polygonal shape
+	    for (int i = 0; i < polygonShapes.size(); ++i) {
+		Object entry[] = (Object[])polygonShapes.elementAt(i);
+		Shape3D polygonShape = (Shape3D)entry[0];
+		contents.addMesh((String)entry[1], (String)entry[2],
+				 (float[])entry[3],
+				 (GeometryArray)polygonShape.getGeometry());
+	    }
+	    cache.write(source, CACHE_PARAMETERS, contents);
+	}
+    }
+
+    /**
+     * Rebuilds the shapes of an object from the contents of its mesh
+     * cache file, without parsing the object file.  Returns null if an
+     * entry does not hold valid surface parameters, in which case the file
+     * has to be parsed.  A texture image that can't be found or read is
+     * skipped, as it is when the file is parsed.
+     */
+    static Vector createShapesFromCache(MeshCache.Contents contents,
+					Lw3dResourceCache resourceCache,
+					int debugVals) {
+	Vector shapes = new Vector();
+	for (int i = 0; i < contents.numMeshes(); ++i) {
+	    float attributes[] = contents.getAttributes(i);
+	    if (attributes == null || attributes.length != ATTRIBUTE_COUNT)
+		return null;
+	    Texture tex = null;
+	    String imageFile = contents.getMaterial(i);
+	    if (imageFile != null) {
+		Image image = null;
+		try {
+		    image = LwoTexture.loadImage(imageFile, resourceCache,
+						 debugVals);
+		}
+		catch (FileNotFoundException e) {
+		    // Ignore texture if can't find it
+		}
+		if (image != null)
+		    tex = LwoTexture.createTexture(imageFile, image,
+						   resourceCache);
+	    }
+	    Shape3D shape = new Shape3D(contents.getGeometry(i));
+	    shape.setAppearance(createPolygonAppearance(attributes, tex));
+	    shapes.addElement(shape);
+	}
+	return shapes;
+    }
+
+    /**
+     * Returns the surface parameters the appearance of a polygonal shape
+     * is built from, in the layout stored in the mesh cache
+     */
+    static float[] getPolygonAttributes(LwoSurface surf,
+					LwoTexture texture) {
+	float attributes[] = new float[ATTRIBUTE_COUNT];
+	putColor(attributes, ATTRIBUTE_COLOR, surf.getColor());
+	putColor(attributes, ATTRIBUTE_EMISSIVE, surf.getEmissiveColor());
+	putColor(attributes, ATTRIBUTE_DIFFUSE, surf.getDiffuseColor());
+	putColor(attributes, ATTRIBUTE_SPECULAR, surf.getSpecularColor());
+	attributes[ATTRIBUTE_SHININESS] = surf.getShininess();
+	attributes[ATTRIBUTE_TRANSPARENCY] = surf.getTransparency();
+	if (texture == null)
+	    attributes[ATTRIBUTE_TEXTURE_MODE] = NO_TEXTURE_MODE;
+	else if (texture.getType().equals("DTEX"))
+	    attributes[ATTRIBUTE_TEXTURE_MODE] = TextureAttributes.MODULATE;
+	else if (texture.getType().equals("CTEX"))
+	    attributes[ATTRIBUTE_TEXTURE_MODE] = TextureAttributes.DECAL;
+	else
+	    attributes[ATTRIBUTE_TEXTURE_MODE] = TextureAttributes.REPLACE;
+	return attributes;
+    }
+
+    /**
+     * Sets up the Appearance of a polygonal shape given its surface
+     * parameters and texture (null if the surface is untextured)
+     */
+    static Appearance createPolygonAppearance(float attributes[],
+					      Texture tex) {
+	Appearance appearance = new Appearance();
+	Material material =
+	    new Material(getColor(attributes, ATTRIBUTE_COLOR),
+			 getColor(attributes, ATTRIBUTE_EMISSIVE),
+			 getColor(attributes, ATTRIBUTE_DIFFUSE),
+			 getColor(attributes, ATTRIBUTE_SPECULAR),
+			 attributes[ATTRIBUTE_SHININESS]);
+	material.setLightingEnable(true);
+	appearance.setMaterial(material);
+	if (attributes[ATTRIBUTE_TRANSPARENCY] != 0f) {
+	    TransparencyAttributes ta = new TransparencyAttributes();
+	    ta.setTransparency(attributes[ATTRIBUTE_TRANSPARENCY]);
+	    ta.setTransparencyMode(ta.BLENDED);
+	    appearance.setTransparencyAttributes(ta);
+	}
+	if (tex != null) {
+	    tex.setEnable(true);
+	    appearance.setTexture(tex);
+	    TextureAttributes ta = new TextureAttributes();
+	    int mode = (int)attributes[ATTRIBUTE_TEXTURE_MODE];
+	    if (mode != NO_TEXTURE_MODE)
+		ta.setTextureMode(mode);
+	    appearance.setTextureAttributes(ta);
+	}
+	return appearance;
+    }
+
+    private static void putColor(float attributes[], int offset,
+				 Color3f color) {
+	attributes[offset] = color.x;
+	attributes[offset + 1] = color.y;
+	attributes[offset + 2] = color.z;
+    }
+
+    private static Color3f getColor(float attributes[], int offset) {
+	return new Color3f(attributes[offset], attributes[offset + 1],
+			   attributes[offset + 2]);
+    }
+
+    /**
+     * Builds the indexed geometry of a polygonal shape: uses the
+     * GeometryInfo utility to calculate smooth normals with the given
+     * crease angle and to stripify the result.  This only touches the
+     * given shape, so it may run concurrently for different shapes.
+     */
+    GeometryArray createPolygonGeometry(ShapeHolder shape, float creaseAngle,
+					float[] textureCoords,
+					int[] textureIndices) {
+	debugOutputLn(LINE_TRACE, "about to create GeometryInfo");
+
+	GeometryInfo gi =
+	    new GeometryInfo(GeometryInfo.TRIANGLE_FAN_ARRAY);
+	gi.setCoordinates(shape.coordsArray);
+	gi.setCoordinateIndices(shape.facetIndices);
+	gi.setStripCounts(shape.facetSizes);
+	if (textureCoords != null) {
+	    gi.setTextureCoordinateParams(1, 2);
+	    gi.setTextureCoordinates(0, textureCoords);
+	    gi.setTextureCoordinateIndices(0, textureIndices);
 	}
+	gi.recomputeIndices();
+	NormalGenerator ng =
+	    new NormalGenerator(creaseAngle);
+	ng.generateNormals(gi);
+	Stripifier st = new Stripifier();
+	st.stripify(gi);
+	GeometryArray object = gi.getGeometryArray(true, true, false);
+	debugOutputLn(LINE_TRACE, "done.");
+	return object;
     }
 
     /**
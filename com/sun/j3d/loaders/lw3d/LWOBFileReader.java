@@ -49,12 +49,27 @@ package com.sun.j3d.loaders.lw3d;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.FileInputStream;
-import java.io.BufferedInputStream;
+import java.io.InputStream;
 import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.ShortBuffer;
+import java.nio.channels.FileChannel;
 import com.sun.j3d.loaders.ParsingErrorException;
 
 
-class LWOBFileReader extends BufferedInputStream {
+/**
+ * This class reads the binary data of an Object file.  The whole file is
+ * held in a big-endian ByteBuffer: local files are memory-mapped and URLs
+ * are read into memory with a single bulk read.  Multi-byte values are
+ * then decoded directly from the buffer instead of being assembled one
+ * read() call at a time, and vertex and index runs are copied with bulk
+ * FloatBuffer/ShortBuffer gets.
+ */
+
+class LWOBFileReader extends InputStream {
 
 
 
@@ -70,11 +85,15 @@ class LWOBFileReader extends BufferedInputStream {
 
     protected String theFilename;
 
-    protected int marker;
+    // Contents of the whole file, big-endian as in the LightWave spec
+    protected ByteBuffer buffer;
 
     // should be set when atomic read() occurs
 	protected int lastLength;
 
+    // Largest byte array the VM is sure to allocate
+    private static final int MAX_BUFFER_SIZE = Integer.MAX_VALUE - 8;
+
 
 
     protected void debugOutputLn(int outputType, String theOutput) {
@@ -89,20 +108,14 @@ class LWOBFileReader extends BufferedInputStream {
 
     // Return a string consisting of the next 4 bytes in the file
     public String getToken() throws ParsingErrorException {
-        byte tokenBuffer[] = new byte[4];
-        try {
-            int readResult = read(tokenBuffer, 0, 4);
-            if (readResult == -1) {
-                debugOutputLn(LINE_TRACE, "no token - returning null");
-                return null;
-            }
-            lastLength = 4;
-            return new String(tokenBuffer);
-        }
-        catch (IOException e) {
-            debugOutputLn(EXCEPTION, "getToken: " + e);
-	    throw new ParsingErrorException(e.getMessage());
+        if (buffer.remaining() < 4) {
+            debugOutputLn(LINE_TRACE, "no token - returning null");
+            return null;
         }
+        byte tokenBuffer[] = new byte[4];
+        buffer.get(tokenBuffer);
+        lastLength = 4;
+        return new String(tokenBuffer);
     }
 
 
@@ -111,17 +124,12 @@ class LWOBFileReader extends BufferedInputStream {
      * Skip ahead amount bytes in the file
      */
     public void skipLength(int amount) throws ParsingErrorException {
-	try {
-	    marker += amount;
-        lastLength = amount;
-	    while (amount > 0) {
-	    	amount -= skip((long)amount);
-	    }
-	}
-	catch (IOException e) {
-	    debugOutputLn(EXCEPTION, "skipLength: " + e);
-	    throw new ParsingErrorException(e.getMessage());
+	if (amount > buffer.remaining()) {
+	    debugOutputLn(EXCEPTION, "skipLength: past end of file");
+	    throw new ParsingErrorException("Unexpected EOF");
 	}
+	buffer.position(buffer.position() + amount);
+	lastLength = amount;
     }
 
 
@@ -131,19 +139,13 @@ class LWOBFileReader extends BufferedInputStream {
      */
     public int getInt() throws ParsingErrorException {
         try {
-	    int x = 0;
-	    for (int i = 0 ; i < 4 ; i++) {
-		int readResult = read();
-		if (readResult == -1)
-		    throw new ParsingErrorException("Unexpected EOF");
-		x = (x << 8) | readResult;
-	    }
+            int x = buffer.getInt();
             lastLength = 4;
             return x;
         }
-        catch (IOException e) {
+        catch (BufferUnderflowException e) {
             debugOutputLn(EXCEPTION, "getInt: " + e);
-	    throw new ParsingErrorException(e.getMessage());
+	    throw new ParsingErrorException("Unexpected EOF");
         }
     }
 
@@ -172,29 +174,25 @@ class LWOBFileReader extends BufferedInputStream {
      * end with '0'.
      */
     public String getString() throws ParsingErrorException {
-      byte buf[] = new byte[512];
-	  int len = 0;
-      try {
-	  byte b;
-	  do {
-	    b = (byte)read();
-	    buf[len++] = b;
-	  } while (b != 0);
-	  // Have to read an even number of bytes
-	  if (len % 2 != 0) {
-		  read();
-		  lastLength = len + 1;
-	  }
-	  else {
-		  lastLength = len;
-	  }
+      int start = buffer.position();
+      int limit = buffer.limit();
+      int end = start;
+      while (end < limit && buffer.get(end) != 0)
+	  end++;
+      if (end == limit) {
+	  debugOutputLn(EXCEPTION, "getString: unterminated string");
+	  throw new ParsingErrorException("Unexpected EOF");
       }
-      catch (IOException e) {
-	  debugOutputLn(EXCEPTION, "getString: " + e);
-	  throw new ParsingErrorException(e.getMessage());
-      }
-      // len - 1 for skip null byte
-      return new String(buf, 0, len - 1);
+      byte buf[] = new byte[end - start];
+      buffer.get(buf);
+      // len includes the null byte
+      int len = buf.length + 1;
+      // Have to read an even number of bytes
+      if (len % 2 != 0)
+	  len++;
+      buffer.position(Math.min(start + len, limit));
+      lastLength = len;
+      return new String(buf);
     } // End of getString
 
 
@@ -203,30 +201,59 @@ class LWOBFileReader extends BufferedInputStream {
      * Reads an array of xyz values.
      */
     public void getVerts(float ar[], int num) throws ParsingErrorException {
-      for (int i = 0 ; i < num ; i++) {
-	ar[i * 3 + 0] = getFloat();
-	ar[i * 3 + 1] = getFloat();
-	ar[i * 3 + 2] = -getFloat();
+      try {
+	FloatBuffer fb = buffer.asFloatBuffer();
+	fb.get(ar, 0, num * 3);
+      }
+      catch (BufferUnderflowException e) {
+	debugOutputLn(EXCEPTION, "getVerts: " + e);
+	throw new ParsingErrorException("Unexpected EOF");
+      }
+      buffer.position(buffer.position() + num * 3 * 4);
+      // Negate z values to swap handedness
+      for (int i = 2 ; i < num * 3 ; i += 3) {
+	ar[i] = -ar[i];
       }
       lastLength = num*3*4;
     } // End of getVerts
 
 
 
+    /**
+     * Reads an array of two-byte integer values.
+     */
+    public void getShortInts(int ar[], int num) throws ParsingErrorException {
+      short shorts[] = new short[num];
+      try {
+	ShortBuffer sb = buffer.asShortBuffer();
+	sb.get(shorts);
+      }
+      catch (BufferUnderflowException e) {
+	debugOutputLn(EXCEPTION, "getShortInts: " + e);
+	throw new ParsingErrorException("Unexpected EOF");
+      }
+      buffer.position(buffer.position() + num * 2);
+      // Sign extension
+      for (int i = 0 ; i < num ; i++) {
+	ar[i] = shorts[i];
+      }
+      lastLength = num*2;
+    } // End of getShortInts
+
+
+
     /**
      * Reads two bytes from the file and returns their integer value.
      */
     public int getShortInt() throws ParsingErrorException {
 	int i = 0;
 	try {
-	    i = read();
-	    i = (i << 8) | read();
 	    // Sign extension
-	    if ((i & 0x8000) != 0) i |= 0xffff0000;
+	    i = buffer.getShort();
 	}
-	catch (IOException e) {
+	catch (BufferUnderflowException e) {
 	    debugOutputLn(EXCEPTION, "getShortInt: " + e);
-	    throw new ParsingErrorException(e.getMessage());
+	    throw new ParsingErrorException("Unexpected EOF");
 	}
 	lastLength = 2;
 	return i;
@@ -238,35 +265,55 @@ class LWOBFileReader extends BufferedInputStream {
      * Returns the current position in the file
      */
     public int getMarker() {
-      // protected field inherited from BufferedInputStream
-      return marker;
+      return buffer.position();
     } // End of getMarker
 
 
 
     public int read() throws IOException {
-      marker++;
-      return super.read();
+      if (!buffer.hasRemaining())
+	  return -1;
+      return buffer.get() & 0xff;
     } // End of read()
 
 
 
-    public int read(byte[] buffer, int offset, int count) throws IOException {
-      int ret = super.read(buffer, offset, count);
-      if (ret != -1) marker += ret;
+    public int read(byte[] b, int offset, int count) throws IOException {
+      if (count == 0)
+	  return 0;
+      if (!buffer.hasRemaining())
+	  return -1;
+      int ret = Math.min(count, buffer.remaining());
+      buffer.get(b, offset, ret);
       return ret;
     } // End of read(byte[], int, int)
 
 
 
+    public long skip(long n) throws IOException {
+      if (n <= 0)
+	  return 0;
+      int ret = (int)Math.min(n, (long)buffer.remaining());
+      buffer.position(buffer.position() + ret);
+      return ret;
+    } // End of skip(long)
+
+
+
+    public int available() throws IOException {
+      return buffer.remaining();
+    } // End of available()
+
+
+
     int getVX() {
-		int data = getShortInt();
+		int data = getShortInt() & 0xFFFF;
 		if (data < 0xFF00) {
 			lastLength = 2;
 		}
 		else {
 			// mask out first 8 bits and shift 16 bits left, because they are the high-order bits
-			data = ((data & 0x00FF) << 16) | getShortInt();
+			data = ((data & 0x00FF) << 16) | (getShortInt() & 0xFFFF);
 			lastLength = 4;
 		}
 		return data;
@@ -284,21 +331,69 @@ class LWOBFileReader extends BufferedInputStream {
      * Constructor.
      */
     public LWOBFileReader(String filename) throws FileNotFoundException {
-	super(new FileInputStream(filename));
-
 	// Add constants on this line to get more debug output
 	debugPrinter = new DebugOutput(127);
 
-	marker = 0;
+	theFilename = filename;
+	FileInputStream in = new FileInputStream(filename);
+	try {
+	    FileChannel channel = in.getChannel();
+	    long size = channel.size();
+	    // A ByteBuffer cannot address more than Integer.MAX_VALUE bytes
+	    if (size > Integer.MAX_VALUE) {
+		debugOutputLn(EXCEPTION, "LWOBFileReader: file too large");
+		throw new ParsingErrorException("File too large: " + filename);
+	    }
+	    buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+	}
+	catch (IOException e) {
+	    debugOutputLn(EXCEPTION, "LWOBFileReader: " + e);
+	    throw new ParsingErrorException(e.getMessage());
+	}
+	finally {
+	    // The mapping stays valid after the channel is closed
+	    try {
+		in.close();
+	    }
+	    catch (IOException e) {
+	    }
+	}
+	buffer.order(ByteOrder.BIG_ENDIAN);
     } // End of constructor
 
   public LWOBFileReader(java.net.URL url) throws java.io.IOException {
-    super(url.openStream());
-
     // add constants on this line to get more debug output
     debugPrinter = new DebugOutput(127);
 
-    marker = 0;
+    theFilename = url.toString();
+    InputStream in = url.openStream();
+    try {
+      // Read the whole stream in one go, then decode from memory
+      byte data[] = new byte[Math.max(in.available(), 8192)];
+      int len = 0;
+      int ret;
+      while ((ret = in.read(data, len, data.length - len)) != -1) {
+	len += ret;
+	if (len == data.length) {
+	  // A byte array cannot grow past MAX_BUFFER_SIZE
+	  if (len >= MAX_BUFFER_SIZE) {
+	    if (in.read() == -1)
+	      break;
+	    debugOutputLn(EXCEPTION, "LWOBFileReader: file too large");
+	    throw new ParsingErrorException("File too large: " + theFilename);
+	  }
+	  byte newData[] =
+	    new byte[(int)Math.min((long)len * 2, (long)MAX_BUFFER_SIZE)];
+	  System.arraycopy(data, 0, newData, 0, len);
+	  data = newData;
+	}
+      }
+      buffer = ByteBuffer.wrap(data, 0, len).slice();
+    }
+    finally {
+      in.close();
+    }
+    buffer.order(ByteOrder.BIG_ENDIAN);
   }
 
 } // End of file LWOBFileReader
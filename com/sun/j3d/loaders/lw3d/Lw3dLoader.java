@@ -50,8 +50,14 @@ import java.awt.Component;
 import java.io.*;
 import java.util.Vector;
 import java.util.Enumeration;
+import java.util.Hashtable;
 import java.net.URL;
 import java.net.MalformedURLException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import javax.media.j3d.*;
 import javax.vecmath.Color3f;
@@ -89,6 +95,11 @@ public class Lw3dLoader extends TextfileParser implements Loader {
     static final int FILE_TYPE_FILENAME = 2;
     static final int FILE_TYPE_READER = 4;
     int              fileType = FILE_TYPE_NONE;
+    boolean          parallelGeometry = false;
+    ExecutorService  geometryExecutor = null;
+    ExecutorService  objectExecutor = null;
+    Lw3dResourceCache resourceCache = new Lw3dResourceCache();
+    MeshCache        meshCache = null;
     
     /**
      * Default constructor.  Sets up default values for some variables.
@@ -168,6 +179,26 @@ public class Lw3dLoader extends TextfileParser implements Loader {
 
 	if (fileType == FILE_TYPE_NONE)
 	    fileType = FILE_TYPE_READER;
+	if (parallelGeometry)
+	    geometryExecutor = Executors.newFixedThreadPool(
+		Runtime.getRuntime().availableProcessors());
+	try {
+	    return loadScene(reader);
+	}
+	finally {
+	    if (geometryExecutor != null) {
+		geometryExecutor.shutdown();
+		geometryExecutor = null;
+	    }
+	}
+    }
+
+    /**
+     * Parses the scene file and builds the Scene
+     */
+    Scene loadScene(Reader reader) throws FileNotFoundException, 
+                            IncorrectFormatException, ParsingErrorException {
+
 	StreamTokenizer tokenizer = new StreamTokenizer(reader);
 	setupTokenizer(tokenizer);
 	
@@ -180,6 +211,7 @@ public class Lw3dLoader extends TextfileParser implements Loader {
 	skipUntilString(tokenizer, "FramesPerSecond");
 	double fps = getNumber(tokenizer);
 	float totalTime = (float)(finalFrame - firstFrame)/(float)fps;
+	Vector loadObjectList = new Vector();
 	boolean done = false;
 	while (!done) {
 	    int token;
@@ -217,18 +249,9 @@ public class Lw3dLoader extends TextfileParser implements Loader {
 						  debugPrinter.getValidOutput());
 		    debugOutputLn(TIME, "done loading at " +
 			    System.currentTimeMillis());
-		    LwsObject cloneObject = null;
-		    for (Enumeration e = objectList.elements() ;
-			 e.hasMoreElements() ;) {
-			LwsObject tmpObj = (LwsObject)e.nextElement();
-			if (tmpObj.fileName != null &&
-			    tmpObj.fileName.equals(filename)) {
-			    cloneObject = tmpObj;
-			    break;
-			}
-		    }
-		    obj.createJava3dObject(cloneObject, loadBehaviors);
+		    // Geometry is loaded once the whole scene has been parsed
 		    objectList.addElement(obj);
+		    loadObjectList.addElement(obj);
 		}
 		else if (tokenizer.sval.equals("AmbientColor")) {
 		    ambientColor.x = (float)getNumber(tokenizer)/255f;
@@ -278,6 +301,8 @@ public class Lw3dLoader extends TextfileParser implements Loader {
 	    }
 	}
 	
+	loadObjects(loadObjectList);
+
 	// Set up scene groups and parent objects appropriately
 	sceneGroupNode = new BranchGroup();
         sceneBehaviors = new Vector();
@@ -289,6 +314,66 @@ public class Lw3dLoader extends TextfileParser implements Loader {
     }
 
 
+    /**
+     * Loads the object files referenced by the given LoadObject entries
+     * and creates their Java3d objects.  Every distinct file is loaded
+     * once; if an executor has been set, the distinct files are loaded
+     * concurrently on it.  Later references to an already loaded file
+     * clone the shapes of the first one.
+     */
+    void loadObjects(Vector loadObjectList) throws FileNotFoundException,
+			    IncorrectFormatException, ParsingErrorException {
+
+	Vector cloneObjects = new Vector(loadObjectList.size());
+	Vector futures = new Vector();
+	Hashtable firstObjects = new Hashtable();
+	for (int i = 0; i < loadObjectList.size(); ++i) {
+	    LwsObject obj = (LwsObject)loadObjectList.elementAt(i);
+	    LwsObject cloneObject = null;
+	    if (obj.fileName != null) {
+		cloneObject = (LwsObject)firstObjects.get(obj.fileName);
+		if (cloneObject == null)
+		    firstObjects.put(obj.fileName, obj);
+	    }
+	    cloneObjects.addElement(cloneObject);
+	    if (cloneObject == null && objectExecutor != null) {
+		final LwsObject taskObj = obj;
+		futures.addElement(objectExecutor.submit(new Callable() {
+		    public Object call() throws Exception {
+			taskObj.loadGeometry();
+			return null;
+		    }
+		}));
+	    }
+	}
+
+	for (int i = 0; i < futures.size(); ++i) {
+	    try {
+		((Future)futures.elementAt(i)).get();
+	    }
+	    catch (InterruptedException e) {
+		throw new ParsingErrorException(e.getMessage());
+	    }
+	    catch (ExecutionException e) {
+		Throwable cause = e.getCause();
+		if (cause instanceof FileNotFoundException)
+		    throw (FileNotFoundException)cause;
+		if (cause instanceof RuntimeException)
+		    throw (RuntimeException)cause;
+		if (cause instanceof Error)
+		    throw (Error)cause;
+		throw new ParsingErrorException(cause.getMessage());
+	    }
+	}
+
+	for (int i = 0; i < loadObjectList.size(); ++i) {
+	    LwsObject obj = (LwsObject)loadObjectList.elementAt(i);
+	    obj.createJava3dObject((LwsObject)cloneObjects.elementAt(i),
+				   loadBehaviors);
+	}
+    }
+
+
     /**
      * This method creates the Scene (actually SceneBase) data structure
      * and adds all appropriate items to it.  This is the data structure
@@ -496,6 +581,82 @@ public class Lw3dLoader extends TextfileParser implements Loader {
 	return loadFlags;
     }
 
+    /**
+     * Enables or disables parallel geometry building.  When enabled, the
+     * normal generation and stripification of the surfaces of each object
+     * file run concurrently on a pool with one thread per available
+     * processor.  The resulting scene graph is the same as with serial
+     * building.  The default is false.
+     */
+    public void setParallelGeometry(boolean parallel) {
+	parallelGeometry = parallel;
+    }
+
+    /**
+     * Returns whether parallel geometry building is enabled.
+     */
+    public boolean getParallelGeometry() {
+	return parallelGeometry;
+    }
+
+    /**
+     * Sets the executor on which the distinct object files referenced by
+     * a scene are loaded concurrently.  If null (the default), object
+     * files are loaded one after another on the calling thread.  The
+     * executor is not shut down by the loader.
+     */
+    public void setExecutor(ExecutorService executor) {
+	objectExecutor = executor;
+    }
+
+    /**
+     * Returns the executor used to load object files, or null.
+     */
+    public ExecutorService getExecutor() {
+	return objectExecutor;
+    }
+
+    /**
+     * Sets the cache for texture images, textures and sequence file
+     * geometry used by this loader.  By default each loader has its own
+     * unbounded cache; passing the same cache to several loaders shares
+     * those resources between them.  The cache must not be null.
+     */
+    public void setResourceCache(Lw3dResourceCache cache) {
+	resourceCache = cache;
+    }
+
+    /**
+     * Returns the resource cache used by this loader.
+     */
+    public Lw3dResourceCache getResourceCache() {
+	return resourceCache;
+    }
+
+    /**
+     * Sets the on-disk cache for the triangulated geometry of object
+     * files loaded by file name, or null (the default) for none.  Object
+     * files loaded from URLs are never cached.
+     */
+    public void setMeshCache(MeshCache cache) {
+	meshCache = cache;
+    }
+
+    /**
+     * Returns the mesh cache used by this loader, or null.
+     */
+    public MeshCache getMeshCache() {
+	return meshCache;
+    }
+
+    /**
+     * Returns the executor to use for geometry building during the
+     * current load, or null if geometry should be built serially.
+     */
+    ExecutorService getGeometryExecutor() {
+	return geometryExecutor;
+    }
+
 
     
     /**
@@ -0,0 +1,318 @@
+/*
+ * $RCSfile$
+ *
+ * Copyright (c) 2007 Sun Microsystems, Inc. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * - Redistribution of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * - Redistribution in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in
+ *   the documentation and/or other materials provided with the
+ *   distribution.
+ *
+ * Neither the name of Sun Microsystems, Inc. or the names of
+ * contributors may be used to endorse or promote products derived
+ * from this software without specific prior written permission.
+ *
+ * This software is provided "AS IS," without a warranty of any
+ * kind. ALL EXPRESS OR IMPLIED CONDITIONS, REPRESENTATIONS AND
+ * WARRANTIES, INCLUDING ANY IMPLIED WARRANTY OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE OR NON-INFRINGEMENT, ARE HEREBY
+ * EXCLUDED. SUN MICROSYSTEMS, INC. ("SUN") AND ITS LICENSORS SHALL
+ * NOT BE LIABLE FOR ANY DAMAGES SUFFERED BY LICENSEE AS A RESULT OF
+ * USING, MODIFYING OR DISTRIBUTING THIS SOFTWARE OR ITS
+ * DERIVATIVES. IN NO EVENT WILL SUN OR ITS LICENSORS BE LIABLE FOR
+ * ANY LOST REVENUE, PROFIT OR DATA, OR FOR DIRECT, INDIRECT, SPECIAL,
+ * CONSEQUENTIAL, INCIDENTAL OR PUNITIVE DAMAGES, HOWEVER CAUSED AND
+ * REGARDLESS OF THE THEORY OF LIABILITY, ARISING OUT OF THE USE OF OR
+ * INABILITY TO USE THIS SOFTWARE, EVEN IF SUN HAS BEEN ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGES.
+ *
+ * You acknowledge that this software is not designed, licensed or
+ * intended for use in the design, construction, operation or
+ * maintenance of any nuclear facility.
+ *
+ * $Revision$
+ * $Date$
+ * $State$
+ */
+
+package com.sun.j3d.loaders.lw3d;
+
+
+import java.awt.Image;
+import java.awt.image.BufferedImage;
+import java.lang.ref.SoftReference;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.media.j3d.SharedGroup;
+import javax.media.j3d.Texture;
+
+
+/**
+ * This class caches the resources that the Lightwave loader shares
+ * between object files: texture images and the Texture objects created
+ * from them (both by image file name), and the SharedGroups built for
+ * the object files of sequence files.  Keys are names rather than the
+ * resources themselves, so that a key never keeps a softly held value
+ * reachable.  By default each Lw3dLoader has its own
+ * unbounded cache; a cache can also be shared between loaders by passing
+ * the same instance to Lw3dLoader.setResourceCache().<P>
+ *
+ * The cache may be bounded by a number of entries and/or by a total
+ * weight (an estimate of the bytes held by the entries), in which case
+ * the least recently used entries are evicted first.  In soft reference
+ * mode, entries are additionally held through SoftReferences so that
+ * the garbage collector may reclaim them under memory pressure.  All
+ * methods are thread-safe.
+ */
+
+public class Lw3dResourceCache {
+
+    static final int KIND_IMAGE = 0;
+    static final int KIND_TEXTURE = 1;
+    static final int KIND_SHARED_GROUP = 2;
+
+    // Weight given to resources whose size can't be estimated
+    static final long DEFAULT_WEIGHT = 1;
+
+    private final LinkedHashMap entries = new LinkedHashMap(16, 0.75f, true);
+    private int maxEntries = 0;
+    private long maxWeight = 0;
+    private boolean softReferences = false;
+    private long weight = 0;
+    private long hitCount = 0;
+    private long missCount = 0;
+    private long evictionCount = 0;
+
+    /**
+     * Key of a cache entry: the kind of resource plus its own key, so
+     * that an image and a SharedGroup loaded from files of the same name
+     * don't collide.
+     */
+    static class ResourceKey {
+	final int kind;
+	final Object key;
+
+	ResourceKey(int kind, Object key) {
+	    this.kind = kind;
+	    this.key = key;
+	}
+
+	public int hashCode() {
+	    return key.hashCode() * 31 + kind;
+	}
+
+	public boolean equals(Object o) {
+	    if (!(o instanceof ResourceKey))
+		return false;
+	    ResourceKey k = (ResourceKey)o;
+	    return kind == k.kind && key.equals(k.key);
+	}
+    }
+
+    static class Entry {
+	Object value;
+	SoftReference ref;
+	long weight;
+
+	Object get() {
+	    return (ref != null) ? ref.get() : value;
+	}
+    }
+
+    /**
+     * Creates an unbounded cache holding strong references.
+     */
+    public Lw3dResourceCache() {
+    }
+
+    /**
+     * Creates a cache that holds at most maxEntries entries and whose
+     * entries weigh at most maxWeight bytes in total.  A value of 0 means
+     * no limit.
+     */
+    public Lw3dResourceCache(int maxEntries, long maxWeight) {
+	this.maxEntries = maxEntries;
+	this.maxWeight = maxWeight;
+    }
+
+    /**
+     * Sets the maximum number of entries, 0 for no limit.
+     */
+    public synchronized void setMaxEntries(int maxEntries) {
+	this.maxEntries = maxEntries;
+	evict();
+    }
+
+    /**
+     * Returns the maximum number of entries, 0 if there is no limit.
+     */
+    public synchronized int getMaxEntries() {
+	return maxEntries;
+    }
+
+    /**
+     * Sets the maximum total weight in bytes, 0 for no limit.
+     */
+    public synchronized void setMaxWeight(long maxWeight) {
+	this.maxWeight = maxWeight;
+	evict();
+    }
+
+    /**
+     * Returns the maximum total weight in bytes, 0 if there is no limit.
+     */
+    public synchronized long getMaxWeight() {
+	return maxWeight;
+    }
+
+    /**
+     * Selects whether entries added from now on are held through
+     * SoftReferences (true) or strong references (false, the default).
+     */
+    public synchronized void setSoftReferences(boolean soft) {
+	softReferences = soft;
+    }
+
+    /**
+     * Returns whether new entries are held through SoftReferences.
+     */
+    public synchronized boolean getSoftReferences() {
+	return softReferences;
+    }
+
+    /**
+     * Returns the number of lookups that found their resource.
+     */
+    public synchronized long getHitCount() {
+	return hitCount;
+    }
+
+    /**
+     * Returns the number of lookups that did not find their resource.
+     */
+    public synchronized long getMissCount() {
+	return missCount;
+    }
+
+    /**
+     * Returns the number of entries evicted to respect the size limits.
+     */
+    public synchronized long getEvictionCount() {
+	return evictionCount;
+    }
+
+    /**
+     * Returns the current number of entries.
+     */
+    public synchronized int size() {
+	return entries.size();
+    }
+
+    /**
+     * Returns the current total weight of the entries in bytes.
+     */
+    public synchronized long getWeight() {
+	return weight;
+    }
+
+    /**
+     * Removes all entries and resets the hit, miss and eviction counters.
+     */
+    public synchronized void clear() {
+	entries.clear();
+	weight = 0;
+	hitCount = 0;
+	missCount = 0;
+	evictionCount = 0;
+    }
+
+    synchronized Object get(int kind, Object key) {
+	ResourceKey k = new ResourceKey(kind, key);
+	Entry entry = (Entry)entries.get(k);
+	Object value = (entry != null) ? entry.get() : null;
+	if (value == null) {
+	    if (entry != null) {
+		// Cleared by the garbage collector
+		entries.remove(k);
+		weight -= entry.weight;
+	    }
+	    missCount++;
+	    return null;
+	}
+	hitCount++;
+	return value;
+    }
+
+    synchronized void put(int kind, Object key, Object value, long w) {
+	ResourceKey k = new ResourceKey(kind, key);
+	Entry entry = new Entry();
+	if (softReferences)
+	    entry.ref = new SoftReference(value);
+	else
+	    entry.value = value;
+	entry.weight = w;
+	Entry old = (Entry)entries.put(k, entry);
+	if (old != null)
+	    weight -= old.weight;
+	weight += w;
+	evict();
+    }
+
+    /**
+     * Removes least recently used entries until the limits are respected.
+     * The most recently used entry is always kept.
+     */
+    private void evict() {
+	Iterator it = entries.entrySet().iterator();
+	while (entries.size() > 1 &&
+	       ((maxEntries > 0 && entries.size() > maxEntries) ||
+		(maxWeight > 0 && weight > maxWeight))) {
+	    Map.Entry eldest = (Map.Entry)it.next();
+	    weight -= ((Entry)eldest.getValue()).weight;
+	    it.remove();
+	    evictionCount++;
+	}
+    }
+
+    static long imageWeight(Image image) {
+	if (image instanceof BufferedImage) {
+	    BufferedImage bi = (BufferedImage)image;
+	    return (long)bi.getWidth() * bi.getHeight() * 4;
+	}
+	return DEFAULT_WEIGHT;
+    }
+
+    Image getImage(String fileName) {
+	return (Image)get(KIND_IMAGE, fileName);
+    }
+
+    void putImage(String fileName, Image image) {
+	put(KIND_IMAGE, fileName, image, imageWeight(image));
+    }
+
+    Texture getTexture(String imageFile) {
+	return (Texture)get(KIND_TEXTURE, imageFile);
+    }
+
+    void putTexture(String imageFile, Image image, Texture texture) {
+	put(KIND_TEXTURE, imageFile, texture, imageWeight(image));
+    }
+
+    SharedGroup getSharedGroup(String fileName) {
+	return (SharedGroup)get(KIND_SHARED_GROUP, fileName);
+    }
+
+    void putSharedGroup(String fileName, SharedGroup group, long w) {
+	put(KIND_SHARED_GROUP, fileName, group, w);
+    }
+
+}
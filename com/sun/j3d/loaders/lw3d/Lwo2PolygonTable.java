@@ -0,0 +1,257 @@
+/*
+ * $RCSfile$
+ *
+ * Copyright (c) 2007 Sun Microsystems, Inc. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * - Redistribution of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * - Redistribution in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in
+ *   the documentation and/or other materials provided with the
+ *   distribution.
+ *
+ * Neither the name of Sun Microsystems, Inc. or the names of
+ * contributors may be used to endorse or promote products derived
+ * from this software without specific prior written permission.
+ *
+ * This software is provided "AS IS," without a warranty of any
+ * kind. ALL EXPRESS OR IMPLIED CONDITIONS, REPRESENTATIONS AND
+ * WARRANTIES, INCLUDING ANY IMPLIED WARRANTY OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE OR NON-INFRINGEMENT, ARE HEREBY
+ * EXCLUDED. SUN MICROSYSTEMS, INC. ("SUN") AND ITS LICENSORS SHALL
+ * NOT BE LIABLE FOR ANY DAMAGES SUFFERED BY LICENSEE AS A RESULT OF
+ * USING, MODIFYING OR DISTRIBUTING THIS SOFTWARE OR ITS
+ * DERIVATIVES. IN NO EVENT WILL SUN OR ITS LICENSORS BE LIABLE FOR
+ * ANY LOST REVENUE, PROFIT OR DATA, OR FOR DIRECT, INDIRECT, SPECIAL,
+ * CONSEQUENTIAL, INCIDENTAL OR PUNITIVE DAMAGES, HOWEVER CAUSED AND
+ * REGARDLESS OF THE THEORY OF LIABILITY, ARISING OUT OF THE USE OF OR
+ * INABILITY TO USE THIS SOFTWARE, EVEN IF SUN HAS BEEN ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGES.
+ *
+ * You acknowledge that this software is not designed, licensed or
+ * intended for use in the design, construction, operation or
+ * maintenance of any nuclear facility.
+ *
+ * $Revision$
+ * $Date$
+ * $State$
+ */
+
+package com.sun.j3d.loaders.lw3d;
+
+
+/**
+ * This class holds the polygons of an LWO2 file in flat arrays rather
+ * than one object per polygon.  The vertex indices of every polygon are
+ * stored back to back in polyIndices; polyOffsets[i] is the start of
+ * polygon i in that array (polyOffsets[numPolys] is the end of the last
+ * one).  The POLS type and the PTAG surface tag of each polygon are kept
+ * in parallel arrays, so each face costs only a few ints.  Each POLS
+ * chunk indexes the PNTS chunk that preceded it, so the table also keeps
+ * the coordinate array that was current when each polygon was read.
+ */
+
+class Lwo2PolygonTable {
+
+    static final int TYPE_UNKNOWN = 0;
+    static final int TYPE_SURF = 1;
+    static final int TYPE_PTCH = 2;
+
+    static final int NO_TAG = -1;
+
+    int numPolys = 0;
+    int numIndices = 0;
+    int polyIndices[];
+    int polyOffsets[];
+    int polySurfTags[];
+    byte polyTypes[];
+    int polyLayers[];
+
+    // Distinct coordinate arrays referenced by the POLS chunks
+    float layerCoords[][];
+    int numLayers = 0;
+    int currentLayer = -1;
+
+    // Index of the first polygon of the most recent POLS chunk; PTAG
+    // polygon indices are relative to it
+    int chunkBase = 0;
+
+    Lwo2PolygonTable() {
+	polyIndices = new int[1024];
+	polyOffsets = new int[257];
+	polySurfTags = new int[256];
+	polyTypes = new byte[256];
+	polyLayers = new int[256];
+	layerCoords = new float[4][];
+    }
+
+    static int typeFromString(String typeString) {
+	if (typeString.equals("SURF"))
+	    return TYPE_SURF;
+	else if (typeString.equals("PTCH"))
+	    return TYPE_PTCH;
+	return TYPE_UNKNOWN;
+    }
+
+    /**
+     * Marks the start of a new POLS chunk, whose indices refer to
+     * coordsArray
+     */
+    void startChunk(float coordsArray[]) {
+	chunkBase = numPolys;
+	if (numLayers == 0 || layerCoords[numLayers - 1] != coordsArray) {
+	    if (numLayers == layerCoords.length) {
+		float newCoords[][] = new float[numLayers * 2][];
+		System.arraycopy(layerCoords, 0, newCoords, 0, numLayers);
+		layerCoords = newCoords;
+	    }
+	    layerCoords[numLayers++] = coordsArray;
+	}
+	currentLayer = numLayers - 1;
+    }
+
+    /**
+     * Starts a new polygon with numVerts vertices, which the caller then
+     * fills in with addIndex()
+     */
+    void startPolygon(int type, int numVerts) {
+	if (numPolys == polySurfTags.length) {
+	    int newLength = numPolys * 2;
+	    int newOffsets[] = new int[newLength + 1];
+	    System.arraycopy(polyOffsets, 0, newOffsets, 0, numPolys + 1);
+	    polyOffsets = newOffsets;
+	    int newTags[] = new int[newLength];
+	    System.arraycopy(polySurfTags, 0, newTags, 0, numPolys);
+	    polySurfTags = newTags;
+	    byte newTypes[] = new byte[newLength];
+	    System.arraycopy(polyTypes, 0, newTypes, 0, numPolys);
+	    polyTypes = newTypes;
+	    int newLayers[] = new int[newLength];
+	    System.arraycopy(polyLayers, 0, newLayers, 0, numPolys);
+	    polyLayers = newLayers;
+	}
+	if (numIndices + numVerts > polyIndices.length) {
+	    int newIndices[] =
+		new int[Math.max(polyIndices.length * 2, numIndices + numVerts)];
+	    System.arraycopy(polyIndices, 0, newIndices, 0, numIndices);
+	    polyIndices = newIndices;
+	}
+	polyOffsets[numPolys] = numIndices;
+	polySurfTags[numPolys] = NO_TAG;
+	polyTypes[numPolys] = (byte)type;
+	polyLayers[numPolys] = currentLayer;
+	numPolys++;
+	polyOffsets[numPolys] = numIndices;
+    }
+
+    void addIndex(int index) {
+	polyIndices[numIndices++] = index;
+	polyOffsets[numPolys] = numIndices;
+    }
+
+    /**
+     * Sets the surface tag of a polygon of the most recent POLS chunk
+     */
+    void setSurfTag(int chunkPoly, int tag) {
+	polySurfTags[chunkBase + chunkPoly] = tag;
+    }
+
+    int getNumVerts(int poly) {
+	return polyOffsets[poly + 1] - polyOffsets[poly];
+    }
+
+    int getType(int poly) {
+	return polyTypes[poly];
+    }
+
+    int getSurfTag(int poly) {
+	return polySurfTags[poly];
+    }
+
+    /**
+     * Groups the polygons into ShapeHolders, one per coordinate array,
+     * surface tag and primitive kind (points, lines, polygons), in order
+     * of first appearance.  Polygons of unknown type are skipped.  The
+     * ShapeHolder's numSurf is set to the surface tag.
+     */
+    ShapeHolder[] createShapes(int numTags, int debugVals) {
+	// Slot per (layer, tag, kind); tag NO_TAG uses the first three
+	// slots of each layer
+	int layerSlots = (numTags + 1) * 3;
+	int slotGroup[] = new int[Math.max(numLayers, 1) * layerSlots];
+	for (int i = 0; i < slotGroup.length; ++i)
+	    slotGroup[i] = -1;
+	int polyGroup[] = new int[numPolys];
+	int groupFaces[] = new int[8];
+	int groupIndices[] = new int[8];
+	int groupSlots[] = new int[8];
+	int numGroups = 0;
+
+	for (int poly = 0; poly < numPolys; ++poly) {
+	    int numVerts = getNumVerts(poly);
+	    if (polyTypes[poly] == TYPE_UNKNOWN || numVerts == 0) {
+		polyGroup[poly] = -1;
+		continue;
+	    }
+	    int kind = (numVerts < 3) ? numVerts - 1 : 2;
+	    int tag = polySurfTags[poly];
+	    if (tag >= numTags)
+		tag = NO_TAG;
+	    int slot = polyLayers[poly] * layerSlots + (tag + 1) * 3 + kind;
+	    int group = slotGroup[slot];
+	    if (group == -1) {
+		if (numGroups == groupFaces.length) {
+		    int newLength = numGroups * 2;
+		    int temp[] = new int[newLength];
+		    System.arraycopy(groupFaces, 0, temp, 0, numGroups);
+		    groupFaces = temp;
+		    temp = new int[newLength];
+		    System.arraycopy(groupIndices, 0, temp, 0, numGroups);
+		    groupIndices = temp;
+		    temp = new int[newLength];
+		    System.arraycopy(groupSlots, 0, temp, 0, numGroups);
+		    groupSlots = temp;
+		}
+		group = numGroups++;
+		slotGroup[slot] = group;
+		groupSlots[group] = slot;
+	    }
+	    polyGroup[poly] = group;
+	    groupFaces[group]++;
+	    groupIndices[group] += numVerts;
+	}
+
+	ShapeHolder shapes[] = new ShapeHolder[numGroups];
+	for (int group = 0; group < numGroups; ++group) {
+	    ShapeHolder shape = new ShapeHolder(debugVals);
+	    int slot = groupSlots[group];
+	    shape.coordsArray = layerCoords[slot / layerSlots];
+	    shape.facetSizes = new int[groupFaces[group]];
+	    shape.facetIndicesArray = new int[groupIndices[group]];
+	    shape.numSurf = (slot % layerSlots) / 3 - 1;
+	    shapes[group] = shape;
+	    groupFaces[group] = 0;
+	}
+	for (int poly = 0; poly < numPolys; ++poly) {
+	    int group = polyGroup[poly];
+	    if (group == -1)
+		continue;
+	    ShapeHolder shape = shapes[group];
+	    int start = polyOffsets[poly];
+	    int numVerts = polyOffsets[poly + 1] - start;
+	    System.arraycopy(polyIndices, start,
+			     shape.facetIndicesArray, shape.currentNumIndices,
+			     numVerts);
+	    shape.currentNumIndices += numVerts;
+	    shape.facetSizes[groupFaces[group]++] = numVerts;
+	    shape.numVerts = numVerts;
+	}
+	return shapes;
+    }
+
+}
@@ -50,6 +50,7 @@ import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.net.URL;
 import java.util.Enumeration;
+import java.util.Hashtable;
 import java.util.Vector;
 
 import com.sun.j3d.loaders.IncorrectFormatException;
@@ -83,16 +84,18 @@ class LwoParser extends ParserObject {
     Vector surfNameList = null;
     Vector surfaceList = new Vector(200);	
     Vector shapeList = new Vector(200);
+    Lw3dResourceCache resourceCache;
 
 	/**
 	* Constructor: Creates file reader and calls parseFile() to actually
 	* read the file and grab the data
 	*/
-    LwoParser(String fileName, int debugVals)
+    LwoParser(String fileName, Lw3dResourceCache cache, int debugVals)
 	throws FileNotFoundException {
 
 	super(debugVals);
 	debugOutputLn(TRACE, "parser()");
+	resourceCache = cache;
 	long start = System.currentTimeMillis();
 	theReader = new LWOBFileReader(fileName);
 	debugOutputLn(TIME, " file opened in " +
@@ -100,10 +103,11 @@ class LwoParser extends ParserObject {
 	parseFile();
     }
 
-  LwoParser(URL url, int debugVals)
+  LwoParser(URL url, Lw3dResourceCache cache, int debugVals)
     throws FileNotFoundException {
       super(debugVals);
       debugOutputLn(TRACE, "parser()");
+      resourceCache = cache;
       try {
 	long start = System.currentTimeMillis();
 	theReader = new LWOBFileReader(url);
@@ -191,10 +195,8 @@ class LwoParser extends ParserObject {
 	    int numVerts = theReader.getShortInt();
 	    lengthRead += 2;
 	    int intArray[] = new int[numVerts];
-	    for (int i = 0; i < numVerts; ++i) {
-		intArray[i] = theReader.getShortInt();
-		lengthRead += 2;
-	    }
+	    theReader.getShortInts(intArray, numVerts);
+	    lengthRead += numVerts * 2;
 
 	    int numSurf = theReader.getShortInt();
 	    lengthRead += 2;
@@ -291,7 +293,7 @@ class LwoParser extends ParserObject {
 	// Create LwoSurface object to read and hold each surface, then
 	// store that surface in a vector of all surfaces.
 
-	LwoSurface surf = new LwoSurface(theReader, length,
+	LwoSurface surf = new LwoSurface(theReader, length, resourceCache,
 		debugPrinter.getValidOutput());
 	surfaceList.addElement(surf);
     }
@@ -380,74 +382,12 @@ class LwoParser extends ParserObject {
 	// Lwo2 specific fields
     Vector<String> tagList = new Vector<String>(50);
 
-	class Lwo2Polygon extends ShapeHolder {
-		public static final int TYPE_UNKNOWN = 0;
-		public static final int TYPE_SURF = 1;
-		public static final int TYPE_PTCH = 2;
-
-		int type = TYPE_UNKNOWN;
-		int lengthRead = -1;
-		String surfName = null;
-		Lwo2Surface surface = null;
-		// FIXME: ignored properties of polygons, from PTAG specification
-		/* Object part = null;
-		 * Object smoothGrp = null; */
-
-		Lwo2Polygon(String typeString, int debugVals) {
-			super(debugVals);
-			setTypeFromString(typeString);
-			this.coordsArray = LwoParser.this.coordsArray;
-			lengthRead = 0;
-			// Currently ignores any flags
-			numVerts = theReader.getShortInt() & 0x03FF;
-			lengthRead += 2;
-			facetSizesList = new Vector(1);
-			facetSizesList.add(new Integer(numVerts));
-			facetIndicesArray = new int[numVerts];
-			for (int i = 0; i < numVerts; ++i) {
-				facetIndicesArray[i] = (theReader.getVX());
-				lengthRead += theReader.getLastLength();
-			}
-			currentNumIndices = numVerts;
-		}
-
-		public int getLengthRead() {
-			return lengthRead;
-		}
-
-		public int getType() {
-			return type;
-		}
-
-		void setTypeFromString(String typeString) {
-			if (typeString.equals("SURF")) {
-				type = TYPE_SURF;
-			}
-			else if (typeString.equals("PTCH")) {
-				type = TYPE_PTCH;
-			}
-			else {
-				debugOutputLn(WARNING, "Unknown POLS type " + typeString);
-				type = TYPE_UNKNOWN;
-			}
-		}
-
-		public String getSurfName() {
-			return surfName;
-		}
-
-		public void setSurfName(String surfName) {
-			this.surfName = surfName;
-			
-		}
+	// Surfaces of this file by name.  Each parser keeps its own table so
+	// that files parsed at the same time can use the same surface names.
+	Hashtable<String, LwoSurface> lwo2SurfaceTable =
+		new Hashtable<String, LwoSurface>();
 
-		public Lwo2Surface getSurface() {
-			if (surface == null) {
-				surface = Lwo2Surface.getSurfByName(surfName);
-			}
-			return surface;
-		}
-	}
+	Lwo2PolygonTable polygonTable = new Lwo2PolygonTable();
 
 	/**
 	* Parse the file for all the data for a POLS object (polygon 
@@ -457,12 +397,21 @@ class LwoParser extends ParserObject {
 	debugOutputLn(TRACE, "getPolsLwo2(len), len = " + length);
 	int lengthRead = 0;
 	//long startTime = (new Date()).getTime();
-	String type = theReader.getToken();
+	String typeString = theReader.getToken();
 	lengthRead += 4;
+	int type = Lwo2PolygonTable.typeFromString(typeString);
+	if (type == Lwo2PolygonTable.TYPE_UNKNOWN)
+		debugOutputLn(WARNING, "Unknown POLS type " + typeString);
+	polygonTable.startChunk(coordsArray);
 	while (lengthRead < length) {
-		Lwo2Polygon pol = new Lwo2Polygon(type, debugPrinter.getValidOutput());
-		lengthRead += pol.getLengthRead();
-		shapeList.add(pol);
+		// Currently ignores any flags
+		int numVerts = theReader.getShortInt() & 0x03FF;
+		lengthRead += 2;
+		polygonTable.startPolygon(type, numVerts);
+		for (int i = 0; i < numVerts; ++i) {
+			polygonTable.addIndex(theReader.getVX());
+			lengthRead += theReader.getLastLength();
+		}
 	}
 	}
 
@@ -527,16 +476,16 @@ class LwoParser extends ParserObject {
 	//long startTime = (new Date()).getTime();
 	String type = theReader.getToken();
 	lengthRead += 4;
+	boolean isSurf = type.equals("SURF");
+	if (!isSurf)
+		debugOutputLn(LINE_TRACE, "Unknown type of PTAG: " + type);
 	while (lengthRead < length) {
-		Lwo2Polygon pol = (Lwo2Polygon) shapeList.get(theReader.getVX());
+		int poly = theReader.getVX();
 		lengthRead += theReader.getLastLength();
-		String tag = tagList.get(theReader.getShortInt());
+		int tag = theReader.getShortInt() & 0xFFFF;
 		lengthRead += 2;
-		if (type.equals("SURF")) {
-			pol.setSurfName(tag);
-		}
-		else {
-			debugOutputLn(LINE_TRACE, "Unknown type of PTAG: " + type + " / " + tag);
+		if (isSurf) {
+			polygonTable.setSurfTag(poly, tag);
 		}
 	}
 	}
@@ -549,10 +498,19 @@ class LwoParser extends ParserObject {
 	debugOutputLn(TRACE, "getSurfLwo2()");
 	
 	// Create Lwo2Surface object to read and hold each surface
-	// all surfaces could be retrieved from Lwo2Surface.getSurfByName() static method
+	// all surfaces of this file are retrieved from getLwo2Surface()
 	
 	Lwo2Surface surf = new Lwo2Surface(theReader, length,
 		debugPrinter.getValidOutput());
+	if (surf.getSurfName() != null)
+		lwo2SurfaceTable.put(surf.getSurfName(), surf);
+	}
+
+	/**
+	* Returns the surface of this file with the given name, or null
+	*/
+	LwoSurface getLwo2Surface(String surfName) {
+	return lwo2SurfaceTable.get(surfName);
 	}
 
 	/**
@@ -679,7 +637,8 @@ class LwoParser extends ParserObject {
 	    fileName = args[0];
 
         try {
-	  LwoParser theParser = new LwoParser(fileName, 0);
+	  LwoParser theParser =
+	      new LwoParser(fileName, new Lw3dResourceCache(), 0);
 	}
 	catch (FileNotFoundException e) {
 	    System.err.println(e.getMessage());
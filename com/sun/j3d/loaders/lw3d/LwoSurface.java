@@ -80,17 +80,20 @@ class LwoSurface extends ParserObject {
     int textureAxis;
     String surfName;
     Vector textureList = new Vector();
+    Lw3dResourceCache resourceCache;
 
     /**
      * Constructor that parses surface data from the binary file
      * and creates the necessary Java3d objects
      */
-    LwoSurface(LWOBFileReader reader, int length, int debugVals)
+    LwoSurface(LWOBFileReader reader, int length,
+	       Lw3dResourceCache cache, int debugVals)
 	throws FileNotFoundException {
 
 	super(debugVals);
 	debugOutputLn(TRACE, "LwoSurface()");
 	theReader = reader;
+	resourceCache = cache;
 	getSurf(length);
 	setJ3dColors();
     }
@@ -290,6 +293,7 @@ class LwoSurface extends ParserObject {
 		    new LwoTexture(theReader,
 				   surfStopMarker - theReader.getMarker(),
 				   tokenString,
+				   resourceCache,
 				   debugPrinter.getValidOutput());
 		textureToken = texture.getNextToken();
 		if (texture.isHandled())
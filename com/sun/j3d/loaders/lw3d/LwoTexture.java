@@ -53,7 +53,6 @@ import java.io.File;
 import java.io.IOException;
 import java.util.Vector;
 import java.util.Enumeration;
-import java.util.Hashtable;
 import javax.vecmath.Color3f;
 import javax.vecmath.Vector3f;
 import com.sun.j3d.utils.image.TextureLoader;
@@ -93,19 +92,20 @@ class LwoTexture extends ParserObject {
     String type;
     String mappingType;
     String nextToken = null;
-    static Hashtable imageTable = new Hashtable();
-    static Hashtable textureTable = new Hashtable();
+    Lw3dResourceCache resourceCache;
 
 	/** 
 	* Constructor: calls readTexture() to parse the file and retrieve
 	* texture parameters
 	*/
     LwoTexture(LWOBFileReader reader, int length, String typename, 
-	       int debugVals) throws FileNotFoundException {
+	       Lw3dResourceCache cache, int debugVals)
+	throws FileNotFoundException {
 	super(debugVals);
 	debugOutputLn(TRACE, "Constructor");
 	theReader = reader;
 	type = typename;
+	resourceCache = cache;
 	readTexture(length);
     }
 		
@@ -137,15 +137,39 @@ class LwoTexture extends ParserObject {
 	debugOutputLn(TRACE, "getTexture()");
 	if (theImage == null)
 	    return null;
-	Texture2D t2d = (Texture2D)textureTable.get(theImage);
+	return createTexture(imageFile, theImage, resourceCache);
+    }
+
+	/**
+	* Return the image stored in the given Targa file, reading it only
+	* if the resource cache does not hold it yet
+	*/
+    static Image loadImage(String imageFile, Lw3dResourceCache cache,
+			   int debugVals) throws FileNotFoundException {
+	Image image = cache.getImage(imageFile);
+	if (image == null) {
+	    TargaReader tr = new TargaReader(imageFile, debugVals);
+	    image = tr.getImage();
+	    if (image != null)
+		cache.putImage(imageFile, image);
+	}
+	return image;
+    }
+
+	/**
+	* Return the Texture for the given image of the given file, creating
+	* and caching it if the resource cache does not hold it yet
+	*/
+    static Texture createTexture(String imageFile, Image image,
+				 Lw3dResourceCache cache) {
+	Texture2D t2d = (Texture2D)cache.getTexture(imageFile);
 	if (t2d == null) {
-	    ImageScaler scaler = new ImageScaler((BufferedImage)theImage);
+	    ImageScaler scaler = new ImageScaler((BufferedImage)image);
 	    BufferedImage scaledImage = (BufferedImage)scaler.getScaledImage();
 	    TextureLoader tl = new TextureLoader(scaledImage);
 	    t2d = (Texture2D)tl.getTexture();
-	    textureTable.put(theImage, t2d);
+	    cache.putTexture(imageFile, image, t2d);
 	}
-
 	return t2d;
     }
 
@@ -231,20 +255,14 @@ class LwoTexture extends ParserObject {
 		imageFile = theReader.getString();
 		debugOutputLn(VALUES, "imageFile = " + imageFile);
 		if (imageFile.indexOf("none") == -1) {
-		    if ((theImage =
-			 (Image)imageTable.get(imageFile)) == null) {
-			try {
-			    TargaReader tr =
-				new TargaReader(imageFile,
-						debugPrinter.getValidOutput());
-			    theImage = tr.getImage();
-			    imageTable.put(imageFile, theImage);
-			}
-			catch (FileNotFoundException e) {
-			    // Ignore texture if can't find it
-			    debugOutputLn(WARNING, "Image File skipped: " +
-				imageFile);
-			}
+		    try {
+			theImage = loadImage(imageFile, resourceCache,
+					     debugPrinter.getValidOutput());
+		    }
+		    catch (FileNotFoundException e) {
+			// Ignore texture if can't find it
+			debugOutputLn(WARNING, "Image File skipped: " +
+			    imageFile);
 		    }
 		}
 		debugOutputLn(WARNING, "val = __" + imageFile + "__");
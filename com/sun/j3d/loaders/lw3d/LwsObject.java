@@ -53,9 +53,11 @@ import javax.vecmath.*;
 import java.util.Enumeration;
 import java.util.StringTokenizer;
 import java.util.Vector;
+import java.util.concurrent.ExecutorService;
 import com.sun.j3d.utils.geometry.ColorCube;
 import com.sun.j3d.loaders.ParsingErrorException;
 import com.sun.j3d.loaders.IncorrectFormatException;
+import com.sun.j3d.loaders.MeshCache;
 import java.net.MalformedURLException;
 
 import java.net.*;
@@ -88,6 +90,10 @@ class LwsObject extends TextfileParser implements LwsPrimitive {
   URL urlName;
     String protocol;
   int fileType;
+    ExecutorService geometryExecutor;
+    Vector objShapeList = null;
+    Lw3dResourceCache resourceCache;
+    MeshCache meshCache;
 
     /**
      * Constructor: parses object section of this scene file and
@@ -110,6 +116,9 @@ class LwsObject extends TextfileParser implements LwsPrimitive {
 	parent = -1;
 
 	fileType = loader.getFileType();
+	geometryExecutor = loader.getGeometryExecutor();
+	resourceCache = loader.getResourceCache();
+	meshCache = loader.getMeshCache();
 
 	try {
 	    if (loadObject) {
@@ -452,7 +461,8 @@ class LwsObject extends TextfileParser implements LwsPrimitive {
 				       motion.totalTime,
 				       (int)motion.totalFrames);
 		sr.printLines();
-		sr.createJava3dObjects(debugPrinter.getValidOutput(),
+		sr.createJava3dObjects(resourceCache,
+				       debugPrinter.getValidOutput(),
                                                          loadBehaviors);
 		Group  g = sr.getObjectNode();
 		if (g != null)
@@ -471,29 +481,14 @@ class LwsObject extends TextfileParser implements LwsPrimitive {
 	    // If this object refers to an obj file, load it and create
 	    // geometry from it.
 	    if (cloneObject == null) {
-		debugOutputLn(VALUES,
-			      "About to load binary file for " + fileName);
-		// Create a J3dLwoParser object to parse the geometry file
-		// and create the appropriate geometry
-		J3dLwoParser objParser = null;
-		switch (fileType) {
-		case Lw3dLoader.FILE_TYPE_FILENAME:
-		  objParser =
-		    new J3dLwoParser(fileName,
-				     debugPrinter.getValidOutput());
-		  break;
-		case Lw3dLoader.FILE_TYPE_URL:
-		  objParser = new J3dLwoParser(urlName,
-					       debugPrinter.getValidOutput());
-		  break;
-		}
-		objParser.createJava3dGeometry();
+		if (objShapeList == null)
+		    loadGeometry();
 		// pivot points change the parent transform
 		if (hasPivot) {
 		    objectTransform.addChild(pivotTransGroup);
 		}
-		if (objParser.getJava3dShapeList() != null) {
-		    shapeList = objParser.getJava3dShapeList();
+		if (objShapeList != null) {
+		    shapeList = objShapeList;
 		    for (Enumeration e = shapeList.elements() ;
 			 e.hasMoreElements() ;) {
 			if (!hasPivot || pivotTransGroup == null)
@@ -502,6 +497,7 @@ class LwsObject extends TextfileParser implements LwsPrimitive {
 			    pivotTransGroup.addChild((Shape3D)e.nextElement());
 		    }
 		}
+		objShapeList = null;
 	    }
 	    else {
 		// Already read that file: Clone original object
@@ -527,6 +523,60 @@ class LwsObject extends TextfileParser implements LwsPrimitive {
         }
     }
 
+    /**
+     * Parses the object file of this object and creates its geometry
+     * (created by J3dLwoParser), without adding it to the scene graph yet.
+     * If the mesh cache holds an up to date copy of the shapes of a local
+     * object file, they are rebuilt from it and the file is not parsed.
+     * This does not touch any other object and so may be called
+     * concurrently for different objects; createJava3dObject() uses the
+     * result.  Sequence files and lw3d Null objects are left to
+     * createJava3dObject().
+     */
+    void loadGeometry()
+	throws IncorrectFormatException, ParsingErrorException,
+	    FileNotFoundException
+    {
+	if ((fileName != null && fileName.indexOf("_sequence_") != -1) ||
+	    (fileName == null && urlName == null))
+	    return;
+
+	debugOutputLn(VALUES,
+		      "About to load binary file for " + fileName);
+	// Only local files can be checked for changes
+	File cacheSource = null;
+	if (fileType == Lw3dLoader.FILE_TYPE_FILENAME && meshCache != null) {
+	  cacheSource = new File(fileName);
+	  MeshCache.Contents cached =
+	    meshCache.read(cacheSource, J3dLwoParser.CACHE_PARAMETERS);
+	  if (cached != null) {
+	    objShapeList =
+	      J3dLwoParser.createShapesFromCache(cached, resourceCache,
+						 debugPrinter.getValidOutput());
+	    if (objShapeList != null) {
+	      debugOutputLn(VALUES, "Loaded " + fileName + " from mesh cache");
+	      return;
+	    }
+	  }
+	}
+	// Create a J3dLwoParser object to parse the geometry file
+	// and create the appropriate geometry
+	J3dLwoParser parser = null;
+	switch (fileType) {
+	case Lw3dLoader.FILE_TYPE_FILENAME:
+	  parser =
+	    new J3dLwoParser(fileName, resourceCache,
+			     debugPrinter.getValidOutput());
+	  break;
+	case Lw3dLoader.FILE_TYPE_URL:
+	  parser = new J3dLwoParser(urlName, resourceCache,
+				    debugPrinter.getValidOutput());
+	  break;
+	}
+	parser.createJava3dGeometry(geometryExecutor, meshCache, cacheSource);
+	objShapeList = parser.getJava3dShapeList();
+    }
+
     /**
      * Return list of Shape3D objects for this object file.  This is used
      * when cloning objects (if the scene file requests the same object file
@@ -118,9 +118,6 @@ class SequenceLine {
     int      numFrames;
     float    totalTime;
     int      totalFrames;
-
-    // storedRefList keeps references to already loaded objects
-    static Hashtable storedRefList = new Hashtable();
     
     SequenceLine(StreamTokenizer st, float time, int frames)
 	throws ParsingErrorException {
@@ -176,7 +173,8 @@ class SequenceLine {
      * frames of the tloop.  If it's not a tloop, then we're just going to
      * create the geometry for that file.
      */
-    void createJava3dObjects(int debugVals, int loadBehaviors)
+    void createJava3dObjects(Lw3dResourceCache cache, int debugVals,
+			     int loadBehaviors)
 	throws IncorrectFormatException, FileNotFoundException {
 	if (fileName.indexOf("000") != -1) {  // Tloop
 	    int index = fileName.indexOf("000");
@@ -187,22 +185,21 @@ class SequenceLine {
 	    String tempFileName = fileName;
 	    int fileNum = 0;
 	    while ((new File(tempFileName)).exists()) {
-		if (storedRefList.get(tempFileName) != null) {
+		SharedGroup storedGroup = cache.getSharedGroup(tempFileName);
+		if (storedGroup != null) {
 		    // System.out.println("retrieve stored version of " +
 		    // 		       tempFileName);
-		    SharedGroup storedGroup = 
-			(SharedGroup)storedRefList.get(tempFileName);
 		    Link newLink = new Link(storedGroup);
 		    s.addChild(newLink);
 		}
 		else {
 		    // System.out.println("reading " + tempFileName);
 		    J3dLwoParser objParser = new J3dLwoParser(tempFileName,
+							      cache,
 							      debugVals);
 		    objParser.createJava3dGeometry();
 		    TransformGroup t = new TransformGroup();
 		    SharedGroup newSharedGroup = new SharedGroup();
-		    storedRefList.put(tempFileName, newSharedGroup);
 		    newSharedGroup.addChild(t);
 		    Link newLink = new Link(newSharedGroup);
 		    s.addChild(newLink);
@@ -213,6 +210,8 @@ class SequenceLine {
 			    t.addChild((Shape3D)e.nextElement());
 			}
 		    }
+		    cache.putSharedGroup(tempFileName, newSharedGroup,
+				 shapeListWeight(objParser.getJava3dShapeList()));
 		}
 		++fileNum;
 		String fileNumString = String.valueOf(fileNum);
@@ -230,16 +229,15 @@ class SequenceLine {
 	}
 	else {// Not a tloop, just a file
 		geometryGroup = new Group();
-		if (storedRefList.get(fileName) != null) {
+		SharedGroup storedGroup = cache.getSharedGroup(fileName);
+		if (storedGroup != null) {
 			// System.out.println("getting old ref to " + fileName);
-			SharedGroup storedGroup = 
-				(SharedGroup)storedRefList.get(fileName);
 			Link newLink = new Link(storedGroup);
 			geometryGroup.addChild(newLink);
 		}
 		else {
 		// System.out.println("reading " + fileName);
-	    J3dLwoParser objParser = new J3dLwoParser(fileName,
+	    J3dLwoParser objParser = new J3dLwoParser(fileName, cache,
 						      debugVals);
 	    objParser.createJava3dGeometry();
 	    TransformGroup t = new TransformGroup();
@@ -253,11 +251,30 @@ class SequenceLine {
 		newSharedGroup.addChild(t);
 		Link newLink = new Link(newSharedGroup);
 		geometryGroup.addChild(newLink);
-		storedRefList.put(fileName, newSharedGroup);
+		cache.putSharedGroup(fileName, newSharedGroup,
+			     shapeListWeight(objParser.getJava3dShapeList()));
 		}
 	}
     }
 
+    /**
+     * Estimates the memory held by the given shapes' geometry, for
+     * weighing SharedGroups in the resource cache
+     */
+    static long shapeListWeight(Vector shapeList) {
+	long weight = Lw3dResourceCache.DEFAULT_WEIGHT;
+	if (shapeList == null)
+	    return weight;
+	for (Enumeration e = shapeList.elements(); e.hasMoreElements() ;) {
+	    Geometry g = ((Shape3D)e.nextElement()).getGeometry();
+	    if (g instanceof GeometryArray) {
+		// Coordinates, normals and texture coordinates, as floats
+		weight += (long)((GeometryArray)g).getVertexCount() * 32;
+	    }
+	}
+	return weight;
+    }
+
     Group getGeometry() {
 	return geometryGroup;
     }
@@ -113,7 +113,8 @@ class SequenceReader {
 	* node.  Finally, it creates a SwitchPathInterpolator object which
 	* handles switching between each object/s defined by each line
 	*/
-    void createJava3dObjects(int debugVals, int loadBehaviors)
+    void createJava3dObjects(Lw3dResourceCache cache, int debugVals,
+			     int loadBehaviors)
 	throws FileNotFoundException {
 
 	objectTransform = new TransformGroup();
@@ -125,7 +126,7 @@ class SequenceReader {
 	objectTransform.addChild(switchNode);
 	while (e.hasMoreElements()) {
 	    SequenceLine line = (SequenceLine)e.nextElement();
-	    line.createJava3dObjects(debugVals, loadBehaviors);
+	    line.createJava3dObjects(cache, debugVals, loadBehaviors);
 	    if (line.getGeometry() != null)
 	      switchNode.addChild(line.getGeometry());
 	      //objectTransform.addChild(line.getGeometry());
@@ -114,15 +114,22 @@ class ShapeHolder extends ParserObject {
 	//	      facetSizesList.size());
 	//facetIndices = 
 	//	    new int[facetIndicesList.size()];
+	// facetSizes may already be filled in directly (LWO2 polygon table)
+	if (facetSizesList != null) {
+	    facetSizes = 
+		new int[facetSizesList.size()];
+	    for (int i = 0; i < facetSizes.length; ++i) {
+		facetSizes[i] = 
+		    ((Integer)facetSizesList.elementAt(i)).intValue();
+	    }
+	}
 	facetIndices = new int[currentNumIndices];
 	if (reverseWinding) {
 	    int facetBeginIndex = 0;
 	    for (int facetIndex = 0;
-		 facetIndex < facetSizesList.size();
+		 facetIndex < facetSizes.length;
 		 ++facetIndex) {
-		int currFaceSize =
-		    ((Integer)facetSizesList.elementAt(facetIndex)).intValue();
-		int tempFace[] = new int[currFaceSize];
+		int currFaceSize = facetSizes[facetIndex];
 		for (int j = 0; j < currFaceSize; ++j) {
 		    facetIndices[facetBeginIndex  + j] =
 			facetIndicesArray[facetBeginIndex +
@@ -140,7 +147,7 @@ class ShapeHolder extends ParserObject {
 
 	debugOutputLn(LINE_TRACE, "facetIndices.len and coordsArray.len = " +
 		      facetIndices.length + ", " + coordsArray.length);
-	if (((Integer)facetSizesList.elementAt(0)).intValue() < 3) {
+	if (facetSizes[0] < 3) {
 	    // if we're dealing with point/line primitives, then let's abandon
 	    // the indexed route and simply construct a new coordsArray
 	    // that holds the direct values we need for a GeometryArray
@@ -164,13 +171,6 @@ class ShapeHolder extends ParserObject {
 	    facetIndices = null;
 	}
 
-	facetSizes = 
-	    new int[facetSizesList.size()];
-	for (int i = 0; i < facetSizes.length; ++i) {
-	    facetSizes[i] = 
-		((Integer)facetSizesList.elementAt(i)).intValue();
-	}
-	
 	facetSizesList = null;  // Force garbage collection on Vectors
 	facetIndicesList = null;
 	facetIndicesArray = null;
@@ -47,26 +47,34 @@ package com.sun.j3d.loaders.objectfile;
 import com.sun.j3d.loaders.Scene;
 import com.sun.j3d.loaders.SceneBase;
 import com.sun.j3d.loaders.Loader;
+import com.sun.j3d.loaders.MeshCache;
 import com.sun.j3d.loaders.IncorrectFormatException;
 import com.sun.j3d.loaders.ParsingErrorException;
 import com.sun.j3d.loaders.objectfile.ObjectFileParser;
 import com.sun.j3d.loaders.objectfile.ObjectFileMaterials;
+import com.sun.j3d.internal.FastVector;
 import com.sun.j3d.utils.geometry.GeometryInfo;
 import com.sun.j3d.utils.geometry.NormalGenerator;
 import com.sun.j3d.utils.geometry.Stripifier;
+import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileNotFoundException;
+import java.io.InputStream;
 import java.io.StreamTokenizer;
 import java.io.Reader;
-import java.io.BufferedReader;
 import java.io.BufferedInputStream;
-import java.io.FileReader;
-import java.io.InputStreamReader;
 import java.io.IOException;
 import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.HashMap;
 import java.util.StringTokenizer;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 import javax.media.j3d.*;
 import javax.vecmath.Color3f;
 import javax.vecmath.Point3f;
@@ -265,34 +273,48 @@ public class ObjectFile implements Loader {
 
     private static final char BACKSLASH = '\\';
 
+    // Files are split into chunks of about this many bytes for parallel
+    // reading.  Smaller files are read serially.
+    private static final int CHUNK_SIZE = 16 << 20;
+
     private int flags;
     private String basePath = null;
     private URL baseUrl = null;
     private boolean fromUrl = false;
     private float radians;
 
-    // First, lists of points are read from the .obj file into these arrays. . .
-    private ArrayList coordList;	// Holds Point3f
-    private ArrayList texList;		// Holds TexCoord2f
-    private ArrayList normList;		// Holds Vector3f
+    // First, the points are read from the .obj file into these arrays. . .
+    private float coordList[];		// Holds x, y, z of each vertex
+    private int numCoords;
+    private float texList[];		// Holds s, t of each texture coord
+    private int numTex;
+    private float normList[];		// Holds x, y, z of each normal
+    private int numNorms;
 
     // . . . and index lists are read into these arrays.
-    private ArrayList coordIdxList;	// Holds Integer index into coordList
-    private ArrayList texIdxList;	// Holds Integer index into texList
-    private ArrayList normIdxList;	// Holds Integer index into normList
+    private FastVector coordIdxList;	// Holds index into coordList
+    private FastVector texIdxList;	// Holds index into texList
+    private FastVector normIdxList;	// Holds index into normList
 
     // The length of each face is stored in this array.
-    private ArrayList stripCounts;	// Holds Integer
+    private FastVector stripCounts;
+
+    // Group and Smoothing Group names are only stored once.  Faces refer
+    // to them by their index in groupNames.
+    private ArrayList groupNames;	// Holds String
+    private HashMap groupIds;		// key=String name of group
+					// value=Integer index into groupNames
 
     // Each face's Geometry Group membership is kept here. . .
-    private HashMap groups;		// key=Integer index into stripCounts
-					// value=String name of group
+    private FastVector groups;		// Holds index into groupNames
     private String curGroup;
+    private int curGroupId;
 
     // . . . and Smoothing Group membership is kept here
-    private HashMap sGroups;		// key=Integer index into stripCounts
-					// value=String name of group
+    private FastVector sGroups;		// Holds index into groupNames, or
+					// -1 if the face has no smoothing group
     private String curSgroup;
+    private int curSgroupId;
 
     // The name of each group's "usemtl" material property is kept here
     private HashMap groupMaterials;	// key=String name of Group
@@ -300,17 +322,23 @@ public class ObjectFile implements Loader {
 
 
     // After reading the entire file, the faces are converted into triangles.
-    // The Geometry Group information is converted into these structures. . .
+    // The index lists are replaced by these arrays. . .
+    private int coordIndices[];
+    private int texIndices[];
+    private int normIndices[];
+
+    // . . . the Geometry Group information is converted into these
+    // structures. . .
     private HashMap triGroups;		// key=String name of group
-					// value=ArrayList of Integer
-					//       indices into coordIdxList
-    private ArrayList curTriGroup;
+					// value=FastVector of indices
+					//       into coordIndices
+    private FastVector curTriGroup;
 
     // . . . and Smoothing Group info is converted into these.
     private HashMap triSgroups;		// key=String name of group
-					// value=ArrayList of Integer
-					// indices into coordIdxList
-    private ArrayList curTriSgroup;
+					// value=FastVector of indices
+					//       into coordIndices
+    private FastVector curTriSgroup;
 
 
     // Finally, coordList, texList, and normList are converted to arrays for
@@ -324,24 +352,180 @@ public class ObjectFile implements Loader {
 
     private ObjectFileMaterials materials = null;
 
+    private ExecutorService executor = null;
+
+    private MeshCache meshCache = null;
+
+    // The shapes of the current load, to be written to meshCache
+    private MeshCache.Contents cacheContents = null;
+
+    // When this object reads one chunk of a file for a parallel load,
+    // group, material and smoothing group changes are logged here to be
+    // replayed in order when the chunks are merged. . .
+    private ArrayList chunkEvents;	// Holds String[] {keyword, name}
+
+    // . . . and the positions in the index lists of relative (negative)
+    // indices are kept here, since those count back from the number of
+    // points read so far in the chunk rather than in the file.
+    private FastVector relCoordIdx;
+    private FastVector relTexIdx;
+    private FastVector relNormIdx;
+
+
+    private static float[] grow(float list[], int needed) {
+	if (needed <= list.length) return list;
+	float newList[] = new float[Math.max(needed, list.length * 2)];
+	System.arraycopy(list, 0, newList, 0, list.length);
+	return newList;
+    } // End of grow
+
+
+    void addVertex(float x, float y, float z) {
+	if ((DEBUG & 32) != 0)
+	    System.out.println("  (" + x + "," + y + "," + z + ")");
+
+	coordList = grow(coordList, numCoords * 3 + 3);
+	coordList[numCoords * 3 + 0] = x;
+	coordList[numCoords * 3 + 1] = y;
+	coordList[numCoords * 3 + 2] = z;
+	numCoords++;
+    } // End of addVertex
+
+
+    void addNormal(float x, float y, float z) {
+	if ((DEBUG & 32) != 0)
+	    System.out.println("  (" + x + "," + y + "," + z + ")");
+
+	normList = grow(normList, numNorms * 3 + 3);
+	normList[numNorms * 3 + 0] = x;
+	normList[numNorms * 3 + 1] = y;
+	normList[numNorms * 3 + 2] = z;
+	numNorms++;
+    } // End of addNormal
+
+
+    void addTexture(float s, float t) {
+	if ((DEBUG & 32) != 0)
+	    System.out.println("  (" + s + "," + t + ")");
+
+	texList = grow(texList, numTex * 2 + 2);
+	texList[numTex * 2 + 0] = s;
+	texList[numTex * 2 + 1] = t;
+	numTex++;
+    } // End of addTexture
+
+
+    /**
+     * Converts an index as written in the file (one based, or
+     * negative to count back from the last one read) to an array index.
+     */
+    private static int fileIndex(int index, int count) {
+	index--;
+	if (index < 0) index += count + 1;
+	return index;
+    } // End of fileIndex
+
+
+    /**
+     * Ends the face whose vertex indices were just added, and puts it
+     * in the current groups.
+     */
+    void endFace(int count) {
+	stripCounts.addElement(count);
+
+	// Add face to current groups
+	groups.addElement(curGroupId);
+	sGroups.addElement(curSgroupId);
+    } // End of endFace
+
+
+    private int groupId(String name) {
+	Integer id = (Integer)groupIds.get(name);
+	if (id == null) {
+	    id = new Integer(groupNames.size());
+	    groupNames.add(name);
+	    groupIds.put(name, id);
+	}
+	return id.intValue();
+    } // End of groupId
+
+
+    /**
+     * New faces will be added to the named group, or to "default"
+     * if name is null.
+     */
+    void setGroup(String name) {
+	if (chunkEvents != null) {
+	    // Materials are carried over when the chunks are merged
+	    chunkEvents.add(new String[] {"g", name});
+	    curGroupId = groupId(name == null ? "default" : name);
+	    return;
+	}
+
+	// Find the Material Property of the current group
+	String curMat = (String)groupMaterials.get(curGroup);
+
+	// New faces will be added to the curGroup
+	if (name == null) curGroup = "default";
+	else curGroup = name;
+	curGroupId = groupId(curGroup);
+	if ((DEBUG & 32) != 0) System.out.println("  Changed to group " + curGroup);
+
+	// See if this group has Material Properties yet
+	if (groupMaterials.get(curGroup) == null) {
+	    // It doesn't - carry over from last group
+	    groupMaterials.put(curGroup, curMat);
+	}
+    } // End of setGroup
+
+
+    void setMaterialName(String name) {
+	if (chunkEvents != null) {
+	    chunkEvents.add(new String[] {"usemtl", name});
+	    return;
+	}
+	groupMaterials.put(curGroup, name);
+	if ((DEBUG & 32) != 0) {
+	    System.out.println("  Material Property " + name +
+			       " assigned to group " + curGroup);
+	}
+    } // End of setMaterialName
+
+
+    void setSmoothingGroup(String name) {
+	if (name.equals("off")) curSgroup = "0";
+	else curSgroup = name;
+	curSgroupId = groupId(curSgroup);
+	if (chunkEvents != null) chunkEvents.add(new String[] {"s", name});
+	if ((DEBUG & 32) != 0) System.out.println("  Smoothing group " + curSgroup);
+    } // End of setSmoothingGroup
+
+
+    void loadMaterialFile(String name) throws ParsingErrorException {
+	if (chunkEvents != null) {
+	    chunkEvents.add(new String[] {"mtllib", name});
+	    return;
+	}
+	if (cacheContents != null) cacheContents.addLibrary(name);
+	materials.readMaterialFile(fromUrl,
+				   fromUrl ? baseUrl.toString() : basePath, name);
+    } // End of loadMaterialFile
+
 
     void readVertex(ObjectFileParser st) throws ParsingErrorException {
-	Point3f p = new Point3f();
+	float x, y, z;
 
 	st.getNumber();
-	p.x = (float)st.nval;
+	x = (float)st.nval;
 	st.getNumber();
-	p.y = (float)st.nval;
+	y = (float)st.nval;
 	st.getNumber();
-	p.z = (float)st.nval;
-
-	if ((DEBUG & 32) != 0)
-	    System.out.println("  (" + p.x + "," + p.y + "," + p.z + ")");
+	z = (float)st.nval;
 
 	st.skipToNextLine();
 
 	// Add this vertex to the array
-	coordList.add(p);
+	addVertex(x, y, z);
     } // End of readVertex
 
 
@@ -349,22 +533,19 @@ public class ObjectFile implements Loader {
      * readNormal
      */
     void readNormal(ObjectFileParser st) throws ParsingErrorException {
-	Vector3f p = new Vector3f();
+	float x, y, z;
 
 	st.getNumber();
-	p.x = (float)st.nval;
+	x = (float)st.nval;
 	st.getNumber();
-	p.y = (float)st.nval;
+	y = (float)st.nval;
 	st.getNumber();
-	p.z = (float)st.nval;
-
-	if ((DEBUG & 32) != 0)
-	    System.out.println("  (" + p.x + "," + p.y + "," + p.z + ")");
+	z = (float)st.nval;
 
 	st.skipToNextLine();
 
 	// Add this vertex to the array
-	normList.add(p);
+	addNormal(x, y, z);
     } // End of readNormal
 
 
@@ -372,20 +553,17 @@ public class ObjectFile implements Loader {
      * readTexture
      */
     void readTexture(ObjectFileParser st) throws ParsingErrorException {
-	TexCoord2f p = new TexCoord2f();
+	float s, t;
 
 	st.getNumber();
-	p.x = (float)st.nval;
+	s = (float)st.nval;
 	st.getNumber();
-	p.y = (float)st.nval;
-
-	if ((DEBUG & 32) != 0)
-	    System.out.println("  (" + p.x + "," + p.y + ")");
+	t = (float)st.nval;
 
 	st.skipToNextLine();
 
 	// Add this vertex to the array
-	texList.add(p);
+	addTexture(s, t);
     } // End of readTexture
 
 
@@ -412,9 +590,8 @@ public class ObjectFile implements Loader {
 	    // First token is always a number (or EOL)
 	    st.pushBack();
 	    st.getNumber();
-	    vertIndex = (int)st.nval - 1;
-	    if (vertIndex < 0) vertIndex += coordList.size() + 1;
-	    coordIdxList.add(new Integer(vertIndex));
+	    vertIndex = fileIndex((int)st.nval, numCoords);
+	    coordIdxList.addElement(vertIndex);
 
 	    // Next token is a slash, a number, or EOL.  Continue on slash
 	    st.getToken();
@@ -426,9 +603,8 @@ public class ObjectFile implements Loader {
 		    // It's a number
 		    st.pushBack();
 		    st.getNumber();
-		    texIndex = (int)st.nval - 1;
-		    if (texIndex < 0) texIndex += texList.size() + 1;
-		    texIdxList.add(new Integer(texIndex));
+		    texIndex = fileIndex((int)st.nval, numTex);
+		    texIdxList.addElement(texIndex);
 		    st.getToken();
 		}
 
@@ -437,9 +613,8 @@ public class ObjectFile implements Loader {
 
 		    // There has to be a number after the 2nd slash
 		    st.getNumber();
-		    normIndex = (int)st.nval - 1;
-		    if (normIndex < 0) normIndex += normList.size() + 1;
-		    normIdxList.add(new Integer(normIndex));
+		    normIndex = fileIndex((int)st.nval, numNorms);
+		    normIdxList.addElement(normIndex);
 		    st.getToken();
 		}
 	    }
@@ -450,12 +625,7 @@ public class ObjectFile implements Loader {
 	    count++;
 	}
 
-	Integer faceNum = new Integer(stripCounts.size());
-	stripCounts.add(new Integer(count));
-
-	// Add face to current groups
-	groups.put(faceNum, curGroup);
-	if (curSgroup != null) sGroups.put(faceNum, curSgroup);
+	endFace(count);
 
 	// In case we exited early
 	st.skipToNextLine();
@@ -468,19 +638,8 @@ public class ObjectFile implements Loader {
     void readPartName(ObjectFileParser st) {
 	st.getToken();
 
-	// Find the Material Property of the current group
-	String curMat = (String)groupMaterials.get(curGroup);
-
-	// New faces will be added to the curGroup
-	if (st.ttype != ObjectFileParser.TT_WORD) curGroup = "default";
-	else curGroup = st.sval;
-	if ((DEBUG & 32) != 0) System.out.println("  Changed to group " + curGroup);
-
-	// See if this group has Material Properties yet
-	if (groupMaterials.get(curGroup) == null) {
-	    // It doesn't - carry over from last group
-	    groupMaterials.put(curGroup, curMat);
-	}
+	if (st.ttype != ObjectFileParser.TT_WORD) setGroup(null);
+	else setGroup(st.sval);
 
 	st.skipToNextLine();
     } // End of readPartName
@@ -492,11 +651,7 @@ public class ObjectFile implements Loader {
     void readMaterialName(ObjectFileParser st) throws ParsingErrorException {
 	st.getToken();
 	if (st.ttype == ObjectFileParser.TT_WORD) {
-	    groupMaterials.put(curGroup, new String(st.sval));
-	    if ((DEBUG & 32) != 0) {
-		System.out.println("  Material Property " + st.sval +
-				   " assigned to group " + curGroup);
-	    }
+	    setMaterialName(new String(st.sval));
 	}
 	st.skipToNextLine();
     } // End of readMaterialName
@@ -522,8 +677,7 @@ public class ObjectFile implements Loader {
 	    if (st.ttype == ObjectFileParser.TT_WORD) s = st.sval;
 	} while (st.ttype != ObjectFileParser.TT_EOL);
 
-	materials.readMaterialFile(fromUrl,
-				   fromUrl ? baseUrl.toString() : basePath, s);
+	loadMaterialFile(s);
 
 	st.lowerCaseMode(true);
 	st.skipToNextLine();
@@ -539,9 +693,7 @@ public class ObjectFile implements Loader {
 	    st.skipToNextLine();
 	    return;
 	}
-	if (st.sval.equals("off")) curSgroup = "0";
-	else curSgroup = st.sval;
-	if ((DEBUG & 32) != 0) System.out.println("  Smoothing group " + curSgroup);
+	setSmoothingGroup(st.sval);
 	st.skipToNextLine();
     } // End of readSmoothingGroup
 
@@ -607,6 +759,87 @@ public class ObjectFile implements Loader {
     } // End of readFile
 
 
+    /**
+     * readFace
+     *
+     *    Same as readFace(ObjectFileParser), for an ObjectFileScanner.
+     */
+    void readFace(ObjectFileScanner sc) throws ParsingErrorException {
+	int count = 0;
+
+	while (sc.getFaceVertex()) {
+	    if (chunkEvents != null) {
+		// Remember which indices are relative to this chunk
+		if (sc.coordIndex <= 0)
+		    relCoordIdx.addElement(coordIdxList.getSize());
+		if (sc.hasTexIndex && sc.texIndex <= 0)
+		    relTexIdx.addElement(texIdxList.getSize());
+		if (sc.hasNormIndex && sc.normIndex <= 0)
+		    relNormIdx.addElement(normIdxList.getSize());
+	    }
+	    coordIdxList.addElement(fileIndex(sc.coordIndex, numCoords));
+	    if (sc.hasTexIndex)
+		texIdxList.addElement(fileIndex(sc.texIndex, numTex));
+	    if (sc.hasNormIndex)
+		normIdxList.addElement(fileIndex(sc.normIndex, numNorms));
+	    count++;
+	}
+
+	endFace(count);
+    } // End of readFace
+
+
+    /**
+     * readFile
+     *
+     *    Read the model data from the file with an ObjectFileScanner.
+     *    The records are handled the same way as by
+     *    readFile(ObjectFileParser).
+     */
+    void readFile(ObjectFileScanner sc) throws ParsingErrorException {
+	String s;
+
+	while ((s = sc.getKeyword()) != null) {
+
+	    if ((DEBUG & 16) != 0) System.out.println("Token " + s);
+
+	    if (s.equals("v")) {
+		float x = sc.getFloat();
+		float y = sc.getFloat();
+		float z = sc.getFloat();
+		addVertex(x, y, z);
+	    } else if (s.equals("vt")) {
+		float u = sc.getFloat();
+		float v = sc.getFloat();
+		addTexture(u, v);
+	    } else if (s.equals("vn")) {
+		float x = sc.getFloat();
+		float y = sc.getFloat();
+		float z = sc.getFloat();
+		addNormal(x, y, z);
+	    } else if (s.equals("f") || s.equals("fo")) {
+		readFace(sc);
+	    } else if (s.equals("g")) {
+		setGroup(sc.getWord());
+	    } else if (s.equals("s")) {
+		String name = sc.getWord();
+		if (name != null) setSmoothingGroup(name);
+	    } else if (s.equals("usemtl")) {
+		String name = sc.getWord();
+		if (name != null) setMaterialName(name);
+	    } else if (s.equals("mtllib")) {
+		loadMaterialFile(sc.getLastWord());
+	    } else if (!s.equals("p") && !s.equals("l") &&
+		       !s.equals("maplib") && !s.equals("usemap")) {
+		throw new ParsingErrorException(
+						"Unrecognized token, line " + sc.lineno());
+	    }
+
+	    sc.skipToNextLine();
+	}
+    } // End of readFile
+
+
     /**
      * Constructor.
      *
@@ -672,8 +905,25 @@ public class ObjectFile implements Loader {
 
 	setBasePathFromFilename(filename);
 
-	Reader reader = new BufferedReader(new FileReader(filename));
-	return load(reader);
+	File file = new File(filename);
+	if (meshCache != null) {
+	    MeshCache.Contents contents =
+		meshCache.read(file, getCacheParameters());
+	    if (contents != null) return makeScene(contents);
+	    cacheContents = new MeshCache.Contents();
+	}
+
+	try {
+	    Scene scene = null;
+	    if (executor != null) scene = loadParallel(filename);
+	    if (scene == null) scene = load(new FileInputStream(filename));
+	    if (cacheContents != null)
+		meshCache.write(file, getCacheParameters(), cacheContents);
+	    return scene;
+	}
+	finally {
+	    cacheContents = null;
+	}
     } // End of load(String)
 
 
@@ -704,18 +954,18 @@ public class ObjectFile implements Loader {
     public Scene load(URL url) throws FileNotFoundException,
 				      IncorrectFormatException,
 				      ParsingErrorException {
-	BufferedReader reader;
+	InputStream in;
 
 	if (baseUrl == null) setBaseUrlFromUrl(url);
 
 	try {
-	    reader = new BufferedReader(new InputStreamReader(url.openStream()));
+	    in = url.openStream();
 	}
 	catch (IOException e) {
 	    throw new FileNotFoundException(e.getMessage());
 	}
 	fromUrl = true;
-	return load(reader);
+	return load(in);
     } // End of load(URL)
 
 
@@ -733,9 +983,11 @@ public class ObjectFile implements Loader {
 	Point3f[] limit = new Point3f[2];
 	limit[0] = new Point3f(Float.MAX_VALUE, Float.MAX_VALUE, Float.MAX_VALUE);
 	limit[1] = new Point3f(Float.MIN_VALUE, Float.MIN_VALUE, Float.MIN_VALUE);
-	for (int i = 0 ; i < coordList.size() ; i++) {
+	for (int i = 0 ; i < numCoords ; i++) {
 
-	    cur_vtx = (Point3f)coordList.get(i);
+	    cur_vtx.set(coordList[i * 3 + 0],
+			coordList[i * 3 + 1],
+			coordList[i * 3 + 2]);
 
 	    // Keep track of limits for normalization
 	    if (cur_vtx.x < limit[0].x) limit[0].x = cur_vtx.x;
@@ -785,9 +1037,11 @@ public class ObjectFile implements Loader {
 	    biggest_dif = limit[1].z - limit[0].z;
 	biggest_dif /= 2.0f;
 
-	for (i = 0 ; i < coordList.size() ; i++) {
+	for (i = 0 ; i < numCoords ; i++) {
 
-	    cur_vtx = (Point3f)coordList.get(i);
+	    cur_vtx.set(coordList[i * 3 + 0],
+			coordList[i * 3 + 1],
+			coordList[i * 3 + 2]);
 
 	    cur_vtx.add(cur_vtx, offset);
 
@@ -795,43 +1049,47 @@ public class ObjectFile implements Loader {
 	    cur_vtx.y /= biggest_dif;
 	    cur_vtx.z /= biggest_dif;
 
-	    // coordList.setElementAt(cur_vtx, i);
+	    coordList[i * 3 + 0] = cur_vtx.x;
+	    coordList[i * 3 + 1] = cur_vtx.y;
+	    coordList[i * 3 + 2] = cur_vtx.z;
 	}
     } // End of resize
 
 
-    private int[] objectToIntArray(ArrayList inList) {
-	int outList[] = new int[inList.size()];
-	for (int i = 0 ; i < inList.size() ; i++) {
-	    outList[i] = ((Integer)inList.get(i)).intValue();
-	}
+    private int[] objectToIntArray(FastVector inList) {
+	int outList[] = new int[inList.getSize()];
+	System.arraycopy(inList.getData(), 0, outList, 0, outList.length);
 	return outList;
     } // End of objectToIntArray
 
 
-    private Point3f[] objectToPoint3Array(ArrayList inList) {
-	Point3f outList[] = new Point3f[inList.size()];
-	for (int i = 0 ; i < inList.size() ; i++) {
-	    outList[i] = (Point3f)inList.get(i);
+    private Point3f[] objectToPoint3Array(float inList[], int count) {
+	Point3f outList[] = new Point3f[count];
+	for (int i = 0 ; i < count ; i++) {
+	    outList[i] = new Point3f(inList[i * 3 + 0],
+				     inList[i * 3 + 1],
+				     inList[i * 3 + 2]);
 	}
 	return outList;
     } // End of objectToPoint3Array
 
 
 
-    private TexCoord2f[] objectToTexCoord2Array(ArrayList inList) {
-	TexCoord2f outList[] = new TexCoord2f[inList.size()];
-	for (int i = 0 ; i < inList.size() ; i++) {
-	    outList[i] = (TexCoord2f)inList.get(i);
+    private TexCoord2f[] objectToTexCoord2Array(float inList[], int count) {
+	TexCoord2f outList[] = new TexCoord2f[count];
+	for (int i = 0 ; i < count ; i++) {
+	    outList[i] = new TexCoord2f(inList[i * 2 + 0], inList[i * 2 + 1]);
 	}
 	return outList;
     } // End of objectToTexCoord2Array
 
 
-    private Vector3f[] objectToVectorArray(ArrayList inList) {
-	Vector3f outList[] = new Vector3f[inList.size()];
-	for (int i = 0 ; i < inList.size() ; i++) {
-	    outList[i] = (Vector3f)inList.get(i);
+    private Vector3f[] objectToVectorArray(float inList[], int count) {
+	Vector3f outList[] = new Vector3f[count];
+	for (int i = 0 ; i < count ; i++) {
+	    outList[i] = new Vector3f(inList[i * 3 + 0],
+				      inList[i * 3 + 1],
+				      inList[i * 3 + 2]);
 	}
 	return outList;
     } // End of objectToVectorArray
@@ -843,13 +1101,14 @@ public class ObjectFile implements Loader {
      * This method converts those data structures
      * into an integer array to use with GeometryInfo.
      */
-    private int[] groupIndices(ArrayList sourceList, ArrayList group) {
-	int indices[] = new int[group.size() * 3];
-	for (int i = 0 ; i < group.size() ; i++) {
-	    int j = ((Integer)group.get(i)).intValue();
-	    indices[i * 3 + 0] = ((Integer)sourceList.get(j + 0)).intValue();
-	    indices[i * 3 + 1] = ((Integer)sourceList.get(j + 1)).intValue();
-	    indices[i * 3 + 2] = ((Integer)sourceList.get(j + 2)).intValue();
+    private int[] groupIndices(int sourceList[], FastVector group) {
+	int triList[] = group.getData();
+	int indices[] = new int[group.getSize() * 3];
+	for (int i = 0 ; i < group.getSize() ; i++) {
+	    int j = triList[i];
+	    indices[i * 3 + 0] = sourceList[j + 0];
+	    indices[i * 3 + 1] = sourceList[j + 1];
+	    indices[i * 3 + 2] = sourceList[j + 2];
 	}
 	return indices;
     } // end of groupIndices
@@ -870,21 +1129,20 @@ public class ObjectFile implements Loader {
 	NormalGenerator ng =
 	    new NormalGenerator(radians == -1.0f ? Math.PI : radians);
 	NormalGenerator ng0 = new NormalGenerator(0.0);
-	normList.clear();
-	normIdxList = null;
-	int newNormIdxArray[] = new int[coordIdxList.size()];
+	ArrayList normList = new ArrayList(coordIndices.length);
+	int newNormIdxArray[] = new int[coordIndices.length];
 
 	Iterator e = triSgroups.keySet().iterator();
 	while (e.hasNext()) {
 	    String curname = (String)e.next();
-	    ArrayList triList = (ArrayList)triSgroups.get(curname);
+	    FastVector triList = (FastVector)triSgroups.get(curname);
 
 	    // Check for group with no faces
-	    if (triList.size() > 0) {
+	    if (triList.getSize() > 0) {
 
 		GeometryInfo gi = new GeometryInfo(GeometryInfo.TRIANGLE_ARRAY);
 
-		gi.setCoordinateIndices(groupIndices(coordIdxList, triList));
+		gi.setCoordinateIndices(groupIndices(coordIndices, triList));
 		gi.setCoordinates(coordArray);
 
 		if (curname.equals("0")) ng0.generateNormals(gi);
@@ -895,16 +1153,17 @@ public class ObjectFile implements Loader {
 		int genNormIndices[] = gi.getNormalIndices();
 
 		// Now we need to copy the generated normals into ObjectFile
-		// data structures (normList and normIdxList).  The variable
+		// data structures (normList and normIndices).  The variable
 		// normIdx is the index of the index of the normal currently
 		// being put into the list.  It takes some calculation to
 		// figure out the new index and where to put it.
 		int normIdx = 0;
+		int tris[] = triList.getData();
 		// Repeat for each triangle in the smoothing group
-		for (int i = 0 ; i < triList.size() ; i++) {
+		for (int i = 0 ; i < triList.getSize() ; i++) {
 
-		    // Get the coordIdxList index of the first index in this face
-		    int idx = ((Integer)triList.get(i)).intValue();
+		    // Get the coordIndices index of the first index in this face
+		    int idx = tris[i];
 
 		    // Repeat for each vertex in the triangle
 		    for (int j = 0 ; j < 3 ; j++) {
@@ -918,11 +1177,9 @@ public class ObjectFile implements Loader {
 		}
 	    }
 	}
-	normIdxList = new ArrayList(coordIdxList.size());
-	for (int i = 0 ; i < coordIdxList.size() ; i++) {
-	    normIdxList.add(new Integer(newNormIdxArray[i]));
-	}
-	normArray = objectToVectorArray(normList);
+	normIndices = newNormIdxArray;
+	normArray = new Vector3f[normList.size()];
+	normList.toArray(normArray);
     } // end of smoothingGroupNormals
 
 
@@ -948,19 +1205,22 @@ public class ObjectFile implements Loader {
      */
     private void convertToTriangles() {
 	boolean triangulate = (flags & TRIANGULATE) != 0;
-	boolean textures = !texList.isEmpty() && !texIdxList.isEmpty() &&
-	    (texIdxList.size() == coordIdxList.size());
-	boolean normals = !normList.isEmpty() && !normIdxList.isEmpty() &&
-	    (normIdxList.size() == coordIdxList.size());
-	int numFaces = stripCounts.size();
+	int numIndices = coordIdxList.getSize();
+	boolean textures = (numTex > 0) && (texIdxList.getSize() > 0) &&
+	    (texIdxList.getSize() == numIndices);
+	boolean normals = (numNorms > 0) && (normIdxList.getSize() > 0) &&
+	    (normIdxList.getSize() == numIndices);
+	int numFaces = stripCounts.getSize();
+	int faceSizes[] = stripCounts.getData();
+	int faceGroups[] = groups.getData();
+	int faceSgroups[] = sGroups.getData();
 	boolean haveSgroups = curSgroup != null;
 
 	triGroups = new HashMap(50);
 	if (haveSgroups) triSgroups = new HashMap(50);
-
-	ArrayList newCoordIdxList = null;
-	ArrayList newTexIdxList = null;
-	ArrayList newNormIdxList = null;
+	coordIndices = null;
+	texIndices = null;
+	normIndices = null;
 
 	if (triangulate) {
 	    GeometryInfo gi = new GeometryInfo(GeometryInfo.POLYGON_ARRAY);
@@ -987,64 +1247,73 @@ public class ObjectFile implements Loader {
 	    // Make sure triangulated geometry has the correct number of triangles
 	    int tris = 0;
 	    for (int i = 0 ; i < numFaces ; i++)
-		tris += ((Integer)stripCounts.get(i)).intValue() - 2;
+		tris += faceSizes[i] - 2;
 
 	    if (coordIndicesArray.length != (tris * 3)) {
 		// Model contains bad polygons that didn't triangulate into the
 		// correct number of triangles.  Fall back to "simple" triangulation
 		triangulate = false;
 	    } else {
-
-		int texIndicesArray[] = gi.getTextureCoordinateIndices();
-		int normIndicesArray[] = gi.getNormalIndices();
-
-		// Convert index arrays to internal ArrayList format
-		coordIdxList.clear();
-		texIdxList.clear();
-		normIdxList.clear();
-		for (int i = 0 ; i < coordIndicesArray.length ; i++) {
-		    coordIdxList.add(new Integer(coordIndicesArray[i]));
-		    if (textures) texIdxList.add(new Integer(texIndicesArray[i]));
-		    if (normals) normIdxList.add(new Integer(normIndicesArray[i]));
-		}
+		coordIndices = coordIndicesArray;
+		if (textures) texIndices = gi.getTextureCoordinateIndices();
+		if (normals) normIndices = gi.getNormalIndices();
 	    }
 	}
 
+	int oldCoordIndices[] = null;
+	int oldTexIndices[] = null;
+	int oldNormIndices[] = null;
+
 	if (!triangulate) {
-	    newCoordIdxList = new ArrayList();
-	    if (textures) newTexIdxList = new ArrayList();
-	    if (normals) newNormIdxList = new ArrayList();
+	    int tris = 0;
+	    for (int i = 0 ; i < numFaces ; i++)
+		if (faceSizes[i] > 2) tris += faceSizes[i] - 2;
+
+	    oldCoordIndices = coordIdxList.getData();
+	    coordIndices = new int[tris * 3];
+	    if (textures) {
+		oldTexIndices = texIdxList.getData();
+		texIndices = new int[tris * 3];
+	    }
+	    if (normals) {
+		oldNormIndices = normIdxList.getData();
+		normIndices = new int[tris * 3];
+	    }
 	}
 
 	// Repeat for each face in the model - add the triangles from each 
 	// face to the Geometry and Smoothing Groups
 	int baseVertex = 0;
+	int newBaseVertex = 0;
+	int lastGroup = -1;
+	int lastSgroup = -2;
 	for (int f = 0 ; f < numFaces ; f++) {
-	    int faceSize = ((Integer)stripCounts.get(f)).intValue();
-
-	    // Find out the name of the group to which this face belongs
-	    Integer curFace = new Integer(f);
-	    curGroup = (String)groups.get(curFace);
+	    int faceSize = faceSizes[f];
 
+	    // Find out the name of the group to which this face belongs.
 	    // Change to a new geometry group, create if it doesn't exist
-	    curTriGroup = (ArrayList)triGroups.get(curGroup);
-	    if (curTriGroup == null) {
-		curTriGroup = new ArrayList();
-		triGroups.put(curGroup, curTriGroup);
+	    if (faceGroups[f] != lastGroup) {
+		lastGroup = faceGroups[f];
+		curGroup = (String)groupNames.get(lastGroup);
+		curTriGroup = (FastVector)triGroups.get(curGroup);
+		if (curTriGroup == null) {
+		    curTriGroup = new FastVector(64);
+		    triGroups.put(curGroup, curTriGroup);
+		}
 	    }
 
 	    // Change to a new smoothing group, create if it doesn't exist
-	    if (haveSgroups) {
-		curSgroup = (String)sGroups.get(curFace);
-		if (curSgroup == null) {
+	    if (haveSgroups && faceSgroups[f] != lastSgroup) {
+		lastSgroup = faceSgroups[f];
+		if (lastSgroup == -1) {
 		    // Weird case - this face has no smoothing group.  Happens if the
 		    // first 's' token comes after some faces have already been defined.
 		    // Assume they wanted no smoothing for these faces
 		    curSgroup = "0";
-		}
-		curTriSgroup = (ArrayList)triSgroups.get(curSgroup);
+		} else curSgroup = (String)groupNames.get(lastSgroup);
+		curTriSgroup = (FastVector)triSgroups.get(curSgroup);
 		if (curTriSgroup == null) {
-		    curTriSgroup = new ArrayList();
+		    curTriSgroup = new FastVector(64);
 		    triSgroups.put(curSgroup, curTriSgroup);
 		}
 	    }
@@ -1055,9 +1324,8 @@ public class ObjectFile implements Loader {
 		for (int t = 0 ; t < faceSize - 2 ; t++) {
 
 		    // The groups just remember the first vertex of each triangle
-		    Integer triBaseVertex = new Integer(baseVertex);
-		    curTriGroup.add(triBaseVertex);
-		    if (haveSgroups) curTriSgroup.add(triBaseVertex);
+		    curTriGroup.addElement(baseVertex);
+		    if (haveSgroups) curTriSgroup.addElement(baseVertex);
 
 		    baseVertex += 3;
 		}
@@ -1065,25 +1333,32 @@ public class ObjectFile implements Loader {
 		// Triangulate simply
 		for (int v = 0 ; v < faceSize - 2 ; v++) {
 		    // Add this triangle to the geometry group and the smoothing group
-		    Integer triBaseVertex = new Integer(newCoordIdxList.size());
-		    curTriGroup.add(triBaseVertex);
-		    if (haveSgroups) curTriSgroup.add(triBaseVertex);
+		    curTriGroup.addElement(newBaseVertex);
+		    if (haveSgroups) curTriSgroup.addElement(newBaseVertex);
 
-		    newCoordIdxList.add(coordIdxList.get(baseVertex));
-		    newCoordIdxList.add(coordIdxList.get(baseVertex + v + 1));
-		    newCoordIdxList.add(coordIdxList.get(baseVertex + v + 2));
+		    coordIndices[newBaseVertex + 0] = oldCoordIndices[baseVertex];
+		    coordIndices[newBaseVertex + 1] =
+			oldCoordIndices[baseVertex + v + 1];
+		    coordIndices[newBaseVertex + 2] =
+			oldCoordIndices[baseVertex + v + 2];
 
 		    if (textures) {
-			newTexIdxList.add(texIdxList.get(baseVertex));
-			newTexIdxList.add(texIdxList.get(baseVertex + v + 1));
-			newTexIdxList.add(texIdxList.get(baseVertex + v + 2));
+			texIndices[newBaseVertex + 0] = oldTexIndices[baseVertex];
+			texIndices[newBaseVertex + 1] =
+			    oldTexIndices[baseVertex + v + 1];
+			texIndices[newBaseVertex + 2] =
+			    oldTexIndices[baseVertex + v + 2];
 		    }
 
 		    if (normals) {
-			newNormIdxList.add(normIdxList.get(baseVertex));
-			newNormIdxList.add(normIdxList.get(baseVertex + v + 1));
-			newNormIdxList.add(normIdxList.get(baseVertex + v + 2));
+			normIndices[newBaseVertex + 0] = oldNormIndices[baseVertex];
+			normIndices[newBaseVertex + 1] =
+			    oldNormIndices[baseVertex + v + 1];
+			normIndices[newBaseVertex + 2] =
+			    oldNormIndices[baseVertex + v + 2];
 		    }
+
+		    newBaseVertex += 3;
 		}
 		baseVertex += faceSize;
 	    }
@@ -1093,12 +1368,9 @@ public class ObjectFile implements Loader {
 	stripCounts = null;
 	groups = null;
 	sGroups = null;
-
-	if (!triangulate) {
-	    coordIdxList = newCoordIdxList;
-	    texIdxList = newTexIdxList;
-	    normIdxList = newNormIdxList;
-	}
+	coordIdxList = null;
+	texIdxList = null;
+	normIdxList = null;
     } // End of convertToTriangles
 
 
@@ -1108,15 +1380,18 @@ public class ObjectFile implements Loader {
 	BranchGroup group = new BranchGroup();
 	scene.setSceneGroup(group);
 
-	boolean gen_norms = normList.isEmpty() || normIdxList.isEmpty() ||
-	    (normIdxList.size() != coordIdxList.size());
-	boolean do_tex = !texList.isEmpty() && !texIdxList.isEmpty() &&
-	    (texIdxList.size() == coordIdxList.size());
+	boolean gen_norms = (numNorms == 0) || (normIdxList.getSize() == 0) ||
+	    (normIdxList.getSize() != coordIdxList.getSize());
+	boolean do_tex = (numTex > 0) && (texIdxList.getSize() > 0) &&
+	    (texIdxList.getSize() == coordIdxList.getSize());
 
-	// Convert ArrayLists to arrays
-	coordArray = objectToPoint3Array(coordList);
-	if (!gen_norms) normArray = objectToVectorArray(normList);
-	if (do_tex) texArray = objectToTexCoord2Array(texList);
+	// Convert the point lists to arrays
+	coordArray = objectToPoint3Array(coordList, numCoords);
+	if (!gen_norms) normArray = objectToVectorArray(normList, numNorms);
+	if (do_tex) texArray = objectToTexCoord2Array(texList, numTex);
+	coordList = null;
+	normList = null;
+	texList = null;
 
 	convertToTriangles();
 
@@ -1149,20 +1424,20 @@ public class ObjectFile implements Loader {
 	while (e.hasNext()) {
 
 	    String curname = (String)e.next();
-	    ArrayList triList = (ArrayList)triGroups.get(curname);
+	    FastVector triList = (FastVector)triGroups.get(curname);
 
 	    // Check for group with no faces
-	    if (triList.size() > 0) {
+	    if (triList.getSize() > 0) {
 
 		GeometryInfo gi = new GeometryInfo(GeometryInfo.TRIANGLE_ARRAY);
 
-		gi.setCoordinateIndices(groupIndices(coordIdxList, triList));
+		gi.setCoordinateIndices(groupIndices(coordIndices, triList));
 		gi.setCoordinates(coordArray);
 
 		if (do_tex) {
 		    gi.setTextureCoordinateParams(1, 2);
 		    gi.setTextureCoordinates(0, texArray);
-		    gi.setTextureCoordinateIndices(0, groupIndices(texIdxList, triList));
+		    gi.setTextureCoordinateIndices(0, groupIndices(texIndices, triList));
 		}
 
 		if ((DEBUG & 8) != 0) time = System.currentTimeMillis();
@@ -1175,7 +1450,7 @@ public class ObjectFile implements Loader {
 			time = System.currentTimeMillis();
 		    }
 		} else {
-		    gi.setNormalIndices(groupIndices(normIdxList, triList));
+		    gi.setNormalIndices(groupIndices(normIndices, triList));
 		    gi.setNormals(normArray);
 		    if ((flags & REVERSE) != 0) gi.reverse();
 		}
@@ -1192,10 +1467,13 @@ public class ObjectFile implements Loader {
 		// Put geometry into Shape3d
 		Shape3D shape = new Shape3D();
 		// issue 638; default to BY_COPY for consistency
-		shape.setGeometry(gi.getGeometryArray(false, false, false));
+		GeometryArray geometry = gi.getGeometryArray(false, false, false);
+		shape.setGeometry(geometry);
 
 		String matName = (String)groupMaterials.get(curname);
 		materials.assignMaterial(matName, shape);
+		if (cacheContents != null)
+		    cacheContents.addMesh(curname, matName, geometry);
 
 		group.addChild(shape);
 		scene.addNamedObject(curname, shape);
@@ -1213,29 +1491,59 @@ public class ObjectFile implements Loader {
 
 
     /**
-     * The Object File is loaded from the already opened file.
-     * To attach the model to your scene, call getSceneGroup() on
-     * the Scene object passed back, and attach the returned
-     * BranchGroup to your scene graph.  For an example, see 
-     * j3d-examples/ObjLoad/ObjLoad.java.
+     * Creates the Scene from the contents of a mesh cache file.  The
+     * material files are read again, so changes to them are picked up.
      */
-    public Scene load(Reader reader) throws FileNotFoundException,
-				            IncorrectFormatException,
-                                            ParsingErrorException {
-	// ObjectFileParser does lexical analysis
-	ObjectFileParser st = new ObjectFileParser(reader);
+    private SceneBase makeScene(MeshCache.Contents contents)
+	throws ParsingErrorException {
+	SceneBase scene = new SceneBase();
+	BranchGroup group = new BranchGroup();
+	scene.setSceneGroup(group);
 
-	coordList = new ArrayList();
-	texList = new ArrayList();
-	normList = new ArrayList();
-	coordIdxList = new ArrayList();
-	texIdxList = new ArrayList();
-	normIdxList = new ArrayList();
-	groups = new HashMap(50);
+	materials = new ObjectFileMaterials();
+	for (int i = 0 ; i < contents.numLibraries() ; i++)
+	    loadMaterialFile(contents.getLibrary(i));
+
+	for (int i = 0 ; i < contents.numMeshes() ; i++) {
+	    Shape3D shape = new Shape3D();
+	    shape.setGeometry(contents.getGeometry(i));
+	    materials.assignMaterial(contents.getMaterial(i), shape);
+	    group.addChild(shape);
+	    scene.addNamedObject(contents.getName(i), shape);
+	}
+
+	return scene;
+    } // end of makeScene(MeshCache.Contents)
+
+
+    /**
+     * Describes the settings that affect the geometry, to tell mesh
+     * cache files written with other settings apart.
+     */
+    private String getCacheParameters() {
+	return "ObjectFile flags=" + flags + " radians=" + radians;
+    } // End of getCacheParameters
+
+
+    private void init() {
+	coordList = new float[3 * 1024];
+	numCoords = 0;
+	texList = new float[2 * 1024];
+	numTex = 0;
+	normList = new float[3 * 1024];
+	numNorms = 0;
+	coordIdxList = new FastVector(4096);
+	texIdxList = new FastVector(4096);
+	normIdxList = new FastVector(4096);
+	groupNames = new ArrayList();
+	groupIds = new HashMap(50);
+	groups = new FastVector(1024);
 	curGroup = "default";
-	sGroups = new HashMap(50);
+	curGroupId = groupId(curGroup);
+	sGroups = new FastVector(1024);
 	curSgroup = null;
-	stripCounts = new ArrayList();
+	curSgroupId = -1;
+	stripCounts = new FastVector(1024);
 	groupMaterials = new HashMap(50);
 	groupMaterials.put(curGroup, "default");
 	materials = new ObjectFileMaterials();
@@ -1244,9 +1552,24 @@ public class ObjectFile implements Loader {
 	if ((DEBUG & 8) != 0) {
 	    time = System.currentTimeMillis();
 	}
+    } // End of init
 
-	readFile(st);
 
+    /**
+     * Sets up the lists for reading one chunk of a parallel load.
+     */
+    private void initChunk() {
+	init();
+	curGroupId = -1;
+	curSgroupId = -2;
+	chunkEvents = new ArrayList();
+	relCoordIdx = new FastVector(64);
+	relTexIdx = new FastVector(64);
+	relNormIdx = new FastVector(64);
+    } // End of initChunk
+
+
+    private Scene finishLoad() {
 	if ((DEBUG & 8) != 0) {
 	    time = System.currentTimeMillis() - time;
 	    System.out.println("Read file: " + time + " ms");
@@ -1255,10 +1578,304 @@ public class ObjectFile implements Loader {
 
 	if ((flags & RESIZE) != 0) resize();
 
-	return makeScene();
+	SceneBase scene = makeScene();
+
+	// Done with the model data
+	groupNames = null;
+	groupIds = null;
+	triGroups = null;
+	triSgroups = null;
+	curTriGroup = null;
+	curTriSgroup = null;
+	coordIndices = null;
+	texIndices = null;
+	normIndices = null;
+	coordArray = null;
+	normArray = null;
+	texArray = null;
+
+	return scene;
+    } // End of finishLoad
+
+
+    /**
+     * The Object File is loaded from the already opened file.
+     * To attach the model to your scene, call getSceneGroup() on
+     * the Scene object passed back, and attach the returned
+     * BranchGroup to your scene graph.  For an example, see 
+     * j3d-examples/ObjLoad/ObjLoad.java.
+     */
+    public Scene load(Reader reader) throws FileNotFoundException,
+				            IncorrectFormatException,
+                                            ParsingErrorException {
+	// ObjectFileParser does lexical analysis
+	ObjectFileParser st = new ObjectFileParser(reader);
+
+	init();
+	readFile(st);
+	return finishLoad();
     } // End of load(Reader)
 
 
+    /**
+     * Files and URLs are read as bytes by an ObjectFileScanner, which
+     * is a lot faster than going through a Reader and ObjectFileParser
+     * and accepts the same files.  The stream is closed when done.
+     */
+    private Scene load(InputStream in) throws FileNotFoundException,
+					      IncorrectFormatException,
+					      ParsingErrorException {
+	try {
+	    init();
+	    readFile(new ObjectFileScanner(in));
+	}
+	finally {
+	    try {
+		in.close();
+	    }
+	    catch (IOException e) {
+	    }
+	}
+	return finishLoad();
+    } // End of load(InputStream)
+
+
+    /**
+     * An InputStream over a range of a FileChannel, using positional
+     * reads so that several of them can read the same channel at once.
+     */
+    private static class ChunkInputStream extends InputStream {
+	private FileChannel channel;
+	private long pos;
+	private long end;
+
+	ChunkInputStream(FileChannel channel, long start, long end) {
+	    this.channel = channel;
+	    pos = start;
+	    this.end = end;
+	}
+
+	public int read() throws IOException {
+	    byte b[] = new byte[1];
+	    return (read(b, 0, 1) == 1) ? (b[0] & 0xff) : -1;
+	}
+
+	public int read(byte b[], int off, int len) throws IOException {
+	    if (pos >= end) return -1;
+	    len = (int)Math.min(len, end - pos);
+	    int n = channel.read(ByteBuffer.wrap(b, off, len), pos);
+	    if (n > 0) pos += n;
+	    return n;
+	}
+    } // End of class ChunkInputStream
+
+
+    /**
+     * findChunkStart
+     *
+     *	Returns the position of the first line that starts at or after
+     *	pos, or the size of the file if there isn't one.  A line following
+     *	a backslash continuation doesn't count, nor does one whose previous
+     *	line can't be checked for a continuation because it is blank up to
+     *	pos.
+     */
+    private static long findChunkStart(FileChannel channel, long pos, long size)
+	throws IOException {
+	byte window[] = new byte[65536];
+	int last = -1;		// Last byte on the line that isn't blank
+	boolean comment = false;	// In a '!' comment
+
+	while (pos < size) {
+	    ByteBuffer bb = ByteBuffer.wrap(window, 0,
+					    (int)Math.min(window.length, size - pos));
+	    int n = channel.read(bb, pos);
+	    if (n <= 0) break;
+	    for (int i = 0 ; i < n ; i++) {
+		int c = window[i];
+		if (c == '\n') {
+		    if (last != -1 && last != BACKSLASH) return pos + i + 1;
+		    last = -1;
+		    comment = false;
+		} else if (c == '!') {
+		    if (last == -1) last = c;
+		    comment = true;
+		} else if (!comment && c != ' ' && c != '\t' && c != '\r') last = c;
+	    }
+	    pos += n;
+	}
+	return size;
+    } // End of findChunkStart
+
+
+    /**
+     * Reads the given byte range of a file, which starts at the beginning
+     * of a line, into a new ObjectFile set up to hold one chunk.
+     */
+    private ObjectFile readChunk(FileChannel channel, long start, long end)
+	throws ParsingErrorException {
+	ObjectFile chunk = new ObjectFile(flags, radians);
+	chunk.initChunk();
+	chunk.readFile(new ObjectFileScanner(
+	    new ChunkInputStream(channel, start, end)));
+	return chunk;
+    } // End of readChunk
+
+
+    private static int[] mapIds(ObjectFile chunk, ObjectFile target) {
+	int ids[] = new int[chunk.groupNames.size()];
+	for (int i = 0 ; i < ids.length ; i++)
+	    ids[i] = target.groupId((String)chunk.groupNames.get(i));
+	return ids;
+    } // End of mapIds
+
+
+    private static void appendIndices(FastVector dest, FastVector src,
+				      FastVector relative, int base) {
+	int first = dest.getSize();
+	int data[] = src.getData();
+	for (int i = 0 ; i < src.getSize() ; i++) dest.addElement(data[i]);
+
+	// Relative indices were resolved within the chunk
+	data = dest.getData();
+	int rel[] = relative.getData();
+	for (int i = 0 ; i < relative.getSize() ; i++) data[first + rel[i]] += base;
+    } // End of appendIndices
+
+
+    /**
+     * appendChunk
+     *
+     *	Adds the data of a chunk read by readChunk to this object, as if
+     *	the chunk had been read right after the data already here.  Faces
+     *	at the start of the chunk are put in the groups that were current
+     *	at the end of the previous chunk, and the chunk's group, material
+     *	and material library records are replayed in order.
+     */
+    private void appendChunk(ObjectFile chunk) throws ParsingErrorException {
+	int coordBase = numCoords;
+	int texBase = numTex;
+	int normBase = numNorms;
+
+	coordList = grow(coordList, (numCoords + chunk.numCoords) * 3);
+	System.arraycopy(chunk.coordList, 0, coordList, numCoords * 3,
+			 chunk.numCoords * 3);
+	numCoords += chunk.numCoords;
+	texList = grow(texList, (numTex + chunk.numTex) * 2);
+	System.arraycopy(chunk.texList, 0, texList, numTex * 2, chunk.numTex * 2);
+	numTex += chunk.numTex;
+	normList = grow(normList, (numNorms + chunk.numNorms) * 3);
+	System.arraycopy(chunk.normList, 0, normList, numNorms * 3,
+			 chunk.numNorms * 3);
+	numNorms += chunk.numNorms;
+
+	appendIndices(coordIdxList, chunk.coordIdxList, chunk.relCoordIdx,
+		      coordBase);
+	appendIndices(texIdxList, chunk.texIdxList, chunk.relTexIdx, texBase);
+	appendIndices(normIdxList, chunk.normIdxList, chunk.relNormIdx,
+		      normBase);
+
+	// Chunk group ids are -1 (-2 for smoothing groups) until the chunk
+	// changes groups
+	int ids[] = mapIds(chunk, this);
+	int faceSizes[] = chunk.stripCounts.getData();
+	int faceGroups[] = chunk.groups.getData();
+	int faceSgroups[] = chunk.sGroups.getData();
+	for (int f = 0 ; f < chunk.stripCounts.getSize() ; f++) {
+	    stripCounts.addElement(faceSizes[f]);
+	    groups.addElement(faceGroups[f] == -1 ?
+			      curGroupId : ids[faceGroups[f]]);
+	    sGroups.addElement(faceSgroups[f] == -2 ?
+			       curSgroupId : ids[faceSgroups[f]]);
+	}
+
+	for (int i = 0 ; i < chunk.chunkEvents.size() ; i++) {
+	    String event[] = (String[])chunk.chunkEvents.get(i);
+	    if (event[0].equals("g")) setGroup(event[1]);
+	    else if (event[0].equals("usemtl")) setMaterialName(event[1]);
+	    else if (event[0].equals("s")) setSmoothingGroup(event[1]);
+	    else loadMaterialFile(event[1]);
+	}
+    } // End of appendChunk
+
+
+    /**
+     * loadParallel
+     *
+     *	Splits the file into chunks at line boundaries, reads the chunks
+     *	concurrently on the executor and merges them in order.  Returns
+     *	null if the file is too small to be worth splitting.  If any chunk
+     *	fails to parse the file is read again serially, so errors are
+     *	reported the same way (and with the same line numbers) as by a
+     *	serial load.
+     */
+    private Scene loadParallel(String filename) throws FileNotFoundException,
+						       IncorrectFormatException,
+						       ParsingErrorException {
+	FileInputStream in = new FileInputStream(filename);
+	try {
+	    final FileChannel channel = in.getChannel();
+	    long size = channel.size();
+	    if (size < 2L * CHUNK_SIZE) return null;
+
+	    ArrayList starts = new ArrayList();
+	    long start = 0;
+	    while (start < size) {
+		starts.add(new Long(start));
+		start = findChunkStart(channel, start + CHUNK_SIZE, size);
+	    }
+	    starts.add(new Long(size));
+
+	    ArrayList futures = new ArrayList();
+	    for (int i = 0 ; i < starts.size() - 1 ; i++) {
+		final long chunkStart = ((Long)starts.get(i)).longValue();
+		final long chunkEnd = ((Long)starts.get(i + 1)).longValue();
+		futures.add(executor.submit(new Callable() {
+		    public Object call() throws Exception {
+			return readChunk(channel, chunkStart, chunkEnd);
+		    }
+		}));
+	    }
+
+	    ObjectFile chunks[] = new ObjectFile[futures.size()];
+	    boolean failed = false;
+	    for (int i = 0 ; i < chunks.length ; i++) {
+		try {
+		    chunks[i] = (ObjectFile)((Future)futures.get(i)).get();
+		}
+		catch (InterruptedException e) {
+		    throw new ParsingErrorException(e.getMessage());
+		}
+		catch (ExecutionException e) {
+		    Throwable cause = e.getCause();
+		    if (cause instanceof ParsingErrorException) failed = true;
+		    else if (cause instanceof RuntimeException)
+			throw (RuntimeException)cause;
+		    else if (cause instanceof Error) throw (Error)cause;
+		    else throw new ParsingErrorException(cause.getMessage());
+		}
+	    }
+	    if (failed) return null;
+
+	    init();
+	    for (int i = 0 ; i < chunks.length ; i++) {
+		appendChunk(chunks[i]);
+		chunks[i] = null;
+	    }
+	}
+	catch (IOException e) {
+	    throw new ParsingErrorException(e.getMessage());
+	}
+	finally {
+	    try {
+		in.close();
+	    }
+	    catch (IOException e) {
+	    }
+	}
+	return finishLoad();
+    } // End of loadParallel
+
+
     /**
      * For an .obj file loaded from a URL, set the URL where associated files
      * (like material properties files) will be found.
@@ -1318,6 +1935,49 @@ public class ObjectFile implements Loader {
     } // End of setFlags
 
 
+    /**
+     * Sets the executor used to read large files in parallel.  When set,
+     * load(String) splits files of more than a few tens of megabytes into
+     * chunks at line boundaries, reads the chunks concurrently, and merges
+     * them in order; the resulting Scene is the same as from a serial
+     * load.  Files loaded from a URL or a Reader are always read serially.
+     * If null (the default), all files are read serially on the calling
+     * thread.  The executor is not shut down by the loader.
+     */
+    public void setExecutor(ExecutorService executor) {
+	this.executor = executor;
+    } // End of setExecutor
+
+
+    /**
+     * Returns the executor used to read large files in parallel, or null.
+     */
+    public ExecutorService getExecutor() {
+	return executor;
+    } // End of getExecutor
+
+
+    /**
+     * Sets the cache for the geometry of files loaded with load(String).
+     * With a cache, the shapes of a file are read back from its cache
+     * file when it was written for the same version of the file and the
+     * same flags and crease angle; only the material files are read
+     * again.  Otherwise the file is loaded as usual and the cache file is
+     * written.  If null (the default), no cache is used.
+     */
+    public void setMeshCache(MeshCache cache) {
+	meshCache = cache;
+    } // End of setMeshCache
+
+
+    /**
+     * Returns the geometry cache, or null.
+     */
+    public MeshCache getMeshCache() {
+	return meshCache;
+    } // End of getMeshCache
+
+
     /**
      * Get the parameters currently defined for loading the model.
      * Flags defined in Loader.java are ignored by the ObjectFile Loader
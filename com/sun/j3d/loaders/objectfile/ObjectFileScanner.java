@@ -0,0 +1,496 @@
+/*
+ * $RCSfile$
+ *
+ * Copyright (c) 2007 Sun Microsystems, Inc. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * - Redistribution of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * - Redistribution in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in
+ *   the documentation and/or other materials provided with the
+ *   distribution.
+ *
+ * Neither the name of Sun Microsystems, Inc. or the names of
+ * contributors may be used to endorse or promote products derived
+ * from this software without specific prior written permission.
+ *
+ * This software is provided "AS IS," without a warranty of any
+ * kind. ALL EXPRESS OR IMPLIED CONDITIONS, REPRESENTATIONS AND
+ * WARRANTIES, INCLUDING ANY IMPLIED WARRANTY OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE OR NON-INFRINGEMENT, ARE HEREBY
+ * EXCLUDED. SUN MICROSYSTEMS, INC. ("SUN") AND ITS LICENSORS SHALL
+ * NOT BE LIABLE FOR ANY DAMAGES SUFFERED BY LICENSEE AS A RESULT OF
+ * USING, MODIFYING OR DISTRIBUTING THIS SOFTWARE OR ITS
+ * DERIVATIVES. IN NO EVENT WILL SUN OR ITS LICENSORS BE LIABLE FOR
+ * ANY LOST REVENUE, PROFIT OR DATA, OR FOR DIRECT, INDIRECT, SPECIAL,
+ * CONSEQUENTIAL, INCIDENTAL OR PUNITIVE DAMAGES, HOWEVER CAUSED AND
+ * REGARDLESS OF THE THEORY OF LIABILITY, ARISING OUT OF THE USE OF OR
+ * INABILITY TO USE THIS SOFTWARE, EVEN IF SUN HAS BEEN ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGES.
+ *
+ * You acknowledge that this software is not designed, licensed or
+ * intended for use in the design, construction, operation or
+ * maintenance of any nuclear facility.
+ *
+ * $Revision: 199 $
+ * $Date: 2009-12-21 22:55:47 +0900 (月, 21 12 2009) $
+ * $State$
+ */
+
+package com.sun.j3d.loaders.objectfile;
+
+import java.io.InputStream;
+import java.io.IOException;
+import com.sun.j3d.loaders.ParsingErrorException;
+
+/**
+ * Reads a Wavefront .obj file a byte at a time, straight out of a buffer
+ * filled from an InputStream.  It follows the same lexical rules as
+ * ObjectFileParser (whitespace, '!' comments, '#' and '/' as separate
+ * tokens, backslash continuation of lines, lower-cased keywords and names)
+ * but numbers are converted in place instead of through a String and
+ * Double.valueOf, and face indices are handed back in int fields, so
+ * reading a vertex or a face allocates nothing.
+ */
+class ObjectFileScanner {
+
+    private static final int BUFFER_SIZE = 65536;
+
+    // Character classes
+    private static final byte WORD = 0;
+    private static final byte WHITESPACE = 1;
+    private static final byte EOL = 2;
+    private static final byte ORDINARY = 3;
+    private static final byte COMMENT = 4;
+    private static final byte BACKSLASH = 5;
+
+    private static final byte charClass[] = new byte[256];
+
+    static {
+	for (int i = 0 ; i < 256 ; i++) {
+	    if (i <= ' ') charClass[i] = WHITESPACE;
+	    else if (i == 0x7f) charClass[i] = ORDINARY;
+	    else charClass[i] = WORD;
+	}
+	charClass['\n'] = EOL;
+	charClass['\r'] = EOL;
+	charClass['!'] = COMMENT;
+	charClass['#'] = ORDINARY;
+	charClass['/'] = ORDINARY;
+	charClass['\\'] = BACKSLASH;
+    }
+
+    // Keywords are matched against the buffer and handed back as
+    // these constants, so a line doesn't cost a String
+    private static final String keywords[] = {
+	"v", "vt", "vn", "f", "g", "s", "usemtl", "fo",
+	"p", "l", "mtllib", "maplib", "usemap"
+    };
+
+    // Exactly representable powers of ten
+    private static final double powersOfTen[] = {
+	1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+	1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+
+    private InputStream in;
+    private byte buf[];
+    private int pos;
+    private int limit;
+    private boolean eof;
+    private int line;
+
+    // Start of the word being scanned, -1 if none.  Kept across refills.
+    private int mark;
+
+    /**
+     * The indices of the last vertex returned by getFaceVertex(),
+     * as written in the file (one based, or negative if relative).
+     */
+    int coordIndex;
+    int texIndex;
+    int normIndex;
+    boolean hasTexIndex;
+    boolean hasNormIndex;
+
+
+    /**
+     * fill
+     *
+     *	Moves the unread part of the buffer (from mark, if a word is being
+     *	scanned) to the front and reads more data behind it.  Returns false
+     *	at the end of the stream.
+     */
+    private boolean fill() throws ParsingErrorException {
+	if (eof) return false;
+
+	int keep = (mark >= 0) ? mark : pos;
+	if (keep > 0) {
+	    System.arraycopy(buf, keep, buf, 0, limit - keep);
+	    limit -= keep;
+	    pos -= keep;
+	    if (mark >= 0) mark -= keep;
+	}
+	if (limit == buf.length) {
+	    // A single word filled the whole buffer
+	    byte newBuf[] = new byte[buf.length * 2];
+	    System.arraycopy(buf, 0, newBuf, 0, limit);
+	    buf = newBuf;
+	}
+
+	try {
+	    int n;
+	    do {
+		n = in.read(buf, limit, buf.length - limit);
+	    } while (n == 0);
+	    if (n < 0) {
+		eof = true;
+		return false;
+	    }
+	    limit += n;
+	}
+	catch (IOException e) {
+	    throw new ParsingErrorException(
+		"IO error on line " + lineno() + ": " + e.getMessage());
+	}
+	return true;
+    } // End of fill
+
+
+    /**
+     * Returns the next byte without consuming it, -1 at end of file.
+     */
+    private int peek() throws ParsingErrorException {
+	if (pos == limit && !fill()) return -1;
+	return buf[pos] & 0xff;
+    } // End of peek
+
+
+    private void skipComment() throws ParsingErrorException {
+	int c;
+	while ((c = peek()) != -1 && charClass[c] != EOL) pos++;
+    } // End of skipComment
+
+
+    private void consumeEol() throws ParsingErrorException {
+	if (buf[pos++] == '\r' && peek() == '\n') pos++;
+	line++;
+    } // End of consumeEol
+
+
+    /**
+     * skipSpace
+     *
+     *	Skips whitespace, comments and continued lines, and returns the
+     *	first byte of the next token without consuming it (-1 at end of
+     *	file).  A backslash followed by the end of the line joins the
+     *	two lines; anywhere else it only separates tokens.
+     */
+    private int skipSpace() throws ParsingErrorException {
+	int c;
+	while ((c = peek()) != -1) {
+	    switch (charClass[c]) {
+	    case WHITESPACE:
+		pos++;
+		break;
+	    case COMMENT:
+		skipComment();
+		break;
+	    case BACKSLASH:
+		pos++;
+		while ((c = peek()) != -1 && charClass[c] == WHITESPACE) pos++;
+		if (c != -1 && charClass[c] == COMMENT) {
+		    skipComment();
+		    c = peek();
+		}
+		if (c != -1 && charClass[c] == EOL) consumeEol();
+		break;
+	    default:
+		return c;
+	    }
+	}
+	return c;
+    } // End of skipSpace
+
+
+    private static boolean isWord(int c) {
+	return c != -1 && charClass[c] == WORD;
+    } // End of isWord
+
+
+    /**
+     * Scans the word starting at pos.  On return the word is
+     * buf[mark] to buf[pos - 1]; the caller clears mark when done.
+     */
+    private void scanWord() throws ParsingErrorException {
+	mark = pos;
+	while (isWord(peek())) pos++;
+    } // End of scanWord
+
+
+    private String wordString(boolean lowerCase) {
+	String s = new String(buf, mark, pos - mark);
+	mark = -1;
+	return lowerCase ? s.toLowerCase() : s;
+    } // End of wordString
+
+
+    /**
+     * Returns true if the scanned word equals the given lower case
+     * keyword, ignoring the case of the word.
+     */
+    private boolean wordEquals(String keyword) {
+	int len = keyword.length();
+	if (pos - mark != len) return false;
+	for (int i = 0 ; i < len ; i++) {
+	    int c = buf[mark + i];
+	    if (c >= 'A' && c <= 'Z') c += 'a' - 'A';
+	    if (c != keyword.charAt(i)) return false;
+	}
+	return true;
+    } // End of wordEquals
+
+
+    /**
+     * parseWord
+     *
+     *	Converts the scanned word to a double.  Plain decimal numbers with
+     *	up to 15 significant digits and a small exponent are converted
+     *	with a single exact multiply or divide, which rounds the same way
+     *	Double.valueOf does.  Anything else goes through Double.valueOf.
+     */
+    private double parseWord() throws ParsingErrorException {
+	int i = mark;
+	int end = pos;
+	boolean negative = false;
+	long mantissa = 0;
+	int digits = 0;
+	int exponent = 0;
+	boolean fast = true;
+	boolean any = false;
+
+	if (i < end && (buf[i] == '-' || buf[i] == '+')) {
+	    negative = buf[i] == '-';
+	    i++;
+	}
+	while (i < end && buf[i] >= '0' && buf[i] <= '9') {
+	    any = true;
+	    if (mantissa != 0 || buf[i] != '0') {
+		mantissa = mantissa * 10 + (buf[i] - '0');
+		if (++digits > 15) fast = false;
+	    }
+	    i++;
+	}
+	if (i < end && buf[i] == '.') {
+	    i++;
+	    while (i < end && buf[i] >= '0' && buf[i] <= '9') {
+		any = true;
+		if (mantissa != 0 || buf[i] != '0') {
+		    mantissa = mantissa * 10 + (buf[i] - '0');
+		    if (++digits > 15) fast = false;
+		}
+		exponent--;
+		i++;
+	    }
+	}
+	if (any && i < end && (buf[i] == 'e' || buf[i] == 'E')) {
+	    i++;
+	    boolean negExp = false;
+	    if (i < end && (buf[i] == '-' || buf[i] == '+')) {
+		negExp = buf[i] == '-';
+		i++;
+	    }
+	    if (i == end) fast = false;
+	    int e = 0;
+	    while (i < end && buf[i] >= '0' && buf[i] <= '9') {
+		if (e < 10000) e = e * 10 + (buf[i] - '0');
+		i++;
+	    }
+	    exponent += negExp ? -e : e;
+	}
+
+	double value = 0.0;
+	if (fast && any && i == end) {
+	    if (mantissa == 0) value = 0.0;
+	    else if (exponent == 0) value = mantissa;
+	    else if (exponent > 0 && exponent < powersOfTen.length)
+		value = mantissa * powersOfTen[exponent];
+	    else if (exponent < 0 && -exponent < powersOfTen.length)
+		value = mantissa / powersOfTen[-exponent];
+	    else fast = false;
+	} else fast = false;
+
+	if (fast) {
+	    mark = -1;
+	    return negative ? -value : value;
+	}
+
+	String s = wordString(false);
+	try {
+	    return (Double.valueOf(s)).doubleValue();
+	}
+	catch (NumberFormatException e) {
+	    throw new ParsingErrorException(e.getMessage());
+	}
+    } // End of parseWord
+
+
+    /**
+     * Gets a number from the stream.
+     */
+    private double getNumber() throws ParsingErrorException {
+	if (!isWord(skipSpace()))
+	    throw new ParsingErrorException("Expected number on line " +
+					    lineno());
+	scanWord();
+	return parseWord();
+    } // End of getNumber
+
+
+    /**
+     * getKeyword
+     *
+     *	Moves to the first word of the next record, skipping blank lines
+     *	and lines that start with anything other than a word (like '#'
+     *	comments), and returns it in lower case.  Returns null at the
+     *	end of the file.
+     */
+    String getKeyword() throws ParsingErrorException {
+	int c;
+	while ((c = skipSpace()) != -1) {
+	    if (isWord(c)) {
+		scanWord();
+		for (int i = 0 ; i < keywords.length ; i++) {
+		    if (wordEquals(keywords[i])) {
+			mark = -1;
+			return keywords[i];
+		    }
+		}
+		return wordString(true);
+	    }
+	    skipToNextLine();
+	}
+	return null;
+    } // End of getKeyword
+
+
+    /**
+     * Gets a number from the stream as a float.
+     */
+    float getFloat() throws ParsingErrorException {
+	return (float)getNumber();
+    } // End of getFloat
+
+
+    /**
+     * getFaceVertex
+     *
+     *	Reads the next v, v/vt, v//vn or v/vt/vn group of a face into
+     *	coordIndex, texIndex and normIndex.  Returns false at the end
+     *	of the face.
+     */
+    boolean getFaceVertex() throws ParsingErrorException {
+	int c = skipSpace();
+	if (c == '/')
+	    throw new ParsingErrorException("Expected number on line " +
+					    lineno());
+	if (!isWord(c)) return false;
+
+	scanWord();
+	coordIndex = (int)parseWord();
+	hasTexIndex = false;
+	hasNormIndex = false;
+
+	// Next token is a slash, a number, or EOL.  Continue on slash
+	if (skipSpace() == '/') {
+	    pos++;
+
+	    // If there's a number after the first slash, read it
+	    if (isWord(skipSpace())) {
+		scanWord();
+		texIndex = (int)parseWord();
+		hasTexIndex = true;
+	    }
+
+	    // There has to be a number after the 2nd slash
+	    if (skipSpace() == '/') {
+		pos++;
+		normIndex = (int)getNumber();
+		hasNormIndex = true;
+	    }
+	}
+	return true;
+    } // End of getFaceVertex
+
+
+    /**
+     * Returns the next word on the line in lower case, or null if
+     * the next token isn't a word.
+     */
+    String getWord() throws ParsingErrorException {
+	if (!isWord(skipSpace())) return null;
+	scanWord();
+	return wordString(true);
+    } // End of getWord
+
+
+    /**
+     * getLastWord
+     *
+     *	Returns the last word on the line, with its case preserved.  Both
+     *	kinds of slashes separate words, so this is a file name without
+     *	any directory info.
+     */
+    String getLastWord() throws ParsingErrorException {
+	String s = null;
+	int c;
+	while ((c = skipSpace()) != -1 && charClass[c] != EOL) {
+	    if (isWord(c)) {
+		scanWord();
+		s = wordString(false);
+	    } else pos++;
+	}
+	return s;
+    } // End of getLastWord
+
+
+    /**
+     * skipToNextLine
+     *
+     *	Skips the rest of this line, including the end of line.
+     */
+    void skipToNextLine() throws ParsingErrorException {
+	int c;
+	while ((c = skipSpace()) != -1) {
+	    if (charClass[c] == EOL) {
+		consumeEol();
+		return;
+	    }
+	    pos++;
+	}
+    } // End of skipToNextLine
+
+
+    int lineno() {
+	return line;
+    } // End of lineno
+
+
+    // ObjectFileScanner constructor
+    ObjectFileScanner(InputStream in) {
+	this.in = in;
+	buf = new byte[BUFFER_SIZE];
+	pos = 0;
+	limit = 0;
+	mark = -1;
+	line = 1;
+    } // end of ObjectFileScanner
+
+} // End of class ObjectFileScanner
+
+// End of file ObjectFileScanner.java
@@ -72,10 +72,7 @@ public class KBRotPosScaleSplinePathInterpolator
 
     private Transform3D    rotation    = new Transform3D();
 
-    private Matrix4d       pitchMat    = new Matrix4d();   // pitch matrix
-    private Matrix4d       bankMat     = new Matrix4d();   // bank matrix
     private Matrix4d       tMat        = new Matrix4d();   // transformation matrix
-    private Matrix4d       sMat        = new Matrix4d();   // scale matrix
     //Quat4f         iQuat       = new Quat4f();     // interpolated quaternion
     private Vector3f       iPos        = new Vector3f();   // interpolated position 
     private Point3f        iScale      = new Point3f();    // interpolated scale 
@@ -220,28 +217,41 @@ public class KBRotPosScaleSplinePathInterpolator
 	}
 
 	// Generate a transformation matrix in tMat using interpolated 
-	// heading, pitch and bank
-	pitchMat.setIdentity();
-	pitchMat.rotX(-iPitch);
-	bankMat.setIdentity();
-	bankMat.rotZ(iBank);
-	tMat.setIdentity();
-	tMat.rotY(-iHeading);
-	tMat.mul(pitchMat);
-	tMat.mul(bankMat);
+	// heading, pitch and bank.  This is rotY(-heading) * rotX(-pitch) *
+	// rotZ(bank) multiplied out.
+	double sh = Math.sin(-iHeading);
+	double ch = Math.cos(-iHeading);
+	double sp = Math.sin(-iPitch);
+	double cp = Math.cos(-iPitch);
+	double sb = Math.sin(iBank);
+	double cb = Math.cos(iBank);
 
 	// TODO: Handle Non-Uniform scale
 	// Currently this interpolator does not handle non uniform scale 
 	// We cheat by just taking the x scale component
 
 	// Scale the transformation matrix
-	sMat.set((double)iScale.x);
-	tMat.mul(sMat);
+	double scale = iScale.x;
+
+	tMat.m00 = (ch*cb + sh*sp*sb) * scale;
+	tMat.m01 = (sh*sp*cb - ch*sb) * scale;
+	tMat.m02 = sh*cp * scale;
+	tMat.m10 = cp*sb * scale;
+	tMat.m11 = cp*cb * scale;
+	tMat.m12 = -sp * scale;
+	tMat.m20 = (ch*sp*sb - sh*cb) * scale;
+	tMat.m21 = (sh*sb + ch*sp*cb) * scale;
+	tMat.m22 = ch*cp * scale;
 
 	// Set the translation components.
 	tMat.m03 = iPos.x;
 	tMat.m13 = iPos.y;
 	tMat.m23 = iPos.z;
+
+	tMat.m30 = 0.0;
+	tMat.m31 = 0.0;
+	tMat.m32 = 0.0;
+	tMat.m33 = 1.0;
 	rotation.set(tMat);
     
 	// construct a Transform3D from:  axis * rotation * axisInverse 
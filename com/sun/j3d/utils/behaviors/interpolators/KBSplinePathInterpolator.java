@@ -80,6 +80,16 @@ public abstract class KBSplinePathInterpolator extends TransformInterpolator {
      */
     protected int upperKnot;
 
+    // Knots of keyFrames, searched by KnotSearch.findKnot
+    private float[] knots;
+
+    // Index returned by the last findKnot, tried first by the next one
+    private int knotHint = 1;
+
+    // False if setKeyFrame has put the knots out of order, in which case
+    // findKnot has to scan them
+    private boolean knotsSorted = true;
+
     /**
      * Constructs a KBSplinePathInterpolator node with a null alpha value and
      * a null target of TransformGroup
@@ -189,6 +199,13 @@ public abstract class KBSplinePathInterpolator extends TransformInterpolator {
 
         // Make key frame length reflect the 2 added key frames
         keysLength += 2;
+
+        knots = new float[keysLength];
+        for (int i = 0; i < keysLength; i++) {
+            knots[i] = keyFrames[i].knot;
+        }
+        knotHint = 1;
+        knotsSorted = true;
     }
   
     /**
@@ -201,6 +218,8 @@ public abstract class KBSplinePathInterpolator extends TransformInterpolator {
   
     /**
      * This method retrieves the key frame at the specified index.
+     * The interpolator keeps a copy of the knots, so the knot of a key
+     * frame must only be changed through setKeyFrame or setKeyFrames.
      * @param index the index of the key frame requested
      * @return the key frame at the associated index
      */
@@ -218,6 +237,9 @@ public abstract class KBSplinePathInterpolator extends TransformInterpolator {
      */
     public void setKeyFrame( int index, KBKeyFrame keyFrame ) {
 	this.keyFrames[index+1] = keyFrame;
+
+	knots[index+1] = keyFrame.knot;
+	knotsSorted = KnotSearch.isSorted(knots, keysLength - 2);
     }
 
     /**
@@ -247,20 +269,17 @@ public abstract class KBSplinePathInterpolator extends TransformInterpolator {
      */
     protected void computePathInterpolation( float alphaValue ) {
 
-        // skip knots till we find the two we fall between  
-        int i = 1;
-	int len = keysLength - 2;
-        while ((alphaValue > keyFrames[i].knot) && (i < len)) {
-          i++;
-        }
+        // find the two knots we fall between  
+        int i = KnotSearch.findKnot(knots, keysLength - 2, alphaValue,
+                                    knotHint, knotsSorted);
+        knotHint = i;
 	
         if (i == 1) {
             currentU = 0f;
             lowerKnot = 1;
             upperKnot = 2;
         } else {
-           currentU = (alphaValue - keyFrames[i-1].knot)/
-                      (keyFrames[i].knot - keyFrames[i-1].knot);
+           currentU = (alphaValue - knots[i-1])/(knots[i] - knots[i-1]);
            lowerKnot = i-1;
            upperKnot = i;
         }
@@ -296,6 +315,9 @@ public abstract class KBSplinePathInterpolator extends TransformInterpolator {
         keyFrames = new KBKeyFrame[keysLength];
         System.arraycopy(originalSpline.keyFrames, 0,
                          keyFrames, 0, keysLength);
+        knots = (float[])originalSpline.knots.clone();
+        knotHint = 1;
+        knotsSorted = originalSpline.knotsSorted;
     }
 
 }
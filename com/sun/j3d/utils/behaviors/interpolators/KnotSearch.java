@@ -0,0 +1,117 @@
+/*
+ * $RCSfile$
+ *
+ * Copyright (c) 2007 Sun Microsystems, Inc. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * - Redistribution of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * - Redistribution in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in
+ *   the documentation and/or other materials provided with the
+ *   distribution.
+ *
+ * Neither the name of Sun Microsystems, Inc. or the names of
+ * contributors may be used to endorse or promote products derived
+ * from this software without specific prior written permission.
+ *
+ * This software is provided "AS IS," without a warranty of any
+ * kind. ALL EXPRESS OR IMPLIED CONDITIONS, REPRESENTATIONS AND
+ * WARRANTIES, INCLUDING ANY IMPLIED WARRANTY OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE OR NON-INFRINGEMENT, ARE HEREBY
+ * EXCLUDED. SUN MICROSYSTEMS, INC. ("SUN") AND ITS LICENSORS SHALL
+ * NOT BE LIABLE FOR ANY DAMAGES SUFFERED BY LICENSEE AS A RESULT OF
+ * USING, MODIFYING OR DISTRIBUTING THIS SOFTWARE OR ITS
+ * DERIVATIVES. IN NO EVENT WILL SUN OR ITS LICENSORS BE LIABLE FOR
+ * ANY LOST REVENUE, PROFIT OR DATA, OR FOR DIRECT, INDIRECT, SPECIAL,
+ * CONSEQUENTIAL, INCIDENTAL OR PUNITIVE DAMAGES, HOWEVER CAUSED AND
+ * REGARDLESS OF THE THEORY OF LIABILITY, ARISING OUT OF THE USE OF OR
+ * INABILITY TO USE THIS SOFTWARE, EVEN IF SUN HAS BEEN ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGES.
+ *
+ * You acknowledge that this software is not designed, licensed or
+ * intended for use in the design, construction, operation or
+ * maintenance of any nuclear facility.
+ *
+ * $Revision$
+ * $Date$
+ * $State$
+ */
+
+package com.sun.j3d.utils.behaviors.interpolators;
+
+/**
+ * Finds the pair of knots an alpha value falls between for
+ * KBSplinePathInterpolator and TCBSplinePathInterpolator.  The knots
+ * are passed as an array parallel to the key frame array of the
+ * interpolator, including its leading and trailing key frames.
+ */
+class KnotSearch {
+
+    /**
+     * Return the index of the first knot, from 1, that is not less than
+     * alphaValue, or len if all the knots before it are less.  This is
+     * the key frame the linear scan used to stop at.  Alpha usually
+     * changes little between frames, so hint, the index returned last
+     * time, and the one after it are tried before a binary search.
+     * Knots that are not sorted are scanned.
+     *
+     * @param knots the knots, from index 1 to len
+     * @param len the number of knots, not counting knots[0]
+     * @param alphaValue alpha value between 0.0 and 1.0
+     * @param hint the index returned by the previous call, or 1
+     * @param sorted true if isSorted(knots, len)
+     */
+    static int findKnot(float knots[], int len, float alphaValue,
+			int hint, boolean sorted) {
+	if (!sorted) {
+	    // skip knots till we find the two we fall between  
+	    int i = 1;
+	    while ((alphaValue > knots[i]) && (i < len)) {
+		i++;
+	    }
+	    return i;
+	}
+
+	if (isKnot(knots, len, hint, alphaValue))
+	    return hint;
+	if (hint < len && isKnot(knots, len, hint+1, alphaValue))
+	    return hint+1;
+
+	int lo = 1;
+	int hi = len;
+	while (lo < hi) {
+	    int mid = (lo + hi) >>> 1;
+	    if (alphaValue > knots[mid])
+		lo = mid + 1;
+	    else
+		hi = mid;
+	}
+	return lo;
+    }
+
+    /**
+     * Return true if the knots from index 1 to len are in increasing order
+     */
+    static boolean isSorted(float knots[], int len) {
+	for (int i = 2; i <= len; i++) {
+	    if (knots[i] < knots[i-1])
+		return false;
+	}
+	return true;
+    }
+
+    /**
+     * Return true if findKnot(knots, len, alphaValue, ...) is i for
+     * sorted knots
+     */
+    private static boolean isKnot(float knots[], int len, int i,
+				  float alphaValue) {
+	return (i == 1 || alphaValue > knots[i-1]) &&
+	       (i == len || !(alphaValue > knots[i]));
+    }
+}
@@ -81,6 +81,12 @@ public abstract class TCBSplinePathInterpolator extends TransformInterpolator {
      */
     protected int upperKnot;
 
+    // Knots of keyFrames, searched by KnotSearch.findKnot
+    private float[] knots;
+
+    // Index returned by the last findKnot, tried first by the next one
+    private int knotHint = 1;
+
     /**
      * Constructs a TCBSplinePathInterpolator node with a null alpha value and
      * a null target of TransformGroup
@@ -187,6 +193,12 @@ public abstract class TCBSplinePathInterpolator extends TransformInterpolator {
 
         // Make key frame length reflect the 2 added key frames
         keysLength += 2;
+
+        knots = new float[keysLength];
+        for (int i = 0; i < keysLength; i++) {
+            knots[i] = keyFrames[i].knot;
+        }
+        knotHint = 1;
     }
     
     /**
@@ -199,6 +211,8 @@ public abstract class TCBSplinePathInterpolator extends TransformInterpolator {
   
     /**
      * This method retrieves the key frame at the specified index.
+     * The interpolator keeps a copy of the knots, so the knot of a key
+     * frame must not be changed.
      * @param index the index of the key frame requested
      * @return the key frame at the associated index
      */
@@ -217,20 +231,17 @@ public abstract class TCBSplinePathInterpolator extends TransformInterpolator {
      */
     protected void computePathInterpolation(float alphaValue) {
 
-        // skip knots till we find the two we fall between  
-        int i = 1;
-	int len = keysLength - 2;
-        while ((alphaValue > keyFrames[i].knot) && (i < len)) {
-	    i++;
-        }
+        // find the two knots we fall between  
+        int i = KnotSearch.findKnot(knots, keysLength - 2, alphaValue,
+                                    knotHint, true);
+        knotHint = i;
 	
         if (i == 1) {
             currentU = 0f;
             lowerKnot = 1;
             upperKnot = 2;
         } else {
-	    currentU = (alphaValue - keyFrames[i-1].knot)/
-		(keyFrames[i].knot - keyFrames[i-1].knot);
+	    currentU = (alphaValue - knots[i-1])/(knots[i] - knots[i-1]);
 	    lowerKnot = i-1;
 	    upperKnot = i;
         }
@@ -274,5 +285,7 @@ public abstract class TCBSplinePathInterpolator extends TransformInterpolator {
 	keyFrames = new TCBKeyFrame[keysLength];
 	System.arraycopy(originalSpline.keyFrames, 0,
 			 keyFrames, 0, keysLength);
+	knots = (float[])originalSpline.knots.clone();
+	knotHint = 1;
     }
 }
@@ -1294,4 +1294,245 @@ public class Intersect
     }
   }
     
+
+  /*
+   * The methods below test a primitive whose vertices are packed in a
+   * double array: vertex i is vertices[i*3], vertices[i*3+1] and
+   * vertices[i*3+2].  loadVertices copies them there from packed,
+   * by-reference, interleaved or indexed vertex data, so the same array
+   * can be reused from primitive to primitive and the tests don't
+   * allocate.  The results are the same as those of the point versions.
+   */
+
+  /**
+   * Copies the coordinates of n vertices into a packed array.  Vertex i
+   * is read at coordinates[offset + i * stride], or, if indices isn't
+   * null, at coordinates[offset + indices[i] * stride], for indexed
+   * geometry and for strips and fans, whose primitives don't use
+   * consecutive vertices.
+   *
+   * @param coordinates The vertex coordinates.
+   * @param offset The index of the x coordinate of the first vertex.
+   * @param stride The number of values from one vertex to the next.
+   * @param indices The vertex numbers of the primitive, or null.
+   * @param n The number of vertices to copy.
+   * @param vertices An array of at least 3 * n doubles receiving the
+   *  coordinates.
+   */
+  public static void loadVertices( double coordinates[], int offset,
+				   int stride, int indices[], int n,
+				   double vertices[] ) {
+    for(int i=0; i<n; i++) {
+      int c = offset + ((indices == null) ? i : indices[i]) * stride;
+      vertices[i*3] = coordinates[c];
+      vertices[i*3+1] = coordinates[c+1];
+      vertices[i*3+2] = coordinates[c+2];
+    }
+  }
+
+  /**
+   * Copies the coordinates of n vertices given as floats into a packed
+   * array.
+   * @see #loadVertices(double[], int, int, int[], int, double[])
+   */
+  public static void loadVertices( float coordinates[], int offset,
+				   int stride, int indices[], int n,
+				   double vertices[] ) {
+    for(int i=0; i<n; i++) {
+      int c = offset + ((indices == null) ? i : indices[i]) * stride;
+      vertices[i*3] = coordinates[c];
+      vertices[i*3+1] = coordinates[c+1];
+      vertices[i*3+2] = coordinates[c+2];
+    }
+  }
+
+  /**
+   * Determines if a ray and a quadrilateral intersect.
+   *
+   * @param origin The origin of the ray.
+   * @param direction The direction of the ray.
+   * @param vertices The 12 packed vertex coordinates.
+   * @param dist On return dist[0] will be set to the distance between ray's
+   *  origin and the point of intersection, if it exists.
+   * @return <code>true</code> if the ray intersects the quad.
+   * @see #loadVertices(double[], int, int, int[], int, double[])
+   */
+  public static boolean rayAndQuad( Point3d origin, Vector3d direction,
+				    double vertices[], double dist[] ) {
+    if(vertices.length < 12)
+      throw new RuntimeException(J3dUtilsI18N.getString("Intersect0"));
+    return rayAndPoly(vertices, 4, origin, direction, dist);
+  }
+
+  /**
+   * Determines if a ray and a triangle intersect.
+   * @see #rayAndQuad(Point3d, Vector3d, double[], double[])
+   */
+  public static boolean rayAndTriangle( Point3d origin, Vector3d direction,
+					double vertices[], double dist[] ) {
+    if(vertices.length < 9)
+      throw new RuntimeException(J3dUtilsI18N.getString("Intersect1"));
+    return rayAndPoly(vertices, 3, origin, direction, dist);
+  }
+
+  /**
+   * Determines if a segment and a quadrilateral intersect.
+   *
+   * @param start The start of the segment.
+   * @param end The end of the segment.
+   * @param vertices The 12 packed vertex coordinates.
+   * @param dist On return dist[0] will be set to the distance between the
+   *  start of the segment and the point of intersection, if it exists.
+   * @return <code>true</code> if the segment intersects the quad.
+   * @see #loadVertices(double[], int, int, int[], int, double[])
+   */
+  public static boolean segmentAndQuad( Point3d start, Point3d end,
+					double vertices[], double dist[] ) {
+    if(vertices.length < 12)
+      throw new RuntimeException(J3dUtilsI18N.getString("Intersect3"));
+    return segmentAndPoly(vertices, 4, start, end, dist);
+  }
+
+  /**
+   * Determines if a segment and a triangle intersect.
+   * @see #segmentAndQuad(Point3d, Point3d, double[], double[])
+   */
+  public static boolean segmentAndTriangle( Point3d start, Point3d end,
+					    double vertices[],
+					    double dist[] ) {
+    if(vertices.length < 9)
+      throw new RuntimeException(J3dUtilsI18N.getString("Intersect5"));
+    return segmentAndPoly(vertices, 3, start, end, dist);
+  }
+
+  private static boolean rayAndPoly( double p[], int n, Point3d origin,
+				     Vector3d direction, double dist[] ) {
+    double dx = direction.x, dy = direction.y, dz = direction.z;
+    double t = polyAndRay(p, n, origin.x, origin.y, origin.z, dx, dy, dz,
+			  false);
+    if(t < 0.0)
+      return false;
+    dist[0] = t * Math.sqrt(dx*dx + dy*dy + dz*dz);
+    return true;
+  }
+
+  private static boolean segmentAndPoly( double p[], int n, Point3d start,
+					 Point3d end, double dist[] ) {
+    double dx = end.x - start.x, dy = end.y - start.y, dz = end.z - start.z;
+    double t = polyAndRay(p, n, start.x, start.y, start.z, dx, dy, dz,
+			  true);
+    if(t < 0.0)
+      return false;
+    dist[0] = t * Math.sqrt(dx*dx + dy*dy + dz*dz);
+    return true;
+  }
+
+  /*
+   * rayAndPoly and segmentAndPoly on packed coordinates: returns the ray
+   * parameter of the intersection with the triangle or quad in p, or -1
+   * if there is none.  Segments only intersect for parameters up to 1.
+   */
+  private static double polyAndRay( double p[], int n,
+				    double ox, double oy, double oz,
+				    double dx, double dy, double dz,
+				    boolean segment ) {
+    double v0x = 0.0, v0y = 0.0, v0z = 0.0;
+    double v1x = 0.0, v1y = 0.0, v1z = 0.0;
+    int i, j;
+
+    // Compute plane normal.
+    for(i=0; i<n-1;) {
+      v0x = p[i*3+3] - p[i*3];
+      v0y = p[i*3+4] - p[i*3+1];
+      v0z = p[i*3+5] - p[i*3+2];
+      i++;
+      if((v0x*v0x + v0y*v0y + v0z*v0z) > 0.0)
+	break;
+    }
+
+    for(j=i; j<n-1; j++) {
+      v1x = p[j*3+3] - p[j*3];
+      v1y = p[j*3+4] - p[j*3+1];
+      v1z = p[j*3+5] - p[j*3+2];
+      if((v1x*v1x + v1y*v1y + v1z*v1z) > 0.0)
+	break;
+    }
+
+    if(j == (n-1))
+      return -1.0;  // Degenerated polygon.
+
+    double nx = v0y*v1z - v0z*v1y;
+    double ny = v1x*v0z - v1z*v0x;
+    double nz = v0x*v1y - v0y*v1x;
+
+    if((nx*nx + ny*ny + nz*nz) == 0.0)
+      return -1.0;  // Degenerated polygon.
+
+    // Compute plane D.
+    double pD = nx*p[0] + ny*p[1] + nz*p[2];
+    double nDotDir = nx*dx + ny*dy + nz*dz;
+
+    // Ray is parallel to plane.
+    if(nDotDir == 0.0)
+      return -1.0;
+
+    double t = (pD - (nx*ox + ny*oy + nz*oz)) / nDotDir;
+
+    // Intersects the plane behind the origin or past the segment's end.
+    if((t < 0.0) || (segment && (t > 1.0)))
+      return -1.0;
+
+    double ix = ox + dx * t;
+    double iy = oy + dy * t;
+    double iz = oz + dz * t;
+
+    // Find the axis of projection, then project onto the other two and
+    // apply the Jordan curve theorem.
+    double absNrmX = Math.abs(nx);
+    double absNrmY = Math.abs(ny);
+    double absNrmZ = Math.abs(nz);
+    int axis;
+
+    if(absNrmX > absNrmY)
+      axis = (absNrmX < absNrmZ) ? 2 : 0;
+    else
+      axis = (absNrmY < absNrmZ) ? 2 : 1;
+
+    int uo = (axis == 0) ? 1 : 0;
+    int vo = (axis == 2) ? 1 : 2;
+    double iu = (uo == 0) ? ix : iy;
+    double iv = (vo == 1) ? iy : iz;
+
+    // initialize number of crossing, nc.
+    int nc = 0;
+    int sh = ((p[vo] - iv) < 0.0) ? -1 : 1;
+
+    for(i=0; i<n; i++) {
+      j = i+1;
+      if(j == n)
+	j = 0;
+
+      double ui = p[i*3+uo] - iu;
+      double vi = p[i*3+vo] - iv;
+      double uj = p[j*3+uo] - iu;
+      double vj = p[j*3+vo] - iv;
+      int nsh = (vj < 0.0) ? -1 : 1;
+
+      if(sh != nsh) {
+	if((ui > 0.0) && (uj > 0.0)) {
+	  // This line must cross U+.
+	  nc++;
+	}
+	else if((ui > 0.0) || (uj > 0.0)) {
+	  // This line might cross U+.
+	  if((ui - vi*(uj-ui)/(vj-vi)) > 0)
+	    nc++;
+	}
+	sh = nsh;
+      }
+    }
+
+    return ((nc%2) == 1) ? t : -1.0;
+  }
+
 }
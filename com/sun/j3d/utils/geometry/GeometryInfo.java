@@ -1512,8 +1512,82 @@ public class GeometryInfo {
 
   /*
    * This routine will return an index list for any array of objects.
+   * Identical entries get the index of their first occurrence.  Arrays
+   * of vecmath tuples are hashed on their components in an open
+   * addressing table, without allocating an object per entry.
    */
   int[] getListIndices(Object list[])
+  {
+      int stride = 0;
+      boolean bytes = false;
+      if (list instanceof Tuple2f[]) stride = 2;
+      else if (list instanceof Tuple3f[]) stride = 3;
+      else if (list instanceof Tuple4f[]) stride = 4;
+      else if (list instanceof Tuple3b[]) { stride = 3; bytes = true; }
+      else if (list instanceof Tuple4b[]) { stride = 4; bytes = true; }
+
+      if (stride != 0) {
+	  for (int i = 0 ; i < list.length ; i++) {
+	      if (list[i] == null) {
+		  stride = 0;
+		  break;
+	      }
+	  }
+      }
+
+      if (stride == 0) return getObjectListIndices(list);
+
+      int n = list.length;
+      if (bytes) {
+	  int data[] = new int[n * stride];
+	  int k = 0;
+	  for (int i = 0 ; i < n ; i++) {
+	      if (stride == 3) {
+		  Tuple3b t = (Tuple3b)list[i];
+		  data[k++] = t.x;
+		  data[k++] = t.y;
+		  data[k++] = t.z;
+	      } else {
+		  Tuple4b t = (Tuple4b)list[i];
+		  data[k++] = t.x;
+		  data[k++] = t.y;
+		  data[k++] = t.z;
+		  data[k++] = t.w;
+	      }
+	  }
+	  return getListIndices(data, stride, n);
+      }
+
+      float data[] = new float[n * stride];
+      int k = 0;
+      for (int i = 0 ; i < n ; i++) {
+	  if (stride == 2) {
+	      Tuple2f t = (Tuple2f)list[i];
+	      data[k++] = t.x;
+	      data[k++] = t.y;
+	  } else if (stride == 3) {
+	      Tuple3f t = (Tuple3f)list[i];
+	      data[k++] = t.x;
+	      data[k++] = t.y;
+	      data[k++] = t.z;
+	  } else {
+	      Tuple4f t = (Tuple4f)list[i];
+	      data[k++] = t.x;
+	      data[k++] = t.y;
+	      data[k++] = t.z;
+	      data[k++] = t.w;
+	  }
+      }
+      return getListIndices(data, stride, n);
+  } // End of getListIndices
+
+
+
+  /*
+   * Index list for arrays of other objects, using their equals()
+   * and hashCode() methods.
+   */
+  private int[] getObjectListIndices(Object list[])
   {
       // Create list of indices to return
       int indices[] = new int[list.length];
@@ -1542,52 +1616,175 @@ public class GeometryInfo {
       }
       
       return indices;
-  } // End of getListIndices
+  } // End of getObjectListIndices
+
 
 
+  /*
+   * Returns a power of two table size with a load factor of at most 1/2
+   */
+  private static int hashTableSize(int n)
+  {
+      int size = 16;
+      while (size < 2 * n) size <<= 1;
+      return size;
+  } // End of hashTableSize
 
-  // Class to hash 'size' integers
-  private class IndexRow {
-    int[] val;
-    int size;
-    private static final int HASHCONST = 0xBABEFACE;
 
-    public int hashCode()
-    {
-      int bits = 0;
-      for (int i = 0 ; i < size ; i++) {
-	bits ^= (bits * HASHCONST) << 2;
+
+  /*
+   * Finalization step of the hash, spreads the bits over the table
+   */
+  private static int mixHash(int h)
+  {
+      h ^= h >>> 16;
+      h *= 0x85EBCA6B;
+      h ^= h >>> 13;
+      h *= 0xC2B2AE35;
+      h ^= h >>> 16;
+      return h;
+  } // End of mixHash
+
+
+
+  /*
+   * Index list for n keys of stride floats each, stored back to back in
+   * data.  Keys are equal when all their components have the same
+   * Float.floatToIntBits() value, so +0.0 and -0.0 stay apart and
+   * identical NaNs match, as with Float.equals().
+   */
+  static int[] getListIndices(float data[], int stride, int n)
+  {
+      int indices[] = new int[n];
+      int mask = hashTableSize(n) - 1;
+      int table[] = new int[mask + 1];
+      java.util.Arrays.fill(table, -1);
+
+      for (int i = 0 ; i < n ; i++) {
+	  int base = i * stride;
+	  int h = 0;
+	  for (int c = 0 ; c < stride ; c++) {
+	      h = h * 0x9E3779B1 + Float.floatToIntBits(data[base + c]);
+	  }
+	  int slot = mixHash(h) & mask;
+	  while (true) {
+	      int e = table[slot];
+	      if (e == -1) {
+		  // We haven't seen this key before
+		  table[slot] = i;
+		  indices[i] = i;
+		  break;
+	      }
+	      int eBase = e * stride;
+	      int c = 0;
+	      while (c < stride &&
+		     Float.floatToIntBits(data[eBase + c]) ==
+		     Float.floatToIntBits(data[base + c])) c++;
+	      if (c == stride) {
+		  // We've seen this key
+		  indices[i] = e;
+		  break;
+	      }
+	      slot = (slot + 1) & mask;
+	  }
       }
-      return bits;
-    } // End of IndexRow.hashCode
+      return indices;
+  } // End of getListIndices(float[], int, int)
+
+
+
+  /*
+   * Index list for n keys of stride ints each, stored back to back in
+   * data.
+   */
+  static int[] getListIndices(int data[], int stride, int n)
+  {
+      int indices[] = new int[n];
+      int mask = hashTableSize(n) - 1;
+      int table[] = new int[mask + 1];
+      java.util.Arrays.fill(table, -1);
 
-    public boolean equals(Object obj)
-    {
-      for (int i = 0 ; i < size ; i++) {
-	if (((IndexRow)obj).get(i) != val[i]) return false;
+      for (int i = 0 ; i < n ; i++) {
+	  int base = i * stride;
+	  int h = 0;
+	  for (int c = 0 ; c < stride ; c++) {
+	      h = h * 0x9E3779B1 + data[base + c];
+	  }
+	  int slot = mixHash(h) & mask;
+	  while (true) {
+	      int e = table[slot];
+	      if (e == -1) {
+		  table[slot] = i;
+		  indices[i] = i;
+		  break;
+	      }
+	      int eBase = e * stride;
+	      int c = 0;
+	      while (c < stride && data[eBase + c] == data[base + c]) c++;
+	      if (c == stride) {
+		  indices[i] = e;
+		  break;
+	      }
+	      slot = (slot + 1) & mask;
+	  }
       }
-      return true;
-    } // End of IndexRow.equals()
-
-    public int get(int index)
-    {
-      return val[index];
-    } // End of IndexRow.get
-
-    public void set(int index, int value)
-    {
-      val[index] = value;
-    } // End of IndexRow.set
-
-    IndexRow(int numColumns)
-    {
-      size = numColumns;
-      val = new int[size];
-    } // End of IndexRow constructor
-  } // End of class IndexRow
+      return indices;
+  } // End of getListIndices(int[], int, int)
  
 
 
+  /*
+   * Returns the number of index lists in use: coordinates, colors,
+   * normals and one for each texture coordinate set.
+   */
+  private int getNumIndexLists()
+  {
+      int numLists = 1;		// Always have coordinates
+      if (colorIndices != null) numLists++;
+      if (normalIndices != null) numLists++;
+      numLists += texCoordSetCount;
+      return numLists;
+  } // End of getNumIndexLists
+
+
+
+  /*
+   * Returns a single array containing all indices, one row of
+   * numLists indices per vertex
+   */
+  private int[] getIndexRows(int numLists)
+  {
+      int n = coordinateIndices.length;
+      int[] rows = new int[n * numLists];
+      int j = 0;
+      for (int i = 0 ; i < n ; i++) {
+	  rows[j++] = coordinateIndices[i];
+	  if (colorIndices != null) rows[j++] = colorIndices[i];
+	  if (normalIndices != null) rows[j++] = normalIndices[i];
+	  for (int k = 0 ; k < texCoordSetCount ; k++) {
+	      rows[j++] = texCoordIndexSets[k][i];
+	  }
+      }
+      return rows;
+  } // End of getIndexRows
+
+
+
+  /*
+   * For indexed data, returns for each position in the index lists the
+   * first position with the same coordinate, color, normal and texture
+   * coordinate indices.  Positions with the same value end up as the
+   * same vertex of the output IndexedGeometryArray.
+   */
+  int[] getVertexIndices()
+  {
+      int numLists = getNumIndexLists();
+      return getListIndices(getIndexRows(numLists), numLists,
+			    coordinateIndices.length);
+  } // End of getVertexIndices
+
+
+
   /**
    * Create index lists for all data lists.
    * Identical data entries are guaranteed to
@@ -1625,32 +1822,21 @@ public class GeometryInfo {
 	// row of indexes as one value
 
 	// First, find out how many index lists there are;
-	int numLists = 1;		// Always have coordinates
-	if (colorIndices != null) numLists++;
-        if (normalIndices != null) numLists++;
-	numLists += texCoordSetCount;
+	int numLists = getNumIndexLists();
 
-	// Make single array containing all indices
+	// Make single array containing all indices, one row of
+	// numLists indices per vertex
 	int n = coordinateIndices.length;
-	IndexRow[] ir = new IndexRow[n];
+	int[] rows = getIndexRows(numLists);
 	int j;
-	for (int i = 0 ; i < n ; i++) {
-	  ir[i] = new IndexRow(numLists);
-	  j = 0;
-	  ir[i].set(j++, coordinateIndices[i]);
-	  if (colorIndices != null) ir[i].set(j++, colorIndices[i]);
-	  if (normalIndices != null) ir[i].set(j++, normalIndices[i]);
-	  for (int k = 0 ; k < texCoordSetCount ; k++) {
-	    ir[i].set(j++, texCoordIndexSets[k][i]);
-	  }
-	}
 
 	// Get index into that array
-	int[] coordOnlyIndices = getListIndices(ir);
+	int[] coordOnlyIndices = getListIndices(rows, numLists, n);
 
-	// Get rid of duplicate rows
+	// Get rid of duplicate rows.  ir holds the old row number of
+	// each remaining row
 	int newInd[] = new int[coordOnlyIndices.length];
-	ir = (IndexRow[])compactData(coordOnlyIndices, ir, newInd);
+	int[] ir = compactIndices(coordOnlyIndices, n, newInd);
 	coordOnlyIndices = newInd;
 
 	// Reformat data lists to correspond to new index
@@ -1680,16 +1866,16 @@ public class GeometryInfo {
 	// Copy data into new arrays
 	n = ir.length;
 	for (int i = 0 ; i < n ; i++) {
-	  j = 0;
-	  newCoords[i] = coordinates[(ir[i]).get(j++)];
+	  j = ir[i] * numLists;
+	  newCoords[i] = coordinates[rows[j++]];
 	  if (colors3 != null) {
-	    newColors3[i] = colors3[(ir[i]).get(j++)];
+	    newColors3[i] = colors3[rows[j++]];
 	  } else if (colors4 != null) {
-	    newColors4[i] = colors4[(ir[i]).get(j++)];
+	    newColors4[i] = colors4[rows[j++]];
 	  }
-	  if (normals != null) newNormals[i] = normals[(ir[i]).get(j++)];
+	  if (normals != null) newNormals[i] = normals[rows[j++]];
 	  for (int k = 0 ; k < texCoordSetCount ; k++) {
-	    newTexCoordSets[k][i] = texCoordSets[k][(ir[i]).get(j++)];
+	    newTexCoordSets[k][i] = texCoordSets[k][rows[j++]];
 	  }
 	}
 
@@ -1801,9 +1987,6 @@ public class GeometryInfo {
 	  newData = new TexCoord3f[num];
       } else if (data instanceof javax.vecmath.TexCoord4f[]) {
 	  newData = new TexCoord4f[num];
-      } else if (data instanceof IndexRow[]) {
-	  // Hack so we can use compactData for coordIndexOnly
-	  newData = new IndexRow[num];
       } else throw new IllegalArgumentException(
 	  J3dUtilsI18N.getString("GeometryInfo9"));
       return newData;
@@ -1828,14 +2011,36 @@ public class GeometryInfo {
    */
    // TODO:  Remove duplicate entries in data lists.
   private Object[] compactData(int indices[], Object data[], int newInd[]) {
-      Object newData[] = null;
+      int oldIdx[] = compactIndices(indices, data.length, newInd);
+      Object newData[] = allocateArray(data, oldIdx.length);
+      for (int i = 0 ; i < oldIdx.length ; i++) {
+	  newData[i] = data[oldIdx[i]];
+      }
+      return newData;
+  } // End of compactData
+
+
+
+  /**
+   * Computes the compaction of indexed data without touching the data
+   * itself.
+   * @param indices Array of indices
+   * @param dataLength Length of the data array the indices refer to
+   * @param newInd The new array of indexes after the data has been
+   * compacted.  This must be allocated by the calling method and be the
+   * same size as indices.
+   * @return For each entry of the compacted data, the index of that
+   * entry in the original data.  Entries keep their original order.
+   */
+  private static int[] compactIndices(int indices[], int dataLength,
+				      int newInd[]) {
       /*
        * This is a three step process.
        * First, find out how many unique indexes are used.  This
        * will be the size of the new data array.
        */
       int numUnique = 0;
-      int translationTable[] = new int[data.length];
+      int translationTable[] = new int[dataLength];
       for (int i = 0 ; i < indices.length ; i++) {
 	  if (translationTable[indices[i]] == 0) {
 	      
@@ -1844,14 +2049,15 @@ public class GeometryInfo {
 	  }
       }
       /*
-       * Second, build the new data list.  Remember the new indexes so
-       * we can use the table to translate the old indexes to the new
+       * Second, build the map to the old entries.  Remember the new
+       * indexes so we can use the table to translate the old indexes
+       * to the new
        */
-      newData = allocateArray(data, numUnique);
+      int oldIdx[] = new int[numUnique];
       int newIdx = 0;
       for (int i = 0 ; i < translationTable.length ; i++) {
 	  if (translationTable[i] != 0) {
-	      newData[newIdx] = data[i];
+	      oldIdx[newIdx] = i;
 	      translationTable[i] = newIdx++;
 	  }
       }
@@ -1861,8 +2067,8 @@ public class GeometryInfo {
       for (int i = 0 ; i < indices.length ; i++) {
 	  newInd[i] = translationTable[indices[i]];
       }
-      return newData;
-  } // End of compactData
+      return oldIdx;
+  } // End of compactIndices
 
 
   
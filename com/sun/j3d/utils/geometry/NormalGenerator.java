@@ -47,6 +47,10 @@ package com.sun.j3d.utils.geometry;
 import com.sun.j3d.utils.geometry.GeometryInfo;
 import com.sun.j3d.utils.geometry.EdgeTable;
 import java.util.ArrayList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 import javax.vecmath.Vector3f;
 import javax.vecmath.Point3f;
 
@@ -69,13 +73,23 @@ import javax.vecmath.Point3f;
  * creaseAngle, then the vertex will get two separate normals, creating a 
  * discontinuous crease in the model.  This is perfect for the edge
  * of a table or the corner of a cube, for instance.
+ * <p>
+ * If an ExecutorService is given with setExecutor(), the facet normals
+ * and the final averaging of the vertex normals of large models are
+ * split into chunks that run on the executor.  Each chunk writes its own
+ * part of the result, so the normals are identical to the ones computed
+ * on a single thread.
  */
 
 public class NormalGenerator {
 
   private double creaseAngle;
-  private Vector3f facetNorms[];
-  private ArrayList tally;
+  private float facetNorms[];	// x, y, z of each triangle's normal
+  // Groups of coordinate indices sharing a normal, stored back to back.
+  // Group n is sharers[sharerStart[n]] to sharers[sharerStart[n+1]-1].
+  private int sharers[];
+  private int sharerStart[];
+  private int numGroups;
   private GeometryInfo gi;
   private int coordInds[];
   private int normalInds[];
@@ -85,6 +99,10 @@ public class NormalGenerator {
   private static long t1=0, t2=0, t3=0, t4=0, t5=0, t6=0;
   private Triangulator tr = null;
   private int numTexSets;
+  private ExecutorService executor = null;
+
+  // Number of triangles or normals handed to the executor at once
+  private static final int CHUNK_SIZE = 16384;
 
 
   // 0 - No debug info
@@ -100,59 +118,145 @@ public class NormalGenerator {
 
 
 
+  // A piece of work over the range [start, end)
+  private interface RangeTask {
+    void run(int start, int end);
+  }
+
+
+
+  // Runs task over [0, count).  Without an executor, or if count is
+  // small, this is a single call; otherwise the range is cut into
+  // chunks that run on the executor, and this waits for all of them.
+  private void forRange(int count, final RangeTask task)
+  {
+    if (executor == null || count <= CHUNK_SIZE) {
+      task.run(0, count);
+      return;
+    }
+
+    ArrayList futures = new ArrayList();
+    for (int start = 0 ; start < count ; start += CHUNK_SIZE) {
+      final int s = start;
+      final int e = Math.min(start + CHUNK_SIZE, count);
+      futures.add(executor.submit(new Callable() {
+	public Object call() {
+	  task.run(s, e);
+	  return null;
+	}
+      }));
+    }
+
+    try {
+      for (int i = 0 ; i < futures.size() ; i++) {
+	((Future)futures.get(i)).get();
+      }
+    }
+    catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+      throw new RuntimeException(ex);
+    }
+    catch (ExecutionException ex) {
+      Throwable cause = ex.getCause();
+      if (cause instanceof RuntimeException)
+	throw (RuntimeException)cause;
+      if (cause instanceof Error)
+	throw (Error)cause;
+      throw new RuntimeException(cause);
+    }
+  } // End of forRange
+
+
+
   // Calculate the normal of each triangle in the list by finding
   // the cross product
   private void calculatefacetNorms()
   {
-    Point3f coordinates[] = gi.getCoordinates();
-    facetNorms = new Vector3f[coordInds.length / 3];
-    Vector3f a = new Vector3f();
-    Vector3f b = new Vector3f();
+    facetNorms = new float[coordInds.length];
     if ((DEBUG & 1) != 0) System.out.println("Facet normals:");
 
     if (gi.getOldPrim() != gi.QUAD_ARRAY) {
-      for (int t = 0 ; t < coordInds.length ; t += 3) {
-	a.sub(coordinates[coordInds[t + 2]], coordinates[coordInds[t + 1]]);
-	b.sub(coordinates[coordInds[t + 0]], coordinates[coordInds[t + 1]]);
-	facetNorms[t / 3] = new Vector3f();
-	facetNorms[t / 3].cross(a, b);
-	facetNorms[t / 3].normalize();
-
-	if (Float.isNaN(facetNorms[t / 3].x)) {
-	  // Normal isn't valid
-	  facetNorms[t / 3].x = 1.0f;
-	  facetNorms[t / 3].y = facetNorms[t / 3].z = 0.0f;
+      forRange(coordInds.length / 3, new RangeTask() {
+	public void run(int start, int end) {
+	  calculatefacetNorms(start * 3, end * 3, 3);
+	}
+      });
+    } else {
+      forRange(coordInds.length / 6, new RangeTask() {
+	public void run(int start, int end) {
+	  calculatefacetNorms(start * 6, end * 6, 6);
 	}
+      });
+    }
+  } // End of calculatefacetNorms
+
+
+
+  // Calculate the facet normals of the triangles (step 3) or quads
+  // (step 6) whose coordinate indices lie in [start, end)
+  private void calculatefacetNorms(int start, int end, int step)
+  {
+    Point3f coordinates[] = gi.getCoordinates();
+
+    if (step == 3) {
+      for (int t = start ; t < end ; t += 3) {
+	facetNorm(coordinates[coordInds[t + 2]], coordinates[coordInds[t + 1]],
+		  coordinates[coordInds[t + 0]], coordinates[coordInds[t + 1]],
+		  facetNorms, t);
 	if ((DEBUG & 1) != 0) {
-	  System.out.println("  " + (t/3) + " " + facetNorms[t / 3]);
+	  System.out.println("  " + (t/3) + " (" + facetNorms[t] + ", " +
+	    facetNorms[t + 1] + ", " + facetNorms[t + 2] + ")");
 	}
       }
     } else {
       // For quads, the facet normal of both triangles is the cross 
       // product of the two vectors that make an 'X' across the quad.
-      for (int t = 0 ; t < coordInds.length ; t += 6) {
-	a.sub(coordinates[coordInds[t + 2]], coordinates[coordInds[t + 0]]);
-	b.sub(coordinates[coordInds[t + 5]], coordinates[coordInds[t + 1]]);
-	facetNorms[t / 3] = new Vector3f();
-	facetNorms[t / 3].cross(a, b);
-	facetNorms[t / 3].normalize();
-
-	if (Float.isNaN(facetNorms[t / 3].x)) {
-	  // Normal isn't valid
-	  facetNorms[t / 3].x = 1.0f;
-	  facetNorms[t / 3].y = facetNorms[t / 3].z = 0.0f;
-	}
+      for (int t = start ; t < end ; t += 6) {
+	facetNorm(coordinates[coordInds[t + 2]], coordinates[coordInds[t + 0]],
+		  coordinates[coordInds[t + 5]], coordinates[coordInds[t + 1]],
+		  facetNorms, t);
 
         // Second triangle of quad
-	facetNorms[t / 3 + 1] = new Vector3f(facetNorms[t / 3]);
+	facetNorms[t + 3] = facetNorms[t];
+	facetNorms[t + 4] = facetNorms[t + 1];
+	facetNorms[t + 5] = facetNorms[t + 2];
 
 	if ((DEBUG & 1) != 0) {
-	  System.out.println("  " + (t/3) + "&" + (t/3 + 1) + " " +
-	    facetNorms[t / 3]);
+	  System.out.println("  " + (t/3) + "&" + (t/3 + 1) + " (" +
+	    facetNorms[t] + ", " + facetNorms[t + 1] + ", " +
+	    facetNorms[t + 2] + ")");
 	}
       }
     }
-  } // End of calculatefacetNorms
+  } // End of calculatefacetNorms(int, int, int)
+
+
+
+  // Stores the normalized cross product of (a1 - a0) and (b1 - b0)
+  // at n[i].  The arithmetic is the same as Vector3f.sub(), cross()
+  // and normalize(), so the results match exactly.
+  private static void facetNorm(Point3f a1, Point3f a0, Point3f b1, Point3f b0,
+				float n[], int i)
+  {
+    float ax = a1.x - a0.x, ay = a1.y - a0.y, az = a1.z - a0.z;
+    float bx = b1.x - b0.x, by = b1.y - b0.y, bz = b1.z - b0.z;
+    float x = ay * bz - az * by;
+    float y = bx * az - bz * ax;
+    float z = ax * by - ay * bx;
+    float norm = (float)(1.0 / Math.sqrt(x * x + y * y + z * z));
+    x *= norm;
+    y *= norm;
+    z *= norm;
+
+    if (Float.isNaN(x)) {
+      // Normal isn't valid
+      x = 1.0f;
+      y = z = 0.0f;
+    }
+    n[i] = x;
+    n[i + 1] = y;
+    n[i + 2] = z;
+  } // End of facetNorm
 
 
 
@@ -179,7 +283,12 @@ public class NormalGenerator {
   private int createHardEdges()
   {
     EdgeTable et = new EdgeTable(coordInds);
-    tally = new ArrayList();
+    // Every coordinate index ends up in exactly one group, and groups
+    // are filled one at a time, so they can be packed into one array
+    sharers = new int[coordInds.length];
+    sharerStart = new int[coordInds.length + 1];
+    numGroups = 0;
+    int numSharers = 0;
     int normalMap[] = new int[coordInds.length];
     int maxShare = 1;
     float cosine;
@@ -199,20 +308,21 @@ public class NormalGenerator {
 	  System.out.println(
 	    "Coordinate Index " + c + ": vertex " + coordInds[c]);
 	}
-	// Create a list of vertices used for calculating this normal
-	ArrayList sharers = new ArrayList();
-	tally.add(sharers);
+	// Start a list of vertices used for calculating this normal
+	int group = numGroups++;
+	sharerStart[group] = numSharers;
 	// Put this coordinate in the list
-	sharers.add(new Integer(c));
+	sharers[numSharers++] = c;
 	// Point this coordinate's index at its list
-	normalMap[c] = tally.size() - 1;
+	normalMap[c] = group;
 
 	// First do right edge
 	goingRight = true;
-	Edge edge = new Edge(coordInds[c],
-			     coordInds[(c + 1) % 3 == 0 ? c - 2 : c + 1]);
+	int edgeV1 = coordInds[c];
+	int edgeV2 = coordInds[(c + 1) % 3 == 0 ? c - 2 : c + 1];
 	if ((DEBUG & 32) != 0)
-	  System.out.println( "  Right edge: " + edge);
+	  System.out.println(
+	    "  Right edge: (" + edgeV1 + ", " + edgeV2 + ")");
 
 	// This is how we'll know we've gone all the way around
 	int endVertex = coordInds[c % 3 == 0 ? c + 2 : c - 1];
@@ -223,20 +333,19 @@ public class NormalGenerator {
 	// Proceed from one triangle to the next
 	do {
 	  // Look up edge in Edge Table to find neighbor triangle
-	  Integer tableVal = et.get(edge.v2, edge.v1);
+	  int n = et.get(edgeV2, edgeV1);
 	  if ((DEBUG & 32) != 0) {
 	    System.out.println(
-	      "  Search Edge: " + (new Edge(edge.v2, edge.v1)));
+	      "  Search Edge: (" + edgeV2 + ", " + edgeV1 + ")");
 	  }
 
 	  // See if there is no triangle on the other side of this edge
-	  if (tableVal == null) {
+	  if (n == -1) {
 	    smooth = false;
 	    if ((DEBUG & 32) != 0)
 	      System.out.println("    No neighboring triangle found.");
 	  } else {
 
-	    int n = tableVal.intValue();
 	    if ((DEBUG & 32) != 0) {
 	      System.out.println(
 		"    Table lookup result: " + n + " (vertex " + coordInds[n] +
@@ -245,7 +354,11 @@ public class NormalGenerator {
 		": ");
 	    }
 
-	    cosine = facetNorms[cur / 3].dot(facetNorms[n / 3]);
+	    int fc = cur / 3 * 3;
+	    int fn = n / 3 * 3;
+	    cosine = facetNorms[fc] * facetNorms[fn] +
+		     facetNorms[fc + 1] * facetNorms[fn + 1] +
+		     facetNorms[fc + 2] * facetNorms[fn + 2];
 	    smooth = cosine > threshold;
 	    if (smooth) {
 	      // The center coordinate (c) shares the same normal in these
@@ -265,17 +378,18 @@ public class NormalGenerator {
 		  "    Error:  Coordinate aleady has normal (bad data).");
 	      } else {
 
-		normalMap[centerv] = tally.size() - 1;
+		normalMap[centerv] = group;
 
 		// Consider this triangle's facet normal when calculating the
 		// vertex's normal
-		sharers.add(new Integer(centerv));
-		if (sharers.size() > maxShare) maxShare = sharers.size();
+		sharers[numSharers++] = centerv;
+		if (numSharers - sharerStart[group] > maxShare)
+		  maxShare = numSharers - sharerStart[group];
 
 		// Continue on around the vertex to the next triangle
 		cur = n;
-		if (goingRight) edge.v2 = coordInds[cur];
-		else edge.v1 = coordInds[cur];
+		if (goingRight) edgeV2 = coordInds[cur];
+		else edgeV1 = coordInds[cur];
 	      }
 	    } else if ((DEBUG & 32) != 0) System.out.println("Hard Edge!");
 	  }
@@ -288,27 +402,28 @@ public class NormalGenerator {
 	    smooth = true;		// Trick do loop
 	    cur = c;			// Go back to original triangle
 
-	    edge = new Edge(coordInds[(c % 3) == 0 ? c + 2 : c - 1],
-			    coordInds[c]);
-	    if ((DEBUG & 32) != 0) System.out.println( "  Left edge: " + edge);
+	    edgeV1 = coordInds[(c % 3) == 0 ? c + 2 : c - 1];
+	    edgeV2 = coordInds[c];
+	    if ((DEBUG & 32) != 0) System.out.println(
+	      "  Left edge: (" + edgeV1 + ", " + edgeV2 + ")");
 
 	  }
           
-	} while (smooth && ((goingRight && (edge.v2 != endVertex)) ||
+	} while (smooth && ((goingRight && (edgeV2 != endVertex)) ||
 			    !goingRight));
 
-	if (((DEBUG & 32) != 0) && goingRight && (edge.v2 == endVertex))
+	if (((DEBUG & 32) != 0) && goingRight && (edgeV2 == endVertex))
 	  System.out.println("  Went all the way around!");
       }
     }
+    sharerStart[numGroups] = numSharers;
 
     if ((DEBUG & 32) != 0) {
       System.out.println("Tally:");
-      for (int i = 0 ; i < tally.size() ; i++) {
+      for (int i = 0 ; i < numGroups ; i++) {
 	System.out.print("  " + i + ": ");
-	ArrayList sharers = (ArrayList)(tally.get(i));
-	for (int j = 0 ; j < sharers.size() ; j++) {
-	  System.out.print(" " + sharers.get(j));
+	for (int j = sharerStart[i] ; j < sharerStart[i + 1] ; j++) {
+	  System.out.print(" " + sharers[j]);
 	}
 	System.out.println();
       }
@@ -340,73 +455,24 @@ public class NormalGenerator {
   // indexed, table.  That way, to tell if two triangles have the
   // same normal, we just need to compare indexes.  This would speed up
   // the process of checking for duplicates.
-  private void calculateVertexNormals(int maxShare)
+  private void calculateVertexNormals(final int maxShare)
   {
-    Vector3f normals[];
-    ArrayList sharers;
-    int triangle;
-    Vector3f fn[];	// Normals of facets joined by this vertex
-    int fnsize;		// Number of elements currently ised in fn
+    final float normals[];
 
     if (creaseAngle != 0.0) {
-      fn = new Vector3f[maxShare];
-      normals = new Vector3f[tally.size()];
+      normals = new float[numGroups * 3];
       normalInds = new int[coordInds.length];
-      for (int n = 0 ; n < tally.size() ; n++) {
-	sharers = (ArrayList)(tally.get(n));
-	if ((DEBUG & 128) != 0) {
-	  System.out.println(n + ": " + sharers.size() +
-	    " triangles:");
+      forRange(numGroups, new RangeTask() {
+	public void run(int start, int end) {
+	  calculateVertexNormals(start, end, maxShare, normals);
 	}
-	fnsize = 0;
-	normals[n] = new Vector3f();
-	for (int t = 0 ; t < sharers.size() ; t++) {
-	  int v = ((Integer)sharers.get(t)).intValue();
-	  // See if index removed by hard edge process
-	  if (v != -1) {
-	    triangle = v / 3;
-	    if (!Float.isNaN(facetNorms[triangle].x)) {
-
-	      int f;
-	      // Don't add the same facet normal twice
-	      for (f = 0 ; f < fnsize ; f++) {
-		if (fn[f].equals(facetNorms[triangle])) break;
-	      }
-
-	      normalInds[v] = n;
-	      if (f == fnsize) {
-		// Didn't find this triangle's normal already in the list
-		normals[n].add(facetNorms[triangle]);
-		fn[fnsize++] = facetNorms[triangle];
-	      } else if ((DEBUG & 128) != 0) {
-		System.out.println("  triangle " + t + " ignored.");
-	      }
-	    }
-	  }
-	}
-	normals[n].normalize();
-	if (Float.isNaN(normals[n].x)) {
-	  // Normal isn't valid
-	  normals[n].x = 1.0f; normals[n].y = normals[n].z = 0.0f;
-	}
-	if ((DEBUG & 128) != 0) {
-	  for (int t = 0 ; t < sharers.size() ; t++) {
-	    int v = ((Integer)sharers.get(t)).intValue();
-	    if (v != -1) {
-	      triangle = v / 3;
-	      System.out.println("  " + facetNorms[triangle]);
-	    }
-	  }
-	  System.out.println("  Result: " + normals[n]);
-	  System.out.println();
-	}
-      }
+      });
     } else {
       // This code renders the facet normals
       normals = facetNorms;
 
-      normalInds = new int[facetNorms.length * 3];
-      for (int i = 0 ; i < facetNorms.length ; i++) {
+      normalInds = new int[facetNorms.length];
+      for (int i = 0 ; i < facetNorms.length / 3 ; i++) {
 	normalInds[i * 3 + 0] = i;
 	normalInds[i * 3 + 1] = i;
 	normalInds[i * 3 + 2] = i;
@@ -416,18 +482,95 @@ public class NormalGenerator {
 
     if ((DEBUG & 4) != 0) {
       System.out.println("Normals:");
-      for (int i = 0 ; i < normals.length ; i++) {
-	System.out.println("  " + i + " " + normals[i]);
+      for (int i = 0 ; i < normals.length / 3 ; i++) {
+	System.out.println("  " + i + " (" + normals[i * 3] + ", " +
+	  normals[i * 3 + 1] + ", " + normals[i * 3 + 2] + ")");
       }
       System.out.println("Indices:");
       for (int i = 0 ; i < normalInds.length ; i++) {
 	System.out.println("  " + i + " " + normalInds[i]);
       }
     }
+
+    // Done with the working arrays
+    facetNorms = null;
+    sharers = null;
+    sharerStart = null;
   } // End of calculateVertexNormals
 
 
 
+  // Average the facet normals of the groups in [start, end).  Each group
+  // only writes its own normal and the normal indices of its own
+  // vertices, so ranges can be done in parallel.
+  private void calculateVertexNormals(int start, int end, int maxShare,
+				      float normals[])
+  {
+    int triangle;
+    int fn[] = new int[maxShare];	// Facets (offsets into facetNorms)
+					// joined by this vertex
+    int fnsize;		// Number of elements currently ised in fn
+
+    for (int n = start ; n < end ; n++) {
+      if ((DEBUG & 128) != 0) {
+	System.out.println(n + ": " + (sharerStart[n + 1] - sharerStart[n]) +
+	  " triangles:");
+      }
+      fnsize = 0;
+      float nx = 0.0f, ny = 0.0f, nz = 0.0f;
+      for (int t = sharerStart[n] ; t < sharerStart[n + 1] ; t++) {
+	int v = sharers[t];
+	triangle = v / 3 * 3;
+	float fx = facetNorms[triangle];
+	float fy = facetNorms[triangle + 1];
+	float fz = facetNorms[triangle + 2];
+	if (!Float.isNaN(fx)) {
+
+	  int f;
+	  // Don't add the same facet normal twice
+	  for (f = 0 ; f < fnsize ; f++) {
+	    if (facetNorms[fn[f]] == fx && facetNorms[fn[f] + 1] == fy &&
+		facetNorms[fn[f] + 2] == fz) break;
+	  }
+
+	  normalInds[v] = n;
+	  if (f == fnsize) {
+	    // Didn't find this triangle's normal already in the list
+	    nx += fx;
+	    ny += fy;
+	    nz += fz;
+	    fn[fnsize++] = triangle;
+	  } else if ((DEBUG & 128) != 0) {
+	    System.out.println("  triangle " + t + " ignored.");
+	  }
+	}
+      }
+      // Same arithmetic as Vector3f.normalize()
+      float norm = (float)(1.0 / Math.sqrt(nx * nx + ny * ny + nz * nz));
+      nx *= norm;
+      ny *= norm;
+      nz *= norm;
+      if (Float.isNaN(nx)) {
+	// Normal isn't valid
+	nx = 1.0f; ny = nz = 0.0f;
+      }
+      normals[n * 3] = nx;
+      normals[n * 3 + 1] = ny;
+      normals[n * 3 + 2] = nz;
+      if ((DEBUG & 128) != 0) {
+	for (int t = sharerStart[n] ; t < sharerStart[n + 1] ; t++) {
+	  triangle = sharers[t] / 3 * 3;
+	  System.out.println("  (" + facetNorms[triangle] + ", " +
+	    facetNorms[triangle + 1] + ", " + facetNorms[triangle + 2] + ")");
+	}
+	System.out.println("  Result: (" + nx + ", " + ny + ", " + nz + ")");
+	System.out.println();
+      }
+    }
+  } // End of calculateVertexNormals(int, int, int, float[])
+
+
+
   // The original data was in quads and we converted it to triangles to
   // calculate the normals.  Now we are converting it back to quads.
   // It's a very simple algorithm.
@@ -883,6 +1026,33 @@ public class NormalGenerator {
 
 
 
+  /**
+   * Sets the ExecutorService used to calculate the normals of large
+   * models in parallel.  The generated normals are the same as without
+   * an executor.  The executor is not shut down by the NormalGenerator.
+   * generateNormals() waits for the tasks it submits, so it must not
+   * be called from a task running on a bounded executor that it uses.
+   * @param executor The executor to use, or null (the default) to do
+   * all of the work on the calling thread.
+   */
+  public void setExecutor(ExecutorService executor)
+  {
+    this.executor = executor;
+  } // End of setExecutor
+
+
+
+  /**
+   * Returns the ExecutorService used to calculate normals in parallel,
+   * or null if normals are calculated on the calling thread.
+   */
+  public ExecutorService getExecutor()
+  {
+    return executor;
+  } // End of getExecutor
+
+
+
   /**
    * Constructor.  Construct a NormalGenerator object with creaseAngle
    * set to the given value.
@@ -242,30 +242,19 @@ public abstract class Primitive extends Group {
     setAppearance(a);
   }
 
-  static Hashtable geomCache = new Hashtable(); 
-
-  String strfloat(float x)
-  {
-    return (new Float(x)).toString();
-  }
+  static PrimitiveGeometryCache geomCache = new PrimitiveGeometryCache();
 
   protected void cacheGeometry(int kind, float a, float b, 
 			    float c, int d, int e, int flags, 
 			    GeomBuffer geo)
   {
-    String key = new String(kind+strfloat(a)+strfloat(b)+
-			    strfloat(c)+d+e+flags);
-    geomCache.put(key, geo);
+    geomCache.put(kind, a, b, c, d, e, flags, geo);
   }
 
   protected GeomBuffer getCachedGeometry(int kind, float a, float b, float c,
 				      int d, int e, int flags)
   {
-    String key = new String(kind+strfloat(a)+strfloat(b)+
-			    strfloat(c)+d+e+flags);
-    Object cache =  geomCache.get(key);
-
-    return((GeomBuffer) cache);
+    return geomCache.get(kind, a, b, c, d, e, flags);
   }
   
   /**
@@ -278,5 +267,14 @@ public abstract class Primitive extends Group {
   public static void clearGeometryCache() {
     geomCache.clear();
   }
+
+  /**
+   * Returns the shared geometry cache for all Primitive types.  It
+   * can be used to bound the size of the cache and to read its hit,
+   * miss and eviction counts.
+   */
+  public static PrimitiveGeometryCache getGeometryCache() {
+    return geomCache;
+  }
 }
 
@@ -0,0 +1,320 @@
+/*
+ * $RCSfile$
+ *
+ * Copyright (c) 2007 Sun Microsystems, Inc. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * - Redistribution of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * - Redistribution in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in
+ *   the documentation and/or other materials provided with the
+ *   distribution.
+ *
+ * Neither the name of Sun Microsystems, Inc. or the names of
+ * contributors may be used to endorse or promote products derived
+ * from this software without specific prior written permission.
+ *
+ * This software is provided "AS IS," without a warranty of any
+ * kind. ALL EXPRESS OR IMPLIED CONDITIONS, REPRESENTATIONS AND
+ * WARRANTIES, INCLUDING ANY IMPLIED WARRANTY OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE OR NON-INFRINGEMENT, ARE HEREBY
+ * EXCLUDED. SUN MICROSYSTEMS, INC. ("SUN") AND ITS LICENSORS SHALL
+ * NOT BE LIABLE FOR ANY DAMAGES SUFFERED BY LICENSEE AS A RESULT OF
+ * USING, MODIFYING OR DISTRIBUTING THIS SOFTWARE OR ITS
+ * DERIVATIVES. IN NO EVENT WILL SUN OR ITS LICENSORS BE LIABLE FOR
+ * ANY LOST REVENUE, PROFIT OR DATA, OR FOR DIRECT, INDIRECT, SPECIAL,
+ * CONSEQUENTIAL, INCIDENTAL OR PUNITIVE DAMAGES, HOWEVER CAUSED AND
+ * REGARDLESS OF THE THEORY OF LIABILITY, ARISING OUT OF THE USE OF OR
+ * INABILITY TO USE THIS SOFTWARE, EVEN IF SUN HAS BEEN ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGES.
+ *
+ * You acknowledge that this software is not designed, licensed or
+ * intended for use in the design, construction, operation or
+ * maintenance of any nuclear facility.
+ *
+ * $Revision$
+ * $Date$
+ * $State$
+ */
+
+
+package com.sun.j3d.utils.geometry;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The cache through which Primitives with the same parameters share
+ * their geometry.  There is one cache for all Primitives, returned by
+ * Primitive.getGeometryCache().<P>
+ *
+ * By default the cache is unbounded, as it always was.  It may be
+ * bounded by a number of entries and/or by an estimate of the bytes
+ * held by the cached geometry, in which case the least recently used
+ * entries are evicted first.  Evicting an entry doesn't change
+ * existing Primitives; new Primitives with those parameters just build
+ * (and cache) new geometry.  All methods are thread-safe; lookups in an
+ * unbounded cache don't take a lock, so Primitives can be built
+ * concurrently.  Lookups in a bounded cache briefly lock its LRU list.
+ * While the cache is unbounded lookups don't reorder that list, so when
+ * a limit is first set the entries are evicted in the order they were
+ * added.
+ *
+ * @see Primitive#getGeometryCache
+ */
+
+public class PrimitiveGeometryCache {
+
+  // Estimated bytes per cached vertex: coordinate, normal and
+  // texture coordinate, in the GeomBuffer and in the GeometryArray
+  static final long BYTES_PER_VERTEX = 2 * (12 + 12 + 8);
+
+  private final ConcurrentHashMap entries = new ConcurrentHashMap();
+  private volatile int maxEntries = 0;
+  private volatile long maxBytes = 0;
+  private final AtomicLong bytes = new AtomicLong();
+  private final AtomicLong hitCount = new AtomicLong();
+  private final AtomicLong missCount = new AtomicLong();
+  private final AtomicLong evictionCount = new AtomicLong();
+
+  // Sentinel of the LRU list: head.next is the most recently used
+  // entry and head.prev the least recently used one.  The list and the
+  // links of every entry are guarded by lruLock.
+  private final Entry head = new Entry();
+  private final Object lruLock = new Object();
+
+  /**
+   * Key of a cache entry: the parameters passed to
+   * Primitive.getCachedGeometry(), compared by value.
+   */
+  static class GeometryKey {
+    final int kind;
+    final int a, b, c;		// Float.floatToIntBits of the parameters
+    final int d, e;
+    final int flags;
+
+    GeometryKey(int kind, float a, float b, float c, int d, int e,
+		int flags) {
+      this.kind = kind;
+      this.a = Float.floatToIntBits(a);
+      this.b = Float.floatToIntBits(b);
+      this.c = Float.floatToIntBits(c);
+      this.d = d;
+      this.e = e;
+      this.flags = flags;
+    }
+
+    public int hashCode() {
+      int h = kind;
+      h = h * 31 + a;
+      h = h * 31 + b;
+      h = h * 31 + c;
+      h = h * 31 + d;
+      h = h * 31 + e;
+      h = h * 31 + flags;
+      return h;
+    }
+
+    public boolean equals(Object o) {
+      if (!(o instanceof GeometryKey))
+	return false;
+      GeometryKey k = (GeometryKey)o;
+      return kind == k.kind && a == k.a && b == k.b && c == k.c &&
+	     d == k.d && e == k.e && flags == k.flags;
+    }
+  }
+
+  static class Entry {
+    GeometryKey key;
+    GeomBuffer geometry;
+    long bytes;
+    Entry prev, next;
+  }
+
+  PrimitiveGeometryCache() {
+    head.prev = head;
+    head.next = head;
+  }
+
+  private boolean isBounded() {
+    return maxEntries > 0 || maxBytes > 0;
+  }
+
+  // Adds the entry at the most recently used end of the list
+  private void link(Entry entry) {
+    entry.prev = head;
+    entry.next = head.next;
+    head.next.prev = entry;
+    head.next = entry;
+  }
+
+  private void unlink(Entry entry) {
+    entry.prev.next = entry.next;
+    entry.next.prev = entry.prev;
+    entry.prev = null;
+    entry.next = null;
+  }
+
+  /**
+   * Sets the maximum number of entries, 0 for no limit.
+   */
+  public void setMaxEntries(int maxEntries) {
+    this.maxEntries = maxEntries;
+    evict();
+  }
+
+  /**
+   * Returns the maximum number of entries, 0 if there is no limit.
+   */
+  public int getMaxEntries() {
+    return maxEntries;
+  }
+
+  /**
+   * Sets the maximum estimated size of the cached geometry in bytes,
+   * 0 for no limit.
+   */
+  public void setMaxBytes(long maxBytes) {
+    this.maxBytes = maxBytes;
+    evict();
+  }
+
+  /**
+   * Returns the maximum estimated size of the cached geometry in bytes,
+   * 0 if there is no limit.
+   */
+  public long getMaxBytes() {
+    return maxBytes;
+  }
+
+  /**
+   * Returns the number of lookups that found shared geometry.
+   */
+  public long getHitCount() {
+    return hitCount.get();
+  }
+
+  /**
+   * Returns the number of lookups that did not find shared geometry.
+   */
+  public long getMissCount() {
+    return missCount.get();
+  }
+
+  /**
+   * Returns the number of entries evicted to respect the size limits.
+   */
+  public long getEvictionCount() {
+    return evictionCount.get();
+  }
+
+  /**
+   * Returns the current number of entries.
+   */
+  public int size() {
+    return entries.size();
+  }
+
+  /**
+   * Returns the current estimated size of the cached geometry in bytes.
+   */
+  public long getBytes() {
+    return bytes.get();
+  }
+
+  /**
+   * Removes all entries and resets the hit, miss and eviction counters.
+   * Existing Shapes with shared geometry will continue to share
+   * the geometry.
+   */
+  public void clear() {
+    synchronized (lruLock) {
+      Iterator it = entries.entrySet().iterator();
+      while (it.hasNext()) {
+	Map.Entry e = (Map.Entry)it.next();
+	Entry entry = (Entry)e.getValue();
+	if (entries.remove(e.getKey(), entry)) {
+	  bytes.addAndGet(-entry.bytes);
+	  if (entry.next != null)
+	    unlink(entry);
+	}
+      }
+    }
+    hitCount.set(0);
+    missCount.set(0);
+    evictionCount.set(0);
+  }
+
+  GeomBuffer get(int kind, float a, float b, float c,
+		 int d, int e, int flags) {
+    Entry entry = (Entry)entries.get(new GeometryKey(kind, a, b, c,
+						       d, e, flags));
+    if (entry == null) {
+      missCount.incrementAndGet();
+      return null;
+    }
+    if (isBounded()) {
+      synchronized (lruLock) {
+	// An entry that was evicted meanwhile is not linked any more
+	if (entry.next != null) {
+	  unlink(entry);
+	  link(entry);
+	}
+      }
+    }
+    hitCount.incrementAndGet();
+    return entry.geometry;
+  }
+
+  /**
+   * Adds geometry for the given parameters.  If another thread cached
+   * geometry for them first, that geometry is kept.
+   */
+  void put(int kind, float a, float b, float c,
+	   int d, int e, int flags, GeomBuffer geo) {
+    Entry entry = new Entry();
+    entry.key = new GeometryKey(kind, a, b, c, d, e, flags);
+    entry.geometry = geo;
+    entry.bytes = Math.max(1, geo.getNumVerts() * BYTES_PER_VERTEX);
+    if (entries.putIfAbsent(entry.key, entry) == null) {
+      bytes.addAndGet(entry.bytes);
+      synchronized (lruLock) {
+	// Don't link an entry that clear() already removed
+	if (entries.get(entry.key) == entry)
+	  link(entry);
+      }
+      evict();
+    }
+  }
+
+  /**
+   * Removes least recently used entries until the limits are respected.
+   * The most recently used entry is always kept.  Each entry is removed
+   * from the tail of the LRU list in constant time.
+   */
+  private void evict() {
+    if (!isBounded())
+      return;
+    synchronized (lruLock) {
+      while (entries.size() > 1 &&
+	     ((maxEntries > 0 && entries.size() > maxEntries) ||
+	      (maxBytes > 0 && bytes.get() > maxBytes))) {
+	Entry eldest = head.prev;
+	if (eldest == head || eldest == head.next)
+	  break;
+	unlink(eldest);
+	if (entries.remove(eldest.key, eldest)) {
+	  bytes.addAndGet(-eldest.bytes);
+	  evictionCount.incrementAndGet();
+	}
+      }
+    }
+  }
+}
@@ -234,6 +234,7 @@ public class Stripifier {
 	if (stats != null) {
 	    stats.updateInfo(System.currentTimeMillis()-time, strips,
 			     faces.length);
+	    stats.updateCacheMisses(gi.getVertexIndices());
 	}
 
 	// 	Stat.printInfo();
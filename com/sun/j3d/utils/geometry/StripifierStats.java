@@ -78,6 +78,10 @@ public class StripifierStats {
     int numFaces = 0;
     long time = 0;
     int[] counts = new int[14];
+    long cacheMisses = 0;
+
+    // Size of the FIFO vertex cache used to count cache misses
+    static final int CACHE_SIZE = 16;
 
     boolean noData = true;
 
@@ -164,6 +168,17 @@ public class StripifierStats {
 	return time;
     }
 
+    /**
+     * Returns the average cache miss ratio (ACMR) of the output data:
+     * the number of vertices that miss a 16 entry FIFO post-transform
+     * vertex cache, divided by the number of triangles.  This is 3.0
+     * when no vertex is reused and approaches 0.5 for good orderings
+     * of large regular meshes.
+     */
+    public double getAvgCacheMissRatio() {
+	return ((double)cacheMisses/(double)totalTris);
+    }
+
     /**
      * Returns an array of length 14 that contains the number of strips of
      * a given length created by the stripifier.  Spots 0-8 of the array
@@ -195,6 +210,8 @@ public class StripifierStats {
 									(double)numStrips) + "\n" +
 					    "avg num verts/tri:    " + ((double)numVerts/
 									(double)totalTris) + "\n" +
+					    "avg cache miss ratio: " + ((double)cacheMisses/
+									(double)totalTris) + "\n" +
 					    "total time:           " + time + "\n" +
 					    "strip length distribution:\n");
 	for (int i = 0; i < 9; i++){
@@ -223,6 +240,7 @@ public class StripifierStats {
  	numFaces = 0;
  	time = 0;
  	counts = new int[14];
+	cacheMisses = 0;
     }
 
     void updateInfo(long ntime, ArrayList strips,
@@ -305,6 +323,44 @@ public class StripifierStats {
 	numFaces += nNumFaces;
     }
 
+    /**
+     * Adds numTris triangles output as an indexed triangle list.  Each
+     * triangle counts as a strip of length one.
+     */
+    void updateListInfo(long ntime, int numTris) {
+	noData = false;
+
+	time += ntime;
+	if (numTris == 0) return;
+	numStrips += numTris;
+	numVerts += numTris * 3;
+	if (1 < minStripLen) minStripLen = 1;
+	if (1 > maxStripLen) maxStripLen = 1;
+	totalTris += numTris;
+	counts[0] += numTris;
+	numFaces += numTris;
+    }
+
+    /**
+     * Adds the cache misses of drawing the vertices in the given order.
+     * Vertex ids must be smaller than vertices.length.
+     */
+    void updateCacheMisses(int[] vertices) {
+	// A vertex is in the FIFO cache if it was one of the last
+	// CACHE_SIZE vertices put into it
+	int[] insertedAt = new int[vertices.length];
+	for (int i = 0; i < insertedAt.length; i++) insertedAt[i] = -1;
+	int numInserted = 0;
+	for (int i = 0; i < vertices.length; i++) {
+	    int v = vertices[i];
+	    if (insertedAt[v] == -1 ||
+		insertedAt[v] < numInserted - CACHE_SIZE) {
+		cacheMisses++;
+		insertedAt[v] = numInserted++;
+	    }
+	}
+    }
+
     //     void printInfo() {
     // 	System.out.println("num orig tris:        " + numFaces);
     // 	System.out.println("num orig vertices:    " + (numFaces*3));
@@ -0,0 +1,352 @@
+/*
+ * $RCSfile$
+ *
+ * Copyright (c) 2007 Sun Microsystems, Inc. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * - Redistribution of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * - Redistribution in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in
+ *   the documentation and/or other materials provided with the
+ *   distribution.
+ *
+ * Neither the name of Sun Microsystems, Inc. or the names of
+ * contributors may be used to endorse or promote products derived
+ * from this software without specific prior written permission.
+ *
+ * This software is provided "AS IS," without a warranty of any
+ * kind. ALL EXPRESS OR IMPLIED CONDITIONS, REPRESENTATIONS AND
+ * WARRANTIES, INCLUDING ANY IMPLIED WARRANTY OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE OR NON-INFRINGEMENT, ARE HEREBY
+ * EXCLUDED. SUN MICROSYSTEMS, INC. ("SUN") AND ITS LICENSORS SHALL
+ * NOT BE LIABLE FOR ANY DAMAGES SUFFERED BY LICENSEE AS A RESULT OF
+ * USING, MODIFYING OR DISTRIBUTING THIS SOFTWARE OR ITS
+ * DERIVATIVES. IN NO EVENT WILL SUN OR ITS LICENSORS BE LIABLE FOR
+ * ANY LOST REVENUE, PROFIT OR DATA, OR FOR DIRECT, INDIRECT, SPECIAL,
+ * CONSEQUENTIAL, INCIDENTAL OR PUNITIVE DAMAGES, HOWEVER CAUSED AND
+ * REGARDLESS OF THE THEORY OF LIABILITY, ARISING OUT OF THE USE OF OR
+ * INABILITY TO USE THIS SOFTWARE, EVEN IF SUN HAS BEEN ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGES.
+ *
+ * You acknowledge that this software is not designed, licensed or
+ * intended for use in the design, construction, operation or
+ * maintenance of any nuclear facility.
+ *
+ * $Revision$
+ * $Date$
+ * $State$
+ */
+
+
+package com.sun.j3d.utils.geometry;
+
+import com.sun.j3d.utils.geometry.GeometryInfo;
+import com.sun.j3d.internal.J3dUtilsI18N;
+
+/**
+ * The VertexCacheOptimizer utility reorders the triangles of the
+ * GeometryInfo object so that vertices are reused while they are still
+ * in the post-transform vertex cache of the graphics hardware.  Unlike
+ * the Stripifier, the primitive is left as an indexed triangle list;
+ * only the order of the triangles changes.  The order is chosen
+ * greedily, triangle by triangle, using the scoring function of Tom
+ * Forsyth's "Linear-Speed Vertex Cache Optimisation" over a modelled
+ * LRU cache.  All of the work is done on flat int and float arrays, so
+ * it runs in time roughly linear in the number of triangles.<p>
+ * <p>
+ * Like the Stripifier, it should be used after normal generation and
+ * it can collect the same StripifierStats, so the two can be compared.
+ * Each triangle counts as a strip of length one.  Example:<p>
+ * <p>
+ * <pre>
+ *   GeometryInfo gi = new GeometryInfo(TRIANGLE_ARRAY);
+ *   gi.setCoordinates(coordinateData);
+ *
+ *   NormalGenerator ng = new NormalGenerator();
+ *   ng.generateNormals(gi);
+ *
+ *   VertexCacheOptimizer vco = new VertexCacheOptimizer();
+ *   vco.optimize(gi);
+ *
+ *   Shape3D part = new Shape3D();
+ *   part.setAppearance(appearance);
+ *   part.setGeometry(gi.getIndexedGeometryArray());
+ *   </pre>
+ */
+public class VertexCacheOptimizer {
+
+    /**
+     * Indicates to the optimizer to collect statistics on the data
+     */
+    public static final int COLLECT_STATS = Stripifier.COLLECT_STATS;
+
+    // Size of the modelled LRU cache
+    static final int CACHE_SIZE = 32;
+
+    // Scoring parameters, from Forsyth's paper
+    static final float CACHE_DECAY_POWER = 1.5f;
+    static final float LAST_TRI_SCORE = 0.75f;
+    static final float VALENCE_BOOST_SCALE = 2.0f;
+    static final float VALENCE_BOOST_POWER = 0.5f;
+
+    // Precomputed parts of the vertex score
+    static final int MAX_VALENCE_SCORE = 64;
+    static final float[] cacheScore = new float[CACHE_SIZE];
+    static final float[] valenceScore = new float[MAX_VALENCE_SCORE];
+
+    static {
+	for (int i = 0; i < CACHE_SIZE; i++) {
+	    if (i < 3) {
+		// The vertices of the last triangle get a fixed score so
+		// the order they were used in doesn't matter
+		cacheScore[i] = LAST_TRI_SCORE;
+	    }
+	    else {
+		float s = 1.0f - (float)(i - 3) / (float)(CACHE_SIZE - 3);
+		cacheScore[i] = (float)Math.pow(s, CACHE_DECAY_POWER);
+	    }
+	}
+	for (int i = 1; i < MAX_VALENCE_SCORE; i++) {
+	    valenceScore[i] = VALENCE_BOOST_SCALE *
+		(float)Math.pow(i, -VALENCE_BOOST_POWER);
+	}
+    }
+
+    StripifierStats stats;
+
+    /**
+     * Creates the VertexCacheOptimizer object.
+     */
+    public VertexCacheOptimizer() {
+    }
+
+    /**
+     * Creates the VertexCacheOptimizer object.
+     * @param flags Flags
+     */
+    public VertexCacheOptimizer(int flags) {
+	if ((flags & COLLECT_STATS) != 0) {
+	    stats = new StripifierStats();
+	}
+    }
+
+    /**
+     * Converts the geometry contained in the GeometryInfo object into
+     * indexed triangles and reorders the triangles for the vertex cache.
+     */
+    public void optimize(GeometryInfo gi) {
+	long time = System.currentTimeMillis();
+	// setup
+	gi.convertToIndexedTriangles();
+	gi.forgetOldPrim();
+
+	// Vertices are identified by their whole row of indices, as that
+	// is what ends up as one vertex of the IndexedGeometryArray
+	int[] vertices = gi.getVertexIndices();
+	int numTris = vertices.length / 3;
+	int[] order = optimizeOrder(vertices, numTris);
+
+	gi.setCoordinateIndices(reorder(gi.getCoordinateIndices(), order));
+	int[] indices = gi.getColorIndices();
+	if (indices != null) gi.setColorIndices(reorder(indices, order));
+	indices = gi.getNormalIndices();
+	if (indices != null) gi.setNormalIndices(reorder(indices, order));
+	int texSetCount = gi.getTexCoordSetCount();
+	for (int i = 0; i < texSetCount; i++) {
+	    indices = gi.getTextureCoordinateIndices(i);
+	    if (indices != null) {
+		gi.setTextureCoordinateIndices(i, reorder(indices, order));
+	    }
+	}
+
+	// add to stats
+	if (stats != null) {
+	    stats.updateListInfo(System.currentTimeMillis()-time, numTris);
+	    stats.updateCacheMisses(gi.getVertexIndices());
+	}
+    }
+
+    /**
+     * Returns the stripifier stats object.
+     * @exception IllegalStateException if the VertexCacheOptimizer has
+     * not been constructed with the COLLECT_STATS flag
+     */
+    public StripifierStats getStripifierStats() {
+	if (stats == null) {
+	    throw new IllegalStateException(J3dUtilsI18N.getString("Stripifier0"));
+	}
+	return stats;
+    }
+
+    /**
+     * Returns the score of a vertex at the given position in the
+     * cache (-1 if not in the cache) with valence triangles that
+     * still have to be output.
+     */
+    static float vertexScore(int cachePos, int valence) {
+	if (valence == 0) {
+	    // No triangles left that use this vertex
+	    return -1.0f;
+	}
+	float score = 0.0f;
+	if (cachePos >= 0) score = cacheScore[cachePos];
+	if (valence < MAX_VALENCE_SCORE) score += valenceScore[valence];
+	else score += VALENCE_BOOST_SCALE *
+		 (float)Math.pow(valence, -VALENCE_BOOST_POWER);
+	return score;
+    }
+
+    /**
+     * Returns the new order of the triangles: entry i is the original
+     * number of the triangle that goes i-th.  vertices holds three
+     * vertex ids per triangle, each smaller than vertices.length.
+     */
+    static int[] optimizeOrder(int[] vertices, int numTris) {
+	int numVerts = 0;
+	for (int i = 0; i < numTris * 3; i++) {
+	    if (vertices[i] >= numVerts) numVerts = vertices[i] + 1;
+	}
+
+	// Triangles using each vertex, stored back to back.  The first
+	// valence[v] entries of a vertex's list are the triangles that
+	// haven't been output yet.
+	int[] valence = new int[numVerts];
+	for (int i = 0; i < numTris * 3; i++) {
+	    valence[vertices[i]]++;
+	}
+	int[] triStart = new int[numVerts + 1];
+	for (int v = 0; v < numVerts; v++) {
+	    triStart[v + 1] = triStart[v] + valence[v];
+	}
+	int[] tris = new int[numTris * 3];
+	int[] fill = new int[numVerts];
+	for (int i = 0; i < numTris * 3; i++) {
+	    int v = vertices[i];
+	    tris[triStart[v] + fill[v]++] = i / 3;
+	}
+	fill = null;
+
+	int[] cachePos = new int[numVerts];
+	float[] vScore = new float[numVerts];
+	for (int v = 0; v < numVerts; v++) {
+	    cachePos[v] = -1;
+	    vScore[v] = vertexScore(-1, valence[v]);
+	}
+
+	float[] tScore = new float[numTris];
+	int best = -1;
+	float bestScore = -Float.MAX_VALUE;
+	for (int t = 0; t < numTris; t++) {
+	    tScore[t] = vScore[vertices[t * 3]] + vScore[vertices[t * 3 + 1]] +
+		vScore[vertices[t * 3 + 2]];
+	    if (tScore[t] > bestScore) {
+		bestScore = tScore[t];
+		best = t;
+	    }
+	}
+
+	boolean[] done = new boolean[numTris];
+	int[] cache = new int[CACHE_SIZE + 3];
+	int[] newCache = new int[CACHE_SIZE + 3];
+	int cacheLen = 0;
+	int[] order = new int[numTris];
+	int scan = 0;
+
+	for (int n = 0; n < numTris; n++) {
+	    if (best == -1) {
+		// Nothing in the cache has triangles left, start again at
+		// the first triangle that hasn't been output
+		while (done[scan]) scan++;
+		best = scan;
+	    }
+	    order[n] = best;
+	    done[best] = true;
+
+	    int v0 = vertices[best * 3];
+	    int v1 = vertices[best * 3 + 1];
+	    int v2 = vertices[best * 3 + 2];
+
+	    // Take the triangle out of the lists of its vertices
+	    for (int c = 0; c < 3; c++) {
+		int v = vertices[best * 3 + c];
+		int start = triStart[v];
+		int last = start + valence[v] - 1;
+		for (int i = start; i <= last; i++) {
+		    if (tris[i] == best) {
+			tris[i] = tris[last];
+			tris[last] = best;
+			break;
+		    }
+		}
+		valence[v]--;
+	    }
+
+	    // The triangle's vertices move to the front of the cache
+	    int newLen = 0;
+	    newCache[newLen++] = v0;
+	    if (v1 != v0) newCache[newLen++] = v1;
+	    if (v2 != v0 && v2 != v1) newCache[newLen++] = v2;
+	    for (int i = 0; i < cacheLen; i++) {
+		int v = cache[i];
+		if (v != v0 && v != v1 && v != v2) newCache[newLen++] = v;
+	    }
+
+	    // Update the scores of everything that moved in the cache,
+	    // including the vertices that just dropped out of it
+	    for (int i = 0; i < newLen; i++) {
+		int v = newCache[i];
+		cachePos[v] = (i < CACHE_SIZE) ? i : -1;
+		vScore[v] = vertexScore(cachePos[v], valence[v]);
+	    }
+	    for (int i = 0; i < newLen; i++) {
+		int v = newCache[i];
+		for (int j = triStart[v]; j < triStart[v] + valence[v]; j++) {
+		    int t = tris[j];
+		    tScore[t] = vScore[vertices[t * 3]] +
+			vScore[vertices[t * 3 + 1]] +
+			vScore[vertices[t * 3 + 2]];
+		}
+	    }
+
+	    int[] tmp = cache;
+	    cache = newCache;
+	    newCache = tmp;
+	    cacheLen = Math.min(newLen, CACHE_SIZE);
+
+	    // The next triangle is the best one using a cached vertex
+	    best = -1;
+	    bestScore = -Float.MAX_VALUE;
+	    for (int i = 0; i < cacheLen; i++) {
+		int v = cache[i];
+		for (int j = triStart[v]; j < triStart[v] + valence[v]; j++) {
+		    int t = tris[j];
+		    if (tScore[t] > bestScore) {
+			bestScore = tScore[t];
+			best = t;
+		    }
+		}
+	    }
+	}
+
+	return order;
+    }
+
+    /**
+     * Returns a copy of the triangle index list with its triangles
+     * in the given order.
+     */
+    static int[] reorder(int[] indices, int[] order) {
+	int[] newIndices = new int[order.length * 3];
+	for (int i = 0; i < order.length; i++) {
+	    newIndices[i * 3] = indices[order[i] * 3];
+	    newIndices[i * 3 + 1] = indices[order[i] * 3 + 1];
+	    newIndices[i * 3 + 2] = indices[order[i] * 3 + 2];
+	}
+	return newIndices;
+    }
+}
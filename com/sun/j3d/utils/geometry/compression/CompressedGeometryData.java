@@ -45,6 +45,7 @@
 package com.sun.j3d.utils.geometry.compression;
 
 import com.sun.j3d.internal.J3dUtilsI18N;
+import java.nio.ByteBuffer;
 import javax.media.j3d.J3DBuffer;
 import javax.media.j3d.Shape3D;
 import javax.vecmath.Point3d;
@@ -83,6 +84,9 @@ import javax.vecmath.Point3d;
  * must exercise care not to violate this rule.  If any referenced
  * compressed geometry data is modified after construction,
  * the results are undefined.
+ * <p>
+ * The data may also be referenced from an NIO ByteBuffer wrapped in a
+ * J3DBuffer, such as a slice of a memory-mapped compressed geometry file.
  * </li>
  * </ul>
  *
@@ -92,6 +96,7 @@ public class CompressedGeometryData extends Object {
 
     private Header cgHeader;
     private CompressedGeometryRetained retained;
+    private J3DBuffer cgBuffer = null;
 
 
     /**
@@ -180,10 +185,9 @@ public class CompressedGeometryData extends Object {
      * @param compressedGeometry a buffer containing an NIO byte buffer
      * of compressed geometry data.  The
      * geometry must conform to the format described in Appendix B of
-     * the <i>Java 3D API Specification</i>.
-     *
-     * @exception UnsupportedOperationException this method is not
-     * yet implemented
+     * the <i>Java 3D API Specification</i>.  The header's start offset is
+     * an absolute index into the byte buffer; its position and limit
+     * are not modified.
      *
      * @exception IllegalArgumentException if a problem is detected with the
      * header,
@@ -195,7 +199,24 @@ public class CompressedGeometryData extends Object {
     public CompressedGeometryData(Header hdr,
             J3DBuffer compressedGeometry) {
 
-        throw new UnsupportedOperationException("not implemented");
+        if (!(compressedGeometry.getBuffer() instanceof ByteBuffer)) {
+            throw new IllegalArgumentException(J3dUtilsI18N.getString("CompressedGeometry10"));
+        }
+
+        ByteBuffer buffer = (ByteBuffer)compressedGeometry.getBuffer();
+        if ((hdr.size + hdr.start) > buffer.limit()) {
+            throw new IllegalArgumentException(J3dUtilsI18N.getString("CompressedGeometry0"));
+        }
+
+        // Create a separate copy of the given header.
+        cgHeader = new Header();
+        hdr.copy(cgHeader);
+
+        // Create the retained object.  NIO data is always accessed by
+        // reference.
+        retained = new CompressedGeometryRetained();
+        this.retained.createCompressedGeometry(cgHeader, buffer);
+        this.cgBuffer = compressedGeometry;
     }
 
 
@@ -282,6 +303,28 @@ public class CompressedGeometryData extends Object {
 	return decompressor.toTriangleStripArrays(cgr);
     }
 
+    /**
+     * Decompresses the compressed geometry into by-reference geometry.
+     * Returns an array of Shape nodes like decompress(), except that each
+     * geometry array uses the BY_REFERENCE and INTERLEAVED vertex formats
+     * and references a single float array or NIO buffer holding its
+     * colors, normals, and coordinates.  Triangles and lines are output
+     * as TriangleStripArrays and LineStripArrays with their strip counts.
+     * No objects are created per decompressed vertex.
+     *
+     * @param useNio if true, the geometry references direct NIO float
+     * buffers (USE_NIO_BUFFER); otherwise it references float arrays
+     * @return an array of Shape nodes containing the
+     * geometry decompressed from this CompressedGeometryData
+     * object, or null if its version is incompatible
+     */
+    public Shape3D[] decompressByReference(boolean useNio) {
+	GeometryDecompressorArrays decompressor =
+                new GeometryDecompressorArrays();
+
+	return decompressor.toByReferenceArrays(this.retained, useNio);
+    }
+
 
     /**
      * Retrieves the data access mode for this CompressedGeometryData object.
@@ -298,7 +341,8 @@ public class CompressedGeometryData extends Object {
     /**
      * Gets the compressed geometry data reference.
      *
-     * @return the current compressed geometry data reference.
+     * @return the current compressed geometry data reference, or null
+     * if the data is referenced from an NIO buffer.
      *
      * @exception IllegalStateException if the data access mode for this
      * object is not by-reference.
@@ -314,14 +358,13 @@ public class CompressedGeometryData extends Object {
 
 
     /**
-     * Gets the compressed geometry data buffer reference, which is
-     * always null since NIO buffers are not supported for
-     * CompressedGeometryData objects.
+     * Gets the compressed geometry data buffer reference.
      * 
-     * @return null
+     * @return the J3DBuffer this object was constructed with, or null
+     * if the data is not referenced from an NIO buffer.
      */
     public J3DBuffer getCompressedGeometryBuffer() {
-        return null;
+        return cgBuffer;
     }
 
 
@@ -47,6 +47,15 @@ package com.sun.j3d.utils.geometry.compression;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import javax.media.j3d.J3DBuffer;
+import com.sun.j3d.internal.FutureUtil;
 
 //
 // The compressed geometry file format supported by this class has a 32
@@ -66,6 +75,12 @@ import java.io.RandomAccessFile;
  * files.  These files usually end with the .cg extension and support
  * sequential as well as random access to multiple compressed geometry
  * objects.
+ * <p>
+ * A file may also be opened in read-only mapped mode.  The file is then
+ * memory-mapped and each object is returned as a CompressedGeometryData
+ * referencing a slice of the mapping, so no compressed data is copied.
+ * In this mode read(int) may be called from several threads at once, and
+ * read() runs on the executor given with setExecutor() if there is one.
  *
  * @since Java 3D 1.5
  */
@@ -166,6 +181,11 @@ public class CompressedGeometryFile {
      */
     static final int BLOCK_HEADER_SIZE = 8 ;
 
+    /**
+     * Number of objects read by each task of a mapped bulk read.
+     */
+    static final int READ_CHUNK_SIZE = 256 ;
+
     // The name of the compressed geometry resource file.
     String fileName = null ;
 
@@ -213,6 +233,16 @@ public class CompressedGeometryFile {
     // Flag indicating file update.
     boolean fileUpdate = false ;
 
+    // Set in read-only mapped mode.  The whole file is mapped into cgMap
+    // if it fits in a single mapping; otherwise each object is mapped
+    // from cgChannel as it is read.
+    boolean mapped = false ;
+    FileChannel cgChannel = null ;
+    ByteBuffer cgMap = null ;
+
+    // The executor used by read() in mapped mode, or null.
+    ExecutorService executor = null ;
+
     /**
      * Construct a new CompressedGeometryFile instance associated with the
      * specified file.  An attempt is made to open the file with read-only
@@ -244,6 +274,35 @@ public class CompressedGeometryFile {
      * @exception IOException if there is a header or directory read error
      */
     public CompressedGeometryFile(String file, boolean rw) throws IOException {
+	this(file, rw, false) ;
+    }
+
+    /**
+     * Construct a new CompressedGeometryFile instance associated with the
+     * specified file.  If mapped is true, the file is opened with read-only
+     * access and memory-mapped; read(int) is then safe to call from
+     * multiple threads and returns objects that reference the mapping
+     * without copying it.
+     *
+     * @param file path to the compressed geometry resource file
+     * @param rw if true, opens the file for read and write access or attempts
+     * to create one if it doesn't exist; if false, opens the file with
+     * read-only access
+     * @param mapped if true, memory-maps the file in read-only mode
+     * @exception FileNotFoundException if file doesn't exist or
+     * access permissions disallow access
+     * @exception IllegalArgumentException if the file is not a compressed
+     * geometry resource file, or if both rw and mapped are true
+     * @exception IOException if there is a header or directory read error
+     * or the file cannot be mapped
+     */
+    public CompressedGeometryFile(String file, boolean rw, boolean mapped)
+	throws IOException {
+
+	if (rw && mapped)
+	    throw new IllegalArgumentException
+		("\nmapped compressed geometry files are read-only") ;
+
 	// Open the file and read the file header.
 	open(file, rw) ;
 
@@ -252,6 +311,9 @@ public class CompressedGeometryFile {
 
 	// Set up the file fields.
 	initialize() ;
+
+	if (mapped)
+	    map() ;
     }
 
     /**
@@ -282,6 +344,9 @@ public class CompressedGeometryFile {
      * @exception IOException if clear fails
      */
     public void clear() throws IOException {
+	if (mapped)
+	    throw new IOException(fileName + ": mapped file is read-only") ;
+
 	// Truncate the file.
 	cgFile.setLength(0) ;
 
@@ -368,13 +433,21 @@ public class CompressedGeometryFile {
      * @exception IOException if read fails
      */
     public CompressedGeometryData readNext() throws IOException {
+	if (mapped) {
+	    if (objectIndex == objectCount)
+		return null ;
+
+	    return readMapped(objectIndex++) ;
+	}
+
 	return readNext(cgBuffer.length) ;
     }
 
     /**
      * Read all compressed geometry objects contained in the instance.  The
      * current object index becomes invalid; an immediately following call
-     * to readNext() will return null.
+     * to readNext() will return null.  In mapped mode the objects are read
+     * on the executor if one has been set.
      * 
      * @return an array of CompressedGeometryData node components.
      * @exception IOException if read fails
@@ -386,12 +459,17 @@ public class CompressedGeometryFile {
 	if (benchmark)
 	    startTime = System.currentTimeMillis() ;
 
-	objectIndex = 0 ;
-	setFilePointer(directory[0]) ;
-	bufferNextObjectCount = 0 ;
+	if (mapped) {
+	    readMapped(cg) ;
+	    objectIndex = objectCount ;
+	} else {
+	    objectIndex = 0 ;
+	    setFilePointer(directory[0]) ;
+	    bufferNextObjectCount = 0 ;
 
-	for (int i = 0 ; i < objectCount ; i++)
-	    cg[i] = readNext(cgBuffer.length) ;
+	    for (int i = 0 ; i < objectCount ; i++)
+		cg[i] = readNext(cgBuffer.length) ;
+	}
 
 	if (benchmark) {
 	    long t = System.currentTimeMillis() - startTime ;
@@ -409,6 +487,11 @@ public class CompressedGeometryFile {
      * current object index is set to the subsequent object unless the last
      * object has been read, in which case the index becomes invalid and an
      * immediately following call to readNext() will return null.
+     * <p>
+     * In mapped mode this method may be called concurrently from multiple
+     * threads, and the returned object references the mapped file data.
+     * The current object index is then only meaningful if a single thread
+     * reads from the instance.
      * 
      * @param index compressed geometry object to read
      * @return a CompressedGeometryData node component
@@ -417,17 +500,22 @@ public class CompressedGeometryFile {
      * @exception IOException if read fails
      */
     public CompressedGeometryData read(int index) throws IOException {
-	objectIndex = index ;
-
-	if (objectIndex < 0) {
+	if (index < 0) {
 	    throw new IndexOutOfBoundsException
 		("\nobject index must be >= 0") ;
 	}
-	if (objectIndex >= objectCount) {
+	if (index >= objectCount) {
 	    throw new IndexOutOfBoundsException
 		("\nobject index must be < " + objectCount) ;
 	}
 
+	if (mapped) {
+	    objectIndex = index + 1 ;
+	    return readMapped(index) ;
+	}
+
+	objectIndex = index ;
+
 	// Check if object is in cache.
 	if ((objectIndex >= bufferObjectStart) &&
 	    (objectIndex <  bufferObjectStart + bufferObjectCount)) {
@@ -458,6 +546,8 @@ public class CompressedGeometryFile {
      * The current object index becomes invalid; an immediately following call
      * to readNext() will return null.  The close() method must be called at
      * some later time in order to create a valid compressed geometry file.
+     * By-reference data, including the NIO buffer data returned by a
+     * mapped file, is copied from the referenced array or buffer.
      *
      * @param cg a compressed geometry node component
      * @exception CapabilityNotSetException if unable to get compressed
@@ -476,7 +566,24 @@ public class CompressedGeometryFile {
 					  " bytes") ;
 	}
 	
-	cg.getCompressedGeometry(cgBuffer) ;
+	if (cg.isByReference()) {
+	    // The header's start offset locates the data in the reference.
+	    J3DBuffer ref = cg.getCompressedGeometryBuffer() ;
+	    if (ref != null) {
+		// Read through a duplicate so that the position of the
+		// shared buffer is left alone.
+		ByteBuffer b = ((ByteBuffer)ref.getBuffer()).duplicate() ;
+		b.position(cgh.start) ;
+		b.get(cgBuffer, 0, cgh.size) ;
+	    }
+	    else
+		System.arraycopy(cg.getCompressedGeometryRef(), cgh.start,
+				 cgBuffer, 0, cgh.size) ;
+	}
+	else
+	    cg.getCompressedGeometry(cgBuffer) ;
+
+	cgh.start = 0 ;
 	write(cgh, cgBuffer) ;
     }
 
@@ -494,6 +601,10 @@ public class CompressedGeometryFile {
     public void write(CompressedGeometryData.Header cgh, byte geometry[])
 	throws IOException {
 
+	// The directory is shared by concurrent readers of a mapped file.
+	if (mapped)
+	    throw new IOException(fileName + ": mapped file is read-only") ;
+
 	// Update the read/write buffer size if necessary.  It won't be used
 	// in this method, but should be big enough to read any object in
 	// the file, including the one to be written.
@@ -619,6 +730,35 @@ public class CompressedGeometryFile {
 	cgBuffer = null ;
 	directory = null ;
 	objectSizes = null ;
+	cgChannel = null ;
+	cgMap = null ;
+    }
+
+    /**
+     * Return true if this instance was opened in read-only mapped mode.
+     *
+     * @return true if the file is memory-mapped
+     */
+    public boolean isMapped() {
+	return mapped ;
+    }
+
+    /**
+     * Sets the executor used by read() to read all objects of a mapped
+     * file concurrently.  If null (the default), objects are read on the
+     * calling thread.  The executor is not shut down by this instance.
+     *
+     * @param executor ExecutorService for bulk reads, or null
+     */
+    public void setExecutor(ExecutorService executor) {
+	this.executor = executor ;
+    }
+
+    /**
+     * Returns the executor used for bulk reads of a mapped file, or null.
+     */
+    public ExecutorService getExecutor() {
+	return executor ;
     }
 
 
@@ -649,6 +789,24 @@ public class CompressedGeometryFile {
 	}
     }
 
+    //
+    // Map the file read-only.  Files too large for a single mapping are
+    // mapped one object at a time by readMapped().
+    //
+    void map() throws IOException {
+	cgChannel = cgFile.getChannel() ;
+
+	long length = cgChannel.size() ;
+	if (length <= Integer.MAX_VALUE)
+	    cgMap = cgChannel.map(FileChannel.MapMode.READ_ONLY, 0, length) ;
+
+	mapped = true ;
+
+	if (print)
+	    System.out.println(fileName + ": mapped " + length + " bytes" +
+			       (cgMap == null ? " per object" : "")) ;
+    }
+
     //
     // Seek to the specified offset in the file.
     //
@@ -968,6 +1126,88 @@ public class CompressedGeometryFile {
 	return newCG(geomSize, geomStart, geomDataType) ;
     }
 
+    //
+    // Get the compressed object at the specified index from the mapped
+    // file.  Only the shared read-only mapping and directory are accessed,
+    // so this may run on several threads at once.
+    //
+    CompressedGeometryData readMapped(int index) throws IOException {
+	ByteBuffer block ;
+	int offset ;
+
+	if (cgMap != null) {
+	    block = cgMap ;
+	    offset = (int)directory[index] ;
+	} else {
+	    block = cgChannel.map(FileChannel.MapMode.READ_ONLY,
+				  directory[index], objectSizes[index]) ;
+	    offset = 0 ;
+	}
+
+	// Get block header info.
+	int geomSize = block.getInt(offset + OBJECT_SIZE_OFFSET) ;
+	int geomDataType = block.getInt(offset + GEOM_DATA_OFFSET) ;
+
+	// Slice out the compressed data without copying it.  J3DBuffer
+	// requires native byte order; the decompressor reads the data
+	// big-endian regardless.
+	ByteBuffer data = block.duplicate() ;
+	data.limit(offset + objectSizes[index]) ;
+	data.position(offset + BLOCK_HEADER_SIZE) ;
+	data = data.slice().order(ByteOrder.nativeOrder()) ;
+
+	if (print) {
+	    System.out.println("\nobject " + index +
+			       "\nfile offset " + directory[index] +
+			       ", mapped") ;
+	    System.out.println("size " + geomSize + " bytes, " +
+			       "data descriptor 0x" +
+			       Integer.toHexString(geomDataType)) ;
+	}
+
+	CompressedGeometryData.Header hdr =
+	    new CompressedGeometryData.Header() ;
+	hdr.majorVersionNumber = majorVersionNumber ;
+	hdr.minorVersionNumber = minorVersionNumber ;
+	hdr.minorMinorVersionNumber = minorMinorVersionNumber ;
+	setHeader(hdr, geomSize, 0, geomDataType) ;
+
+	return new CompressedGeometryData(hdr, new J3DBuffer(data)) ;
+    }
+
+    //
+    // Get all compressed objects from the mapped file, in chunks on the
+    // executor if there is one.
+    //
+    void readMapped(final CompressedGeometryData cg[]) throws IOException {
+	if ((executor == null) || (objectCount <= READ_CHUNK_SIZE)) {
+	    for (int i = 0 ; i < objectCount ; i++)
+		cg[i] = readMapped(i) ;
+	    return ;
+	}
+
+	ArrayList futures = new ArrayList() ;
+	for (int start = 0 ; start < objectCount ; start += READ_CHUNK_SIZE) {
+	    final int s = start ;
+	    final int e = Math.min(start + READ_CHUNK_SIZE, objectCount) ;
+	    futures.add(executor.submit(new Callable() {
+		public Object call() throws IOException {
+		    for (int i = s ; i < e ; i++)
+			cg[i] = readMapped(i) ;
+		    return null ;
+		}
+	    })) ;
+	}
+
+	try {
+	    for (int i = 0 ; i < futures.size() ; i++)
+		FutureUtil.get((Future)futures.get(i), "mapped read") ;
+	}
+	finally {
+	    // Don't leave work behind if a chunk failed.
+	    FutureUtil.cancel(futures) ;
+	}
+    }
     
     //
     // Construct and return a compressed geometry node.
@@ -975,6 +1215,15 @@ public class CompressedGeometryFile {
     CompressedGeometryData newCG(int geomSize,
 				       int geomStart,
 				       int geomDataType) {
+	setHeader(cgh, geomSize, geomStart, geomDataType) ;
+	return new CompressedGeometryData(cgh, cgBuffer) ;
+    }
+
+    //
+    // Set the size, start, and data description fields of a header.
+    //
+    void setHeader(CompressedGeometryData.Header cgh, int geomSize,
+		   int geomStart, int geomDataType) {
 	cgh.size = geomSize ;
 	cgh.start = geomStart ;
 
@@ -998,8 +1247,6 @@ public class CompressedGeometryFile {
 	if ((geomDataType & ALPHA_PRESENT_MASK) != 0)
 	    cgh.bufferDataPresent |=
 		CompressedGeometryData.Header.ALPHA_IN_BUFFER ;
-
-	return new CompressedGeometryData(cgh, cgBuffer) ;
     }
 
     /**
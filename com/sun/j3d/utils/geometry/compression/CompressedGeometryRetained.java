@@ -44,6 +44,7 @@
 
 package com.sun.j3d.utils.geometry.compression;
 
+import java.nio.ByteBuffer;
 import javax.media.j3d.BoundingBox;
 import javax.media.j3d.Bounds;
 import javax.media.j3d.Canvas3D;
@@ -102,6 +103,10 @@ class CompressedGeometryRetained extends Object {
     int size ;
     byte[] compressedGeometry ;
 
+    // Set instead of compressedGeometry when the data is referenced from
+    // an NIO buffer.
+    ByteBuffer compressedGeometryBuffer = null ;
+
     // A reference to the original byte array with which this object was
     // created.  If hardware decompression is available but it doesn't support
     // by-reference semantics, then an internal copy of the original byte array
@@ -172,7 +177,42 @@ class CompressedGeometryRetained extends Object {
 				  byte[] geometry, boolean byReference) {
 
 	this.byReference = byReference ;
+	setHeader(hdr) ;
+
+	if (byReference) {
+	    // Assume we can use the given reference, but maintain a second
+	    // reference in case a copy is later needed.
+	    this.compressedGeometry = geometry;
+            this.originalCompressedGeometry = geometry;
+	} else {
+	    // Copy the original data into a format that can be used by both
+	    // the software and native hardware decompressors.
+	    createByCopy(geometry);
+            this.originalCompressedGeometry = null;
+	}
+    }
+
+    /**
+     * Creates the retained compressed geometry data from an NIO buffer.
+     * Data from the header is copied; the buffer is always accessed by
+     * reference.
+     *
+     * @param hdr the compressed geometry header
+     * @param geometry the compressed geometry
+     */
+    void createCompressedGeometry(CompressedGeometryData.Header hdr,
+				  ByteBuffer geometry) {
+
+	this.byReference = true ;
+	setHeader(hdr) ;
+
+	this.compressedGeometryBuffer = geometry ;
+    }
 
+    //
+    // Copy the header fields and bounds.
+    //
+    private void setHeader(CompressedGeometryData.Header hdr) {
 	if (hdr.lowerBound != null)
 	    this.geoBounds.setLower(hdr.lowerBound) ;
 
@@ -207,18 +247,6 @@ class CompressedGeometryRetained extends Object {
 
 	this.size = hdr.size ;
 	this.offset = hdr.start ;
-
-	if (byReference) {
-	    // Assume we can use the given reference, but maintain a second
-	    // reference in case a copy is later needed.
-	    this.compressedGeometry = geometry;
-            this.originalCompressedGeometry = geometry;
-	} else {
-	    // Copy the original data into a format that can be used by both
-	    // the software and native hardware decompressors.
-	    createByCopy(geometry);
-            this.originalCompressedGeometry = null;
-	}
     }
 
     /**
@@ -271,7 +299,8 @@ class CompressedGeometryRetained extends Object {
     /**
      * Returns a reference to the original compressed geometry byte array,
      * which may have been copied even if by-reference semantics have been
-     * requested.  It will be null if byCopy is in effect.
+     * requested.  It will be null if byCopy is in effect or if the data is
+     * referenced from an NIO buffer.
      *
      * @return reference to array of bytes containing the compressed geometry.
      */
@@ -49,9 +49,6 @@ import com.sun.j3d.internal.ByteBufferWrapper;
 import com.sun.j3d.internal.DoubleBufferWrapper;
 import com.sun.j3d.internal.FloatBufferWrapper;
 import com.sun.j3d.utils.geometry.GeometryInfo;
-import java.util.Collection;
-import java.util.Iterator;
-import java.util.LinkedList;
 import javax.media.j3d.Appearance;
 import javax.media.j3d.Geometry;
 import javax.media.j3d.GeometryArray;
@@ -95,16 +92,12 @@ public class CompressionStream {
     // NOTE: For now, copies are made of all GeometryArray vertex components
     // even when by-reference access is available.
     //
-    // TODO: Retrofit all CompressionStreamElements and MeshBuffer to handle
-    // offsets to vertex data array references so that vertex components don't
-    // have to be copied.  New CompressionStreamElements could be defined to
-    // set the current array reference during the quantization pass, or the
-    // reference could be included in every CompressionStreamElement along
-    // with the data offsets.
+    // TODO: Retrofit MeshBuffer to handle offsets to vertex data array
+    // references so that vertex components don't have to be copied.
     //
     // TODO: Quantize on-the-fly when adding GeometryArray vertex data so that
-    // CompressionStreamElements don't need references to the original float,
-    // double, or byte data.  Quantization is currently a separate pass since
+    // the stream doesn't need copies of the original float, double, or byte
+    // data.  Quantization is currently a separate pass since
     // the 1st pass adds vertex data and gets the total object bounds, but
     // this can be computed by merging the bounds of each GeometryArray
     // compressed into a single object.  The 2nd pass quantization is still
@@ -112,14 +105,12 @@ public class CompressionStream {
     // example, apps that might use the addVertex() methods directly instead
     // of addGeometryArray().
     //
-    // TODO: To further optimize memory, create new subclasses of
-    // CompressionStream{Color, Normal} for bundled attributes and add them as
-    // explicit stream elements.  Then CompressionStreamVertex won't need to
-    // carry references to them.  This memory savings might be negated by the
-    // extra overhead of adding more elements to the stream, however.
-    //
-    // TODO: Keep the absolute quantized values in the mesh buffer mirror so
-    // that unmeshed CompressionStreamElements don't need to carry them.
+    // NOTE: The stream is not kept as a collection of element objects.
+    // Element types and their flags are packed into parallel byte and int
+    // arrays, and positions, colors, and normals into float arrays in stream
+    // order.  The quantization pass stores the quantized deltas of each of
+    // them in short arrays for the output pass, and the mesh buffer mirror
+    // keeps copies of the absolute quantized values of the pushed vertices.
     //
     // TODO: Support texture coordinate compression even though Level II is
     // not supported by any hardware decompressor on any graphics card.
@@ -375,8 +366,52 @@ public class CompressionStream {
     MeshBuffer meshBuffer = new MeshBuffer() ;
 
 
-    // Collection which holds the elements of this stream.
-    private Collection stream ;
+    // Types of the elements of this stream.
+    private static final byte VERTEX_ELEMENT = 0 ;
+    private static final byte COLOR_ELEMENT = 1 ;
+    private static final byte NORMAL_ELEMENT = 2 ;
+    private static final byte MESH_REFERENCE_ELEMENT = 3 ;
+    private static final byte POSITION_QUANT_ELEMENT = 4 ;
+    private static final byte COLOR_QUANT_ELEMENT = 5 ;
+    private static final byte NORMAL_QUANT_ELEMENT = 6 ;
+
+    // Set in the argument of a vertex element if a color is bundled with it.
+    private static final int BUNDLED_COLOR = 0x8 ;
+
+    // The elements of this stream.  The argument of a vertex holds its
+    // strip and mesh flags, that of a mesh reference its strip flag and
+    // mesh buffer index, that of a global color 1 if it has alpha, and that
+    // of a quantization element its value.
+    private byte elementTypes[] ;
+    private int elementArgs[] ;
+    private int elementCount ;
+
+    // Floating-point vertex positions, colors (with alpha, 0 for RGB
+    // colors), and normals, bundled or global, in stream order.  The
+    // number of positions is vertexCount.
+    float positionData[] ;
+    float colorData[] ;
+    float normalData[] ;
+    private int colorCount ;
+    private int normalCount ;
+
+    // Quantized deltas and packed length, shift, and absolute status of the
+    // positions, colors, and normals, set by the quantization pass.  The
+    // normal codes also hold the encoded sextant and octant.
+    short positionDeltas[] ;
+    short positionCodes[] ;
+    short colorDeltas[] ;
+    short colorCodes[] ;
+    short normalDeltas[] ;
+    int normalCodes[] ;
+
+    // Encoders for the geometric elements of this stream.
+    private CompressionStreamVertex vertexEncoder =
+	new CompressionStreamVertex() ;
+    private CompressionStreamColor colorEncoder =
+	new CompressionStreamColor() ;
+    private CompressionStreamNormal normalEncoder =
+	new CompressionStreamNormal() ;
 
     // True if preceding stream elements were colors or normals.  Used to flag
     // color and normal mesh buffer substitution when computing deltas during
@@ -395,7 +430,14 @@ public class CompressionStream {
 
     // Private constructor for common initializations.
     private CompressionStream() {
-	this.stream = new LinkedList() ;
+	elementTypes = new byte[256] ;
+	elementArgs = new int[256] ;
+	positionData = new float[3 * 256] ;
+	colorData = new float[4 * 16] ;
+	normalData = new float[3 * 16] ;
+	elementCount = 0 ;
+	colorCount = 0 ;
+	normalCount = 0 ;
 
 	byteCount = 0 ;
 	vertexCount = 0 ;
@@ -598,25 +640,81 @@ public class CompressionStream {
 	// Flag first position, color, and normal.
 	firstPosition = firstColor = firstNormal = true ;
 
+	// Allocate the quantized representations.
+	positionDeltas = new short[3 * vertexCount] ;
+	positionCodes = new short[vertexCount] ;
+	colorDeltas = new short[4 * colorCount] ;
+	colorCodes = new short[colorCount] ;
+	normalDeltas = new short[2 * normalCount] ;
+	normalCodes = new int[normalCount] ;
+
 	// Apply quantization.
-	Iterator i = stream.iterator() ;
-	while (i.hasNext()) {
-	    Object o = i.next() ;
-
-	    if (o instanceof CompressionStreamElement) {
-		((CompressionStreamElement)o).quantize(this, huffmanTable) ;
-
-		// Keep track of whether last two elements were colors or
-		// normals for mesh buffer component substitution semantics.
-		lastLastElementColor = lastElementColor ;
-		lastLastElementNormal = lastElementNormal ;
-		lastElementColor = lastElementNormal = false ;
-
-		if (o instanceof CompressionStreamColor)
-		    lastElementColor = true ;
-		else if (o instanceof CompressionStreamNormal)
-		    lastElementNormal = true ;
+	int v = 0, c = 0, n = 0 ;
+	for (int i = 0 ; i < elementCount ; i++) {
+	    int type = elementTypes[i] ;
+	    int arg = elementArgs[i] ;
+
+	    switch (type) {
+	    case VERTEX_ELEMENT:
+		vertexEncoder.quantize(this, huffmanTable, v++) ;
+
+		// Quantize any bundled color or normal.
+		vertexEncoder.color = null ;
+		vertexEncoder.normal = null ;
+		if ((arg & BUNDLED_COLOR) != 0) {
+		    colorEncoder.quantize(this, huffmanTable, c++, vertexColor4) ;
+		    vertexEncoder.color = colorEncoder ;
+		}
+		if (vertexNormals) {
+		    normalEncoder.quantize(this, huffmanTable, n++) ;
+		    vertexEncoder.normal = normalEncoder ;
+		}
+
+		// Push this vertex into the mesh buffer mirror, if necessary,
+		// so it can be retrieved for computing deltas when mesh buffer
+		// references are subsequently encountered.
+		if ((arg & 0x1) == MESH_PUSH)
+		    meshBuffer.push(vertexEncoder) ;
+		break ;
+
+	    case COLOR_ELEMENT:
+		colorEncoder.quantize(this, huffmanTable, c++, arg != 0) ;
+		break ;
+
+	    case NORMAL_ELEMENT:
+		normalEncoder.quantize(this, huffmanTable, n++) ;
+		break ;
+
+	    case MESH_REFERENCE_ELEMENT:
+		quantizeMeshReference(arg >> 2) ;
+		break ;
+
+	    case POSITION_QUANT_ELEMENT:
+		positionQuant = arg ;
+		positionQuantChanged = true ;
+
+		// Adjust range of unit cube scaling to match quantization.
+		scale = (2.0 / positionRangeMaximum) *
+		    (((double)((1 << (arg-1)) - 1))/((double)(1 << (arg-1)))) ;
+		break ;
+
+	    case COLOR_QUANT_ELEMENT:
+		colorQuant = arg ;
+		colorQuantChanged = true ;
+		break ;
+
+	    case NORMAL_QUANT_ELEMENT:
+		normalQuant = arg ;
+		normalQuantChanged = true ;
+		break ;
 	    }
+
+	    // Keep track of whether last two elements were colors or
+	    // normals for mesh buffer component substitution semantics.
+	    lastLastElementColor = lastElementColor ;
+	    lastLastElementNormal = lastElementNormal ;
+	    lastElementColor = (type == COLOR_ELEMENT) ;
+	    lastElementNormal = (type == NORMAL_ELEMENT) ;
 	}
 
 	// Compute the bounds in normalized coordinates.
@@ -667,12 +765,39 @@ public class CompressionStream {
 	huffmanTable.outputCommands(outputBuffer) ;
 
 	// Output each compression stream element's data.
-	Iterator i = stream.iterator() ;
-	while (i.hasNext()) {
-	    Object o = i.next() ;
-	    if (o instanceof CompressionStreamElement)
-		((CompressionStreamElement)o).outputCommand(huffmanTable,
-							    outputBuffer) ;
+	int v = 0, c = 0, n = 0 ;
+	for (int i = 0 ; i < elementCount ; i++) {
+	    int arg = elementArgs[i] ;
+
+	    switch (elementTypes[i]) {
+	    case VERTEX_ELEMENT:
+		vertexEncoder.outputCommand(huffmanTable, outputBuffer, this,
+					    v++, (arg >> 1) & 0x3, arg & 0x1) ;
+
+		// Output any normal and color subcommands.
+		if (vertexNormals)
+		    normalEncoder.outputSubcommand(huffmanTable, outputBuffer,
+						   this, n++) ;
+
+		if ((arg & BUNDLED_COLOR) != 0)
+		    colorEncoder.outputSubcommand(huffmanTable, outputBuffer,
+						  this, c++, vertexColor4) ;
+		break ;
+
+	    case COLOR_ELEMENT:
+		colorEncoder.outputCommand(huffmanTable, outputBuffer,
+					   this, c++, arg != 0) ;
+		break ;
+
+	    case NORMAL_ELEMENT:
+		normalEncoder.outputCommand(huffmanTable, outputBuffer,
+					    this, n++) ;
+		break ;
+
+	    case MESH_REFERENCE_ELEMENT:
+		outputMeshReference(outputBuffer, arg & 0x3, arg >> 2) ;
+		break ;
+	    }
 	}
 
 	// Finish the header-forwarding interleave and long-word align.
@@ -705,127 +830,137 @@ public class CompressionStream {
 	return meshReferenceCount ;
     }
 
-    /**
-     * Stream element that sets position quantization during quantize pass.
-     */
-    private class PositionQuant extends CompressionStreamElement {
-	int value ;
-
-	PositionQuant(int value) {
-	    this.value = value ;
-	}
-
-	void quantize(CompressionStream s, HuffmanTable t) {
-	    positionQuant = value ;
-	    positionQuantChanged = true ;
-
-	    // Adjust range of unit cube scaling to match quantization.
-	    scale = (2.0 / positionRangeMaximum) *
-		(((double)((1 << (value-1)) - 1))/((double)(1 << (value-1)))) ;
-	}
-
-	public String toString() {
-	    return "positionQuant: " + value ;
+    //
+    // Retrieve the vertex referenced by a mesh buffer reference from the
+    // mesh buffer mirror and set up the data needed for the next stream
+    // element to compute its deltas.
+    //
+    private void quantizeMeshReference(int meshIndex) {
+	CompressionStreamVertex v = meshBuffer.getVertex(meshIndex) ;
+	lastPosition[0] = v.xAbsolute ;
+	lastPosition[1] = v.yAbsolute ;
+	lastPosition[2] = v.zAbsolute ;
+
+	// Set up last color data if it exists and previous elements
+	// don't override it.
+	if (v.color != null && !lastElementColor &&
+	    !(lastElementNormal && lastLastElementColor)) {
+	    lastColor[0] = v.color.rAbsolute ;
+	    lastColor[1] = v.color.gAbsolute ;
+	    lastColor[2] = v.color.bAbsolute ;
+	    lastColor[3] = v.color.aAbsolute ;
+	}
+
+	// Set up last normal data if it exists and previous element
+	// doesn't override it.
+	if (v.normal != null && !lastElementNormal &&
+	    !(lastElementColor && lastLastElementNormal)) {
+	    lastSextant = v.normal.sextant ;
+	    lastOctant = v.normal.octant ;
+	    lastU = v.normal.uAbsolute ;
+	    lastV = v.normal.vAbsolute ;
+	    lastSpecialNormal = v.normal.specialNormal ;
 	}
     }
 
-    /**
-     * Stream element that sets normal quantization during quantize pass.
-     */
-    private class NormalQuant extends CompressionStreamElement {
-	int value ;
-
-	NormalQuant(int value) {
-	    this.value = value ;
-	}
-
-	void quantize(CompressionStream s, HuffmanTable t) {
-	    normalQuant = value ;
-	    normalQuantChanged = true ;
-	}
+    //
+    // Output a mesh buffer reference command.
+    //
+    private void outputMeshReference(CommandStream outputBuffer,
+				     int stripFlag, int meshIndex) {
+	int command = CommandStream.MESH_B_R ;
+	long data = stripFlag & 0x1 ;
 
-	public String toString() {
-	    return "normalQuant: " + value ;
-	}
+	command |= (((meshIndex & 0xf) << 1) | (stripFlag >> 1)) ;
+	outputBuffer.addCommand(command, 8, data, 1) ;
     }
 
-    /**
-     * Stream element that sets color quantization during quantize pass.
-     */
-    private class ColorQuant extends CompressionStreamElement {
-	int value ;
-
-	ColorQuant(int value) {
-	    this.value = value ;
-	}
-
-	void quantize(CompressionStream s, HuffmanTable t) {
-	    colorQuant = value ;
-	    colorQuantChanged = true ;
-	}
-
-	public String toString() {
-	    return "colorQuant: " + value ;
-	}
+    //
+    // Append an element to the end of this stream.
+    //
+    private void addElement(byte type, int arg) {
+	if (elementCount == elementTypes.length) {
+	    byte types[] = new byte[2 * elementCount] ;
+	    int args[] = new int[2 * elementCount] ;
+	    System.arraycopy(elementTypes, 0, types, 0, elementCount) ;
+	    System.arraycopy(elementArgs, 0, args, 0, elementCount) ;
+	    elementTypes = types ;
+	    elementArgs = args ;
+	}
+	elementTypes[elementCount] = type ;
+	elementArgs[elementCount] = arg ;
+	elementCount++ ;
     }
 
-    /**
-     * Stream element that references the mesh buffer.
-     */
-    private class MeshReference extends CompressionStreamElement {
-	int stripFlag, meshIndex ;
+    //
+    // Append a vertex element and copy its position and any bundled normal.
+    // A bundled color must be appended by the caller right after this.
+    //
+    private void addVertexElement(Point3f p, Vector3f n, int stripFlag,
+				  int meshFlag, boolean bundledColor) {
+
+	addElement(VERTEX_ELEMENT, (stripFlag << 1) | meshFlag |
+		   (bundledColor? BUNDLED_COLOR : 0)) ;
 
-	MeshReference(int stripFlag, int meshIndex) {
-	    this.stripFlag = stripFlag ;
-	    this.meshIndex = meshIndex ;
-	    meshReferenceCount++ ;
+	if (3 * vertexCount == positionData.length) {
+	    float positions[] = new float[2 * positionData.length] ;
+	    System.arraycopy(positionData, 0, positions, 0, 3 * vertexCount) ;
+	    positionData = positions ;
 	}
+	positionData[3 * vertexCount + 0] = p.x ;
+	positionData[3 * vertexCount + 1] = p.y ;
+	positionData[3 * vertexCount + 2] = p.z ;
 
-	void quantize(CompressionStream s, HuffmanTable t) {
-	    // Retrieve the vertex from the mesh buffer mirror and set up the
-	    // data needed for the next stream element to compute its deltas.
-	    CompressionStreamVertex v = meshBuffer.getVertex(meshIndex) ;
-	    lastPosition[0] = v.xAbsolute ;
-	    lastPosition[1] = v.yAbsolute ;
-	    lastPosition[2] = v.zAbsolute ;
-
-	    // Set up last color data if it exists and previous elements
-	    // don't override it.
-	    if (v.color != null && !lastElementColor &&
-		!(lastElementNormal && lastLastElementColor)) {
-		lastColor[0] = v.color.rAbsolute ;
-		lastColor[1] = v.color.gAbsolute ;
-		lastColor[2] = v.color.bAbsolute ;
-		lastColor[3] = v.color.aAbsolute ;
-	    }
+	byteCount += 12 ;
+	vertexCount++ ;
 
-	    // Set up last normal data if it exists and previous element
-	    // doesn't override it.
-	    if (v.normal != null && !lastElementNormal &&
-		!(lastElementColor && lastLastElementNormal)) {
-		lastSextant = v.normal.sextant ;
-		lastOctant = v.normal.octant ;
-		lastU = v.normal.uAbsolute ;
-		lastV = v.normal.vAbsolute ;
-		lastSpecialNormal = v.normal.specialNormal ;
-	    }
-	}
+	if (p.x < mcBounds[0].x) mcBounds[0].x = p.x ;
+	if (p.y < mcBounds[0].y) mcBounds[0].y = p.y ;
+	if (p.z < mcBounds[0].z) mcBounds[0].z = p.z ;
 
-	void outputCommand(HuffmanTable t, CommandStream outputBuffer) {
-	    int command = CommandStream.MESH_B_R ;
-	    long data = stripFlag & 0x1 ;
+	if (p.x > mcBounds[1].x) mcBounds[1].x = p.x ;
+	if (p.y > mcBounds[1].y) mcBounds[1].y = p.y ;
+	if (p.z > mcBounds[1].z) mcBounds[1].z = p.z ;
 
-	    command |= (((meshIndex & 0xf) << 1) | (stripFlag >> 1)) ;
-	    outputBuffer.addCommand(command, 8, data, 1) ;
-	}
+	if (vertexNormals)
+	    addNormalData(n) ;
+    }
 
-	public String toString() {
-	    return
-		"meshReference: stripFlag " + stripFlag +
-		" meshIndex " + meshIndex ;
-	}
+    //
+    // Copy color data to the end of the color array.
+    //
+    private void addColorData(float r, float g, float b, float a,
+			      boolean alpha) {
+	if (4 * colorCount == colorData.length) {
+	    float colors[] = new float[2 * colorData.length] ;
+	    System.arraycopy(colorData, 0, colors, 0, 4 * colorCount) ;
+	    colorData = colors ;
+	}
+	colorData[4 * colorCount + 0] = r ;
+	colorData[4 * colorCount + 1] = g ;
+	colorData[4 * colorCount + 2] = b ;
+	colorData[4 * colorCount + 3] = a ;
+	colorCount++ ;
+
+	byteCount += (alpha? 16 : 12) ;
     }
 
+    //
+    // Copy normal data to the end of the normal array.
+    //
+    private void addNormalData(Vector3f n) {
+	if (3 * normalCount == normalData.length) {
+	    float normals[] = new float[2 * normalData.length] ;
+	    System.arraycopy(normalData, 0, normals, 0, 3 * normalCount) ;
+	    normalData = normals ;
+	}
+	normalData[3 * normalCount + 0] = n.x ;
+	normalData[3 * normalCount + 1] = n.y ;
+	normalData[3 * normalCount + 2] = n.z ;
+	normalCount++ ;
+
+	byteCount += 12 ;
+    }
 
     /**
      * Copy vertex data and add it to the end of this stream.
@@ -834,9 +969,7 @@ public class CompressionStream {
      * REPLACE_OLDEST, or REPLACE_MIDDLE
      */
     void addVertex(Point3f pos, int stripFlag) {
-	stream.add(new CompressionStreamVertex(this, pos,
-					       (Vector3f)null, (Color3f)null,
-					       stripFlag, NO_MESH_PUSH)) ;
+	addVertex(pos, (Vector3f)null, (Color3f)null, stripFlag, NO_MESH_PUSH) ;
     }
 
     /**
@@ -847,8 +980,7 @@ public class CompressionStream {
      * REPLACE_OLDEST, or REPLACE_MIDDLE
      */
     void addVertex(Point3f pos, Vector3f norm, int stripFlag) {
-	stream.add(new CompressionStreamVertex
-	    (this, pos, norm, (Color3f)null, stripFlag, NO_MESH_PUSH)) ;
+	addVertex(pos, norm, (Color3f)null, stripFlag, NO_MESH_PUSH) ;
     }
 
     /**
@@ -859,8 +991,7 @@ public class CompressionStream {
      * REPLACE_OLDEST, or REPLACE_MIDDLE
      */
     void addVertex(Point3f pos, Color3f color, int stripFlag) {
-	stream.add(new CompressionStreamVertex
-	    (this, pos, (Vector3f)null, color, stripFlag, NO_MESH_PUSH)) ;
+	addVertex(pos, (Vector3f)null, color, stripFlag, NO_MESH_PUSH) ;
     }
 
     /**
@@ -871,8 +1002,7 @@ public class CompressionStream {
      * REPLACE_OLDEST, or REPLACE_MIDDLE
      */
     void addVertex(Point3f pos, Color4f color, int stripFlag) {
-	stream.add(new CompressionStreamVertex
-	    (this, pos, (Vector3f)null, color, stripFlag, NO_MESH_PUSH)) ;
+	addVertex(pos, (Vector3f)null, color, stripFlag, NO_MESH_PUSH) ;
     }
 
     /**
@@ -885,8 +1015,7 @@ public class CompressionStream {
      */
     void addVertex(Point3f pos, Vector3f norm, Color3f color,
 			  int stripFlag) {
-	stream.add(new CompressionStreamVertex
-	    (this, pos, norm, color, stripFlag, NO_MESH_PUSH)) ;
+	addVertex(pos, norm, color, stripFlag, NO_MESH_PUSH) ;
     }
 
     /**
@@ -899,8 +1028,7 @@ public class CompressionStream {
      */
     void addVertex(Point3f pos, Vector3f norm, Color4f color,
 			  int stripFlag) {
-	stream.add(new CompressionStreamVertex
-	    (this, pos, norm, color, stripFlag, NO_MESH_PUSH)) ;
+	addVertex(pos, norm, color, stripFlag, NO_MESH_PUSH) ;
     }
 
     /**
@@ -911,8 +1039,7 @@ public class CompressionStream {
      * @param meshFlag if MESH_PUSH the vertex is pushed into the mesh buffer
      */
     void addVertex(Point3f pos, int stripFlag, int meshFlag) {
-	stream.add(new CompressionStreamVertex
-	    (this, pos, (Vector3f)null, (Color3f)null, stripFlag, meshFlag)) ;
+	addVertex(pos, (Vector3f)null, (Color3f)null, stripFlag, meshFlag) ;
     }
 
     /**
@@ -925,8 +1052,7 @@ public class CompressionStream {
      */
     void addVertex(Point3f pos, Vector3f norm,
 			  int stripFlag, int meshFlag) {
-	stream.add(new CompressionStreamVertex
-	    (this, pos, norm, (Color3f)null, stripFlag, meshFlag)) ;
+	addVertex(pos, norm, (Color3f)null, stripFlag, meshFlag) ;
     }
 
     /**
@@ -939,8 +1065,7 @@ public class CompressionStream {
      */
     void addVertex(Point3f pos, Color3f color,
 			  int stripFlag, int meshFlag) {
-	stream.add(new CompressionStreamVertex
-	    (this, pos, (Vector3f)null, color, stripFlag, meshFlag)) ;
+	addVertex(pos, (Vector3f)null, color, stripFlag, meshFlag) ;
     }
 
     /**
@@ -953,8 +1078,7 @@ public class CompressionStream {
      */
     void addVertex(Point3f pos, Color4f color,
 			  int stripFlag, int meshFlag) {
-	stream.add(new CompressionStreamVertex
-	    (this, pos, (Vector3f)null, color, stripFlag, meshFlag)) ;
+	addVertex(pos, (Vector3f)null, color, stripFlag, meshFlag) ;
     }
 
     /**
@@ -968,8 +1092,9 @@ public class CompressionStream {
      */
     void addVertex(Point3f pos, Vector3f norm, Color3f color,
 			  int stripFlag, int meshFlag) {
-	stream.add(new CompressionStreamVertex
-	    (this, pos, norm, color, stripFlag, meshFlag)) ;
+	addVertexElement(pos, norm, stripFlag, meshFlag, vertexColor3) ;
+	if (vertexColor3)
+	    addColorData(color.x, color.y, color.z, 0.0f, false) ;
     }
 
     /**
@@ -983,8 +1108,9 @@ public class CompressionStream {
      */
     void addVertex(Point3f pos, Vector3f norm, Color4f color,
 			  int stripFlag, int meshFlag) {
-	stream.add(new CompressionStreamVertex
-	    (this, pos, norm, color, stripFlag, meshFlag)) ;
+	addVertexElement(pos, norm, stripFlag, meshFlag, vertexColor4) ;
+	if (vertexColor4)
+	    addColorData(color.x, color.y, color.z, color.w, true) ;
     }
 
     /**
@@ -1000,12 +1126,10 @@ public class CompressionStream {
     void addVertex(Point3f pos, Vector3f norm,
 		   Object color, int stripFlag, int meshFlag) {
 
-	if (vertexColor3) 
-	    stream.add(new CompressionStreamVertex
-		       (this, pos, norm, (Color3f)color, stripFlag, meshFlag)) ;
+	if (vertexColor3)
+	    addVertex(pos, norm, (Color3f)color, stripFlag, meshFlag) ;
 	else
-	    stream.add(new CompressionStreamVertex
-		       (this, pos, norm, (Color4f)color, stripFlag, meshFlag)) ;
+	    addVertex(pos, norm, (Color4f)color, stripFlag, meshFlag) ;
     }
 
     /**
@@ -1015,7 +1139,8 @@ public class CompressionStream {
      * @param meshIndex index of vertex to retrieve from the mesh buffer
      */
     void addMeshReference(int stripFlag, int meshIndex) {
-	stream.add(new MeshReference(stripFlag, meshIndex)) ;
+	addElement(MESH_REFERENCE_ELEMENT, (meshIndex << 2) | stripFlag) ;
+	meshReferenceCount++ ;
     }
 
     /**
@@ -1023,7 +1148,8 @@ public class CompressionStream {
      * state change that applies to all subsequent vertices.
      */
     void addColor(Color3f c3f) {
-	stream.add(new CompressionStreamColor(this, c3f)) ;
+	addElement(COLOR_ELEMENT, 0) ;
+	addColorData(c3f.x, c3f.y, c3f.z, 0.0f, false) ;
     }
 
     /**
@@ -1031,7 +1157,8 @@ public class CompressionStream {
      * state change that applies to all subsequent vertices.
      */
     void addColor(Color4f c4f) {
-	stream.add(new CompressionStreamColor(this, c4f)) ;
+	addElement(COLOR_ELEMENT, 1) ;
+	addColorData(c4f.x, c4f.y, c4f.z, c4f.w, true) ;
     }
 
     /**
@@ -1039,7 +1166,8 @@ public class CompressionStream {
      * state change that applies to all subsequent vertices.
      */
     void addNormal(Vector3f n) {
-	stream.add(new CompressionStreamNormal(this, n)) ;
+	addElement(NORMAL_ELEMENT, 0) ;
+	addNormalData(n) ;
     }
 
     /**
@@ -1050,7 +1178,7 @@ public class CompressionStream {
      * and Z components, ranging from 1 to 16 with a default of 16
      */
     void addPositionQuantization(int value) {
-	stream.add(new PositionQuant(value)) ;
+	addElement(POSITION_QUANT_ELEMENT, value) ;
     }
 
     /**
@@ -1061,7 +1189,7 @@ public class CompressionStream {
      * alpha components, ranging from 2 to 16 with a default of 9
      */
     void addColorQuantization(int value) {
-	stream.add(new ColorQuant(value)) ;
+	addElement(COLOR_QUANT_ELEMENT, value) ;
     }
 
     /**
@@ -1073,7 +1201,7 @@ public class CompressionStream {
      * 6 with a default of 6
      */
     void addNormalQuantization(int value) {
-	stream.add(new NormalQuant(value)) ;
+	addElement(NORMAL_QUANT_ELEMENT, value) ;
     }
 
     /**
@@ -2016,7 +2144,7 @@ public class CompressionStream {
      * Print the stream to standard output.
      */
     void print() {
-	System.out.println("\nstream has " + stream.size() + " entries") ;
+	System.out.println("\nstream has " + elementCount + " entries") ;
 	System.out.println("uncompressed size " + byteCount + " bytes") ;
 	System.out.println("upper position bound: " + mcBounds[1].toString()) ;
 	System.out.println("lower position bound: " + mcBounds[0].toString()) ;
@@ -2026,12 +2154,59 @@ public class CompressionStream {
 			   ((float)center[2]) + ")\n" +
 			   "scale " + ((float)scale) + "\n") ;
 
-	Iterator i = stream.iterator() ;
-	while (i.hasNext()) {
-	    System.out.println(i.next().toString() + "\n") ;
+	int v = 0, c = 0, n = 0 ;
+	for (int i = 0 ; i < elementCount ; i++) {
+	    int arg = elementArgs[i] ;
+	    String s = null ;
+
+	    switch (elementTypes[i]) {
+	    case VERTEX_ELEMENT:
+		s = "position: " + positionData[3*v + 0] + " " +
+		    positionData[3*v + 1] + " " + positionData[3*v + 2] + "\n" +
+		    "strip flag " + ((arg >> 1) & 0x3) +
+		    " mesh flag " + (arg & 0x1) ;
+		v++ ;
+		if ((arg & BUNDLED_COLOR) != 0)
+		    s += "\n\n " + colorString(c++, vertexColor4) ;
+		if (vertexNormals)
+		    s += "\n\n " + normalString(n++) ;
+		break ;
+	    case COLOR_ELEMENT:
+		s = colorString(c++, arg != 0) ;
+		break ;
+	    case NORMAL_ELEMENT:
+		s = normalString(n++) ;
+		break ;
+	    case MESH_REFERENCE_ELEMENT:
+		s = "meshReference: stripFlag " + (arg & 0x3) +
+		    " meshIndex " + (arg >> 2) ;
+		break ;
+	    case POSITION_QUANT_ELEMENT:
+		s = "positionQuant: " + arg ;
+		break ;
+	    case COLOR_QUANT_ELEMENT:
+		s = "colorQuant: " + arg ;
+		break ;
+	    case NORMAL_QUANT_ELEMENT:
+		s = "normalQuant: " + arg ;
+		break ;
+	    }
+	    System.out.println(s + "\n") ;
 	}
     }
 
+    private String colorString(int c, boolean alpha) {
+	return
+	    "color: " + colorData[4*c + 0] + " " + colorData[4*c + 1] + " " +
+	    colorData[4*c + 2] + (alpha? (" " + colorData[4*c + 3]) : "") ;
+    }
+
+    private String normalString(int n) {
+	return
+	    "normal: " + normalData[3*n + 0] + " " + normalData[3*n + 1] +
+	    " " + normalData[3*n + 2] ;
+    }
+
 
     ////////////////////////////////////////////////////////////////////////////
     //									      //
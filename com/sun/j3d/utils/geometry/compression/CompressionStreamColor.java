@@ -44,54 +44,19 @@
 
 package com.sun.j3d.utils.geometry.compression;
 
-import javax.vecmath.Color3f;
-import javax.vecmath.Color4f;
-
 /**
- * This class represents a color in a compression stream. It maintains both
- * floating-point and quantized representations.  This color may be bundled
- * with a vertex or exist separately as a global color.
+ * This class quantizes and encodes the colors of a compression stream.  The
+ * floating-point colors are held in the packed arrays of the stream and
+ * indexed by color number.  A color may be bundled with a vertex or exist
+ * separately as a global color.
  */
 class CompressionStreamColor extends CompressionStreamElement {
     private int R, G, B, A ;
     private boolean color3 ;
     private boolean color4 ;
-    private float colorR, colorG, colorB, colorA ;
 	    
     int rAbsolute, gAbsolute, bAbsolute, aAbsolute ;
 
-    /**
-     * Create a CompressionStreamColor.
-     *
-     * @param stream CompressionStream associated with this element
-     * @param color3 floating-point representation to be encoded
-     */
-    CompressionStreamColor(CompressionStream stream, Color3f c3) {
-	this.color4 = false ;
-	this.color3 = true ;
-	colorR = c3.x ;
-	colorG = c3.y ;
-	colorB = c3.z ;
-	colorA = 0.0f ;
-	stream.byteCount += 12 ;
-    }
-
-    /**
-     * Create a CompressionStreamColor.
-     *
-     * @param stream CompressionStream associated with this element
-     * @param color4 floating-point representation to be encoded
-     */
-    CompressionStreamColor(CompressionStream stream, Color4f c4) {
-	this.color3 = false ;
-	this.color4 = true ;
-	colorR = c4.x ;
-	colorG = c4.y ;
-	colorB = c4.z ;
-	colorA = c4.w ;
-	stream.byteCount += 16 ;
-    }
-
     /**
      * Quantize a floating point color to fixed point integer components of
      * the specified number of bits.  The bit length can range from a maximum
@@ -106,8 +71,14 @@ class CompressionStreamColor extends CompressionStreamElement {
      * @param stream CompressionStream associated with this element
      * @param table HuffmanTable for collecting data about the quantized
      * representation of this element
+     * @param index number of the color in the stream
+     * @param alpha true if the color has an alpha component
      */
-    void quantize(CompressionStream stream, HuffmanTable huffmanTable) {
+    void quantize(CompressionStream stream, HuffmanTable huffmanTable,
+		  int index, boolean alpha) {
+	color3 = !alpha ;
+	color4 = alpha ;
+
 	// Clamp quantization.
 	int quant = 
 	    (stream.colorQuant < 2? 2 :
@@ -125,16 +96,17 @@ class CompressionStreamColor extends CompressionStreamElement {
 	}
 
 	// Convert the floating point position to s.15 2's complement.
+	float[] colors = stream.colorData ;
 	if (color3) {
-	    R = (int)(colorR * 32768.0) ;
-	    G = (int)(colorG * 32768.0) ;
-	    B = (int)(colorB * 32768.0) ;
+	    R = (int)(colors[4*index + 0] * 32768.0) ;
+	    G = (int)(colors[4*index + 1] * 32768.0) ;
+	    B = (int)(colors[4*index + 2] * 32768.0) ;
 	    A = 0 ;
 	} else if (color4) {
-	    R = (int)(colorR * 32768.0) ;
-	    G = (int)(colorG * 32768.0) ;
-	    B = (int)(colorB * 32768.0) ;
-	    A = (int)(colorA * 32768.0) ;
+	    R = (int)(colors[4*index + 0] * 32768.0) ;
+	    G = (int)(colors[4*index + 1] * 32768.0) ;
+	    B = (int)(colors[4*index + 2] * 32768.0) ;
+	    A = (int)(colors[4*index + 3] * 32768.0) ;
 	}
 
 	// Clamp color components.
@@ -180,6 +152,14 @@ class CompressionStreamColor extends CompressionStreamElement {
 	
 	// Add this element to the Huffman table associated with this stream.
 	huffmanTable.addColorEntry(length, shift, absolute) ;
+
+	// Save the quantized representation for the output pass.  Deltas of
+	// clamped components always fit in 16 bits.
+	stream.colorDeltas[4*index + 0] = (short)R ;
+	stream.colorDeltas[4*index + 1] = (short)G ;
+	stream.colorDeltas[4*index + 2] = (short)B ;
+	stream.colorDeltas[4*index + 3] = (short)A ;
+	stream.colorCodes[index] = (short)getCode() ;
     }
 
     /**
@@ -188,8 +168,13 @@ class CompressionStreamColor extends CompressionStreamElement {
      * @param table HuffmanTable mapping quantized representations to
      * compressed encodings
      * @param output CommandStream for collecting compressed output
+     * @param stream CompressionStream associated with this element
+     * @param index number of the color in the stream
+     * @param alpha true if the color has an alpha component
      */
-    void outputCommand(HuffmanTable table, CommandStream output) {
+    void outputCommand(HuffmanTable table, CommandStream output,
+		       CompressionStream stream, int index, boolean alpha) {
+	load(stream, index, alpha) ;
 	outputColor(table, output, CommandStream.SET_COLOR, 8) ;
     }
 
@@ -199,12 +184,29 @@ class CompressionStreamColor extends CompressionStreamElement {
      * @param table HuffmanTable mapping quantized representations to
      * compressed encodings
      * @param output CommandStream for collecting compressed output
+     * @param stream CompressionStream associated with this element
+     * @param index number of the color in the stream
+     * @param alpha true if the color has an alpha component
      */
-    void outputSubcommand(HuffmanTable table, CommandStream output) {
-
+    void outputSubcommand(HuffmanTable table, CommandStream output,
+			  CompressionStream stream, int index, boolean alpha) {
+	load(stream, index, alpha) ;
 	outputColor(table, output, 0, 6) ;
     }
 
+    //
+    // Retrieve the quantized representation saved by quantize().
+    //
+    private void load(CompressionStream stream, int index, boolean alpha) {
+	color3 = !alpha ;
+	color4 = alpha ;
+	R = stream.colorDeltas[4*index + 0] ;
+	G = stream.colorDeltas[4*index + 1] ;
+	B = stream.colorDeltas[4*index + 2] ;
+	A = stream.colorDeltas[4*index + 3] ;
+	setCode(stream.colorCodes[index]) ;
+    }
+
     //
     // Output the final compressed bits to the output command stream.  
     //
@@ -258,15 +260,15 @@ class CompressionStreamColor extends CompressionStreamElement {
 			  colorSubcommand, subcommandLength)  ;
     }
 
-    public String toString() {
-	String d = absolute? "" : "delta " ;
-	String c = (colorR + " " + colorG + " " + colorB +
-		    (color4? (" " + colorA): "")) ;
-
-	return
-	    "color: " + c + "\n" +
-	    " fixed point " + d + + R + " " + G + " " + B + "\n" +
-	    " length " + length + " shift " + shift +
-	    (absolute? " absolute" : " relative") ;
+    /**
+     * Copy the absolute quantized color of the given instance.  Used by the
+     * mesh buffer mirror.
+     */
+    void copyAbsolute(CompressionStreamColor c) {
+	rAbsolute = c.rAbsolute ;
+	gAbsolute = c.gAbsolute ;
+	bAbsolute = c.bAbsolute ;
+	aAbsolute = c.aAbsolute ;
     }
+
 }
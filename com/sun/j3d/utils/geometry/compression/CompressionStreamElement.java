@@ -45,7 +45,10 @@
 package com.sun.j3d.utils.geometry.compression;
 
 /**
- * Instances of this class are used as elements in a CompressionStream.
+ * Instances of this class are used to quantize and encode the elements of a
+ * CompressionStream.  The element data itself is kept in the packed arrays
+ * of the stream, so a single instance of each subclass is reused for all
+ * elements of its kind.
  * @see CompressionStream
  */
 abstract class CompressionStreamElement {
@@ -121,24 +124,23 @@ abstract class CompressionStreamElement {
 
 
     /**
-     * Computes the quantized representation of this stream element.
-     *
-     * @param stream CompressionStream associated with this element
-     * @param table HuffmanTable for collecting data about the quantized
-     * representation of this element
+     * Returns the length, shift, and absolute status of the current
+     * element packed into the low 10 bits of an integer, for storage in the
+     * packed arrays of a CompressionStream between the quantization and
+     * output passes.
      */
-    abstract void quantize(CompressionStream stream, HuffmanTable table) ;
+    final int getCode() {
+	return (absolute? 0x200 : 0) | (length << 4) | shift ;
+    }
 
     /**
-     * Outputs the compressed bits representing this stream element.
-     * Some instances of CompressionStreamElement don't require an
-     * implementation and will inherit the stub provided here.
-     *
-     * @param table HuffmanTable mapping quantized representations to
-     * compressed encodings
-     * @param output CommandStream for collecting compressed output
+     * Sets the length, shift, and absolute status of the current element
+     * from a value returned by getCode().
      */
-    void outputCommand(HuffmanTable table, CommandStream output) {
+    final void setCode(int code) {
+	shift = code & 0xf ;
+	length = (code >> 4) & 0x1f ;
+	absolute = (code & 0x200) != 0 ;
     }
 
     /**
@@ -44,34 +44,19 @@
 
 package com.sun.j3d.utils.geometry.compression;
 
-import javax.vecmath.Vector3f;
-
 /**
- * This class represents a normal in a compression stream. It maintains both
- * floating-point and quantized representations.  This normal may be bundled
- * with a vertex or exist separately as a global normal.
+ * This class quantizes and encodes the normals of a compression stream.  The
+ * floating-point normals are held in the packed arrays of the stream and
+ * indexed by normal number.  A normal may be bundled with a vertex or exist
+ * separately as a global normal.
  */
 class CompressionStreamNormal extends CompressionStreamElement {
     private int u, v ;
     private int specialOctant, specialSextant ;
-    private float normalX, normalY, normalZ ;
 
     int octant, sextant ;
     boolean specialNormal ;
     int uAbsolute, vAbsolute ;
-	    
-    /**
-     * Create a CompressionStreamNormal.
-     *
-     * @param stream CompressionStream associated with this element
-     * @param normal floating-point representation to be encoded
-     */
-    CompressionStreamNormal(CompressionStream stream, Vector3f normal) {
-	this.normalX = normal.x ;
-	this.normalY = normal.y ;
-	this.normalZ = normal.z ;
-	stream.byteCount += 12 ;
-    }
 
     //
     // Normal Encoding Parameterization
@@ -330,8 +315,10 @@ class CompressionStreamNormal extends CompressionStreamElement {
      * @param stream CompressionStream associated with this element
      * @param table HuffmanTable for collecting data about the quantized
      * representation of this element
+     * @param index number of the normal in the stream
      */
-    void quantize(CompressionStream stream, HuffmanTable huffmanTable) {
+    void quantize(CompressionStream stream, HuffmanTable huffmanTable,
+		  int index) {
 	double nx, ny, nz, t ;
 
 	// Clamp UV quantization.
@@ -339,12 +326,14 @@ class CompressionStreamNormal extends CompressionStreamElement {
 	    (stream.normalQuant < 0? 0 :
 	     (stream.normalQuant > 6? 6 : stream.normalQuant)) ;
 
-	nx = normalX ;
-	ny = normalY ;
-	nz = normalZ ;
+	nx = stream.normalData[3*index + 0] ;
+	ny = stream.normalData[3*index + 1] ;
+	nz = stream.normalData[3*index + 2] ;
 
 	octant = 0 ;
 	sextant = 0 ;
+	specialOctant = 0 ;
+	specialSextant = 0 ;
 	u = 0 ;
 	v = 0 ;
 
@@ -567,6 +556,17 @@ class CompressionStreamNormal extends CompressionStreamElement {
 	// Copy and retain absolute normal for mesh buffer lookup.
 	uAbsolute = ii ;
 	vAbsolute = jj ;
+
+	// Save the quantized representation for the output pass.  Only the
+	// sextant and octant actually encoded are needed.
+	stream.normalDeltas[2*index + 0] = (short)u ;
+	stream.normalDeltas[2*index + 1] = (short)v ;
+	if (specialNormal)
+	    stream.normalCodes[index] =
+		getCode() | (specialSextant << 10) | (specialOctant << 13) ;
+	else
+	    stream.normalCodes[index] =
+		getCode() | (sextant << 10) | (octant << 13) ;
     }
 
     /**
@@ -575,8 +575,12 @@ class CompressionStreamNormal extends CompressionStreamElement {
      * @param table HuffmanTable mapping quantized representations to
      * compressed encodings
      * @param output CommandStream for collecting compressed output
+     * @param stream CompressionStream associated with this element
+     * @param index number of the normal in the stream
      */
-    void outputCommand(HuffmanTable table, CommandStream output) {
+    void outputCommand(HuffmanTable table, CommandStream output,
+		       CompressionStream stream, int index) {
+	load(stream, index) ;
 	outputNormal(table, output, CommandStream.SET_NORM, 8) ;
     }
 
@@ -586,11 +590,41 @@ class CompressionStreamNormal extends CompressionStreamElement {
      * @param table HuffmanTable mapping quantized representations to
      * compressed encodings
      * @param output CommandStream for collecting compressed output
+     * @param stream CompressionStream associated with this element
+     * @param index number of the normal in the stream
      */
-    void outputSubcommand(HuffmanTable table, CommandStream output) {
+    void outputSubcommand(HuffmanTable table, CommandStream output,
+			  CompressionStream stream, int index) {
+	load(stream, index) ;
 	outputNormal(table, output, 0, 6) ;
     }
 
+    //
+    // Retrieve the quantized representation saved by quantize().  The
+    // encoded sextant and octant are restored as a general encoding.
+    //
+    private void load(CompressionStream stream, int index) {
+	int code = stream.normalCodes[index] ;
+	u = stream.normalDeltas[2*index + 0] ;
+	v = stream.normalDeltas[2*index + 1] ;
+	setCode(code) ;
+	sextant = (code >> 10) & 0x7 ;
+	octant = (code >> 13) & 0x7 ;
+	specialNormal = false ;
+    }
+
+    /**
+     * Copy the absolute quantized normal of the given instance.  Used by the
+     * mesh buffer mirror.
+     */
+    void copyAbsolute(CompressionStreamNormal n) {
+	sextant = n.sextant ;
+	octant = n.octant ;
+	uAbsolute = n.uAbsolute ;
+	vAbsolute = n.vAbsolute ;
+	specialNormal = n.specialNormal ;
+    }
+
     //
     // Output the final compressed bits to the output command stream.
     //
@@ -653,22 +687,4 @@ class CompressionStreamNormal extends CompressionStreamElement {
 			  normalSubcommand, subcommandLength)  ;
     }
 
-    public String toString() {
-	String fixed ;
-
-	if (specialNormal)
-	    fixed = " special normal, sextant " + specialSextant +
-		    " octant " + specialOctant ;
-
-	else if (absolute)
-	    fixed = " sextant " + sextant + " octant " + octant +
-		    " u " + u + " v " + v ;
-	else
-	    fixed = " du " + u + " dv " + v ;
-
-	return
-	    "normal: " + normalX + " " + normalY + " " + normalZ + "\n"
-	    + fixed + "\n" + " length " + length + " shift " + shift +
-	    (absolute? " absolute" : " relative") ;
-    }
 }
@@ -44,107 +44,25 @@
 
 package com.sun.j3d.utils.geometry.compression;
 
-import javax.vecmath.Color3f;
-import javax.vecmath.Color4f;
-import javax.vecmath.Point3f;
-import javax.vecmath.Vector3f;
-
 /**
- * This class represents a vertex in a compression stream.  It maintains both
- * floating-point and quantized representations of the vertex position along
- * with meshing and vertex replacement flags for line and surface
- * primitives. If normals or colors are bundled with geometry vertices then
- * instances of this class will also contain references to normal or color
- * stream elements.
+ * This class quantizes and encodes the vertices of a compression stream.
+ * The floating-point positions are held in the packed arrays of the stream
+ * and indexed by vertex number; this class computes their quantized
+ * representations and retains the absolute quantized position of the
+ * current vertex for the mesh buffer mirror.  If normals or colors are
+ * bundled with geometry vertices then the encoders of the bundled normal or
+ * color are referenced while the vertex is being processed.
  */
 class CompressionStreamVertex extends CompressionStreamElement {
     private int X, Y, Z ;
-    private int meshFlag ;
-    private int stripFlag ;
-    private float floatX, floatY, floatZ ;
 
     int xAbsolute, yAbsolute, zAbsolute ;
     CompressionStreamColor color = null ;
     CompressionStreamNormal normal = null ;
-	    
-    /**
-     * Create a CompressionStreamVertex with the given parameters.
-     *
-     * @param stream CompressionStream associated with this vertex
-     * @param p position
-     * @param n normal bundled with this vertex or null if not bundled
-     * @param c color bundled with this vertex or null if not bundled
-     * @param stripFlag CompressionStream.RESTART,
-     * CompressionStream.REPLACE_OLDEST, or CompressionStream.REPLACE_MIDDLE
-     * @param meshFlag CompressionStream.MESH_PUSH or
-     * CompressionStream.NO_MESH_PUSH
-     */
-    CompressionStreamVertex(CompressionStream stream,
-			    Point3f p, Vector3f n, Color3f c,
-			    int stripFlag, int meshFlag) {
-
-	this(stream, p, n, stripFlag, meshFlag) ;
-
-	if (stream.vertexColor3)
-	    color = new CompressionStreamColor(stream, c) ;
-    }
 
-    /**
-     * Create a CompressionStreamVertex with the given parameters.
-     *
-     * @param stream CompressionStream associated with this vertex
-     * @param p position
-     * @param n normal bundled with this vertex or null if not bundled
-     * @param c color bundled with this vertex or null if not bundled
-     * @param stripFlag CompressionStream.RESTART,
-     * CompressionStream.REPLACE_OLDEST, or CompressionStream.REPLACE_MIDDLE
-     * @param meshFlag CompressionStream.MESH_PUSH or
-     * CompressionStream.NO_MESH_PUSH
-     */
-    CompressionStreamVertex(CompressionStream stream,
-			    Point3f p, Vector3f n, Color4f c,
-			    int stripFlag, int meshFlag) {
-
-	this(stream, p, n, stripFlag, meshFlag) ;
-
-	if (stream.vertexColor4)
-	    color = new CompressionStreamColor(stream, c) ;
-    }
-
-    /**
-     * Create a CompressionStreamVertex with the given parameters.
-     *
-     * @param stream CompressionStream associated with this vertex
-     * @param p position
-     * @param n normal bundled with this vertex or null if not bundled
-     * @param stripFlag CompressionStream.RESTART,
-     * CompressionStream.REPLACE_OLDEST, or CompressionStream.REPLACE_MIDDLE
-     * @param meshFlag CompressionStream.MESH_PUSH or
-     * CompressionStream.NO_MESH_PUSH
-     */
-    CompressionStreamVertex(CompressionStream stream, Point3f p, Vector3f n,
-			    int stripFlag, int meshFlag) {
-
-	this.stripFlag = stripFlag ;
-	this.meshFlag = meshFlag ;
-	this.floatX = p.x ;
-	this.floatY = p.y ;
-	this.floatZ = p.z ;
-
-	stream.byteCount += 12 ;
-	stream.vertexCount++ ;
-		
-	if (p.x < stream.mcBounds[0].x) stream.mcBounds[0].x = p.x ;
-	if (p.y < stream.mcBounds[0].y) stream.mcBounds[0].y = p.y ;
-	if (p.z < stream.mcBounds[0].z) stream.mcBounds[0].z = p.z ;
-
-	if (p.x > stream.mcBounds[1].x) stream.mcBounds[1].x = p.x ;
-	if (p.y > stream.mcBounds[1].y) stream.mcBounds[1].y = p.y ;
-	if (p.z > stream.mcBounds[1].z) stream.mcBounds[1].z = p.z ;
-
-	if (stream.vertexNormals)
-	    normal = new CompressionStreamNormal(stream, n) ;
-    }
+    // Storage for the bundled color and normal of a mesh buffer entry.
+    private CompressionStreamColor colorCopy = null ;
+    private CompressionStreamNormal normalCopy = null ;
 
     /**
      * Quantize the floating point position to fixed point integer components
@@ -153,8 +71,10 @@ class CompressionStreamVertex extends CompressionStreamElement {
      * @param stream CompressionStream associated with this element
      * @param table HuffmanTable for collecting data about the quantized
      * representation of this element
+     * @param index number of the vertex in the stream
      */
-    void quantize(CompressionStream stream, HuffmanTable huffmanTable) {
+    void quantize(CompressionStream stream, HuffmanTable huffmanTable,
+		  int index) {
 	double px, py, pz ;
 
 	// Clamp quantization.
@@ -174,9 +94,10 @@ class CompressionStreamVertex extends CompressionStreamElement {
 
 	// Normalize position to the unit cube.  This is bounded by the open
 	// intervals (-1..1) on each axis.
-	px = (floatX - stream.center[0]) * stream.scale ;
-	py = (floatY - stream.center[1]) * stream.scale ;
-	pz = (floatZ - stream.center[2]) * stream.scale ;
+	float[] positions = stream.positionData ;
+	px = (positions[3*index + 0] - stream.center[0]) * stream.scale ;
+	py = (positions[3*index + 1] - stream.center[1]) * stream.scale ;
+	pz = (positions[3*index + 2] - stream.center[2]) * stream.scale ;
 
 	// Convert the floating point position to s.15 2's complement.
 	//  ~1.0 ->  32767 (0x00007fff) [ ~1.0 =  32767.0/32768.0]
@@ -231,32 +152,40 @@ class CompressionStreamVertex extends CompressionStreamElement {
 	// Add this element to the Huffman table associated with this stream.
 	huffmanTable.addPositionEntry(length, shift, absolute) ;
 
-	// Quantize any bundled color or normal.
-	if (color != null)
-	    color.quantize(stream, huffmanTable) ;
-
-	if (normal != null)
-	    normal.quantize(stream, huffmanTable) ;
-
-	// Push this vertex into the mesh buffer mirror, if necessary, so it
-	// can be retrieved for computing deltas when mesh buffer references
-	// are subsequently encountered during the quantization pass.
-	if (meshFlag == stream.MESH_PUSH)
-	    stream.meshBuffer.push(this) ;
+	// Save the quantized representation for the output pass.
+	stream.positionDeltas[3*index + 0] = (short)X ;
+	stream.positionDeltas[3*index + 1] = (short)Y ;
+	stream.positionDeltas[3*index + 2] = (short)Z ;
+	stream.positionCodes[index] = (short)getCode() ;
     }
 
     /**
      * Output the final compressed bits to the compression command stream.
+     * Any bundled normal and color subcommands must be output immediately
+     * after this.
      *
      * @param table HuffmanTable mapping quantized representations to
      * compressed encodings
      * @param output CommandStream for collecting compressed output
+     * @param stream CompressionStream associated with this element
+     * @param index number of the vertex in the stream
+     * @param stripFlag CompressionStream.RESTART,
+     * CompressionStream.REPLACE_OLDEST, or CompressionStream.REPLACE_MIDDLE
+     * @param meshFlag CompressionStream.MESH_PUSH or
+     * CompressionStream.NO_MESH_PUSH
      */
-    void outputCommand(HuffmanTable huffmanTable, CommandStream outputBuffer) {
+    void outputCommand(HuffmanTable huffmanTable, CommandStream outputBuffer,
+		       CompressionStream stream, int index,
+		       int stripFlag, int meshFlag) {
 
 	HuffmanNode t ;
 	int command = CommandStream.VERTEX ;
 
+	X = stream.positionDeltas[3*index + 0] ;
+	Y = stream.positionDeltas[3*index + 1] ;
+	Z = stream.positionDeltas[3*index + 2] ;
+	setCode(stream.positionCodes[index]) ;
+
 	// Look up the Huffman token for this compression stream element.  The
 	// values of length and shift found there will override the
 	// corresponding fields in this element, which represent best-case
@@ -297,26 +226,35 @@ class CompressionStreamVertex extends CompressionStreamElement {
 
 	// Add the vertex command to the output buffer.
 	outputBuffer.addCommand(command, 8, body, subcommandLength + 3) ;
+    }
+
+    /**
+     * Copy the absolute quantized position of the given vertex, along with
+     * the absolute quantized values of its bundled color and normal, into
+     * this instance.  Used by the mesh buffer mirror.
+     */
+    void copyAbsolute(CompressionStreamVertex v) {
+	xAbsolute = v.xAbsolute ;
+	yAbsolute = v.yAbsolute ;
+	zAbsolute = v.zAbsolute ;
 
-	// Output any normal and color subcommands.
-	if (normal != null)
-	    normal.outputSubcommand(huffmanTable, outputBuffer) ;
+	if (v.color == null)
+	    color = null ;
+	else {
+	    if (colorCopy == null)
+		colorCopy = new CompressionStreamColor() ;
+	    colorCopy.copyAbsolute(v.color) ;
+	    color = colorCopy ;
+	}
 
-	if (color != null)
-	    color.outputSubcommand(huffmanTable, outputBuffer) ;
+	if (v.normal == null)
+	    normal = null ;
+	else {
+	    if (normalCopy == null)
+		normalCopy = new CompressionStreamNormal() ;
+	    normalCopy.copyAbsolute(v.normal) ;
+	    normal = normalCopy ;
+	}
     }
 
-    public String toString() {
-	String d = absolute? "" : "delta " ;
-	String c = (color  == null? "": "\n\n " + color.toString()) ;
-	String n = (normal == null? "": "\n\n " + normal.toString()) ;
-
-	return
-	    "position: " + floatX + " " + floatY + " " + floatZ + "\n" +
-	    "fixed point " + d + + X + " " + Y + " " + Z + "\n" +
-	    "length " + length + " shift " + shift +
-	    (absolute? " absolute" : " relative") + "\n" +
-	    "strip flag " + stripFlag + " mesh flag " + meshFlag + 
-	    c + n ;
-    }
 }
@@ -45,7 +45,12 @@
 package com.sun.j3d.utils.geometry.compression;
 
 import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 import javax.vecmath.Point3d;
+import com.sun.j3d.internal.FutureUtil;
 
 /**
  * A GeometryCompressor takes a stream of geometric elements and
@@ -53,7 +58,12 @@ import javax.vecmath.Point3d;
  * compresses it into a stream of commands as defined by appendix B
  * of the Java 3D specification.  The resulting data may be output
  * in the form of a CompressedGeometryData node component or appended
- * to a CompressedGeometryFile.
+ * to a CompressedGeometryFile.<p>
+ *
+ * Batches of streams can be compressed concurrently on an ExecutorService
+ * given with setExecutor(); the results are appended to the file in the
+ * order of the streams, so the file is the same as when the streams are
+ * compressed one after another.
  *
  * @see CompressionStream
  * @see CompressedGeometryData
@@ -62,15 +72,27 @@ import javax.vecmath.Point3d;
  * @since Java 3D 1.5
  */
 public class GeometryCompressor {
-    private static final boolean benchmark = false ;
-    private static final boolean printStream = false ;
-    private static final boolean printHuffman = false ;
+    // Debugging output; batch workers are given the settings of the
+    // compressor that created them.
+    private boolean benchmark = false ;
+    private boolean printStream = false ;
+    private boolean printHuffman = false ;
 
     private HuffmanTable huffmanTable ;
     private CommandStream outputBuffer ;
     private CompressedGeometryData.Header cgHeader ;
     private long startTime ;
 
+    private ExecutorService executor = null ;
+
+    // Time spent in compressStream() by a batch worker, in nanoseconds.
+    private long compressTime ;
+
+    // Statistics of the last batch.
+    private int batchVertexCount = 0 ;
+    private long batchCompressTime = 0 ;
+    private long batchTime = 0 ;
+
     public GeometryCompressor() {
 	// Create a compressed geometry header. 
 	cgHeader = new CompressedGeometryData.Header() ;
@@ -118,6 +140,131 @@ public class GeometryCompressor {
 	outputBuffer.clear() ;
     }
 
+    /**
+     * Compress a batch of streams and append the outputs to a
+     * CompressedGeometryFile in the order of the streams.  If an executor
+     * has been set the streams are quantized and encoded concurrently, each
+     * with its own Huffman table; otherwise they are compressed one after
+     * another on the calling thread.  Either way the file contents are the
+     * same as if compress(CompressionStream, CompressedGeometryFile) had
+     * been called for each stream in turn.  The streams must be distinct
+     * objects.  The resource remains open for subsequent updates; its
+     * close() method must be called to create a valid compressed geometry
+     * resource file.
+     *
+     * @param streams CompressionStreams containing the geometry to be
+     * compressed
+     * @param f a currently open CompressedGeometryFile with write access
+     * @exception IOException if write fails
+     * @see #getBatchVertexRate
+     */
+    public void compress(CompressionStream streams[], CompressedGeometryFile f)
+	throws IOException {
+
+	long start = System.nanoTime() ;
+	batchVertexCount = 0 ;
+	batchCompressTime = 0 ;
+
+	if (executor == null) {
+	    for (int i = 0 ; i < streams.length ; i++) {
+		long t = System.nanoTime() ;
+		compressStream(streams[i]) ;
+		batchCompressTime += System.nanoTime() - t ;
+		batchVertexCount += streams[i].getVertexCount() +
+		    streams[i].getMeshReferenceCount() ;
+
+		f.write(cgHeader, outputBuffer.getBytes()) ;
+		outputBuffer.clear() ;
+	    }
+	    batchTime = System.nanoTime() - start ;
+	    if (benchmark) printBatchBench(streams.length) ;
+	    return ;
+	}
+
+	// Each worker compresses one stream with its own Huffman table,
+	// output buffer, and header.
+	Future futures[] = new Future[streams.length] ;
+	for (int i = 0 ; i < streams.length ; i++) {
+	    final CompressionStream stream = streams[i] ;
+	    final GeometryCompressor worker = newWorker() ;
+	    futures[i] = executor.submit(new Callable() {
+		public Object call() {
+		    long t = System.nanoTime() ;
+		    worker.compressStream(stream) ;
+		    worker.compressTime = System.nanoTime() - t ;
+		    return worker ;
+		}
+	    }) ;
+	}
+
+	// Append the outputs in order as they become available.
+	try {
+	    for (int i = 0 ; i < streams.length ; i++) {
+		GeometryCompressor worker = (GeometryCompressor)
+		    FutureUtil.get(futures[i], "batch compression") ;
+
+		batchCompressTime += worker.compressTime ;
+		batchVertexCount += streams[i].getVertexCount() +
+		    streams[i].getMeshReferenceCount() ;
+
+		f.write(worker.cgHeader, worker.outputBuffer.getBytes()) ;
+	    }
+	} finally {
+	    // Don't leave work behind if the batch failed.
+	    FutureUtil.cancel(Arrays.asList(futures)) ;
+	}
+
+	batchTime = System.nanoTime() - start ;
+	if (benchmark) printBatchBench(streams.length) ;
+    }
+
+    /**
+     * Returns a compressor for a batch worker with the debugging settings
+     * of this one.
+     */
+    private GeometryCompressor newWorker() {
+	GeometryCompressor worker = new GeometryCompressor() ;
+	worker.benchmark = benchmark ;
+	worker.printStream = printStream ;
+	worker.printHuffman = printHuffman ;
+	return worker ;
+    }
+
+    /**
+     * Returns the number of vertices, including mesh buffer references,
+     * compressed per second of compression time by a single thread during
+     * the last call to compress(CompressionStream[], CompressedGeometryFile).
+     * This excludes the time spent writing the file, and is the throughput
+     * per core when the executor has at least as many threads as cores.
+     *
+     * @return vertices per second per thread, or 0 if no batch has been
+     * compressed
+     */
+    public double getBatchVertexRate() {
+	if (batchCompressTime == 0)
+	    return 0.0 ;
+
+	return batchVertexCount / (batchCompressTime / 1e9) ;
+    }
+
+    /**
+     * Sets the executor used to compress batches of streams concurrently.
+     * If null (the default), batches are compressed serially on the calling
+     * thread.  The executor is not shut down by the compressor.
+     *
+     * @param executor ExecutorService for batch compression, or null
+     */
+    public void setExecutor(ExecutorService executor) {
+	this.executor = executor ;
+    }
+
+    /**
+     * Returns the executor used to compress batches of streams, or null.
+     */
+    public ExecutorService getExecutor() {
+	return executor ;
+    }
+
     //
     // Compress the stream and put the results in the output buffer.
     // Set up the CompressedGeometryData.Header object.
@@ -169,6 +316,16 @@ public class GeometryCompressor {
 	huffmanTable.clear() ;
     }
 
+    private void printBatchBench(int streamCount) {
+	float t = batchTime / 1e9f ;
+
+	System.out.println
+	    ("\nGeometryCompressor batch:\n" + streamCount + " streams, " +
+	     batchVertexCount + " total vertices compressed in " + t +
+	     " sec\n" + (batchVertexCount / t) + " vertices/sec, " +
+	     ((float)getBatchVertexRate()) + " vertices/sec per thread") ;
+    }
+
     private void printBench(CompressionStream stream) {
 	long t = System.currentTimeMillis() - startTime ;
 	int vertexCount = stream.getVertexCount() ;
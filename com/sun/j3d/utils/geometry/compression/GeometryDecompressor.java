@@ -45,6 +45,8 @@
 package com.sun.j3d.utils.geometry.compression;
 
 import com.sun.j3d.internal.J3dUtilsI18N;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import javax.vecmath.Color4f;
 import javax.vecmath.Point3f;
 import javax.vecmath.Vector3f;
@@ -206,13 +208,26 @@ abstract class GeometryDecompressor {
 	0xFFFFFFFF, 
     } ;
 
-    // A reference to the compressed data and the current offset.
+    // A reference to the compressed data and the current offset.  Only one
+    // of gcData and gcBuffer is set.
     private byte gcData[] ;
+    private ByteBuffer gcBuffer ;
     private int gcIndex ;
 
     // The normals table for decoding 6-bit [u,v] spherical sextant coordinates.
     private static final double gcNormals[][][] ;
     private static final double NORMAL_MAX_Y_ANG = 0.615479709 ;
+
+    // The normals table as floats, with the u and component dimensions
+    // flattened so each row is one array: [v][u*3 + component].
+    private static final float gcNormalTable[][] ;
+
+    // The component value of the eight mid normals.
+    private static final float MID_NORMAL = (float)(1.0/Math.sqrt(3.0)) ;
+
+    // Scale from the s.15 decompressed values to [-1..1].  Multiplying by
+    // this power of two gives the same results as dividing by 32768.
+    private static final float INV_32768 = 1.0f/32768.0f ;
     private static final boolean printNormalTable = false ;
 
     /**
@@ -252,6 +267,15 @@ abstract class GeometryDecompressor {
 	    }
 	}
 
+	gcNormalTable = new float[65][65*3] ;
+	for (i = 0 ; i < 65 ; i++) {
+	    for (j = 0 ; j < 65 ; j++) {
+		gcNormalTable[i][j*3 + 0] = (float)gcNormals[i][j][0] ;
+		gcNormalTable[i][j*3 + 1] = (float)gcNormals[i][j][1] ;
+		gcNormalTable[i][j*3 + 2] = (float)gcNormals[i][j][2] ;
+	    }
+	}
+
 	if (printNormalTable) {
 	    System.out.println("struct {") ;
 	    System.out.println("    double nx, ny, nz ;") ;
@@ -314,15 +338,60 @@ abstract class GeometryDecompressor {
 			       " start: " + start +
 			       " length: " + length +
 			       " data array size: " + data.length) ;
-	if (benchmark) 
-	    benchmarkStart(length) ;
-	    
+
 	if (start+length > data.length)
 	    throw new ArrayIndexOutOfBoundsException
 		(J3dUtilsI18N.getString("GeometryDecompressor0")) ;
 
-	// Set reference to compressed data and skip to start of data.
+	// Set reference to compressed data.
 	gcData = data ;
+	gcBuffer = null ;
+
+	decompress(start, length) ;
+    }
+
+    /**
+     * Decompress data from an NIO buffer and invoke abstract output methods.
+     * The buffer's position and limit are not used or modified, so one
+     * buffer may be shared by decompressors running on different threads.
+     *
+     * @param start absolute byte index of the start of compressed geometry
+     * in the buffer
+     * @param length size of compressed geometry in bytes
+     * @param data buffer containing compressed geometry of the specified
+     * length at the given index
+     * @exception ArrayIndexOutOfBoundsException if start+length > data limit
+     */
+    void decompress(int start, int length, ByteBuffer data) {
+	if (debug)
+	    System.out.println("GeometryDecompressor.decompress\n" +
+			       " start: " + start +
+			       " length: " + length +
+			       " data buffer limit: " + data.limit()) ;
+
+	if (start+length > data.limit())
+	    throw new ArrayIndexOutOfBoundsException
+		(J3dUtilsI18N.getString("GeometryDecompressor0")) ;
+
+	// Compressed data words are big-endian.
+	if (data.order() != ByteOrder.BIG_ENDIAN)
+	    data = data.duplicate().order(ByteOrder.BIG_ENDIAN) ;
+
+	// Set reference to compressed data.
+	gcData = null ;
+	gcBuffer = data ;
+
+	decompress(start, length) ;
+    }
+
+    //
+    // Decompress from the current data reference.
+    //
+    private void decompress(int start, int length) {
+	if (benchmark) 
+	    benchmarkStart(length) ;
+
+	// Skip to start of data.
 	gcIndex = start ;
 
 	// Initialize state.
@@ -349,6 +418,25 @@ abstract class GeometryDecompressor {
 	    benchmarkPrint(length) ;
     }
 
+    //
+    // Return the next 32 bits of compressed data.
+    //
+    private int nextWord() {
+	int word ;
+
+	if (gcBuffer != null) {
+	    word = gcBuffer.getInt(gcIndex) ;
+	    gcIndex += 4 ;
+	} else {
+	    word = (((gcData[gcIndex++] & 0xff) << 24) |
+		    ((gcData[gcIndex++] & 0xff) << 16) |
+		    ((gcData[gcIndex++] & 0xff) <<  8) |
+		    ((gcData[gcIndex++] & 0xff))) ;
+	}
+
+	return word ;
+    }
+
     //
     // Return the next bitCount bits of compressed data.
     //
@@ -366,10 +454,7 @@ abstract class GeometryDecompressor {
 	}
 	
 	if (bitBufferCount == 0) {
-	    bitBuffer = (((gcData[gcIndex++] & 0xff) << 24) |
-			 ((gcData[gcIndex++] & 0xff) << 16) |
-			 ((gcData[gcIndex++] & 0xff) <<  8) |
-			 ((gcData[gcIndex++] & 0xff))) ;
+	    bitBuffer = nextWord() ;
 
 	    bitBufferCount = 32 ;
 	}
@@ -383,10 +468,7 @@ abstract class GeometryDecompressor {
 	    bits = bits >>> (bitCount - bitBufferCount) ;
 	    bits = bits  << (bitCount - bitBufferCount) ;
 
-	    bitBuffer = (((gcData[gcIndex++] & 0xff) << 24) |
-			 ((gcData[gcIndex++] & 0xff) << 16) |
-			 ((gcData[gcIndex++] & 0xff) <<  8) |
-			 ((gcData[gcIndex++] & 0xff))) ;
+	    bitBuffer = nextWord() ;
 
 	    bits = bits |
 		((bitBuffer >>> (32 - (bitCount - bitBufferCount))) &
@@ -707,9 +789,9 @@ abstract class GeometryDecompressor {
 	}
 
 	// Convert point back to [-1..1] floating point.
-	fX = curX ; fX /= 32768.0 ;
-	fY = curY ; fY /= 32768.0 ;
-	fZ = curZ ; fZ /= 32768.0 ;
+	fX = curX * INV_32768 ;
+	fY = curY * INV_32768 ;
+	fZ = curZ * INV_32768 ;
 	if (debug)
 	    System.out.println(" result position " + fX + " " + fY + " " + fZ) ;
 
@@ -911,7 +993,7 @@ abstract class GeometryDecompressor {
 	      default:
 		oct = ((sex & 0x1) << 2) | (oct >> 1) ;
 		sex = 0 ;
-		nx = ny = nz = (float)(1.0/Math.sqrt(3.0)) ;
+		nx = ny = nz = MID_NORMAL ;
 		break ;
 	    }
 	    if ((oct & 0x1) != 0) nz = -nz ;
@@ -920,9 +1002,10 @@ abstract class GeometryDecompressor {
 
 	} else {
 	    // regular normals
-	    nx = (float)gcNormals[v][u][0] ;
-	    ny = (float)gcNormals[v][u][1] ;
-	    nz = (float)gcNormals[v][u][2] ;
+	    float row[] = gcNormalTable[v] ;
+	    nx = row[u*3] ;
+	    ny = row[u*3+1] ;
+	    nz = row[u*3+2] ;
 
 	    // reverse the swap 
 	    if ((sex & 0x4) != 0) { t = nx ; nx = nz ; nz = t ; }
@@ -1074,10 +1157,10 @@ abstract class GeometryDecompressor {
 	}
 
 	// Convert point back to [-1..1] floating point.
-	fR = curR ; fR /= 32768.0 ;
-	fG = curG ; fG /= 32768.0 ;
-	fB = curB ; fB /= 32768.0 ;
-	fA = curA ; fA /= 32768.0 ;
+	fR = curR * INV_32768 ;
+	fG = curG * INV_32768 ;
+	fB = curB * INV_32768 ;
+	fA = curA * INV_32768 ;
 
 	curColor.set(fR, fG, fB, fA) ;
 	if (debug) System.out.println(" result color: " + fR +
@@ -1117,9 +1200,7 @@ abstract class GeometryDecompressor {
 	curZ = entry.z ;
 
 	// Convert point back to [-1..1] floating point.
-	curPos.set(((float)curX)/32768.0f,
-		   ((float)curY)/32768.0f,
-		   ((float)curZ)/32768.0f) ;
+	curPos.set(curX * INV_32768, curY * INV_32768, curZ * INV_32768) ;
 
 	if (debug) System.out.println(" retrieved position " + curPos.x +
 				      " " + curPos.y + " " + curPos.z +
@@ -1146,13 +1227,13 @@ abstract class GeometryDecompressor {
 	    curB = entry.b ;
 
 	    // Convert point back to -1.0 - 1.0 floating point.
-	    curColor.x = curR ; curColor.x /= 32768.0 ;
-	    curColor.y = curG ; curColor.y /= 32768.0 ;
-	    curColor.z = curB ; curColor.z /= 32768.0 ;
+	    curColor.x = curR * INV_32768 ;
+	    curColor.y = curG * INV_32768 ;
+	    curColor.z = curB * INV_32768 ;
 
 	    if (doingAlpha) {
 		curA = entry.a ;
-		curColor.w = curA ; curColor.w /= 32768.0 ;
+		curColor.w = curA * INV_32768 ;
 	    }
 	    if (debug)
 		System.out.println(" retrieved color "    + curColor.x + 
@@ -0,0 +1,378 @@
+/*
+ * $RCSfile$
+ *
+ * Copyright (c) 2007 Sun Microsystems, Inc. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * - Redistribution of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * - Redistribution in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in
+ *   the documentation and/or other materials provided with the
+ *   distribution.
+ *
+ * Neither the name of Sun Microsystems, Inc. or the names of
+ * contributors may be used to endorse or promote products derived
+ * from this software without specific prior written permission.
+ *
+ * This software is provided "AS IS," without a warranty of any
+ * kind. ALL EXPRESS OR IMPLIED CONDITIONS, REPRESENTATIONS AND
+ * WARRANTIES, INCLUDING ANY IMPLIED WARRANTY OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE OR NON-INFRINGEMENT, ARE HEREBY
+ * EXCLUDED. SUN MICROSYSTEMS, INC. ("SUN") AND ITS LICENSORS SHALL
+ * NOT BE LIABLE FOR ANY DAMAGES SUFFERED BY LICENSEE AS A RESULT OF
+ * USING, MODIFYING OR DISTRIBUTING THIS SOFTWARE OR ITS
+ * DERIVATIVES. IN NO EVENT WILL SUN OR ITS LICENSORS BE LIABLE FOR
+ * ANY LOST REVENUE, PROFIT OR DATA, OR FOR DIRECT, INDIRECT, SPECIAL,
+ * CONSEQUENTIAL, INCIDENTAL OR PUNITIVE DAMAGES, HOWEVER CAUSED AND
+ * REGARDLESS OF THE THEORY OF LIABILITY, ARISING OUT OF THE USE OF OR
+ * INABILITY TO USE THIS SOFTWARE, EVEN IF SUN HAS BEEN ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGES.
+ *
+ * You acknowledge that this software is not designed, licensed or
+ * intended for use in the design, construction, operation or
+ * maintenance of any nuclear facility.
+ *
+ * $Revision: 150 $
+ * $Date: 2007-02-10 02:20:46 +0900 (土, 10 2 2007) $
+ * $State$
+ */
+
+package com.sun.j3d.utils.geometry.compression;
+
+import com.sun.j3d.internal.ByteBufferWrapper;
+import com.sun.j3d.internal.ByteOrderWrapper;
+import com.sun.j3d.internal.FloatBufferWrapper;
+import com.sun.j3d.internal.J3dUtilsI18N;
+import java.util.ArrayList;
+import javax.media.j3d.GeometryArray;
+import javax.media.j3d.LineStripArray;
+import javax.media.j3d.PointArray;
+import javax.media.j3d.Shape3D;
+import javax.media.j3d.TriangleStripArray;
+import javax.vecmath.Color4f;
+import javax.vecmath.Point3f;
+import javax.vecmath.Vector3f;
+
+/**
+ * This class implements a by-reference array backend for the abstract
+ * GeometryDecompressor.  Decompressed vertices are written straight into a
+ * single interleaved float array in the GeometryArray vertex layout (color,
+ * normal, coordinate) together with their generalized strip flags, so no
+ * objects are created per vertex.  Triangles and lines are converted to
+ * strips and output as interleaved by-reference GeometryStripArrays backed
+ * by either float arrays or NIO buffers.
+ */
+class GeometryDecompressorArrays extends GeometryDecompressor
+    implements GeneralizedStripFlags {
+
+    private static final boolean debug = false ;
+
+    // Type of connections in the compressed data:
+    // TYPE_POINT (1), TYPE_LINE (2), or TYPE_TRIANGLE (4).
+    private int bufferDataType ;
+
+    // If true, output geometry references NIO buffers instead of arrays.
+    private boolean useNio ;
+
+    // Format of the vertices currently being accumulated, the number of
+    // floats per vertex, and the float offsets of each vertex component.
+    private int vertexFormat ;
+    private int stride ;
+    private int normalOffset ;
+    private int coordOffset ;
+
+    // Interleaved vertex data and generalized strip flags of the vertices
+    // accumulated since the last shape was output.  These are reused for
+    // each shape and grow as needed.
+    private float vertexData[] = new float[1024] ;
+    private int vertexFlags[] = new int[128] ;
+    private int vertexCount ;
+
+    // Accumulates Shape3D objects constructed from decompressor output.
+    private ArrayList shapes ;
+
+    // Decompressor output state variables.
+    private Color4f curColor ;
+    private boolean globalNormal ;
+    private float curNX, curNY, curNZ ;
+
+    // Private convenience copies of various constants.
+    private static final int TYPE_POINT = 
+	CompressedGeometryRetained.TYPE_POINT ;
+    private static final int TYPE_LINE = 
+	CompressedGeometryRetained.TYPE_LINE ;
+    private static final int TYPE_TRIANGLE = 
+	CompressedGeometryRetained.TYPE_TRIANGLE ;
+
+    /**
+     * Decompress the given compressed geometry.
+     * @param cgr CompressedGeometryRetained object with compressed geometry
+     * @param useNio if true, the geometry references NIO buffers;
+     * otherwise it references float arrays
+     * @return an array of Shape3D with interleaved by-reference
+     * TriangleStripArray geometry if compressed data contains triangles;
+     * otherwise, Shape3D array containing PointArray or LineStripArray
+     * geometry
+     * @see GeometryDecompressor
+     */
+    Shape3D[] toByReferenceArrays(CompressedGeometryRetained cgr,
+				  boolean useNio) {
+
+	if (! checkVersion(cgr.majorVersionNumber, cgr.minorVersionNumber)) {
+	    return null ;
+	}
+
+	this.useNio = useNio ;
+	bufferDataType = cgr.bufferType ;
+	setVertexFormat(GeometryArray.COORDINATES) ;
+	vertexCount = 0 ;
+	curColor = null ;
+	globalNormal = false ;
+	shapes = new ArrayList() ;
+
+	// Call the superclass decompress() method which calls the output
+	// methods of this subclass.
+	if (cgr.compressedGeometryBuffer != null)
+	    super.decompress(cgr.offset, cgr.size, cgr.compressedGeometryBuffer) ;
+	else
+	    super.decompress(cgr.offset, cgr.size, cgr.compressedGeometry) ;
+
+	addShape3D() ;
+
+	Shape3D shapeArray[] = new Shape3D[shapes.size()] ;
+	return (Shape3D[])shapes.toArray(shapeArray) ;
+    }
+
+    /**
+     * Set the vertex layout based on the vertex format provided by the
+     * SetState decompression command.
+     */
+    void outputVertexFormat(boolean bundlingNorm, boolean bundlingColor,
+			    boolean doingAlpha) {
+
+	// Construct shapes using the current vertex format.
+	addShape3D() ;
+
+	int format = GeometryArray.COORDINATES ;
+
+	if (bundlingNorm)
+	    format |= GeometryArray.NORMALS ;
+
+	if (bundlingColor) {
+	    if (doingAlpha)
+		format |= GeometryArray.COLOR_4 ;
+	    else
+		format |= GeometryArray.COLOR_3 ;
+	}
+
+	setVertexFormat(format) ;
+    }
+
+    /**
+     * Copy a decompressed vertex into the interleaved vertex data.
+     */
+    void outputVertex(Point3f position, Vector3f normal,
+		      Color4f color, int vertexReplaceCode) {
+
+	if (vertexCount == vertexFlags.length) {
+	    int newFlags[] = new int[2*vertexCount] ;
+	    System.arraycopy(vertexFlags, 0, newFlags, 0, vertexCount) ;
+	    vertexFlags = newFlags ;
+	}
+
+	int i = vertexCount * stride ;
+	if (i + stride > vertexData.length) {
+	    float newData[] = new float[2*vertexData.length + stride] ;
+	    System.arraycopy(vertexData, 0, newData, 0, i) ;
+	    vertexData = newData ;
+	}
+
+	float d[] = vertexData ;
+
+	if ((vertexFormat & GeometryArray.COLOR_4) == GeometryArray.COLOR_4) {
+	    d[i]   = color.x ;
+	    d[i+1] = color.y ;
+	    d[i+2] = color.z ;
+	    d[i+3] = color.w ;
+	} else if ((vertexFormat & GeometryArray.COLOR_3) != 0) {
+	    d[i]   = color.x ;
+	    d[i+1] = color.y ;
+	    d[i+2] = color.z ;
+	}
+
+	if (globalNormal) {
+	    d[i+normalOffset]   = curNX ;
+	    d[i+normalOffset+1] = curNY ;
+	    d[i+normalOffset+2] = curNZ ;
+	} else if ((vertexFormat & GeometryArray.NORMALS) != 0) {
+	    d[i+normalOffset]   = normal.x ;
+	    d[i+normalOffset+1] = normal.y ;
+	    d[i+normalOffset+2] = normal.z ;
+	}
+
+	d[i+coordOffset]   = position.x ;
+	d[i+coordOffset+1] = position.y ;
+	d[i+coordOffset+2] = position.z ;
+
+	vertexFlags[vertexCount++] = vertexReplaceCode ;
+
+	if (debug)
+	    System.out.println(" outputVertex: flag " + vertexReplaceCode +
+			       " position " + position.toString()) ;
+    }
+
+    /**
+     * Output the current vertices using the current color, then start a
+     * new shape for the new color.  The outputColor() method is never
+     * called if colors are bundled with each vertex in the compressed buffer.
+     */
+    void outputColor(Color4f color) {
+	if (debug) System.out.println(" outputColor: " + color.toString()) ;
+
+	addShape3D() ;
+
+	if (curColor == null) curColor = new Color4f() ;
+	curColor.set(color) ;
+    }
+
+    /**
+     * Set the current normal that will be copied to each succeeding vertex
+     * output by the decompressor.  This method is never called if normals
+     * are bundled with each vertex in the compressed buffer.
+     */
+    void outputNormal(Vector3f normal) {
+	if (debug) System.out.println(" outputNormal: " + normal.toString()) ;
+
+	if ((vertexFormat & GeometryArray.NORMALS) == 0) {
+	    // Construct shapes using the current vertex format, then add
+	    // normals to the layout.
+	    addShape3D() ;
+	    setVertexFormat(vertexFormat | GeometryArray.NORMALS) ;
+	}
+
+	globalNormal = true ;
+	curNX = normal.x ;
+	curNY = normal.y ;
+	curNZ = normal.z ;
+    }
+
+    // GeneralizedStripFlags interface implementation
+    public int getFlagCount() {
+	return vertexCount ;
+    }
+
+    // GeneralizedStripFlags interface implementation
+    public int getFlag(int index) {
+	return vertexFlags[index] ;
+    }
+
+    //
+    // Set the vertex format and compute the interleaved vertex layout.
+    //
+    private void setVertexFormat(int format) {
+	vertexFormat = format ;
+
+	if ((format & GeometryArray.COLOR_4) == GeometryArray.COLOR_4)
+	    normalOffset = 4 ;
+	else if ((format & GeometryArray.COLOR_3) != 0)
+	    normalOffset = 3 ;
+	else
+	    normalOffset = 0 ;
+
+	if ((format & GeometryArray.NORMALS) != 0)
+	    coordOffset = normalOffset + 3 ;
+	else
+	    coordOffset = normalOffset ;
+
+	stride = coordOffset + 3 ;
+    }
+
+    //
+    // Create a Shape3D object from the accumulated vertices and start a
+    // new vertex list with the same format.
+    //
+    private void addShape3D() {
+	if (vertexCount == 0)
+	    return ;
+
+	int format = vertexFormat |
+	    GeometryArray.BY_REFERENCE | GeometryArray.INTERLEAVED ;
+	if (useNio)
+	    format |= GeometryArray.USE_NIO_BUFFER ;
+
+	GeometryArray ga = null ;
+	GeneralizedStrip.StripArray stripArray ;
+
+	switch(bufferDataType) {
+	  case TYPE_TRIANGLE:
+	    stripArray = GeneralizedStrip.toTriangleStrips(this, FRONTFACE_CCW) ;
+	    if (stripArray != null) {
+		ga = new TriangleStripArray(stripArray.vertices.count, format,
+					    stripArray.stripCounts.trim()) ;
+		setVertexData(ga, stripArray.vertices) ;
+	    }
+	    break ;
+
+	  case TYPE_LINE:
+	    stripArray = GeneralizedStrip.toLineStrips(this) ;
+	    if (stripArray != null) {
+		ga = new LineStripArray(stripArray.vertices.count, format,
+					stripArray.stripCounts.trim()) ;
+		setVertexData(ga, stripArray.vertices) ;
+	    }
+	    break ;
+
+	  case TYPE_POINT:
+	    ga = new PointArray(vertexCount, format) ;
+	    setVertexData(ga, null) ;
+	    break ;
+
+	  default:
+	    throw new IllegalArgumentException
+		(J3dUtilsI18N.getString("GeometryDecompressorShape3D1")) ;
+	}
+
+	if (ga != null)
+	    shapes.add(new Shape3D(ga, GeometryDecompressorShape3D.newAppearance
+				   (vertexFormat, curColor))) ;
+
+	vertexCount = 0 ;
+    }
+
+    //
+    // Gather the interleaved data of the given vertices, or of all vertices
+    // in order if indices is null, and set it as the by-reference data of
+    // the geometry array.
+    //
+    private void setVertexData(GeometryArray ga,
+			       GeneralizedStrip.IntList indices) {
+
+	int count = (indices == null ? vertexCount : indices.count) ;
+	float d[] = new float[count * stride] ;
+
+	if (indices == null) {
+	    System.arraycopy(vertexData, 0, d, 0, d.length) ;
+	} else {
+	    int ints[] = indices.ints ;
+	    for (int i = 0, j = 0 ; i < count ; i++) {
+		int k = ints[i] * stride ;
+		for (int n = 0 ; n < stride ; n++)
+		    d[j++] = vertexData[k++] ;
+	    }
+	}
+
+	if (useNio) {
+	    ByteBufferWrapper b = ByteBufferWrapper.allocateDirect(d.length * 4) ;
+	    FloatBufferWrapper f =
+		b.order(ByteOrderWrapper.nativeOrder()).asFloatBuffer() ;
+	    f.put(d) ;
+	    ga.setInterleavedVertexBuffer(f.getJ3DBuffer()) ;
+	} else
+	    ga.setInterleavedVertices(d) ;
+    }
+}
@@ -200,7 +200,10 @@ class GeometryDecompressorShape3D extends GeometryDecompressor {
 
 	// Call the superclass decompress() method which calls the output
 	// methods of this subclass.  The results are stored in vlist.
-	super.decompress(cgr.offset, cgr.size, cgr.compressedGeometry) ;
+	if (cgr.compressedGeometryBuffer != null)
+	    super.decompress(cgr.offset, cgr.size, cgr.compressedGeometryBuffer) ;
+	else
+	    super.decompress(cgr.offset, cgr.size, cgr.compressedGeometry) ;
 
 	// Convert the decompressor output to Shape3D objects.
 	addShape3D() ;
@@ -307,27 +310,7 @@ class GeometryDecompressorShape3D extends GeometryDecompressor {
      * list.  Apply the current color, if non-null, as a Material attribute.
      */
     private void addShape3D() {
-	Material m = new Material() ;
-
-	if (curColor != null) {
-	    if ((vlist.vertexFormat & GeometryArray.COLOR_4) != GeometryArray.COLOR_4) {
-		m.setAmbientColor(curColor.x, curColor.y, curColor.z) ;
-		m.setDiffuseColor(curColor.x, curColor.y, curColor.z) ;
-	    }
-	    else {
-		m.setAmbientColor(curColor.x, curColor.y, curColor.z) ;
-		m.setDiffuseColor(curColor.x, curColor.y, curColor.z,
-				  curColor.w) ;
-	    }
-	}
-
-	if ((vlist.vertexFormat & GeometryArray.NORMALS) == 0)
-	    m.setLightingEnable(false) ;
-	else
-	    m.setLightingEnable(true) ;
-
-	Appearance a = new Appearance() ;
-	a.setMaterial(m) ;
+	Appearance a = newAppearance(vlist.vertexFormat, curColor) ;
 
 	switch(bufferDataType) {
 	  case TYPE_TRIANGLE:
@@ -387,6 +370,34 @@ class GeometryDecompressorShape3D extends GeometryDecompressor {
 	}
     }
 
+    /**
+     * Create an Appearance for the given vertex format.  The color, if
+     * non-null, is used for both the ambient and diffuse material colors.
+     */
+    static Appearance newAppearance(int vertexFormat, Color4f color) {
+	Material m = new Material() ;
+
+	if (color != null) {
+	    if ((vertexFormat & GeometryArray.COLOR_4) != GeometryArray.COLOR_4) {
+		m.setAmbientColor(color.x, color.y, color.z) ;
+		m.setDiffuseColor(color.x, color.y, color.z) ;
+	    }
+	    else {
+		m.setAmbientColor(color.x, color.y, color.z) ;
+		m.setDiffuseColor(color.x, color.y, color.z, color.w) ;
+	    }
+	}
+
+	if ((vertexFormat & GeometryArray.NORMALS) == 0)
+	    m.setLightingEnable(false) ;
+	else
+	    m.setLightingEnable(true) ;
+
+	Appearance a = new Appearance() ;
+	a.setMaterial(m) ;
+	return a ;
+    }
+
     private void beginPrint() {
 	System.out.println("\nGeometryDecompressorShape3D") ;
 
@@ -59,9 +59,10 @@ class MeshBuffer {
     // Three stack representations are provided: vertices, positions, and
     // indices.
     // 
-    // The vertex representation stores references to CompressionStreamVertex
-    // objects.  The position representation stores references to Point3f,
-    // Vector3f, Color3f, and Color4f objects, while the index representation
+    // The vertex representation stores copies of the absolute quantized
+    // values computed by CompressionStreamVertex during quantization.  The
+    // position representation stores references to Point3f, Vector3f,
+    // Color3f, and Color4f objects, while the index representation
     // stores indices into externally maintained arrays of those objects.  All
     // these representations may be used independently and all provide access
     // to the stored references via a mesh buffer index.
@@ -97,6 +98,7 @@ class MeshBuffer {
 
     MeshBuffer() {
 	for (int i = 0 ; i < SIZE ; i++) {
+	    vertices[i] = new CompressionStreamVertex() ;
 	    positionHashCodes[i] = NAN_HASH ;
 
 	    positionIndices[i] = NOT_FOUND ;
@@ -136,7 +138,7 @@ class MeshBuffer {
     //
     void push(CompressionStreamVertex v) {
 	topVertex = nextTop(topVertex) ;
-	vertices[topVertex] = v ;
+	vertices[topVertex].copyAbsolute(v) ;
     }
 
     CompressionStreamVertex getVertex(int meshReference) {
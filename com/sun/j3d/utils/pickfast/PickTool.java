@@ -48,6 +48,7 @@ import com.sun.j3d.utils.geometry.Primitive;
 import javax.vecmath.*;
 import javax.media.j3d.*;
 import com.sun.j3d.internal.*;
+import com.sun.j3d.utils.picking.GeometryBVH;
 
 /** 
  * The base class for optimized picking operations.
@@ -172,6 +173,15 @@ public class PickTool {
         PickInfo.CLOSEST_GEOM_INFO		|
         PickInfo.ALL_GEOM_INFO;
 
+    private static final int GEOM_INFO_FLAGS = 
+        PickInfo.CLOSEST_INTERSECTION_POINT	|
+        PickInfo.CLOSEST_DISTANCE		|
+        PickInfo.CLOSEST_GEOM_INFO		|
+        PickInfo.ALL_GEOM_INFO;
+
+    // Returned by pickGeometryBVH when the pick has to be left to the core
+    private static final PickInfo[] NOT_ACCELERATED = new PickInfo[0];
+
     private final boolean debug = false;
     protected boolean userDefineShape = false;
 
@@ -190,6 +200,9 @@ public class PickTool {
     int mode = PickInfo.PICK_BOUNDS;
     int flags = PickInfo.NODE;
 
+    /* use GeometryBVH for geometry ray and segment picks */
+    boolean accelerated = false;
+
     /* ============================ METHODS ============================ */
 
     /** 
@@ -287,6 +300,36 @@ public class PickTool {
 	return flags;
     }
 
+    /** Sets whether PICK_GEOMETRY picks with a ray or segment intersect
+     * the geometry through a bounding volume hierarchy over the triangles
+     * or quads of each Shape3D geometry.  The nodes are picked by bounds
+     * and their geometry is then tested with its cached
+     * <code>GeometryBVH</code>, which needs the capabilities
+     * <code>PickTool.INTERSECT_FULL</code> sets in the picking package.
+     * The returned PickInfos also contain the node and local to vworld
+     * transform.
+     * <p>
+     * The core API fills in the intersection details, so picks requesting
+     * CLOSEST_INTERSECTION_POINT, CLOSEST_DISTANCE, CLOSEST_GEOM_INFO or
+     * ALL_GEOM_INFO are left to it, as are picks that hit a Morph, a
+     * geometry type without a hierarchy or a node whose geometry can't be
+     * read.  Geometry whose coordinates may change, because it has the
+     * ALLOW_COORDINATE_WRITE, ALLOW_COUNT_WRITE, ALLOW_REF_DATA_WRITE or
+     * ALLOW_COORDINATE_INDEX_WRITE capability, is also left to the core
+     * pick, so a stale hierarchy can never hide a hit.  The default is
+     * false.
+     * @see GeometryBVH#isWritable
+     */
+    public void setAccelerated (boolean accelerated) {
+	this.accelerated = accelerated;
+    }
+
+    /** Returns whether geometry picks use a bounding volume hierarchy.
+     */
+    public boolean getAccelerated () {
+	return accelerated;
+    }
+
     /**  Sets the pick shape to a PickRay. 
      *   @param start The start of the ray
      *   @param dir The direction of the ray
@@ -372,7 +415,11 @@ public class PickTool {
        picked.
     */ 
     public PickInfo[] pickAll () {
-	PickInfo[] pickInfos = null;
+	PickInfo[] pickInfos = pickGeometryBVH(false, false);
+	if (pickInfos != NOT_ACCELERATED) {
+	    return pickInfos;
+	}
+	pickInfos = null;
 	if (pickRootBG != null) {
 	    pickInfos = pickRootBG.pickAll(mode, flags, pickShape);
 	} else if (pickRootL != null) {
@@ -387,6 +434,10 @@ public class PickTool {
 	 was picked.
     */ 
     public PickInfo pickAny () {
+	PickInfo[] pickInfos = pickGeometryBVH(false, true);
+	if (pickInfos != NOT_ACCELERATED) {
+	    return (pickInfos == null) ? null : pickInfos[0];
+	}
 	PickInfo pickInfo = null;
 	if (pickRootBG != null) {
 	    pickInfo = pickRootBG.pickAny(mode, flags, pickShape);
@@ -405,7 +456,11 @@ public class PickTool {
 	about the picked instances. <code>null</code> if nothing was picked.
     */
     public PickInfo[] pickAllSorted () {
-	PickInfo[] pickInfos = null;
+	PickInfo[] pickInfos = pickGeometryBVH(true, false);
+	if (pickInfos != NOT_ACCELERATED) {
+	    return pickInfos;
+	}
+	pickInfos = null;
 	if (pickRootBG != null) {
 	    pickInfos = pickRootBG.pickAllSorted(mode, flags, pickShape);
 	} else if (pickRootL != null) {
@@ -424,6 +479,10 @@ public class PickTool {
     */
     public PickInfo pickClosest () {
 	// System.out.println("PickTool : pickClosest ...");
+	PickInfo[] pickInfos = pickGeometryBVH(true, true);
+	if (pickInfos != NOT_ACCELERATED) {
+	    return (pickInfos == null) ? null : pickInfos[0];
+	}
 	PickInfo pickInfo = null;
 	if (pickRootBG != null) {
 	    pickInfo = pickRootBG.pickClosest(mode, flags, pickShape);
@@ -435,6 +494,128 @@ public class PickTool {
 	return pickInfo;
     }
 
+    /*  Does an accelerated geometry pick: picks by bounds, then intersects
+     *  the pick shape with the GeometryBVHs of the picked Shape3Ds.  The
+     *  hits are ordered by distance if sorted is true; if single is true
+     *  only the first one is returned.  Returns NOT_ACCELERATED if acceleration is off
+     *  or the pick can't be accelerated, null if nothing was picked.
+     */
+    private PickInfo[] pickGeometryBVH (boolean sorted, boolean single) {
+	if (!accelerated || (mode != PickInfo.PICK_GEOMETRY) ||
+	    ((flags & GEOM_INFO_FLAGS) != 0)) {
+	    return NOT_ACCELERATED;
+	}
+
+	Point3d rayStart = new Point3d();
+	Vector3d rayDir = new Vector3d();
+	double maxDist;
+	if (pickShape instanceof PickRay) {
+	    ((PickRay) pickShape).get(rayStart, rayDir);
+	    maxDist = Double.POSITIVE_INFINITY;
+	} else if (pickShape instanceof PickSegment) {
+	    Point3d end = new Point3d();
+	    ((PickSegment) pickShape).get(rayStart, end);
+	    rayDir.sub(end, rayStart);
+	    maxDist = 1.0;
+	} else {
+	    return NOT_ACCELERATED;
+	}
+
+	int boundsFlags = flags | PickInfo.NODE | PickInfo.LOCAL_TO_VWORLD;
+	PickInfo[] pickInfos = null;
+	if (pickRootBG != null) {
+	    pickInfos = pickRootBG.pickAll(PickInfo.PICK_BOUNDS, boundsFlags,
+					   pickShape);
+	} else if (pickRootL != null) {
+	    pickInfos = pickRootL.pickAll(PickInfo.PICK_BOUNDS, boundsFlags,
+					  pickShape);
+	}
+	if (pickInfos == null) {
+	    return null;
+	}
+
+	PickInfo[] hits = new PickInfo[pickInfos.length];
+	double[] dist = new double[pickInfos.length];
+	int count = 0;
+	for (int i = 0; i < pickInfos.length; i++) {
+	    double t = intersectBVH(pickInfos[i], rayStart, rayDir, maxDist);
+	    if (Double.isNaN(t)) {
+		return NOT_ACCELERATED;
+	    }
+	    if (t < 0.0) {
+		continue;
+	    }
+	    // Insertion sort, the hits are few
+	    int j = count++;
+	    if (sorted) {
+		for (; (j > 0) && (dist[j - 1] > t); j--) {
+		    hits[j] = hits[j - 1];
+		    dist[j] = dist[j - 1];
+		}
+	    }
+	    hits[j] = pickInfos[i];
+	    dist[j] = t;
+	    if (single && !sorted) {
+		break;
+	    }
+	}
+	if (count == 0) {
+	    return null;
+	}
+	if (single) {
+	    count = 1;
+	}
+	if (count < hits.length) {
+	    PickInfo[] trimmed = new PickInfo[count];
+	    System.arraycopy(hits, 0, trimmed, 0, count);
+	    hits = trimmed;
+	}
+	return hits;
+    }
+
+    /*  Returns the ray parameter of the closest intersection of a ray
+     *  with the geometry of a picked node, -1 if there is none, or NaN if
+     *  it can't be found with GeometryBVH.
+     */
+    private double intersectBVH (PickInfo pickInfo, Point3d rayStart,
+				 Vector3d rayDir, double maxDist) {
+	Node node = pickInfo.getNode();
+	if (!(node instanceof Shape3D)) {
+	    return Double.NaN;
+	}
+	Transform3D vworldToLocal = new Transform3D(pickInfo.getLocalToVWorld());
+	vworldToLocal.invert();
+	Point3d start = new Point3d(rayStart);
+	Vector3d dir = new Vector3d(rayDir);
+	vworldToLocal.transform(start);
+	vworldToLocal.transform(dir);
+
+	Shape3D shape = (Shape3D) node;
+	double closest = -1.0;
+	try {
+	    for (int k = 0; k < shape.numGeometries(); k++) {
+		Geometry geometry = shape.getGeometry(k);
+		if (geometry == null) {
+		    continue;
+		}
+		if (!(geometry instanceof GeometryArray)) {
+		    return Double.NaN;
+		}
+		GeometryBVH bvh = GeometryBVH.getBVH((GeometryArray) geometry);
+		if (bvh == null) {
+		    return Double.NaN;
+		}
+		double t = bvh.intersectClosest(start, dir, maxDist, null);
+		if ((t >= 0.0) && ((closest < 0.0) || (t < closest))) {
+		    closest = t;
+		}
+	    }
+	} catch (CapabilityNotSetException e) {
+	    return Double.NaN;
+	}
+	return closest;
+    }
+
     /** Get the first node of a certain type up the SceneGraphPath 
      *@param type the type of node we are interested in
      *@return a Node object
@@ -0,0 +1,847 @@
+/*
+ * $RCSfile$
+ *
+ * Copyright (c) 2007 Sun Microsystems, Inc. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * - Redistribution of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * - Redistribution in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in
+ *   the documentation and/or other materials provided with the
+ *   distribution.
+ *
+ * Neither the name of Sun Microsystems, Inc. or the names of
+ * contributors may be used to endorse or promote products derived
+ * from this software without specific prior written permission.
+ *
+ * This software is provided "AS IS," without a warranty of any
+ * kind. ALL EXPRESS OR IMPLIED CONDITIONS, REPRESENTATIONS AND
+ * WARRANTIES, INCLUDING ANY IMPLIED WARRANTY OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE OR NON-INFRINGEMENT, ARE HEREBY
+ * EXCLUDED. SUN MICROSYSTEMS, INC. ("SUN") AND ITS LICENSORS SHALL
+ * NOT BE LIABLE FOR ANY DAMAGES SUFFERED BY LICENSEE AS A RESULT OF
+ * USING, MODIFYING OR DISTRIBUTING THIS SOFTWARE OR ITS
+ * DERIVATIVES. IN NO EVENT WILL SUN OR ITS LICENSORS BE LIABLE FOR
+ * ANY LOST REVENUE, PROFIT OR DATA, OR FOR DIRECT, INDIRECT, SPECIAL,
+ * CONSEQUENTIAL, INCIDENTAL OR PUNITIVE DAMAGES, HOWEVER CAUSED AND
+ * REGARDLESS OF THE THEORY OF LIABILITY, ARISING OUT OF THE USE OF OR
+ * INABILITY TO USE THIS SOFTWARE, EVEN IF SUN HAS BEEN ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGES.
+ *
+ * You acknowledge that this software is not designed, licensed or
+ * intended for use in the design, construction, operation or
+ * maintenance of any nuclear facility.
+ *
+ * $Revision$
+ * $Date$
+ * $State$
+ */
+
+package com.sun.j3d.utils.picking;
+
+import javax.vecmath.*;
+import javax.media.j3d.*;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * A bounding volume hierarchy over the triangles or quads of a
+ * GeometryArray, used to accelerate ray and segment picking.
+ * <p>
+ * The hierarchy is built in the local coordinates of the geometry the
+ * first time it is requested and is cached with a weak reference to the
+ * GeometryArray, so it goes away together with the geometry.  A pick
+ * transforms the ray into local coordinates once and then only visits
+ * the primitives whose bounds the ray crosses, instead of transforming
+ * and testing every vertex of the geometry.
+ * <p>
+ * Only geometry whose coordinates can't change is cached: it must be
+ * live or compiled, and must not have the ALLOW_COORDINATE_WRITE,
+ * ALLOW_COUNT_WRITE, ALLOW_REF_DATA_WRITE (for by-reference geometry) or
+ * ALLOW_COORDINATE_INDEX_WRITE (for indexed geometry) capabilities.
+ * <code>getBVH</code> returns null for other geometry, which the picking
+ * utilities then test without a hierarchy.
+ * <p>
+ * TriangleArray, QuadArray, TriangleStripArray, TriangleFanArray and
+ * their indexed variants are supported.  Building the hierarchy needs the
+ * same capabilities as GEOMETRY_INTERSECT_INFO picking.  Primitives are
+ * numbered in the order the picking utilities visit them.
+ *
+ * @see PickTool#setAccelerated
+ * @see com.sun.j3d.utils.pickfast.PickTool#setAccelerated
+ */
+public class GeometryBVH {
+
+    // Maximum number of primitives in a leaf
+    private static final int LEAF_SIZE = 4;
+
+    // GeometryArray -> GeometryBVH
+    private static final Map cache = new WeakHashMap();
+
+    // Local coordinates, three per vertex
+    private double[] coords;
+
+    // Coordinate indices of indexed geometry, null otherwise
+    private int[] coordIndices;
+
+    // Vertex indices of each primitive, primSize per primitive.  For
+    // indexed geometry these index the index list, as in PickIntersection.
+    private int[] primVerts;
+    private int primSize;
+    private int numPrims;
+
+    // Node bounds, min xyz then max xyz.  A leaf holds nodeCount
+    // primitives of primOrder starting at nodeStart; an inner node has a
+    // count of 0 and its children at nodeStart and nodeStart + 1.
+    private double[] nodeBounds;
+    private int[] nodeStart;
+    private int[] nodeCount;
+    private int numNodes;
+    private int maxDepth;
+    private int[] primOrder;
+
+    // What the hierarchy was built from, to detect stale cache entries
+    private int vertexCount;
+    private int indexCount;
+    private int[] stripCounts;
+    private Object coordRef;
+
+    /**
+     * Returns the hierarchy of a geometry, building it if it is not
+     * cached or the cached one is out of date.
+     * @param geom the geometry
+     * @return the hierarchy, or null if the geometry type or its
+     * coordinate format is not supported, or its coordinates may change
+     * @see #isWritable
+     */
+    public static GeometryBVH getBVH(GeometryArray geom) {
+	if (isWritable(geom)) {
+	    return null;
+	}
+	return getCachedBVH(geom);
+    }
+
+    /**
+     * Returns true if the coordinates of a geometry may change after a
+     * hierarchy is built over them.  That is the case for geometry that
+     * is neither live nor compiled, since its capabilities aren't
+     * enforced, and for geometry with a capability that allows writing
+     * its coordinates, coordinate indices or counts.
+     * @param geom the geometry
+     */
+    public static boolean isWritable(GeometryArray geom) {
+	if (!geom.isLive() && !geom.isCompiled()) {
+	    return true;
+	}
+	if (geom.getCapability(GeometryArray.ALLOW_COORDINATE_WRITE) ||
+	    geom.getCapability(GeometryArray.ALLOW_COUNT_WRITE)) {
+	    return true;
+	}
+	if ((geom.getVertexFormat() & GeometryArray.BY_REFERENCE) != 0 &&
+	    geom.getCapability(GeometryArray.ALLOW_REF_DATA_WRITE)) {
+	    return true;
+	}
+	return (geom instanceof IndexedGeometryArray) &&
+	    geom.getCapability(
+		IndexedGeometryArray.ALLOW_COORDINATE_INDEX_WRITE);
+    }
+
+    /**
+     * Returns a hierarchy of a geometry for a caller that keeps it only as
+     * long as it knows the geometry is unchanged.  Geometry whose
+     * coordinates may change gets a new hierarchy that is not cached;
+     * other geometry gets the cached one.
+     */
+    static GeometryBVH getSnapshotBVH(GeometryArray geom) {
+	if (!isWritable(geom)) {
+	    return getCachedBVH(geom);
+	}
+	if (getPrimitiveSize(geom) == 0) {
+	    return null;
+	}
+	GeometryBVH bvh = new GeometryBVH(geom);
+	return (bvh.coords != null) ? bvh : null;
+    }
+
+    private static GeometryBVH getCachedBVH(GeometryArray geom) {
+	GeometryBVH bvh;
+	synchronized (cache) {
+	    bvh = (GeometryBVH) cache.get(geom);
+	}
+	if (bvh != null && bvh.isCurrent(geom)) {
+	    return bvh;
+	}
+	if (getPrimitiveSize(geom) == 0) {
+	    return null;
+	}
+	bvh = new GeometryBVH(geom);
+	if (bvh.coords == null) {
+	    return null;
+	}
+	synchronized (cache) {
+	    cache.put(geom, bvh);
+	}
+	return bvh;
+    }
+
+    /**
+     * Drops the cached hierarchy of a geometry.
+     * @param geom the geometry
+     */
+    public static void invalidate(GeometryArray geom) {
+	synchronized (cache) {
+	    cache.remove(geom);
+	}
+    }
+
+    /**
+     * Drops all cached hierarchies.
+     */
+    public static void clearCache() {
+	synchronized (cache) {
+	    cache.clear();
+	}
+    }
+
+    private GeometryBVH(GeometryArray geom) {
+	vertexCount = geom.getVertexCount();
+	coordRef = getCoordRef(geom);
+	coords = getCoordinates(geom);
+	if (coords == null) {
+	    return;
+	}
+	if (geom instanceof IndexedGeometryArray) {
+	    IndexedGeometryArray igeom = (IndexedGeometryArray) geom;
+	    indexCount = igeom.getIndexCount();
+	    coordIndices = new int[indexCount];
+	    igeom.getCoordinateIndices(0, coordIndices);
+	}
+	stripCounts = getStripCounts(geom);
+	primSize = getPrimitiveSize(geom);
+	enumeratePrimitives(geom);
+	build();
+    }
+
+    /**
+     * Returns the number of primitives in the hierarchy.
+     */
+    public int numPrimitives() {
+	return numPrims;
+    }
+
+    /**
+     * Returns the number of vertices of each primitive, 3 for triangle
+     * geometry and 4 for quads.
+     */
+    public int getPrimitiveSize() {
+	return primSize;
+    }
+
+    /**
+     * Gets the local bounds of the geometry.  The bounds are empty (lower
+     * above upper) if the geometry has no primitives.
+     * @param lower receives the lower corner
+     * @param upper receives the upper corner
+     */
+    public void getBounds(Point3d lower, Point3d upper) {
+	if (numNodes == 0) {
+	    lower.x = lower.y = lower.z = Double.POSITIVE_INFINITY;
+	    upper.x = upper.y = upper.z = Double.NEGATIVE_INFINITY;
+	    return;
+	}
+	lower.x = nodeBounds[0];
+	lower.y = nodeBounds[1];
+	lower.z = nodeBounds[2];
+	upper.x = nodeBounds[3];
+	upper.y = nodeBounds[4];
+	upper.z = nodeBounds[5];
+    }
+
+    /**
+     * Copies the vertex indices of a primitive, as they would be reported
+     * by PickIntersection.getPrimitiveVertexIndices().
+     * @param prim the primitive
+     * @param indices an array of at least getPrimitiveSize() entries
+     */
+    public void getVertexIndices(int prim, int[] indices) {
+	System.arraycopy(primVerts, prim * primSize, indices, 0, primSize);
+    }
+
+    /**
+     * Copies the coordinate indices of a primitive.
+     * @param prim the primitive
+     * @param indices an array of at least getPrimitiveSize() entries
+     */
+    public void getCoordinateIndices(int prim, int[] indices) {
+	for (int k = 0; k < primSize; k++) {
+	    indices[k] = getCoordinateIndex(prim, k);
+	}
+    }
+
+    int getCoordinateIndex(int prim, int k) {
+	int v = primVerts[prim * primSize + k];
+	return (coordIndices != null) ? coordIndices[v] : v;
+    }
+
+    /**
+     * Returns the local coordinates the hierarchy was built from, three
+     * per vertex and indexed by getCoordinateIndex().  Not a copy.
+     */
+    double[] getLocalCoordinateArray() {
+	return coords;
+    }
+
+    /**
+     * Sets a point to the local coordinates of a vertex of a primitive.
+     */
+    void getLocalCoordinates(int prim, int k, Point3d p) {
+	int c = getCoordinateIndex(prim, k) * 3;
+	p.x = coords[c];
+	p.y = coords[c + 1];
+	p.z = coords[c + 2];
+    }
+
+    /**
+     * Finds the closest primitive hit by a ray or segment given in the
+     * local coordinates of the geometry.  Hits are found from both sides
+     * of the primitives, as picking does.
+     * @param start the start of the ray
+     * @param dir the direction of the ray, or the end minus the start of
+     * a segment
+     * @param maxDist the largest ray parameter to accept, 1 for a segment
+     * @param primitive if not null, receives the index of the hit primitive
+     * in its first entry
+     * @return the ray parameter of the hit, or -1 if there is none
+     */
+    public double intersectClosest(Point3d start, Vector3d dir,
+				   double maxDist, int[] primitive) {
+	return intersectClosest(start.x, start.y, start.z,
+				dir.x, dir.y, dir.z, maxDist,
+				new int[getStackSize()], primitive);
+    }
+
+    /**
+     * Returns the size of the traversal stack needed by the overload of
+     * intersectClosest taking a stack.
+     */
+    public int getStackSize() {
+	return maxDepth + 2;
+    }
+
+    /**
+     * Finds the closest primitive hit by a ray or segment.  This overload
+     * takes the ray as doubles and a caller-supplied traversal stack of at
+     * least getStackSize() entries, so repeated queries don't allocate.
+     * It may be called by several threads at once with different stacks.
+     * @see #intersectClosest(Point3d, Vector3d, double, int[])
+     */
+    public double intersectClosest(double ox, double oy, double oz,
+				   double dx, double dy, double dz,
+				   double maxDist, int[] stack,
+				   int[] primitive) {
+	if (numNodes == 0) {
+	    return -1.0;
+	}
+	double best = -1.0;
+	int bestPrim = -1;
+	double tMax = maxDist;
+	int sp = 0;
+	stack[sp++] = 0;
+	while (sp > 0) {
+	    int node = stack[--sp];
+	    if (!hitBox(nodeBounds, node * 6, ox, oy, oz, dx, dy, dz, tMax)) {
+		continue;
+	    }
+	    int count = nodeCount[node];
+	    if (count == 0) {
+		stack[sp++] = nodeStart[node] + 1;
+		stack[sp++] = nodeStart[node];
+		continue;
+	    }
+	    int end = nodeStart[node] + count;
+	    for (int i = nodeStart[node]; i < end; i++) {
+		int prim = primOrder[i];
+		double t = intersectPrimitive(prim, ox, oy, oz, dx, dy, dz);
+		if (t >= 0.0 && t <= tMax) {
+		    // Ties go to the primitive visited first by picking
+		    if (t < tMax || best < 0.0 || prim < bestPrim) {
+			bestPrim = prim;
+		    }
+		    best = tMax = t;
+		}
+	    }
+	}
+	if (best >= 0.0 && primitive != null) {
+	    primitive[0] = bestPrim;
+	}
+	return best;
+    }
+
+    /**
+     * Returns, in ascending order, the primitives whose bounds are crossed
+     * by a ray or segment given in local coordinates.  These are the only
+     * primitives the ray can hit.
+     */
+    int[] getCandidates(Point3d start, Vector3d dir, double maxDist) {
+	int[] result = new int[16];
+	int n = 0;
+	if (numNodes == 0) {
+	    return new int[0];
+	}
+	int[] stack = new int[getStackSize()];
+	int sp = 0;
+	stack[sp++] = 0;
+	while (sp > 0) {
+	    int node = stack[--sp];
+	    if (!hitBox(nodeBounds, node * 6, start.x, start.y, start.z,
+			dir.x, dir.y, dir.z, maxDist)) {
+		continue;
+	    }
+	    int count = nodeCount[node];
+	    if (count == 0) {
+		stack[sp++] = nodeStart[node] + 1;
+		stack[sp++] = nodeStart[node];
+		continue;
+	    }
+	    if (n + count > result.length) {
+		int[] grow = new int[Math.max(result.length * 2, n + count)];
+		System.arraycopy(result, 0, grow, 0, n);
+		result = grow;
+	    }
+	    System.arraycopy(primOrder, nodeStart[node], result, n, count);
+	    n += count;
+	}
+	int[] candidates = new int[n];
+	System.arraycopy(result, 0, candidates, 0, n);
+	java.util.Arrays.sort(candidates);
+	return candidates;
+    }
+
+    // Slab test of a ray against the box stored at b in bounds, min xyz
+    // then max xyz
+    static boolean hitBox(double[] bounds, int b,
+			  double ox, double oy, double oz,
+			  double dx, double dy, double dz, double tMax) {
+	double tNear = Double.NEGATIVE_INFINITY;
+	double tFar = Double.POSITIVE_INFINITY;
+	double o = ox, d = dx;
+	for (int axis = 0; axis < 3; axis++) {
+	    if (axis == 1) {
+		o = oy;
+		d = dy;
+	    } else if (axis == 2) {
+		o = oz;
+		d = dz;
+	    }
+	    double lo = bounds[b + axis];
+	    double hi = bounds[b + axis + 3];
+	    if (d == 0.0) {
+		if (o < lo || o > hi) {
+		    return false;
+		}
+		continue;
+	    }
+	    double t0 = (lo - o) / d;
+	    double t1 = (hi - o) / d;
+	    if (t0 > t1) {
+		double tmp = t0;
+		t0 = t1;
+		t1 = tmp;
+	    }
+	    if (t0 > tNear) tNear = t0;
+	    if (t1 < tFar) tFar = t1;
+	    if (tNear > tFar) {
+		return false;
+	    }
+	}
+	return tFar >= 0.0 && tNear <= tMax;
+    }
+
+    // Two sided ray test of a triangle or quad, returns the ray parameter
+    // of the hit or -1
+    private double intersectPrimitive(int prim, double ox, double oy,
+				      double oz, double dx, double dy,
+				      double dz) {
+	int c0 = getCoordinateIndex(prim, 0) * 3;
+	int c1 = getCoordinateIndex(prim, 1) * 3;
+	int c2 = getCoordinateIndex(prim, 2) * 3;
+	double t = intersectTriangle(c0, c1, c2, ox, oy, oz, dx, dy, dz);
+	if (primSize == 4) {
+	    int c3 = getCoordinateIndex(prim, 3) * 3;
+	    double t2 = intersectTriangle(c0, c2, c3, ox, oy, oz, dx, dy, dz);
+	    if (t2 >= 0.0 && (t < 0.0 || t2 < t)) {
+		t = t2;
+	    }
+	}
+	return t;
+    }
+
+    private double intersectTriangle(int c0, int c1, int c2,
+				     double ox, double oy, double oz,
+				     double dx, double dy, double dz) {
+	double[] c = coords;
+	double e1x = c[c1] - c[c0];
+	double e1y = c[c1 + 1] - c[c0 + 1];
+	double e1z = c[c1 + 2] - c[c0 + 2];
+	double e2x = c[c2] - c[c0];
+	double e2y = c[c2 + 1] - c[c0 + 1];
+	double e2z = c[c2 + 2] - c[c0 + 2];
+	double px = dy * e2z - dz * e2y;
+	double py = dz * e2x - dx * e2z;
+	double pz = dx * e2y - dy * e2x;
+	double det = e1x * px + e1y * py + e1z * pz;
+	if (det == 0.0) {
+	    return -1.0;
+	}
+	double inv = 1.0 / det;
+	double sx = ox - c[c0];
+	double sy = oy - c[c0 + 1];
+	double sz = oz - c[c0 + 2];
+	double u = (sx * px + sy * py + sz * pz) * inv;
+	if (u < 0.0 || u > 1.0) {
+	    return -1.0;
+	}
+	double qx = sy * e1z - sz * e1y;
+	double qy = sz * e1x - sx * e1z;
+	double qz = sx * e1y - sy * e1x;
+	double v = (dx * qx + dy * qy + dz * qz) * inv;
+	if (v < 0.0 || u + v > 1.0) {
+	    return -1.0;
+	}
+	double t = (e2x * qx + e2y * qy + e2z * qz) * inv;
+	return (t >= 0.0) ? t : -1.0;
+    }
+
+    private boolean isCurrent(GeometryArray geom) {
+	if (geom.getVertexCount() != vertexCount) {
+	    return false;
+	}
+	if (geom instanceof IndexedGeometryArray &&
+	    ((IndexedGeometryArray)geom).getIndexCount() != indexCount) {
+	    return false;
+	}
+	if (getCoordRef(geom) != coordRef) {
+	    return false;
+	}
+	int[] counts = getStripCounts(geom);
+	if (counts != null) {
+	    return java.util.Arrays.equals(counts, stripCounts);
+	}
+	return true;
+    }
+
+    static int getPrimitiveSize(GeometryArray geom) {
+	if (geom instanceof TriangleArray ||
+	    geom instanceof IndexedTriangleArray ||
+	    geom instanceof TriangleStripArray ||
+	    geom instanceof IndexedTriangleStripArray ||
+	    geom instanceof TriangleFanArray ||
+	    geom instanceof IndexedTriangleFanArray) {
+	    return 3;
+	} else if (geom instanceof QuadArray ||
+		   geom instanceof IndexedQuadArray) {
+	    return 4;
+	}
+	return 0;
+    }
+
+    private static int[] getStripCounts(GeometryArray geom) {
+	int[] counts = null;
+	if (geom instanceof GeometryStripArray) {
+	    GeometryStripArray sgeom = (GeometryStripArray) geom;
+	    counts = new int[sgeom.getNumStrips()];
+	    sgeom.getStripVertexCounts(counts);
+	} else if (geom instanceof IndexedGeometryStripArray) {
+	    IndexedGeometryStripArray sgeom = (IndexedGeometryStripArray) geom;
+	    counts = new int[sgeom.getNumStrips()];
+	    sgeom.getStripIndexCounts(counts);
+	}
+	return counts;
+    }
+
+    private static Object getCoordRef(GeometryArray geom) {
+	int vformat = geom.getVertexFormat();
+	if ((vformat & GeometryArray.BY_REFERENCE) == 0) {
+	    return null;
+	}
+	if ((vformat & GeometryArray.INTERLEAVED) != 0) {
+	    return geom.getInterleavedVertices();
+	}
+	Object ref = geom.getCoordRefDouble();
+	if (ref == null) {
+	    ref = geom.getCoordRefFloat();
+	    if (ref == null) {
+		ref = geom.getCoordRef3f();
+		if (ref == null) {
+		    ref = geom.getCoordRef3d();
+		}
+	    }
+	}
+	return ref;
+    }
+
+    // Reads the local coordinates the same way PickResult does
+    private double[] getCoordinates(GeometryArray geom) {
+	int numPts = vertexCount;
+	int vformat = geom.getVertexFormat();
+	double[] data = new double[numPts * 3];
+	if ((vformat & GeometryArray.BY_REFERENCE) == 0) {
+	    geom.getCoordinates(0, data);
+	} else if ((vformat & GeometryArray.INTERLEAVED) != 0) {
+	    float[] floatData = (float[]) coordRef;
+	    if (floatData == null) {
+		return null;
+	    }
+	    int offset = 0;
+	    if ((vformat & GeometryArray.COLOR_3) == GeometryArray.COLOR_3) {
+		offset += 3;
+	    } else if ((vformat & GeometryArray.COLOR_4) ==
+		       GeometryArray.COLOR_4) {
+		offset += 4;
+	    }
+	    if ((vformat & GeometryArray.NORMALS) != 0) {
+		offset += 3;
+	    }
+	    if ((vformat & GeometryArray.TEXTURE_COORDINATE_2) ==
+		GeometryArray.TEXTURE_COORDINATE_2) {
+		offset += 2 * geom.getTexCoordSetCount();
+	    } else if ((vformat & GeometryArray.TEXTURE_COORDINATE_3) ==
+		       GeometryArray.TEXTURE_COORDINATE_3) {
+		offset += 3 * geom.getTexCoordSetCount();
+	    }
+	    int stride = offset + 3;
+	    for (int i = 0; i < numPts; i++) {
+		data[i * 3] = floatData[offset];
+		data[i * 3 + 1] = floatData[offset + 1];
+		data[i * 3 + 2] = floatData[offset + 2];
+		offset += stride;
+	    }
+	} else if (coordRef instanceof double[]) {
+	    System.arraycopy((double[]) coordRef, 0, data, 0, numPts * 3);
+	} else if (coordRef instanceof float[]) {
+	    float[] floatData = (float[]) coordRef;
+	    for (int i = 0; i < numPts * 3; i++) {
+		data[i] = floatData[i];
+	    }
+	} else if (coordRef instanceof Point3f[]) {
+	    Point3f[] p3fData = (Point3f[]) coordRef;
+	    for (int i = 0; i < numPts; i++) {
+		data[i * 3] = p3fData[i].x;
+		data[i * 3 + 1] = p3fData[i].y;
+		data[i * 3 + 2] = p3fData[i].z;
+	    }
+	} else if (coordRef instanceof Point3d[]) {
+	    Point3d[] p3dData = (Point3d[]) coordRef;
+	    for (int i = 0; i < numPts; i++) {
+		data[i * 3] = p3dData[i].x;
+		data[i * 3 + 1] = p3dData[i].y;
+		data[i * 3 + 2] = p3dData[i].z;
+	    }
+	} else {
+	    // NIO buffers are not read by picking either
+	    return null;
+	}
+	return data;
+    }
+
+    // Lists the primitives in the order of the PickResult intersect loops
+    private void enumeratePrimitives(GeometryArray geom) {
+	int count = (coordIndices != null) ? indexCount : vertexCount;
+	if (stripCounts == null) {
+	    numPrims = count / primSize;
+	    primVerts = new int[numPrims * primSize];
+	    for (int i = 0; i < primVerts.length; i++) {
+		primVerts[i] = i;
+	    }
+	    return;
+	}
+
+	int n = 0;
+	for (int i = 0; i < stripCounts.length; i++) {
+	    if (stripCounts[i] > 2) {
+		n += stripCounts[i] - 2;
+	    }
+	}
+	primVerts = new int[n * 3];
+	boolean fan = (geom instanceof TriangleFanArray ||
+		       geom instanceof IndexedTriangleFanArray);
+	// Only the indexed strip loop alternates the winding
+	boolean alternate = (geom instanceof IndexedTriangleStripArray);
+	int stripStart = 0;
+	int p = 0;
+	for (int i = 0; i < stripCounts.length; i++) {
+	    int v0 = stripStart;
+	    int v1 = stripStart + 1;
+	    int v2 = 0;
+	    boolean ccw = true;
+	    int end = stripStart + stripCounts[i];
+	    for (int j = stripStart + 2; j < end; j++) {
+		if (!alternate || ccw) {
+		    v2 = j;
+		} else {
+		    v1 = j;
+		}
+		primVerts[p++] = v0;
+		primVerts[p++] = v1;
+		primVerts[p++] = v2;
+		if (fan) {
+		    v1 = v2;
+		} else if (!alternate) {
+		    v0 = v1;
+		    v1 = v2;
+		} else if (ccw) {
+		    v0 = v1;
+		    ccw = false;
+		} else {
+		    v0 = v2;
+		    ccw = true;
+		}
+	    }
+	    stripStart = end;
+	}
+	numPrims = n;
+    }
+
+    private void build() {
+	double[] primBounds = new double[numPrims * 6];
+	double[] centroids = new double[numPrims * 3];
+	Point3d p = new Point3d();
+	for (int i = 0; i < numPrims; i++) {
+	    int b = i * 6;
+	    for (int k = 0; k < primSize; k++) {
+		getLocalCoordinates(i, k, p);
+		if (k == 0) {
+		    primBounds[b] = primBounds[b + 3] = p.x;
+		    primBounds[b + 1] = primBounds[b + 4] = p.y;
+		    primBounds[b + 2] = primBounds[b + 5] = p.z;
+		} else {
+		    primBounds[b] = Math.min(primBounds[b], p.x);
+		    primBounds[b + 1] = Math.min(primBounds[b + 1], p.y);
+		    primBounds[b + 2] = Math.min(primBounds[b + 2], p.z);
+		    primBounds[b + 3] = Math.max(primBounds[b + 3], p.x);
+		    primBounds[b + 4] = Math.max(primBounds[b + 4], p.y);
+		    primBounds[b + 5] = Math.max(primBounds[b + 5], p.z);
+		}
+	    }
+	    for (int k = 0; k < 3; k++) {
+		centroids[i * 3 + k] =
+		    (primBounds[b + k] + primBounds[b + k + 3]) * 0.5;
+	    }
+	}
+
+	primOrder = new int[numPrims];
+	for (int i = 0; i < numPrims; i++) {
+	    primOrder[i] = i;
+	}
+	int maxNodes = Math.max(1, 2 * numPrims);
+	nodeBounds = new double[maxNodes * 6];
+	nodeStart = new int[maxNodes];
+	nodeCount = new int[maxNodes];
+	if (numPrims == 0) {
+	    return;
+	}
+	numNodes = 1;
+	buildNode(0, 0, numPrims, 0, primBounds, centroids);
+
+	// Pad the bounds so that rounding in the transformed ray can't
+	// make a pick miss a primitive it touches
+	double size = 0.0;
+	for (int k = 0; k < 3; k++) {
+	    size = Math.max(size, nodeBounds[k + 3] - nodeBounds[k]);
+	    size = Math.max(size, Math.abs(nodeBounds[k]));
+	    size = Math.max(size, Math.abs(nodeBounds[k + 3]));
+	}
+	double pad = size * 1e-9;
+	for (int i = 0; i < numNodes; i++) {
+	    for (int k = 0; k < 3; k++) {
+		nodeBounds[i * 6 + k] -= pad;
+		nodeBounds[i * 6 + k + 3] += pad;
+	    }
+	}
+    }
+
+    private void buildNode(int node, int start, int end, int depth,
+			   double[] primBounds, double[] centroids) {
+	if (depth > maxDepth) {
+	    maxDepth = depth;
+	}
+	int b = node * 6;
+	double[] cmin = new double[3];
+	double[] cmax = new double[3];
+	for (int i = start; i < end; i++) {
+	    int prim = primOrder[i];
+	    for (int k = 0; k < 3; k++) {
+		double lo = primBounds[prim * 6 + k];
+		double hi = primBounds[prim * 6 + k + 3];
+		double c = centroids[prim * 3 + k];
+		if (i == start) {
+		    nodeBounds[b + k] = lo;
+		    nodeBounds[b + k + 3] = hi;
+		    cmin[k] = cmax[k] = c;
+		} else {
+		    if (lo < nodeBounds[b + k]) nodeBounds[b + k] = lo;
+		    if (hi > nodeBounds[b + k + 3]) nodeBounds[b + k + 3] = hi;
+		    if (c < cmin[k]) cmin[k] = c;
+		    if (c > cmax[k]) cmax[k] = c;
+		}
+	    }
+	}
+	if (end - start <= LEAF_SIZE) {
+	    nodeStart[node] = start;
+	    nodeCount[node] = end - start;
+	    return;
+	}
+
+	// Median split along the longest axis of the centroids
+	int axis = 0;
+	for (int k = 1; k < 3; k++) {
+	    if (cmax[k] - cmin[k] > cmax[axis] - cmin[axis]) {
+		axis = k;
+	    }
+	}
+	int mid = (start + end) >>> 1;
+	if (cmax[axis] > cmin[axis]) {
+	    select(primOrder, start, end - 1, mid, centroids, axis);
+	}
+	int left = numNodes;
+	numNodes += 2;
+	nodeStart[node] = left;
+	nodeCount[node] = 0;
+	buildNode(left, start, mid, depth + 1, primBounds, centroids);
+	buildNode(left + 1, mid, end, depth + 1, primBounds, centroids);
+    }
+
+    // Partially sorts order[lo..hi] so that order[k] has the k-th smallest
+    // key, with smaller keys before it and larger ones after it
+    private static void select(int[] order, int lo, int hi, int k,
+			       double[] keys, int axis) {
+	while (hi > lo) {
+	    double pivot = keys[order[(lo + hi) >>> 1] * 3 + axis];
+	    int i = lo;
+	    int j = hi;
+	    while (i <= j) {
+		while (keys[order[i] * 3 + axis] < pivot) i++;
+		while (keys[order[j] * 3 + axis] > pivot) j--;
+		if (i <= j) {
+		    int tmp = order[i];
+		    order[i] = order[j];
+		    order[j] = tmp;
+		    i++;
+		    j--;
+		}
+	    }
+	    if (k <= j) {
+		hi = j;
+	    } else if (k >= i) {
+		lo = i;
+	    } else {
+		return;
+	    }
+	}
+    }
+}
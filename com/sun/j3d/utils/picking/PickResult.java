@@ -48,6 +48,7 @@ import javax.vecmath.*;
 import javax.media.j3d.*;
 import java.util.ArrayList;
 import com.sun.j3d.utils.geometry.Primitive;
+import com.sun.j3d.utils.behaviors.picking.Intersect;
 import com.sun.j3d.internal.*;
 
 /**
@@ -187,6 +188,18 @@ public class PickResult {
     /** if true, find only the first intersection */
     private boolean 	firstIntersectOnly = false;
 
+    /** if true, use a GeometryBVH for ray and segment intersections */
+    private boolean 	accelerated = false;
+
+    /* Local coordinates of the GeometryBVH being intersected, and the
+       pick ray or segment in the same coordinates.  See intersectFlat(). */
+    private double[]	flatCoords = null;
+    private double[]	flatScratch = null;
+    private double[]	flatDist = null;
+    private Point3d	localStart = null;
+    private Point3d	localEnd = null;
+    private Vector3d	localDir = null;
+
     /** Stored SceneGraphPath */
     private SceneGraphPath pickedSceneGraphPath = null;
 
@@ -590,6 +603,14 @@ public class PickResult {
 	return null; // should not be reached
     }
 
+    /** Sets whether ray and segment intersections with triangle and quad
+	geometry use the cached GeometryBVH of the geometry.  Set by PickTool
+	before the intersections are generated.
+      */
+    void setAccelerated (boolean accelerated) {
+	this.accelerated = accelerated;
+    }
+
     /** Extract the picked node from the SceneGraphPath */
     void storeNode () {
 	if (pickedSceneGraphPath == null) {
@@ -626,6 +647,17 @@ public class PickResult {
     final boolean intersect(int geomIndex, boolean firstpick) {
 	int offset;
 	GeometryArray geom = geometryArrays[geomIndex];
+
+	// The geometry of a Morph is not the displayed one, don't cache it
+	if (accelerated && (pickedNode instanceof Shape3D) &&
+	    ((pickShapeType == PICK_SHAPE_RAY) ||
+	     (pickShapeType == PICK_SHAPE_SEGMENT))) {
+	    GeometryBVH bvh = GeometryBVH.getBVH(geom);
+	    if ((bvh != null) && setLocalPickShape()) {
+		return intersectBVH(bvh, geom, geomIndex, firstpick);
+	    }
+	}
+
 	int numPts = geom.getVertexCount();
 	double[] doubleData = null;
 	float[] floatData = null;
@@ -804,6 +836,96 @@ public class PickResult {
 
     }
 
+    /*  Sets localStart, localEnd and localDir to the pick ray or segment
+     *  in the local coordinates of the picked node.  Returns false if the
+     *  local to vworld transform can't be inverted.
+     */
+    private boolean setLocalPickShape() {
+	Transform3D vworldToLocal = new Transform3D(localToVWorld);
+	try {
+	    vworldToLocal.invert();
+	} catch (javax.media.j3d.SingularMatrixException e) {
+	    return false;
+	}
+	if (localStart == null) {
+	    localStart = new Point3d();
+	    localEnd = new Point3d();
+	    localDir = new Vector3d();
+	}
+	localStart.set(pickShapeStart);
+	localDir.set(pickShapeDir);
+	vworldToLocal.transform(localStart);
+	vworldToLocal.transform(localDir);
+	if (localDir.lengthSquared() == 0.0) {
+	    return false;
+	}
+	localEnd.add(localStart, localDir);
+	return true;
+    }
+
+    /*  Intersects the local pick ray or segment with a triangle or quad
+     *  of flatCoords, using the Intersect kernels.  On a hit, sets the
+     *  vworld distance and point of pi as the vworld tests do and returns
+     *  the vworld coordinates of the primitive; returns null on a miss.
+     */
+    private Point3d[] intersectFlat(int[] coordidx, int n,
+				    PickIntersection pi) {
+	if (flatScratch == null) {
+	    flatScratch = new double[12];
+	    flatDist = new double[1];
+	}
+	Intersect.loadVertices(flatCoords, 0, 3, coordidx, n, flatScratch);
+	boolean hit;
+	if (pickShapeType == PICK_SHAPE_SEGMENT) {
+	    hit = (n == 3) ?
+		Intersect.segmentAndTriangle(localStart, localEnd,
+					     flatScratch, flatDist) :
+		Intersect.segmentAndQuad(localStart, localEnd,
+					 flatScratch, flatDist);
+	} else {
+	    hit = (n == 3) ?
+		Intersect.rayAndTriangle(localStart, localDir,
+					 flatScratch, flatDist) :
+		Intersect.rayAndQuad(localStart, localDir,
+				     flatScratch, flatDist);
+	}
+	if (!hit) {
+	    return null;
+	}
+
+	// Ray parameters are the same in local and vworld coordinates
+	double t = flatDist[0] / localDir.length();
+	Point3d iPnt = new Point3d();
+	iPnt.scaleAdd(t, pickShapeDir, pickShapeStart);
+	pi.setPointCoordinatesVW(iPnt);
+	pi.setDistance(t * pickShapeDir.length());
+
+	Point3d[] pnts = new Point3d[n];
+	for (int k = 0; k < n; k++) {
+	    pnts[k] = new Point3d(flatScratch[k*3], flatScratch[k*3+1],
+				  flatScratch[k*3+2]);
+	    localToVWorld.transform(pnts[k]);
+	}
+	return pnts;
+    }
+
+    /*  Records an intersection found with pi, as the intersect methods
+     *  by primitive type do.
+     */
+    private void addIntersection(int[] vertidx, int geomIndex,
+				 Point3d[] primPts, PickIntersection pi) {
+	PickIntersection newpi = new PickIntersection(this, pi.geom);
+	newpi.iGeom = pi.iGeom;
+	newpi.setDistance(pi.distance);
+	newpi.setPointCoordinatesVW(pi.getPointCoordinatesVW());
+
+	// Set PickIntersection parameters
+	newpi.setGeomIndex(geomIndex);
+	newpi.setVertexIndices (vertidx);
+	newpi.setPrimitiveCoordinatesVW(primPts);
+	intersections.add (newpi);
+    }
+
 
 
     /* ==================================================================== */
@@ -945,15 +1067,62 @@ public class PickResult {
 	return false;
     }
 
+    /*  Intersects the pick ray or segment with the primitives of a
+     *  geometry whose bounds it crosses.  The hierarchy is walked with the
+     *  local shape set by setLocalPickShape; the candidates are then
+     *  tested on the local coordinates of the hierarchy by intersectTri
+     *  and intersectQuad, in geometry order, as the intersect methods
+     *  below do.
+     */
+    boolean intersectBVH(GeometryBVH bvh, GeometryArray geom, int geomIndex,
+			 boolean firstpick) {
+	double maxDist = (pickShapeType == PICK_SHAPE_SEGMENT) ?
+	    1.0 : Double.POSITIVE_INFINITY;
+	int[] candidates = bvh.getCandidates(localStart, localDir, maxDist);
+
+	PickIntersection pi = new PickIntersection(this, geom);
+	if (geom instanceof IndexedGeometryArray) {
+	    pi.iGeom = (IndexedGeometryArray) geom;
+	}
+	int size = bvh.getPrimitiveSize();
+	int[] vertidx = new int[size];
+	int[] coordidx = new int[size];
+	flatCoords = bvh.getLocalCoordinateArray();
+	int numint = 0;
+	for (int i = 0; i < candidates.length; i++) {
+	    bvh.getVertexIndices(candidates[i], vertidx);
+	    bvh.getCoordinateIndices(candidates[i], coordidx);
+	    boolean hit = (size == 3) ?
+		intersectTri(vertidx, coordidx, geomIndex, null, pi) :
+		intersectQuad(vertidx, coordidx, geomIndex, null, pi);
+	    if (hit) {
+		numint++;
+		if (firstpick) break;
+	    }
+	}
+	flatCoords = null;
+	return (numint > 0);
+    }
+
     boolean intersectTri(int[] vertidx, int[] coordidx, int geomIndex, 
 			 Point3d[] pnts, PickIntersection pi) {
 
-	Point3d[] triPts = new Point3d[3];
-	
+	Point3d[] triPts;
+
+	if (pnts == null) {
+	    // Ray or segment against the local coordinates of a GeometryBVH
+	    triPts = intersectFlat(coordidx, 3, pi);
+	    if (triPts == null) {
+		return false;
+	    }
+	    addIntersection(vertidx, geomIndex, triPts, pi);
+	    return true;
+	}
+
+	triPts = new Point3d[3];
 	triPts[0] = pnts[coordidx[0]];
 	triPts[1] = pnts[coordidx[1]];
 	triPts[2] = pnts[coordidx[2]];
-	
 
 	boolean intersect = false;
 	switch(pickShapeType) {
@@ -1010,8 +1179,19 @@ public class PickResult {
     boolean intersectQuad(int[] vertidx, int[] coordidx, int geomIndex, 
 			  Point3d[] pnts, PickIntersection pi) {
 
-	Point3d[] quadPts = new Point3d[4];
-	
+	Point3d[] quadPts;
+
+	if (pnts == null) {
+	    // Ray or segment against the local coordinates of a GeometryBVH
+	    quadPts = intersectFlat(coordidx, 4, pi);
+	    if (quadPts == null) {
+		return false;
+	    }
+	    addIntersection(vertidx, geomIndex, quadPts, pi);
+	    return true;
+	}
+
+	quadPts = new Point3d[4];
 	quadPts[0] = pnts[coordidx[0]];
 	quadPts[1] = pnts[coordidx[1]];
 	quadPts[2] = pnts[coordidx[2]];
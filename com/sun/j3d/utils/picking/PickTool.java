@@ -46,6 +46,11 @@ package com.sun.j3d.utils.picking;
 
 import javax.vecmath.*;
 import javax.media.j3d.*;
+import java.util.ArrayList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 import com.sun.j3d.internal.*;
 
 /** 
@@ -143,6 +148,16 @@ public class PickTool {
     /* pick mode, one of BOUNDS, GEOMETRY, etc. */
     int mode = BOUNDS;
 
+    /* use GeometryBVH for geometry ray and segment picks */
+    boolean accelerated = false;
+
+    /* targets and executor of pickClosestBatch */
+    private BatchTargets batchTargets = null;
+    private ExecutorService batchExecutor = null;
+
+    // Number of rays cast by each pickClosestBatch task
+    private static final int BATCH_CHUNK_SIZE = 1024;
+
     /** Use this mode to pick by bounds and get basic information
         on the pick. 
     */
@@ -380,6 +395,32 @@ public class PickTool {
 	return mode;
     }
 
+    /** Sets whether the intersections of GEOMETRY_INTERSECT_INFO picks
+     * with a ray or segment are found with a bounding volume hierarchy
+     * over the triangles or quads of each Shape3D geometry.  The hierarchy
+     * is built the first time a geometry is picked and is cached until the
+     * geometry is garbage collected.  The ray or segment is tested against
+     * the local coordinates of the geometry instead of its vworld
+     * coordinates, so the same primitives are found, except that a ray
+     * passing within rounding error of a primitive's edge or vertex may
+     * hit or miss it differently, and the distances and points may differ
+     * in their last digits.  Only geometry whose coordinates can't change
+     * is accelerated: it must not have the ALLOW_COORDINATE_WRITE,
+     * ALLOW_COUNT_WRITE, ALLOW_REF_DATA_WRITE or
+     * ALLOW_COORDINATE_INDEX_WRITE capabilities.  Other geometry is picked
+     * as if acceleration were off.  The default is false.
+     * @see GeometryBVH#isWritable
+     */
+    public void setAccelerated (boolean accelerated) {
+	this.accelerated = accelerated;
+    }
+
+    /** Returns whether geometry picks use a bounding volume hierarchy.
+     */
+    public boolean getAccelerated () {
+	return accelerated;
+    }
+
     /**  Sets the pick shape to a PickRay. 
      *   @param start The start of the ray
      *   @param dir The direction of the ray
@@ -599,7 +640,7 @@ p	 @param end The end of the segment
 	// Create PickResult array
 	pr = new PickResult [sgp.length];
 	for (int i=0;i<sgp.length;i++) {
-	    pr[i] = new PickResult (sgp[i], pickShape);
+	    pr[i] = newPickResult (sgp[i], pickShape);
 	}
 	return pr;
     }
@@ -618,7 +659,7 @@ p	 @param end The end of the segment
 	// Create PickResult array
 	pr = new PickResult [sgp.length];
 	for (int i=0;i<sgp.length;i++) {
-	    pr[i] = new PickResult (sgp[i], pickShape);
+	    pr[i] = newPickResult (sgp[i], pickShape);
 	}
 	return pr;
     }
@@ -635,7 +676,7 @@ p	 @param end The end of the segment
 	if (sgp == null) return null; // no match
 
 	// Create PickResult object
-	pr = new PickResult (sgp, pickShape);
+	pr = newPickResult (sgp, pickShape);
 	return pr;
     }
 
@@ -651,7 +692,13 @@ p	 @param end The end of the segment
 	if (sgp == null) return null; // no match
 
 	// Create PickResult object
-	pr = new PickResult (sgp, pickShape);
+	pr = newPickResult (sgp, pickShape);
+	return pr;
+    }
+
+    private PickResult newPickResult (SceneGraphPath sgp, PickShape ps) {
+	PickResult pr = new PickResult (sgp, ps);
+	pr.setAccelerated (accelerated);
 	return pr;
     }
 
@@ -679,7 +726,7 @@ p	 @param end The end of the segment
 	PickResult[] pr = new PickResult[sgp.length];
 	for (i=0; i<sgp.length; i++) {
 	    obj[i] = sgp[i].getObject();
-	    pr[i] = new PickResult (sgp[i], pickShape);
+	    pr[i] = newPickResult (sgp[i], pickShape);
 
 	    if (obj[i] instanceof Shape3D) {
 		found[i] = ((Shape3D) obj[i]).intersect(sgp[i], pickShape);
@@ -727,7 +774,7 @@ p	 @param end The end of the segment
 	
 	for (i=0; i<sgp.length; i++) {
 	    obj[i] = sgp[i].getObject();
-	    pr[i] = new PickResult (sgp[i], pickShape);
+	    pr[i] = newPickResult (sgp[i], pickShape);
 	    if (obj[i] instanceof Shape3D) {
 		found[i] = ((Shape3D)obj[i]).intersect(sgp[i], pickShape,
 						       dist);
@@ -772,7 +819,7 @@ p	 @param end The end of the segment
 
 	for(i=0; i<sgpa.length; i++) {
 	    obj = sgpa[i].getObject();
-	    PickResult pr = new PickResult(sgpa[i], pickShape);
+	    PickResult pr = newPickResult (sgpa[i], pickShape);
 	    if(obj instanceof Shape3D) {
 		if(((Shape3D) obj).intersect(sgpa[i], pickShape)) {
 		    return pr;
@@ -819,7 +866,7 @@ p	 @param end The end of the segment
 
 	PickResult[] pr = new PickResult[sgp.length];
 	for (i=0; i<sgp.length; i++) {
-	    pr[i] = new PickResult (sgp[i], pickShape);
+	    pr[i] = newPickResult (sgp[i], pickShape);
 	    if (pr[i].numIntersections() > 0) {
 		found[i] = true;
 		cnt++;
@@ -863,7 +910,7 @@ p	 @param end The end of the segment
 	
 	PickResult[] pr = new PickResult[sgp.length];
 	for (i=0; i<sgp.length; i++) {
- 	    pr[i] = new PickResult(sgp[i], pickShape);
+ 	    pr[i] = newPickResult (sgp[i], pickShape);
 	    int numIntersection = pr[i].numIntersections();
 	    if (numIntersection > 0) {
 		// System.out.println ("numIntersection " + numIntersection);
@@ -952,7 +999,7 @@ p	 @param end The end of the segment
 	}
 	if (sgpa == null) return null; // no match
 	for(i=0; i<sgpa.length; i++) {
-	    PickResult pr = new PickResult(sgpa[i], pickShape);
+	    PickResult pr = newPickResult (sgpa[i], pickShape);
 	    pr.setFirstIntersectOnly(true);
 	    if (pr.numIntersections() > 0) {
 		return pr;
@@ -962,6 +1009,322 @@ p	 @param end The end of the segment
 	return null;
     }
 
+    // ================================================================
+    // Batch Methods
+    // ================================================================
+
+    /** Sets the ExecutorService used by <code>pickClosestBatch</code> to
+     * cast the rays of a batch in parallel.  The executor is not shut down
+     * by the PickTool.
+     * @param executor The executor to use, or null (the default) to cast
+     * all of the rays on the calling thread.
+     */
+    public void setBatchExecutor (ExecutorService executor) {
+	batchExecutor = executor;
+    }
+
+    /** Returns the ExecutorService used by <code>pickClosestBatch</code>,
+     * or null if rays are cast on the calling thread.
+     */
+    public ExecutorService getBatchExecutor () {
+	return batchExecutor;
+    }
+
+    /** Collects the targets of <code>pickClosestBatch</code>: the
+     * Shape3D nodes under the BranchGroup or Locale that are pickable by
+     * bounds, their local to vworld transforms and the GeometryBVHs of
+     * their triangle and quad geometry.  Other geometry is ignored.  This
+     * is done by the first batch pick; call it again when nodes are added
+     * or removed, their transforms change or their geometry is edited.
+     * Shape3D nodes must have the capabilities set by
+     * <code>setCapabilities(node, INTERSECT_FULL)</code>.
+     */
+    public void updateBatchTargets () {
+	SceneGraphPath[] sgp = null;
+	PickShape all = new PickBounds (new BoundingSphere (new Point3d(),
+					       Double.POSITIVE_INFINITY));
+	if (pickRootBG != null) {
+	    sgp = pickRootBG.pickAll (all);
+	} else if (pickRootL != null) {
+	    sgp = pickRootL.pickAll (all);
+	}
+	if (sgp == null) {
+	    sgp = new SceneGraphPath[0];
+	}
+
+	ArrayList nodes = new ArrayList();
+	ArrayList targets = new ArrayList();
+	ArrayList transforms = new ArrayList();
+	ArrayList offsets = new ArrayList();
+	for (int i = 0; i < sgp.length; i++) {
+	    if (!(sgp[i].getObject() instanceof Shape3D)) {
+		continue;
+	    }
+	    Shape3D shape = (Shape3D) sgp[i].getObject();
+	    Transform3D localToVWorld = sgp[i].getTransform();
+	    int numPrims = 0;
+	    for (int k = 0; k < shape.numGeometries(); k++) {
+		Geometry geometry = shape.getGeometry(k);
+		if (!(geometry instanceof GeometryArray)) {
+		    continue;
+		}
+		GeometryBVH bvh =
+		    GeometryBVH.getSnapshotBVH((GeometryArray) geometry);
+		if (bvh == null) {
+		    continue;
+		}
+		targets.add(bvh);
+		transforms.add(localToVWorld);
+		offsets.add(new int[] {nodes.size(), numPrims});
+		numPrims += bvh.numPrimitives();
+	    }
+	    nodes.add(shape);
+	}
+
+	int n = targets.size();
+	GeometryBVH[] bvhs = new GeometryBVH[n];
+	int[] targetNodes = new int[n];
+	int[] primOffsets = new int[n];
+	double[] toLocal = new double[n * 12];
+	double[] bounds = new double[n * 6];
+	double[] mat = new double[16];
+	Point3d lower = new Point3d();
+	Point3d upper = new Point3d();
+	Point3d corner = new Point3d();
+	int stackSize = 0;
+	for (int i = 0; i < n; i++) {
+	    bvhs[i] = (GeometryBVH) targets.get(i);
+	    int[] offset = (int[]) offsets.get(i);
+	    targetNodes[i] = offset[0];
+	    primOffsets[i] = offset[1];
+	    stackSize = Math.max(stackSize, bvhs[i].getStackSize());
+
+	    Transform3D localToVWorld = (Transform3D) transforms.get(i);
+	    Transform3D vworldToLocal = new Transform3D(localToVWorld);
+	    vworldToLocal.invert();
+	    vworldToLocal.get(mat);
+	    System.arraycopy(mat, 0, toLocal, i * 12, 12);
+
+	    // Vworld bounds of the transformed local bounds
+	    bvhs[i].getBounds(lower, upper);
+	    for (int k = 0; k < 3; k++) {
+		bounds[i * 6 + k] = Double.POSITIVE_INFINITY;
+		bounds[i * 6 + k + 3] = Double.NEGATIVE_INFINITY;
+	    }
+	    if (lower.x > upper.x) {
+		continue;
+	    }
+	    for (int c = 0; c < 8; c++) {
+		corner.x = ((c & 1) == 0) ? lower.x : upper.x;
+		corner.y = ((c & 2) == 0) ? lower.y : upper.y;
+		corner.z = ((c & 4) == 0) ? lower.z : upper.z;
+		localToVWorld.transform(corner);
+		bounds[i * 6] = Math.min(bounds[i * 6], corner.x);
+		bounds[i * 6 + 1] = Math.min(bounds[i * 6 + 1], corner.y);
+		bounds[i * 6 + 2] = Math.min(bounds[i * 6 + 2], corner.z);
+		bounds[i * 6 + 3] = Math.max(bounds[i * 6 + 3], corner.x);
+		bounds[i * 6 + 4] = Math.max(bounds[i * 6 + 4], corner.y);
+		bounds[i * 6 + 5] = Math.max(bounds[i * 6 + 5], corner.z);
+	    }
+	}
+
+	Node[] nodeArray = new Node[nodes.size()];
+	nodes.toArray(nodeArray);
+	batchTargets = new BatchTargets(nodeArray, bvhs, targetNodes,
+					primOffsets, toLocal, bounds,
+					stackSize);
+    }
+
+    /** Returns the number of nodes collected by
+     * <code>updateBatchTargets</code>.
+     */
+    public int numBatchNodes () {
+	return (batchTargets == null) ? 0 : batchTargets.nodes.length;
+    }
+
+    /** Returns a node collected by <code>updateBatchTargets</code>.
+     * @param index a node index returned by <code>pickClosestBatch</code>
+     */
+    public Node getBatchNode (int index) {
+	return batchTargets.nodes[index];
+    }
+
+    /** Casts a batch of rays and finds the closest hit of each against the
+     * nodes collected by <code>updateBatchTargets</code>, which is called
+     * first if it hasn't been yet.  The rays are cast in parallel on the
+     * batch executor if there is one.  Results go into the caller's
+     * arrays and each thread keeps its own traversal scratch space, so
+     * apart from the executor tasks a batch allocates nothing once the
+     * targets are collected.
+     * <p>
+     * The pick mode and shape are not used: this is always a geometry pick
+     * with rays, against triangle and quad geometry only.  Primitives are
+     * numbered as in GeometryBVH, continuing from one geometry of a
+     * Shape3D to the next.
+     * @param origins ray origins, three doubles per ray
+     * @param directions ray directions, three doubles per ray
+     * @param numRays the number of rays to cast
+     * @param distances receives the distance from the origin to the
+     * closest hit of each ray, or -1 if the ray misses
+     * @param nodeIndices if not null, receives the index of the hit node
+     * (see <code>getBatchNode</code>) of each ray, or -1
+     * @param primitiveIndices if not null, receives the index of the hit
+     * primitive of each ray, or -1
+     * @return the number of rays that hit something
+     */
+    public int pickClosestBatch (final double[] origins,
+				 final double[] directions, int numRays,
+				 final double[] distances,
+				 final int[] nodeIndices,
+				 final int[] primitiveIndices) {
+	if (batchTargets == null) {
+	    updateBatchTargets();
+	}
+	final BatchTargets targets = batchTargets;
+	ExecutorService executor = batchExecutor;
+
+	if ((executor == null) || (numRays <= BATCH_CHUNK_SIZE)) {
+	    return pickBatchRange(targets, origins, directions, 0, numRays,
+				  distances, nodeIndices, primitiveIndices);
+	}
+
+	ArrayList futures = new ArrayList();
+	for (int start = 0; start < numRays; start += BATCH_CHUNK_SIZE) {
+	    final int s = start;
+	    final int e = Math.min(start + BATCH_CHUNK_SIZE, numRays);
+	    futures.add(executor.submit(new Callable() {
+		public Object call() {
+		    return new Integer(pickBatchRange(targets, origins,
+						      directions, s, e,
+						      distances, nodeIndices,
+						      primitiveIndices));
+		}
+	    }));
+	}
+
+	int hits = 0;
+	try {
+	    for (int i = 0; i < futures.size(); i++) {
+		hits += ((Integer) ((Future) futures.get(i)).get()).intValue();
+	    }
+	} catch (InterruptedException ex) {
+	    Thread.currentThread().interrupt();
+	    throw new RuntimeException(ex);
+	} catch (ExecutionException ex) {
+	    Throwable cause = ex.getCause();
+	    if (cause instanceof RuntimeException)
+		throw (RuntimeException) cause;
+	    if (cause instanceof Error)
+		throw (Error) cause;
+	    throw new RuntimeException(cause);
+	}
+	return hits;
+    }
+
+    // Casts the rays in [start, end), returns the number of hits
+    private static int pickBatchRange (BatchTargets targets,
+				       double[] origins, double[] directions,
+				       int start, int end, double[] distances,
+				       int[] nodeIndices,
+				       int[] primitiveIndices) {
+	BatchScratch scratch = (BatchScratch) batchScratch.get();
+	if (scratch.stack.length < targets.stackSize) {
+	    scratch.stack = new int[targets.stackSize];
+	}
+	int[] stack = scratch.stack;
+	int[] primitive = scratch.primitive;
+	double[] m = targets.toLocal;
+	int hits = 0;
+
+	for (int ray = start; ray < end; ray++) {
+	    int r = ray * 3;
+	    double ox = origins[r];
+	    double oy = origins[r + 1];
+	    double oz = origins[r + 2];
+	    double dx = directions[r];
+	    double dy = directions[r + 1];
+	    double dz = directions[r + 2];
+
+	    double closest = Double.POSITIVE_INFINITY;
+	    int closestTarget = -1;
+	    int closestPrim = -1;
+	    for (int i = 0; i < targets.bvhs.length; i++) {
+		if (!GeometryBVH.hitBox(targets.bounds, i * 6, ox, oy, oz,
+					dx, dy, dz, closest)) {
+		    continue;
+		}
+		int k = i * 12;
+		double t = targets.bvhs[i].intersectClosest(
+		    m[k] * ox + m[k + 1] * oy + m[k + 2] * oz + m[k + 3],
+		    m[k + 4] * ox + m[k + 5] * oy + m[k + 6] * oz + m[k + 7],
+		    m[k + 8] * ox + m[k + 9] * oy + m[k + 10] * oz + m[k + 11],
+		    m[k] * dx + m[k + 1] * dy + m[k + 2] * dz,
+		    m[k + 4] * dx + m[k + 5] * dy + m[k + 6] * dz,
+		    m[k + 8] * dx + m[k + 9] * dy + m[k + 10] * dz,
+		    closest, stack, primitive);
+		if ((t >= 0.0) && (t < closest)) {
+		    closest = t;
+		    closestTarget = i;
+		    closestPrim = primitive[0];
+		}
+	    }
+
+	    if (closestTarget < 0) {
+		distances[ray] = -1.0;
+		if (nodeIndices != null) nodeIndices[ray] = -1;
+		if (primitiveIndices != null) primitiveIndices[ray] = -1;
+	    } else {
+		// The ray parameter is the same in local and vworld space
+		distances[ray] = closest * Math.sqrt(dx * dx + dy * dy + dz * dz);
+		if (nodeIndices != null) {
+		    nodeIndices[ray] = targets.targetNodes[closestTarget];
+		}
+		if (primitiveIndices != null) {
+		    primitiveIndices[ray] =
+			targets.primOffsets[closestTarget] + closestPrim;
+		}
+		hits++;
+	    }
+	}
+	return hits;
+    }
+
+    /* The geometries picked by pickClosestBatch.  Replaced as a whole by
+       updateBatchTargets so that running batches keep a consistent set. */
+    private static class BatchTargets {
+	Node[] nodes;
+	GeometryBVH[] bvhs;
+	int[] targetNodes;	// node of each geometry
+	int[] primOffsets;	// number of the first primitive of each geometry
+	double[] toLocal;	// vworld to local matrix rows, 12 per geometry
+	double[] bounds;	// vworld bounds, 6 per geometry
+	int stackSize;
+
+	BatchTargets(Node[] nodes, GeometryBVH[] bvhs, int[] targetNodes,
+		     int[] primOffsets, double[] toLocal, double[] bounds,
+		     int stackSize) {
+	    this.nodes = nodes;
+	    this.bvhs = bvhs;
+	    this.targetNodes = targetNodes;
+	    this.primOffsets = primOffsets;
+	    this.toLocal = toLocal;
+	    this.bounds = bounds;
+	    this.stackSize = stackSize;
+	}
+    }
+
+    /* Per thread scratch space of pickClosestBatch */
+    private static class BatchScratch {
+	int[] stack = new int[64];
+	int[] primitive = new int[1];
+    }
+
+    private static final ThreadLocal batchScratch = new ThreadLocal() {
+	protected Object initialValue() {
+	    return new BatchScratch();
+	}
+    };
+
     // ================================================================
     // Sort Methods
     // ================================================================
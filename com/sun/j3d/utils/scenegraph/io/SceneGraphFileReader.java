@@ -46,6 +46,7 @@ package com.sun.j3d.utils.scenegraph.io;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.concurrent.ExecutorService;
 
 import javax.media.j3d.VirtualUniverse;
 import javax.media.j3d.BranchGroup;
@@ -72,6 +73,22 @@ public class SceneGraphFileReader extends java.lang.Object {
         fileControl.openFile( file );
     }
 
+    /**
+     * Creates new SceneGraphFileReader.
+     *
+     * If mapped is true the file is memory mapped, which allows the
+     * branchgraphs to be read concurrently using an executor set with
+     * <code>setExecutor</code>. Files larger than 2GB are not mapped.
+     *
+     * @param file The file to read
+     * @param mapped true to memory map the file
+     * @see #setExecutor
+     */
+    public SceneGraphFileReader( java.io.File file, boolean mapped ) throws IOException {
+        fileControl = new RandomAccessFileControl();
+        fileControl.openFile( file, mapped );
+    }
+
     /**
      * Create and return a ConfiguredUniverse with the PlatformGeometry, ViewerAvatar,
      * and Locales saved in the file.  The MultiTransformGroup between the ViewingPlatform
@@ -103,6 +120,49 @@ public class SceneGraphFileReader extends java.lang.Object {
         return fileControl.getClassLoader();
     }
     
+    /**
+     * Set the executor used to read branchgraphs concurrently. Only
+     * used if the file was opened memory mapped. If null (the default)
+     * the graphs are read on the calling thread. The executor is not
+     * shut down by this reader.<p>
+     *
+     * Reading a graph with <code>readBranchGraph</code> reads the graphs
+     * it depends on concurrently, <code>readAllBranchGraphs</code> reads
+     * every graph concurrently. The graphs are always connected together
+     * on the calling thread.
+     */
+    public void setExecutor( ExecutorService executor ) {
+        fileControl.setExecutor( executor );
+    }
+
+    /**
+     * Get the executor used to read branchgraphs concurrently, or null
+     */
+    public ExecutorService getExecutor() {
+        return fileControl.getExecutor();
+    }
+
+    /**
+     * Set the size in bytes at and above which NodeComponents such as
+     * geometry and images are not read with the branchgraph in which they
+     * are stored. They are read instead when first referenced by a graph
+     * being loaded, so large components that are only used by graphs that
+     * are never read are never decoded.<p>
+     *
+     * The default of 0 reads all NodeComponents with their branchgraph.
+     */
+    public void setLazyNodeComponentSize( int size ) {
+        fileControl.setLazyNodeComponentSize( size );
+    }
+
+    /**
+     * Get the size at and above which NodeComponents are read lazily,
+     * 0 if they are always read with their branchgraph.
+     */
+    public int getLazyNodeComponentSize() {
+        return fileControl.getLazyNodeComponentSize();
+    }
+    
     /**
      * Create and return a ConfiguredUniverse with the PlatformGeometry, ViewerAvatar,
      * and Locales saved in the file.  The MultiTransformGroup between the ViewingPlatform
@@ -49,6 +49,7 @@ import java.io.IOException;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Iterator;
+import java.util.concurrent.ExecutorService;
 
 import javax.media.j3d.BranchGroup;
 import javax.media.j3d.SceneGraphObject;
@@ -112,6 +113,58 @@ public class SceneGraphFileWriter extends java.lang.Object {
         fileControl.createFile( file, universe, writeUniverseContent, fileDescription, fileUserData );
     }
     
+    /**
+     * Set the compression used for images written after this call, one of
+     * the compression constants in ImageComponentState. The default is set
+     * by the j3d.io.ImageCompression property (None, GZIP, JPEG, DEFLATE,
+     * PNG or LZ) and is NO_COMPRESSION if it is not set. Images in the
+     * universe content written by the constructor use the default.
+     *
+     * @see com.sun.j3d.utils.scenegraph.io.state.javax.media.j3d.ImageComponentState
+     */
+    public void setImageCompression( int compression ) {
+        fileControl.setImageCompression( compression );
+    }
+    
+    /**
+     * Get the compression used for images
+     */
+    public int getImageCompression() {
+        return fileControl.getImageCompression();
+    }
+    
+    /**
+     * Set the java.util.zip.Deflater level used when the image compression
+     * is DEFLATE_COMPRESSION
+     */
+    public void setImageCompressionLevel( int level ) {
+        fileControl.setImageCompressionLevel( level );
+    }
+    
+    /**
+     * Get the Deflater level used when the image compression is
+     * DEFLATE_COMPRESSION
+     */
+    public int getImageCompressionLevel() {
+        return fileControl.getImageCompressionLevel();
+    }
+    
+    /**
+     * Set the executor used to compress the images in each graph
+     * concurrently. If null (the default) images are compressed on the
+     * calling thread. The executor is not shut down by this writer.
+     */
+    public void setExecutor( ExecutorService executor ) {
+        fileControl.setExecutor( executor );
+    }
+    
+    /**
+     * Get the executor used to compress images, or null
+     */
+    public ExecutorService getExecutor() {
+        return fileControl.getExecutor();
+    }
+    
     /**
      * Write the graph to the end of the file.
      *
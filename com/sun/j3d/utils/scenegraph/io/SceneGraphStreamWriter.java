@@ -48,6 +48,7 @@ import java.io.File;
 import java.io.IOException;
 import java.io.DataOutputStream;
 import java.util.HashMap;
+import java.util.concurrent.ExecutorService;
 
 import javax.media.j3d.BranchGroup;
 import javax.media.j3d.SceneGraphObject;
@@ -74,6 +75,57 @@ public class SceneGraphStreamWriter extends java.lang.Object {
     }
     
 
+    /**
+     * Set the compression used for images written after this call, one of
+     * the compression constants in ImageComponentState. The default is set
+     * by the j3d.io.ImageCompression property (None, GZIP, JPEG, DEFLATE,
+     * PNG or LZ) and is NO_COMPRESSION if it is not set.
+     *
+     * @see com.sun.j3d.utils.scenegraph.io.state.javax.media.j3d.ImageComponentState
+     */
+    public void setImageCompression( int compression ) {
+        control.setImageCompression( compression );
+    }
+    
+    /**
+     * Get the compression used for images
+     */
+    public int getImageCompression() {
+        return control.getImageCompression();
+    }
+    
+    /**
+     * Set the java.util.zip.Deflater level used when the image compression
+     * is DEFLATE_COMPRESSION
+     */
+    public void setImageCompressionLevel( int level ) {
+        control.setImageCompressionLevel( level );
+    }
+    
+    /**
+     * Get the Deflater level used when the image compression is
+     * DEFLATE_COMPRESSION
+     */
+    public int getImageCompressionLevel() {
+        return control.getImageCompressionLevel();
+    }
+    
+    /**
+     * Set the executor used to compress the images in each graph
+     * concurrently. If null (the default) images are compressed on the
+     * calling thread. The executor is not shut down by this writer.
+     */
+    public void setExecutor( ExecutorService executor ) {
+        control.setExecutor( executor );
+    }
+    
+    /**
+     * Get the executor used to compress images, or null
+     */
+    public ExecutorService getExecutor() {
+        return control.getExecutor();
+    }
+    
     /**
      * Write <code>universe</code> to the Stream.<p>
      *
@@ -53,7 +53,13 @@ import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationTargetException;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.ListIterator;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.zip.Deflater;
 
 import javax.media.j3d.BoundingBox;
 import javax.media.j3d.BoundingPolytope;
@@ -89,6 +95,7 @@ import com.sun.j3d.utils.scenegraph.io.state.javax.media.j3d.NullSceneGraphObjec
 import com.sun.j3d.utils.scenegraph.io.state.javax.media.j3d.SceneGraphObjectState;
 import com.sun.j3d.utils.universe.ConfiguredUniverse;
 import com.sun.j3d.utils.universe.SimpleUniverse;
+import com.sun.j3d.internal.FutureUtil;
 
 /**
  * Provides code to control the reading and writing of Java3D objects to and 
@@ -148,6 +155,36 @@ public abstract class Controller extends java.lang.Object {
         
     private int imageCompression = ImageComponentState.NO_COMPRESSION;
     
+    private int imageCompressionLevel = Deflater.DEFAULT_COMPRESSION;
+    
+    protected ExecutorService executor;
+
+    private static final Class[] STATE_CONSTRUCTOR_PARAMS = new Class[] {
+                        com.sun.j3d.utils.scenegraph.io.retained.SymbolTableData.class,
+                        com.sun.j3d.utils.scenegraph.io.retained.Controller.class };
+
+    /**
+     * Marks a class, or class name, for which no State class exists
+     */
+    private static final Object NO_STATE = new Object();
+
+    /**
+     * Caches of State class lookups. stateClasses maps a SceneGraphObject
+     * class to its State class, stateClassNames maps a State class name
+     * read from a file to the class loaded by classLoader, and
+     * coreStateClasses maps a core class to the State class of exactly
+     * that class. All three hold NO_STATE for failed lookups so they are
+     * not retried. stateConstructors maps a State class to its constructor.
+     *
+     * All four are guarded by stateClasses.
+     */
+    private final HashMap stateClasses = new HashMap();
+    private final HashMap stateClassNames = new HashMap();
+    private final HashMap coreStateClasses = new HashMap();
+    private final HashMap stateConstructors = new HashMap();
+    private long stateCacheHits = 0;
+    private long stateCacheMisses = 0;
+    
     /** Creates new Controller */
     public Controller() {
         try {
@@ -162,6 +199,12 @@ public abstract class Controller extends java.lang.Object {
                     imageCompression = ImageComponentState.GZIP_COMPRESSION;
                 else if (imageC.equalsIgnoreCase("JPEG"))
                     imageCompression = ImageComponentState.JPEG_COMPRESSION;
+                else if (imageC.equalsIgnoreCase("DEFLATE"))
+                    imageCompression = ImageComponentState.DEFLATE_COMPRESSION;
+                else if (imageC.equalsIgnoreCase("PNG"))
+                    imageCompression = ImageComponentState.PNG_COMPRESSION;
+                else if (imageC.equalsIgnoreCase("LZ"))
+                    imageCompression = ImageComponentState.LZ_COMPRESSION;
             }
         } catch( Exception e ) {}
         
@@ -220,24 +263,13 @@ public abstract class Controller extends java.lang.Object {
         SceneGraphObject obj = symbol.getJ3dNode();
         if (obj==null) return nullObject;
         
-        String name = obj.getClass().getName();
-        SceneGraphObjectState ret;
-        
-          try {
-              Class state;
-              if (obj instanceof SceneGraphStateProvider)
-                  state = ((SceneGraphStateProvider)obj).getStateClass();
-              else 
-                  state = Class.forName( "com.sun.j3d.utils.scenegraph.io.state."+name+"State" );
-              ret = constructStateObj( symbol, state, obj.getClass() );
-          } catch(ClassNotFoundException e) {
-              ret = checkSuperClasses( symbol );
-              if (!(obj instanceof com.sun.j3d.utils.scenegraph.io.SceneGraphIO))
-                System.out.println("Could not find "+"com.sun.j3d.utils.scenegraph.io.state."+name+"State, using superclass "+ret.getClass().getName() );
-              if (ret==null)
-                  throw new SGIORuntimeException( "No State class for "+
-                                                  obj.getClass().getName() );
-          }
+        Class state;
+        if (obj instanceof SceneGraphStateProvider)
+            state = ((SceneGraphStateProvider)obj).getStateClass();
+        else 
+            state = getStateClass( obj.getClass() );
+        
+        SceneGraphObjectState ret = constructStateObj( symbol, state, obj.getClass() );
         
         symbol.nodeState = ret;
         
@@ -250,10 +282,7 @@ public abstract class Controller extends java.lang.Object {
         SceneGraphObjectState ret = null;
  
         try {
-            Constructor construct = state.getConstructor(
-                                new Class[] { com.sun.j3d.utils.scenegraph.io.retained.SymbolTableData.class,
-                                              com.sun.j3d.utils.scenegraph.io.retained.Controller.class
-                                            } );
+            Constructor construct = getStateConstructor( state );
             ret = (SceneGraphObjectState)construct.newInstance(
                                                 new Object[]{ symbol, this } );
  
@@ -275,38 +304,142 @@ public abstract class Controller extends java.lang.Object {
  
         return ret;
     }
+
+    /**
+     * Return the State class for objects of class objClass, using the
+     * State class of the nearest superclass if objClass has none.
+     * The result, including failure, is cached.
+     */
+    private Class getStateClass( Class objClass ) {
+        Object state;
+        synchronized( stateClasses ) {
+            state = stateClasses.get( objClass );
+            if (state!=null)
+                stateCacheHits++;
+            else {
+                stateCacheMisses++;
+                state = findStateClass( objClass );
+                stateClasses.put( objClass, state );
+            }
+        }
+
+        if (state==NO_STATE)
+            throw new SGIORuntimeException( "Unsupported class "+objClass.getName() );
+
+        return (Class)state;
+    }
  
     /**
-      * Check to see if any of the superclasses of obj are
+      * Check to see if obj or any of its superclasses are
       * known to the Java3D IO package
       */
-    private SceneGraphObjectState checkSuperClasses( SymbolTableData symbol ) {
+    private Object findStateClass( Class objClass ) {
        
-        Class cl = symbol.j3dNode.getClass().getSuperclass();
-        Class state = null;
-        boolean finished = false;
- 
- 
-        while( cl != null & !finished ) {
+        for( Class cl = objClass; cl!=null; cl = cl.getSuperclass() ) {
             String name = cl.getName();
-            //System.out.println("Got superclass "+name);
             try {
-                state = Class.forName( "com.sun.j3d.utils.scenegraph.io.state."+name+"State" );
+                Class state = Class.forName( "com.sun.j3d.utils.scenegraph.io.state."+name+"State" );
+                if (cl!=objClass &&
+                    !com.sun.j3d.utils.scenegraph.io.SceneGraphIO.class.isAssignableFrom( objClass ))
+                    System.out.println("Could not find "+"com.sun.j3d.utils.scenegraph.io.state."+objClass.getName()+"State, using superclass "+state.getName() );
+                return state;
             } catch(ClassNotFoundException e) {
-                state = null;
             }
-               
-            if (state!=null)
-                finished = true;
-            else
-                cl = cl.getSuperclass();
         }
  
-        if (cl==null)
-            throw new SGIORuntimeException( "Unsupported class "+symbol.j3dNode.getClass().getName() );
-        
-        return constructStateObj( symbol, state, cl );
-    } 
+        return NO_STATE;
+    }
+
+    /**
+     * Return the State class called stateClassName, loaded using
+     * classLoader. The result, including failure, is cached until
+     * the class loader is changed.
+     */
+    private Class getStateClass( String stateClassName ) throws ClassNotFoundException {
+        Object state;
+        synchronized( stateClasses ) {
+            state = stateClassNames.get( stateClassName );
+            if (state!=null)
+                stateCacheHits++;
+            else {
+                stateCacheMisses++;
+                try {
+                    state = Class.forName( stateClassName, true, classLoader );
+                } catch( ClassNotFoundException e ) {
+                    state = NO_STATE;
+                }
+                stateClassNames.put( stateClassName, state );
+            }
+        }
+
+        if (state==NO_STATE)
+            throw new ClassNotFoundException( stateClassName );
+
+        return (Class)state;
+    }
+
+    /**
+     * Return the State class named after the core class j3dClass. Unlike
+     * getStateClass( Class ) superclasses are not tried. The result,
+     * including failure, is cached.
+     */
+    private Class getCoreStateClass( Class j3dClass ) throws ClassNotFoundException {
+        String stateClassName = "com.sun.j3d.utils.scenegraph.io.state."+j3dClass.getName()+"State";
+        Object state;
+        synchronized( stateClasses ) {
+            state = coreStateClasses.get( j3dClass );
+            if (state!=null)
+                stateCacheHits++;
+            else {
+                stateCacheMisses++;
+                try {
+                    state = Class.forName( stateClassName );
+                } catch( ClassNotFoundException e ) {
+                    state = NO_STATE;
+                }
+                coreStateClasses.put( j3dClass, state );
+            }
+        }
+
+        if (state==NO_STATE)
+            throw new ClassNotFoundException( stateClassName );
+
+        return (Class)state;
+    }
+
+    /**
+     * Return the (SymbolTableData, Controller) constructor of the State class
+     */
+    private Constructor getStateConstructor( Class state ) throws NoSuchMethodException {
+        synchronized( stateClasses ) {
+            Constructor construct = (Constructor)stateConstructors.get( state );
+            if (construct==null) {
+                construct = state.getConstructor( STATE_CONSTRUCTOR_PARAMS );
+                stateConstructors.put( state, construct );
+            }
+            return construct;
+        }
+    }
+
+    /**
+     * Returns the number of State class lookups answered from the
+     * cache, including cached failures.
+     */
+    public long getStateCacheHits() {
+        synchronized( stateClasses ) {
+            return stateCacheHits;
+        }
+    }
+
+    /**
+     * Returns the number of State class lookups that had to search for
+     * the class.
+     */
+    public long getStateCacheMisses() {
+        synchronized( stateClasses ) {
+            return stateCacheMisses;
+        }
+    }
               
     
     public void writeObject( DataOutput out, SceneGraphObjectState obj ) throws IOException {
@@ -333,12 +466,9 @@ public abstract class Controller extends java.lang.Object {
             String stateClassName = in.readUTF();
 
             try {
-                Class cl = Class.forName( stateClassName, true, classLoader );
+                Class cl = getStateClass( stateClassName );
                 // System.out.println("Got class "+cl );
-                Constructor construct = cl.getConstructor(
-                        new Class[] { 
-                        com.sun.j3d.utils.scenegraph.io.retained.SymbolTableData.class,
-                        com.sun.j3d.utils.scenegraph.io.retained.Controller.class} );
+                Constructor construct = getStateConstructor( cl );
 
                 // System.out.println("Got constructor "+construct );
                 state = (SceneGraphObjectState)construct.newInstance(
@@ -376,7 +506,10 @@ public abstract class Controller extends java.lang.Object {
       * ClassLoader.getSystemClassLoader()
       */
     public void setClassLoader( ClassLoader classLoader ) {
-        this.classLoader = classLoader;
+        synchronized( stateClasses ) {
+            this.classLoader = classLoader;
+            stateClassNames.clear();
+        }
     }
 
 
@@ -398,6 +531,8 @@ public abstract class Controller extends java.lang.Object {
         // The RandomAccessFileControl version sets the pointer to
         // the next NodeComponent correclty
         
+        encodeImages();
+        
         ListIterator list = symbolTable.getUnsavedNodeComponents();
         out.writeInt( symbolTable.getUnsavedNodeComponentsSize() );
         while( list.hasNext() ) {
@@ -537,13 +672,11 @@ public abstract class Controller extends java.lang.Object {
             return null;
         
         Class j3dClass = getNodeClassFromID( classID-1 );
-        String j3dClassName = j3dClass.getName();
-        String stateClassName = "com.sun.j3d.utils.scenegraph.io.state."+j3dClassName+"State";
 
         SceneGraphObjectState stateObj = null;
         try {
-            Class stateClass = Class.forName( stateClassName );
-            Constructor stateConstructor = stateClass.getConstructor( new Class[] { SymbolTableData.class, Controller.class } );
+            Class stateClass = getCoreStateClass( j3dClass );
+            Constructor stateConstructor = getStateConstructor( stateClass );
             stateObj = (SceneGraphObjectState)stateConstructor.newInstance( new Object[] { null, this } );
         } catch( Exception e ) {
             e.printStackTrace();
@@ -947,6 +1080,82 @@ public abstract class Controller extends java.lang.Object {
     public int getImageCompression() {
         return imageCompression;
     }
+    
+    /**
+     * Set the compression used for images written from now on, one of
+     * the ImageComponentState compression constants. The default is
+     * taken from the j3d.io.ImageCompression property.
+     */
+    public void setImageCompression( int imageCompression ) {
+        this.imageCompression = imageCompression;
+    }
+    
+    /**
+     * Returns the Deflater level used by DEFLATE_COMPRESSION
+     */
+    public int getImageCompressionLevel() {
+        return imageCompressionLevel;
+    }
+    
+    /**
+     * Set the Deflater level, 0-9 or Deflater.DEFAULT_COMPRESSION,
+     * used by DEFLATE_COMPRESSION
+     */
+    public void setImageCompressionLevel( int level ) {
+        if (level<Deflater.DEFAULT_COMPRESSION || level>Deflater.BEST_COMPRESSION)
+            throw new IllegalArgumentException( "Invalid compression level "+level );
+        imageCompressionLevel = level;
+    }
+    
+    /**
+     * Set the executor used to encode the images of each block of
+     * NodeComponents concurrently while writing, and by
+     * RandomAccessFileControl to read branch graphs concurrently.
+     * If null (the default) all the work is done on the calling thread.
+     * The executor is not shut down by this controller.
+     */
+    public void setExecutor( ExecutorService executor ) {
+        this.executor = executor;
+    }
+    
+    /**
+     * Return the executor, or null
+     */
+    public ExecutorService getExecutor() {
+        return executor;
+    }
+    
+    /**
+     * Encode the images of all the unsaved ImageComponents on the
+     * executor, so writeNodeComponents only has to copy the encoded data.
+     * Does nothing if there is no executor.
+     */
+    protected void encodeImages() throws IOException {
+        if (executor==null)
+            return;
+        
+        ArrayList futures = new ArrayList();
+        ListIterator list = symbolTable.getUnsavedNodeComponents();
+        while( list.hasNext() ) {
+            final SceneGraphObjectState state = ((SymbolTableData)list.next()).getNodeState();
+            if (state instanceof ImageComponentState) {
+                futures.add( executor.submit( new Callable() {
+                    public Object call() throws IOException {
+                        ((ImageComponentState)state).encodeImages();
+                        return null;
+                    }
+                } ) );
+            }
+        }
+        
+        try {
+            for( int i=0; i<futures.size(); i++)
+                FutureUtil.get( (Future)futures.get(i), "image encoding" );
+        } finally {
+            // Don't leave work behind if an image failed
+            FutureUtil.cancel( futures );
+        }
+    }
      
 
     /** 
@@ -0,0 +1,210 @@
+/*
+ * $RCSfile$
+ *
+ * Copyright (c) 2007 Sun Microsystems, Inc. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * - Redistribution of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * - Redistribution in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in
+ *   the documentation and/or other materials provided with the
+ *   distribution.
+ *
+ * Neither the name of Sun Microsystems, Inc. or the names of
+ * contributors may be used to endorse or promote products derived
+ * from this software without specific prior written permission.
+ *
+ * This software is provided "AS IS," without a warranty of any
+ * kind. ALL EXPRESS OR IMPLIED CONDITIONS, REPRESENTATIONS AND
+ * WARRANTIES, INCLUDING ANY IMPLIED WARRANTY OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE OR NON-INFRINGEMENT, ARE HEREBY
+ * EXCLUDED. SUN MICROSYSTEMS, INC. ("SUN") AND ITS LICENSORS SHALL
+ * NOT BE LIABLE FOR ANY DAMAGES SUFFERED BY LICENSEE AS A RESULT OF
+ * USING, MODIFYING OR DISTRIBUTING THIS SOFTWARE OR ITS
+ * DERIVATIVES. IN NO EVENT WILL SUN OR ITS LICENSORS BE LIABLE FOR
+ * ANY LOST REVENUE, PROFIT OR DATA, OR FOR DIRECT, INDIRECT, SPECIAL,
+ * CONSEQUENTIAL, INCIDENTAL OR PUNITIVE DAMAGES, HOWEVER CAUSED AND
+ * REGARDLESS OF THE THEORY OF LIABILITY, ARISING OUT OF THE USE OF OR
+ * INABILITY TO USE THIS SOFTWARE, EVEN IF SUN HAS BEEN ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGES.
+ *
+ * You acknowledge that this software is not designed, licensed or
+ * intended for use in the design, construction, operation or
+ * maintenance of any nuclear facility.
+ *
+ * $Revision: 150 $
+ * $Date: 2007-02-10 02:20:46 +0900 (土, 10 2 2007) $
+ * $State$
+ */
+
+
+package com.sun.j3d.utils.scenegraph.io.retained;
+
+import java.io.IOException;
+
+/**
+ * A simple LZ77 style byte codec, used for image data. It compresses
+ * less than Deflater but decompression is several times faster.
+ *
+ * The compressed data is a series of sequences, each a token byte
+ * followed by literal bytes and a back reference. The high nibble of
+ * the token is the literal count and the low nibble is the match length
+ * minus 4. A nibble of 15 is followed by extra length bytes which are
+ * added to it, a byte of 255 meaning another length byte follows. Each
+ * back reference is a 2 byte little endian offset. The last sequence
+ * has only literals.
+ */
+public class LZCodec {
+    
+    private static final int MIN_MATCH = 4;
+    private static final int MAX_OFFSET = 65535;
+    private static final int HASH_LOG = 14;
+    
+    private LZCodec() {
+    }
+    
+    /**
+     * Return the maximum size of the compressed form of len bytes
+     */
+    public static int maxCompressedLength( int len ) {
+        return len + len/255 + 16;
+    }
+    
+    /**
+     * Compress len bytes of src starting at off
+     */
+    public static byte[] compress( byte[] src, int off, int len ) {
+        byte[] dst = new byte[ maxCompressedLength( len ) ];
+        int[] table = new int[ 1<<HASH_LOG ];
+        java.util.Arrays.fill( table, -1 );
+        
+        int end = off+len;
+        int anchor = off;
+        int ip = off;
+        int op = 0;
+        
+        while( ip+MIN_MATCH<=end ) {
+            int seq = readInt( src, ip );
+            int h = (seq*-1640531535) >>> (32-HASH_LOG);
+            int ref = table[h];
+            table[h] = ip;
+            
+            if (ref<0 || ip-ref>MAX_OFFSET || readInt( src, ref )!=seq) {
+                ip++;
+                continue;
+            }
+            
+            int matchLen = MIN_MATCH;
+            while( ip+matchLen<end && src[ref+matchLen]==src[ip+matchLen] )
+                matchLen++;
+            
+            int literals = ip-anchor;
+            int token = op++;
+            dst[token] = (byte)((Math.min( literals, 15 )<<4) |
+                                Math.min( matchLen-MIN_MATCH, 15 ));
+            op = writeLength( dst, op, literals );
+            System.arraycopy( src, anchor, dst, op, literals );
+            op += literals;
+            
+            dst[op++] = (byte)(ip-ref);
+            dst[op++] = (byte)((ip-ref)>>>8);
+            op = writeLength( dst, op, matchLen-MIN_MATCH );
+            
+            ip += matchLen;
+            anchor = ip;
+        }
+        
+        int literals = end-anchor;
+        dst[op++] = (byte)(Math.min( literals, 15 )<<4);
+        op = writeLength( dst, op, literals );
+        System.arraycopy( src, anchor, dst, op, literals );
+        op += literals;
+        
+        byte[] ret = new byte[ op ];
+        System.arraycopy( dst, 0, ret, 0, op );
+        return ret;
+    }
+    
+    /**
+     * Decompress len bytes of src starting at off into dst. dst must be
+     * exactly the size of the original data.
+     *
+     * @exception IOException if the data is corrupt
+     */
+    public static void decompress( byte[] src, int off, int len,
+                                   byte[] dst ) throws IOException {
+        int end = off+len;
+        int ip = off;
+        int op = 0;
+        
+        try {
+            while( true ) {
+                int token = src[ip++] & 0xff;
+                
+                int literals = token>>>4;
+                if (literals==15) {
+                    int b;
+                    do {
+                        b = src[ip++] & 0xff;
+                        literals += b;
+                    } while( b==255 );
+                }
+                System.arraycopy( src, ip, dst, op, literals );
+                ip += literals;
+                op += literals;
+                
+                if (ip>=end)
+                    break;
+                
+                int offset = (src[ip++] & 0xff) | ((src[ip++] & 0xff)<<8);
+                int matchLen = token & 15;
+                if (matchLen==15) {
+                    int b;
+                    do {
+                        b = src[ip++] & 0xff;
+                        matchLen += b;
+                    } while( b==255 );
+                }
+                matchLen += MIN_MATCH;
+                
+                int ref = op-offset;
+                if (offset==0 || ref<0)
+                    throw new IOException( "Corrupt LZ data" );
+                if (offset>=matchLen)
+                    System.arraycopy( dst, ref, dst, op, matchLen );
+                else
+                    for(int i=0; i<matchLen; i++)
+                        dst[op+i] = dst[ref+i];
+                op += matchLen;
+            }
+        } catch( IndexOutOfBoundsException e ) {
+            throw new IOException( "Corrupt LZ data" );
+        }
+        
+        if (ip!=end || op!=dst.length)
+            throw new IOException( "Corrupt LZ data" );
+    }
+    
+    private static int writeLength( byte[] dst, int op, int length ) {
+        if (length<15)
+            return op;
+        
+        length -= 15;
+        while( length>=255 ) {
+            dst[op++] = (byte)255;
+            length -= 255;
+        }
+        dst[op++] = (byte)length;
+        return op;
+    }
+    
+    private static int readInt( byte[] b, int i ) {
+        return ((b[i] & 0xff)<<24) | ((b[i+1] & 0xff)<<16) |
+               ((b[i+2] & 0xff)<<8) | (b[i+3] & 0xff);
+    }
+}
@@ -0,0 +1,176 @@
+/*
+ * $RCSfile$
+ *
+ * Copyright (c) 2007 Sun Microsystems, Inc. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * - Redistribution of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * - Redistribution in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in
+ *   the documentation and/or other materials provided with the
+ *   distribution.
+ *
+ * Neither the name of Sun Microsystems, Inc. or the names of
+ * contributors may be used to endorse or promote products derived
+ * from this software without specific prior written permission.
+ *
+ * This software is provided "AS IS," without a warranty of any
+ * kind. ALL EXPRESS OR IMPLIED CONDITIONS, REPRESENTATIONS AND
+ * WARRANTIES, INCLUDING ANY IMPLIED WARRANTY OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE OR NON-INFRINGEMENT, ARE HEREBY
+ * EXCLUDED. SUN MICROSYSTEMS, INC. ("SUN") AND ITS LICENSORS SHALL
+ * NOT BE LIABLE FOR ANY DAMAGES SUFFERED BY LICENSEE AS A RESULT OF
+ * USING, MODIFYING OR DISTRIBUTING THIS SOFTWARE OR ITS
+ * DERIVATIVES. IN NO EVENT WILL SUN OR ITS LICENSORS BE LIABLE FOR
+ * ANY LOST REVENUE, PROFIT OR DATA, OR FOR DIRECT, INDIRECT, SPECIAL,
+ * CONSEQUENTIAL, INCIDENTAL OR PUNITIVE DAMAGES, HOWEVER CAUSED AND
+ * REGARDLESS OF THE THEORY OF LIABILITY, ARISING OUT OF THE USE OF OR
+ * INABILITY TO USE THIS SOFTWARE, EVEN IF SUN HAS BEEN ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGES.
+ *
+ * You acknowledge that this software is not designed, licensed or
+ * intended for use in the design, construction, operation or
+ * maintenance of any nuclear facility.
+ *
+ * $Revision: 150 $
+ * $Date: 2007-02-10 02:20:46 +0900 (土, 10 2 2007) $
+ * $State$
+ */
+
+
+package com.sun.j3d.utils.scenegraph.io.retained;
+
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+
+/**
+ * DataInput over a read only mapping of a j3f file. Each instance has its
+ * own position so several threads can read different parts of the
+ * file at once.
+ */
+class MappedFileInput implements DataInput {
+    
+    private ByteBuffer buffer;
+    
+    /**
+     * Create an input positioned at <code>position</code> in the mapping
+     */
+    public MappedFileInput( ByteBuffer map, long position ) {
+        buffer = map.duplicate();
+        seek( position );
+    }
+    
+    public void seek( long position ) {
+        if (position>buffer.limit())
+            throw new SGIORuntimeException( "Seeking past end of file "+position );
+        buffer.position( (int)position );
+    }
+    
+    public long getFilePointer() {
+        return buffer.position();
+    }
+    
+    public void readFully( byte[] b ) throws IOException {
+        readFully( b, 0, b.length );
+    }
+    
+    public void readFully( byte[] b, int off, int len ) throws IOException {
+        if (len>buffer.remaining())
+            throw new EOFException();
+        buffer.get( b, off, len );
+    }
+    
+    public int skipBytes( int n ) {
+        n = Math.max( 0, Math.min( n, buffer.remaining() ) );
+        buffer.position( buffer.position()+n );
+        return n;
+    }
+    
+    public boolean readBoolean() throws IOException {
+        return readByte()!=0;
+    }
+    
+    public byte readByte() throws IOException {
+        try {
+            return buffer.get();
+        } catch( BufferUnderflowException e ) {
+            throw new EOFException();
+        }
+    }
+    
+    public int readUnsignedByte() throws IOException {
+        return readByte() & 0xff;
+    }
+    
+    public short readShort() throws IOException {
+        try {
+            return buffer.getShort();
+        } catch( BufferUnderflowException e ) {
+            throw new EOFException();
+        }
+    }
+    
+    public int readUnsignedShort() throws IOException {
+        return readShort() & 0xffff;
+    }
+    
+    public char readChar() throws IOException {
+        return (char)readShort();
+    }
+    
+    public int readInt() throws IOException {
+        try {
+            return buffer.getInt();
+        } catch( BufferUnderflowException e ) {
+            throw new EOFException();
+        }
+    }
+    
+    public long readLong() throws IOException {
+        try {
+            return buffer.getLong();
+        } catch( BufferUnderflowException e ) {
+            throw new EOFException();
+        }
+    }
+    
+    public float readFloat() throws IOException {
+        return Float.intBitsToFloat( readInt() );
+    }
+    
+    public double readDouble() throws IOException {
+        return Double.longBitsToDouble( readLong() );
+    }
+    
+    public String readLine() throws IOException {
+        if (!buffer.hasRemaining())
+            return null;
+        
+        StringBuffer line = new StringBuffer();
+        while( buffer.hasRemaining() ) {
+            char c = (char)(buffer.get() & 0xff);
+            if (c=='\n')
+                break;
+            if (c=='\r') {
+                if (buffer.hasRemaining() && buffer.get( buffer.position() )=='\n')
+                    buffer.get();
+                break;
+            }
+            line.append( c );
+        }
+        return line.toString();
+    }
+    
+    public String readUTF() throws IOException {
+        return DataInputStream.readUTF( this );
+    }
+}
@@ -48,6 +48,12 @@ import java.io.RandomAccessFile;
 import java.io.IOException;
 import java.io.DataOutput;
 import java.io.DataInput;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
 
 import javax.media.j3d.BranchGroup;
 import javax.media.j3d.CapabilityNotSetException;
@@ -59,6 +65,7 @@ import com.sun.j3d.utils.scenegraph.io.state.javax.media.j3d.BranchGroupState;
 import com.sun.j3d.utils.scenegraph.io.UnsupportedUniverseException;
 import com.sun.j3d.utils.universe.SimpleUniverse;
 import com.sun.j3d.utils.universe.ConfiguredUniverse;
+import com.sun.j3d.internal.FutureUtil;
 
 public class RandomAccessFileControl extends Controller {
         
@@ -76,6 +83,13 @@ public class RandomAccessFileControl extends Controller {
     private boolean writeMode = false;
     private Object userData;
 
+    /**
+     * Read only mapping of the whole file, or null if the file is read
+     * through raf
+     */
+    private ByteBuffer map;
+    private int lazyNodeComponentSize = 0;
+
     /** Creates new RandomAccessFileControl */
     public RandomAccessFileControl() {
         super();
@@ -125,6 +139,18 @@ public class RandomAccessFileControl extends Controller {
      * Open the file for reading
      */
     public void openFile( java.io.File file ) throws IOException {
+        openFile( file, false );
+    }
+    
+    /**
+     * Open the file for reading. If mapped is true the file is memory
+     * mapped and branch graphs and node components are read from the
+     * mapping, which allows several graphs to be read at once on the
+     * executor. Only the decoding of the graphs and their node components
+     * is concurrent, buildGraph() is always called on the calling thread.
+     * Files larger than 2GB are always read through RandomAccessFile.
+     */
+    public void openFile( java.io.File file, boolean mapped ) throws IOException {
         raf = new RandomAccessFile( file, "r" );
         writeMode = false;
         
@@ -166,6 +192,63 @@ public class RandomAccessFileControl extends Controller {
         raf.seek(user_data);       
 
         userData = readSerializedData(raf);
+        
+        if (mapped && raf.length()<=Integer.MAX_VALUE)
+            map = raf.getChannel().map( FileChannel.MapMode.READ_ONLY, 0, raf.length() );
+    }
+    
+    /**
+     * Return true if the file is being read from a memory mapping
+     */
+    public boolean isMapped() {
+        return map!=null;
+    }
+    
+    /**
+     * Set the size in bytes at and above which node components are not
+     * decoded with the branch graph that contains them. Instead they are
+     * decoded by loadNodeComponent when first resolved by the symbol
+     * table. This avoids decoding large geometry and images stored in a
+     * graph's block but only used by graphs that are never read.
+     *
+     * 0 (the default) decodes all node components with their graph.
+     */
+    public void setLazyNodeComponentSize( int size ) {
+        lazyNodeComponentSize = size;
+    }
+    
+    /**
+     * Return the size at and above which node components are decoded
+     * lazily, 0 if they are never decoded lazily.
+     */
+    public int getLazyNodeComponentSize() {
+        return lazyNodeComponentSize;
+    }
+    
+    /**
+     * Return a DataInput positioned at filePointer, a new MappedFileInput
+     * if the file is mapped, otherwise raf
+     */
+    private DataInput getInput( long filePointer ) throws IOException {
+        if (map!=null)
+            return new MappedFileInput( map, filePointer );
+        
+        raf.seek( filePointer );
+        return raf;
+    }
+    
+    private void seek( DataInput in, long filePointer ) throws IOException {
+        if (in instanceof MappedFileInput)
+            ((MappedFileInput)in).seek( filePointer );
+        else
+            raf.seek( filePointer );
+    }
+    
+    private long getFilePointer( DataInput in ) throws IOException {
+        if (in instanceof MappedFileInput)
+            return ((MappedFileInput)in).getFilePointer();
+        else
+            return raf.getFilePointer();
     }
     
     public ConfiguredUniverse readUniverse( boolean attachBranchGraphs,
@@ -242,13 +325,12 @@ public class RandomAccessFileControl extends Controller {
             //    System.out.print( dependencies[i]+"  ");        // TODO - remove
             //System.out.println();
 
-            BranchGroupState[] states  = new BranchGroupState[ dependencies.length+1 ];
-            BranchGroup[] ret = new BranchGroup[ states.length ];
-            states[0] = readSingleBranchGraph( graphID );
+            int[] graphs = new int[ dependencies.length+1 ];
+            graphs[0] = graphID;
+            System.arraycopy( dependencies, 0, graphs, 1, dependencies.length );
 
-            for( int i=0; i<dependencies.length; i++) {
-                states[i+1] = readSingleBranchGraph( dependencies[i] );
-            }
+            BranchGroupState[] states = readBranchGraphStates( graphs );
+            BranchGroup[] ret = new BranchGroup[ states.length ];
 
             for( int i=0; i<states.length; i++) {
                 if (!states[i].getSymbol().graphBuilt) {
@@ -271,13 +353,13 @@ public class RandomAccessFileControl extends Controller {
      */
     public BranchGroup[] readAllBranchGraphs() throws IOException {
         int size = getBranchGraphCount();
-        BranchGroupState[] states  = new BranchGroupState[ size ];
         BranchGroup[] ret = new BranchGroup[ size ];
                
         try {
-            for( int i=0; i<size; i++) {
-                states[i] = readSingleBranchGraph( i );
-            }
+            int[] graphs = new int[ size ];
+            for( int i=0; i<size; i++)
+                graphs[i] = i;
+            BranchGroupState[] states = readBranchGraphStates( graphs );
 
             for( int i=0; i<states.length; i++) {
                 if (!states[i].getSymbol().graphBuilt) {
@@ -295,6 +377,48 @@ public class RandomAccessFileControl extends Controller {
         return ret;
     }
 
+    /**
+     * Read the specified branchgraphs but do NOT call buildGraph.
+     *
+     * If the file is mapped and there is an executor the graphs are
+     * decoded concurrently. This is safe because a graph's block only
+     * holds the node components first referenced by that graph, and
+     * references to other graphs are not resolved until buildGraph.
+     * graphs may contain duplicates, as returned by
+     * getBranchGraphDependencies
+     */
+    private BranchGroupState[] readBranchGraphStates( final int[] graphs ) throws IOException {
+        final BranchGroupState[] states = new BranchGroupState[ graphs.length ];
+        
+        if (map==null || executor==null || graphs.length<2) {
+            for( int i=0; i<graphs.length; i++)
+                states[i] = readSingleBranchGraph( graphs[i] );
+            return states;
+        }
+        
+        HashMap futures = new HashMap();
+        for( int i=0; i<graphs.length; i++) {
+            final Integer graphID = new Integer( graphs[i] );
+            if (futures.containsKey( graphID ))
+                continue;
+            futures.put( graphID, executor.submit( new Callable() {
+                public Object call() throws IOException {
+                    return readSingleBranchGraph( graphID.intValue() );
+                }
+            } ) );
+        }
+        
+        try {
+            for( int i=0; i<graphs.length; i++)
+                states[i] = (BranchGroupState)FutureUtil.get( (Future)futures.get( new Integer( graphs[i] ) ), "branch graph read" );
+        } finally {
+            // Don't leave work behind if a graph failed
+            FutureUtil.cancel( futures.values() );
+        }
+        
+        return states;
+    }
+
     /**
      * Read the specified branchgraph but do NOT call buildGraph
      */
@@ -305,24 +429,22 @@ public class RandomAccessFileControl extends Controller {
             return (BranchGroupState)symbol.nodeState;
         }
         
-        raf.seek( symbolTable.getBranchGraphFilePosition( graphID ) );
-         
-        return readNextBranchGraph();
+        return readNextBranchGraph( getInput( symbolTable.getBranchGraphFilePosition( graphID ) ) );
     }    
     
     /**
      * Read the next userData and BranchGraph structure in the file
      * at the current position
      */
-    private BranchGroupState readNextBranchGraph() throws IOException {
-        int nodeCount = raf.readInt();
-        skipUserData( raf );
+    private BranchGroupState readNextBranchGraph( DataInput in ) throws IOException {
+        int nodeCount = in.readInt();
+        skipUserData( in );
 
         BranchGroupState state=null;
         try {
-            state = (BranchGroupState)readObject( raf );
+            state = (BranchGroupState)readObject( in );
             
-            readNodeComponents( raf );
+            readNodeComponents( in );
             
         } catch( IOException e ) {
             e.printStackTrace();
@@ -333,10 +455,10 @@ public class RandomAccessFileControl extends Controller {
                 
     public Object readBranchGraphUserData( int graphID ) throws IOException {
         try {
-            raf.seek( symbolTable.getBranchGraphFilePosition( graphID ) );
+            DataInput in = getInput( symbolTable.getBranchGraphFilePosition( graphID ) );
 
-            int nodeCount = raf.readInt();
-            return readSerializedData( raf );        
+            int nodeCount = in.readInt();
+            return readSerializedData( in );        
         } catch( SGIORuntimeException e ) {
             throw new IOException( e.getMessage() );
         }
@@ -351,6 +473,8 @@ public class RandomAccessFileControl extends Controller {
         // the next NodeComponent correctly
         long ptrLoc=0L;
 
+        encodeImages();
+        
         java.util.ListIterator list = symbolTable.getUnsavedNodeComponents();
         out.writeInt( symbolTable.getUnsavedNodeComponentsSize() );
         while( list.hasNext() ) {
@@ -380,7 +504,13 @@ public class RandomAccessFileControl extends Controller {
 	    long nextNC = in.readLong();
 		if (symbolTable.isLoaded( nodeID )) {
 		    // Skip this object
-		    raf.seek( nextNC );
+		    seek( in, nextNC );
+		} else if (lazyNodeComponentSize>0 &&
+			   nextNC-getFilePointer( in )>=lazyNodeComponentSize) {
+		    // Skip this object, it will be loaded by
+		    // loadNodeComponent if it is referenced
+		    symbolTable.createLazySymbol( nodeID, getFilePointer( in ) );
+		    seek( in, nextNC );
 		} else {
 		    // Reading the objects will register them in the symbol table
 		    SceneGraphObjectState nodeComponent = readObject( in );
@@ -431,8 +561,7 @@ public class RandomAccessFileControl extends Controller {
      */
     public void loadNodeComponent( SymbolTableData symbol ) throws IOException {
         try {
-            raf.seek( symbol.filePosition );
-            readObject( raf );
+            readObject( getInput( symbol.filePosition ) );
         } catch( SGIORuntimeException e ) {
             throw new IOException( e.getMessage() );
         }        
@@ -443,8 +572,7 @@ public class RandomAccessFileControl extends Controller {
      */
     public void loadSharedGroup( SymbolTableData symbol ) throws IOException {
         try {
-            raf.seek( symbol.filePosition );
-            readObject( raf );
+            readObject( getInput( symbol.filePosition ) );
         } catch( SGIORuntimeException e ) {
             throw new IOException( e.getMessage() );
         }        
@@ -457,6 +585,7 @@ public class RandomAccessFileControl extends Controller {
 
             //System.out.println("File size at close "+raf.length() );
             raf.close();
+            map = null;
             super.reset();
         } catch( SGIORuntimeException e ) {
             throw new IOException( e.getMessage() );
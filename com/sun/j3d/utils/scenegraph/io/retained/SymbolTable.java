@@ -361,8 +361,11 @@ public class SymbolTable extends java.lang.Object implements SceneGraphObjectRef
     /**
      * Create a new symbol using the specified nodeID
      * This is used during the load process.
+     *
+     * The methods used while decoding objects are synchronized as
+     * RandomAccessFileControl can decode several branch graphs at once.
      */
-    public SymbolTableData createSymbol( SceneGraphObjectState state, SceneGraphObject node,
+    public synchronized SymbolTableData createSymbol( SceneGraphObjectState state, SceneGraphObject node,
                                          int nodeID ) {
         
         // TODO : Remove this get, it's here to provide debug consistancy check
@@ -386,6 +389,22 @@ public class SymbolTable extends java.lang.Object implements SceneGraphObjectRef
         return data;
     }
     
+    /**
+     * Create a symbol for a node component whose loading has been deferred,
+     * getJ3dNode will load it from filePosition when it is first referenced.
+     * Nothing is done if the node component already has a symbol.
+     */
+    public synchronized void createLazySymbol( int nodeID, long filePosition ) {
+        nodeIDIndexEnsureCapacity( nodeID );
+        if (nodeIDIndex.get( nodeID )!=null)
+            return;
+        
+        SymbolTableData data = new SymbolTableData( nodeID, null, null, -2 );
+        data.isNodeComponent = true;
+        data.filePosition = filePosition;
+        nodeIDIndex.set( nodeID, data );
+    }
+    
     private void nodeIDIndexEnsureCapacity( int size ) {
         nodeIDIndex.ensureCapacity( size );
         int adjust = size - nodeIDIndex.size();
@@ -586,7 +605,7 @@ public class SymbolTable extends java.lang.Object implements SceneGraphObjectRef
     /**
      * Return true if this node has already been loaded
      */
-    public boolean isLoaded( int nodeID ) {
+    public synchronized boolean isLoaded( int nodeID ) {
         SymbolTableData symbol = getSymbol( nodeID );
         
         if (symbol==null)
@@ -641,7 +660,7 @@ public class SymbolTable extends java.lang.Object implements SceneGraphObjectRef
     /**
      * Get the table entry for node
      */
-    public SymbolTableData getSymbol( SceneGraphObject node ) {     
+    public synchronized SymbolTableData getSymbol( SceneGraphObject node ) {     
         //System.out.println("getSymbol "+node+"  "+j3dNodeIndex.get( node ));
         return (SymbolTableData)j3dNodeIndex.get( node );
     }
@@ -649,7 +668,7 @@ public class SymbolTable extends java.lang.Object implements SceneGraphObjectRef
     /**
      * Return the node with the give ID
      */
-    public SymbolTableData getSymbol( int nodeID ) {
+    public synchronized SymbolTableData getSymbol( int nodeID ) {
         // nodeID's start at 1
         
         if (nodeID==0 || nodeID>nodeIDIndex.size() )
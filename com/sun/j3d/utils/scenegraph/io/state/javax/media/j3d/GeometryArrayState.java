@@ -45,6 +45,10 @@
 package com.sun.j3d.utils.scenegraph.io.state.javax.media.j3d;
 
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
 import javax.media.j3d.GeometryArray;
 import javax.media.j3d.IndexedGeometryArray;
 import javax.media.j3d.GeometryStripArray;
@@ -77,6 +81,16 @@ public abstract class GeometryArrayState extends GeometryState {
     private static final int FORMAT_4F = 8;
     private static final int FORMAT_2D = 9;
     private static final int FORMAT_3D = 10;
+
+    // Size in bytes of the per thread buffer used to convert arrays
+    // to and from the big endian stream format.
+    private static final int CHUNK_SIZE = 65536;
+
+    private static final ThreadLocal chunkBuffer = new ThreadLocal() {
+	protected Object initialValue() {
+	    return ByteBuffer.allocate( CHUNK_SIZE );
+	}
+    };
     
     public GeometryArrayState( SymbolTableData symbol, Controller control ) {
 	super( symbol, control );
@@ -96,12 +110,8 @@ public abstract class GeometryArrayState extends GeometryState {
 	    }
 
 	    if ( nio ) {
-		FloatBufferWrapper x = new FloatBufferWrapper(
-		    ((GeometryArray)node).getInterleavedVertexBuffer());
-		float[] f = new float[x.limit()];
-		x.position( 0 );
-		x.get( f );
-		writeFloatArray( out, f );
+		writeFloatArray( out, new FloatBufferWrapper(
+		    ((GeometryArray)node).getInterleavedVertexBuffer()) );
 	    } else writeFloatArray( out, ((GeometryArray)node).getInterleavedVertices() );
 	} else {
 	    boolean byRef = (vertexFormat & GeometryArray.BY_REFERENCE) != 0;
@@ -135,11 +145,7 @@ public abstract class GeometryArrayState extends GeometryState {
 			break;
 			case BufferWrapper.TYPE_FLOAT: {
 			    out.writeInt( FORMAT_FLOAT );
-			    FloatBufferWrapper bb = new FloatBufferWrapper( buf );
-			    float[] floats = new float[ bb.limit() ];
-			    bb.position( 0 );
-			    bb.get( floats );
-			    writeFloatArray( out, floats );
+			    writeFloatArray( out, new FloatBufferWrapper( buf ) );
 			}
 			break;
 			case BufferWrapper.TYPE_NULL: {
@@ -206,11 +212,7 @@ public abstract class GeometryArrayState extends GeometryState {
 			break;
 			case BufferWrapper.TYPE_FLOAT: {
 			    out.writeInt( FORMAT_FLOAT );
-			    FloatBufferWrapper bb = new FloatBufferWrapper( buf );
-			    float[] floats = new float[ bb.limit() ];
-			    bb.position( 0 );
-			    bb.get( floats );
-			    writeFloatArray( out, floats );
+			    writeFloatArray( out, new FloatBufferWrapper( buf ) );
 			}
 			break;
 			case BufferWrapper.TYPE_NULL: {
@@ -268,20 +270,12 @@ public abstract class GeometryArrayState extends GeometryState {
 			switch( BufferWrapper.getBufferType( buf ) ) {
 			case BufferWrapper.TYPE_FLOAT: {
 			    out.writeInt( FORMAT_FLOAT );
-			    FloatBufferWrapper bb = new FloatBufferWrapper( buf );
-			    float[] floats = new float[ bb.limit() ];
-			    bb.position( 0 );
-			    bb.get( floats );
-			    writeFloatArray( out, floats );
+			    writeFloatArray( out, new FloatBufferWrapper( buf ) );
 			}
 			break;
 			case BufferWrapper.TYPE_DOUBLE: {
 			    out.writeInt( FORMAT_DOUBLE );
-			    DoubleBufferWrapper bb = new DoubleBufferWrapper( buf );
-			    double[] doubles = new double[ bb.limit() ];
-			    bb.position( 0 );
-			    bb.get( doubles );
-			    writeDoubleArray( out, doubles );
+			    writeDoubleArray( out, new DoubleBufferWrapper( buf ) );
 			}
 			break;
 			case BufferWrapper.TYPE_NULL: {
@@ -336,11 +330,7 @@ public abstract class GeometryArrayState extends GeometryState {
 			    out.writeInt( FORMAT_NULL );
 			else {
 			    out.writeInt( FORMAT_FLOAT );
-			    FloatBufferWrapper bb = new FloatBufferWrapper( buf );
-			    float[] floats = new float[ bb.limit() ];
-			    bb.position( 0 );
-			    bb.get( floats );
-			    writeFloatArray( out, floats );
+			    writeFloatArray( out, new FloatBufferWrapper( buf ) );
 			}
 		    } else if ( ((GeometryArray)node).getNormalRef3f()!=null ) {
 			out.writeInt( FORMAT_3F );
@@ -377,11 +367,7 @@ public abstract class GeometryArrayState extends GeometryState {
 				out.writeInt( FORMAT_NULL );
 			    else {
 				out.writeInt( FORMAT_FLOAT );
-				FloatBufferWrapper bb = new FloatBufferWrapper( buf );
-				float[] floats = new float[ bb.limit() ];
-				bb.position( 0 );
-				bb.get( floats );
-				writeFloatArray( out, floats );
+				writeFloatArray( out, new FloatBufferWrapper( buf ) );
 			    }
 			} else if ( ((GeometryArray)node).getTexCoordRef2f(set)!=null ) {
 			    out.writeInt( FORMAT_2F );
@@ -416,11 +402,7 @@ public abstract class GeometryArrayState extends GeometryState {
 				out.writeInt( FORMAT_NULL );
 			    else {
 				out.writeInt( FORMAT_FLOAT );
-				FloatBufferWrapper bb = new FloatBufferWrapper( buf );
-				float[] floats = new float[ bb.limit() ];
-				bb.position( 0 );
-				bb.get( floats );
-				writeFloatArray( out, floats );
+				writeFloatArray( out, new FloatBufferWrapper( buf ) );
 			    }
 			} else if ( ((GeometryArray)node).getTexCoordRef3f(set)!=null ) {
 			    out.writeInt( FORMAT_3F );
@@ -456,11 +438,7 @@ public abstract class GeometryArrayState extends GeometryState {
 				out.writeInt( FORMAT_NULL );
 			    else {
 				out.writeInt( FORMAT_FLOAT );
-				FloatBufferWrapper bb = new FloatBufferWrapper( buf );
-				float[] floats = new float[ bb.limit() ];
-				bb.position( 0 );
-				bb.get( floats );
-				writeFloatArray( out, floats );
+				writeFloatArray( out, new FloatBufferWrapper( buf ) );
 			    }
 			// There is no TexCoordRef4f
 			} else if ( ((GeometryArray)node).getTexCoordRefFloat(set)!=null ) {
@@ -489,12 +467,7 @@ public abstract class GeometryArrayState extends GeometryState {
 		    ((GeometryArray)node).setValidVertexCount( in.readInt() );
 	    }
 	    if ( nio ) {
-		float[] floats = readFloatArray( in );
-		ByteBufferWrapper b = 
-		    ByteBufferWrapper.allocateDirect( floats.length*4 );
-		FloatBufferWrapper f =
-		    b.order( ByteOrderWrapper.nativeOrder() ).asFloatBuffer();
-		f.put( floats );
+		FloatBufferWrapper f = readFloatBuffer( in );
 		((GeometryArray)node).setInterleavedVertexBuffer( f.getJ3DBuffer() );
 	    } else ((GeometryArray)node).setInterleavedVertices( readFloatArray( in ) );
 	} else {
@@ -528,12 +501,7 @@ public abstract class GeometryArrayState extends GeometryState {
 			}
 			break;
 			case FORMAT_FLOAT: {
-			    float[] floats = readFloatArray( in );
-			    ByteBufferWrapper b = 
-				ByteBufferWrapper.allocateDirect( floats.length*4 );
-			    FloatBufferWrapper f =
-				b.order( ByteOrderWrapper.nativeOrder() ).asFloatBuffer();
-			    f.put( floats );
+			    FloatBufferWrapper f = readFloatBuffer( in );
 			    ((GeometryArray)node).setColorRefBuffer( f.getJ3DBuffer() );
 			}
 			break;
@@ -600,12 +568,7 @@ public abstract class GeometryArrayState extends GeometryState {
 			}
 			break;
 			case FORMAT_FLOAT: {
-			    float[] floats = readFloatArray( in );
-			    ByteBufferWrapper b = 
-				ByteBufferWrapper.allocateDirect( floats.length*4 );
-			    FloatBufferWrapper f =
-				b.order( ByteOrderWrapper.nativeOrder() ).asFloatBuffer();
-			    f.put( floats );
+			    FloatBufferWrapper f = readFloatBuffer( in );
 			    ((GeometryArray)node).setColorRefBuffer( f.getJ3DBuffer() );
 			}
 			break;
@@ -663,22 +626,12 @@ public abstract class GeometryArrayState extends GeometryState {
 		    if ( nio ) {
 			switch( in.readInt() ) {
 			case FORMAT_FLOAT: {
-			    float[] floats = readFloatArray( in );
-			    ByteBufferWrapper b = 
-				ByteBufferWrapper.allocateDirect( floats.length*4 );
-			    FloatBufferWrapper f =
-				b.order( ByteOrderWrapper.nativeOrder() ).asFloatBuffer();
-			    f.put( floats );
+			    FloatBufferWrapper f = readFloatBuffer( in );
 			    ((GeometryArray)node).setCoordRefBuffer( f.getJ3DBuffer() );
 			}
 			break;
 			case FORMAT_DOUBLE: {
-			    double[] doubles = readDoubleArray( in );
-			    ByteBufferWrapper b = 
-				ByteBufferWrapper.allocateDirect( doubles.length*4 );
-			    DoubleBufferWrapper f =
-				b.order( ByteOrderWrapper.nativeOrder() ).asDoubleBuffer();
-			    f.put( doubles );
+			    DoubleBufferWrapper f = readDoubleBuffer( in );
 			    ((GeometryArray)node).setCoordRefBuffer( f.getJ3DBuffer() );
 			}
 			break;
@@ -730,12 +683,7 @@ public abstract class GeometryArrayState extends GeometryState {
 
 		    if ( nio ) {
 			if ( in.readInt() == FORMAT_FLOAT ) {
-			    float[] floats = readFloatArray( in );
-			    ByteBufferWrapper b = 
-				ByteBufferWrapper.allocateDirect( floats.length*4 );
-			    FloatBufferWrapper f =
-				b.order( ByteOrderWrapper.nativeOrder() ).asFloatBuffer();
-			    f.put( floats );
+			    FloatBufferWrapper f = readFloatBuffer( in );
 			    ((GeometryArray)node).setNormalRefBuffer( f.getJ3DBuffer() );
 			}
 		    } else {
@@ -774,12 +722,7 @@ public abstract class GeometryArrayState extends GeometryState {
 
 			if ( nio ) {
 			    if ( in.readInt() == FORMAT_FLOAT ) {
-				float[] floats = readFloatArray( in );
-				ByteBufferWrapper b = 
-				    ByteBufferWrapper.allocateDirect( floats.length*4 );
-				FloatBufferWrapper f = b.order(
-				    ByteOrderWrapper.nativeOrder() ).asFloatBuffer();
-				f.put( floats );
+				FloatBufferWrapper f = readFloatBuffer( in );
 				((GeometryArray)node).setTexCoordRefBuffer( set,
 				    f.getJ3DBuffer() );
 			    }
@@ -858,68 +801,241 @@ public abstract class GeometryArrayState extends GeometryState {
     }
     
     protected void writeDoubleArray( DataOutput out, double[] array ) throws IOException {
+        out.writeInt( 4+array.length*8 );
+        out.writeInt( array.length );
+        writeDoubles( out, array, 0, array.length );
+    }
 
-        // Writing the array into a ByteArray in memory and then dumping
-        // the byte array to DataOutput with a single call is MUCH quicker
-        // than writing each double to DataOutput.
-        
-        ByteArrayOutputStream byteStream = new ByteArrayOutputStream();
-        DataOutputStream dataOut = new DataOutputStream( byteStream );
+    /**
+     * Write the contents of the buffer, from 0 to its limit, in the
+     * same format as writeDoubleArray. The buffer position is not changed.
+     */
+    protected void writeDoubleArray( DataOutput out, DoubleBufferWrapper buf ) throws IOException {
+        DoubleBuffer src = ((DoubleBuffer)buf.getBuffer()).duplicate();
+        src.position( 0 );
 
-        dataOut.writeInt( array.length );
-        for(int i=0; i<array.length; i++)
-            dataOut.writeDouble( array[i] );
-        dataOut.close();
-        
-        out.writeInt( byteStream.size() );
-        out.write( byteStream.toByteArray() );
+        out.writeInt( 4+src.remaining()*8 );
+        out.writeInt( src.remaining() );
+
+        ByteBuffer chunk = (ByteBuffer)chunkBuffer.get();
+        DoubleBuffer dst = chunk.asDoubleBuffer();
+        while( src.hasRemaining() ) {
+            int n = Math.min( src.remaining(), dst.capacity() );
+            int limit = src.limit();
+            src.limit( src.position()+n );
+            dst.clear();
+            dst.put( src );
+            src.limit( limit );
+            out.write( chunk.array(), 0, n*8 );
+        }
     }
-    
+
     protected double[] readDoubleArray( DataInput in ) throws IOException {
-        byte[] buffer = new byte[ in.readInt() ];
-        in.readFully( buffer );
-        ByteArrayInputStream byteStream = new ByteArrayInputStream( buffer );
-        DataInputStream dataIn = new DataInputStream( byteStream );
-        
-        double[] array = new double[ dataIn.readInt() ];
-        for(int i=0; i<array.length; i++)
-            array[i] = dataIn.readDouble();
-        
-        dataIn.close();
-        
+        int size = in.readInt();
+        double[] array = new double[ readArrayLength( in, size, 8 ) ];
+        readDoubles( in, array, 0, array.length );
+        skipFully( in, size-4-array.length*8 );
         return array;
     }
-    
+
+    /**
+     * Read an array written by writeDoubleArray straight into a direct
+     * buffer in native byte order.
+     */
+    protected DoubleBufferWrapper readDoubleBuffer( DataInput in ) throws IOException {
+        int size = in.readInt();
+        int length = readArrayLength( in, size, 8 );
+        DoubleBufferWrapper ret = ByteBufferWrapper.allocateDirect( length*8 ).
+            order( ByteOrderWrapper.nativeOrder() ).asDoubleBuffer();
+        DoubleBuffer dst = (DoubleBuffer)ret.getBuffer();
+
+        ByteBuffer chunk = (ByteBuffer)chunkBuffer.get();
+        DoubleBuffer src = chunk.asDoubleBuffer();
+        while( dst.hasRemaining() ) {
+            int n = Math.min( dst.remaining(), src.capacity() );
+            in.readFully( chunk.array(), 0, n*8 );
+            src.clear();
+            src.limit( n );
+            dst.put( src );
+        }
+        skipFully( in, size-4-length*8 );
+        return ret;
+    }
+
     protected void writeFloatArray( DataOutput out, float[] array ) throws IOException {
+        out.writeInt( 4+array.length*4 );
+        out.writeInt( array.length );
+        writeFloats( out, array, 0, array.length );
+    }
 
-        // Writing the array into a ByteArray in memory and then dumping
-        // the byte array to DataOutput with a single call is MUCH quicker
-        // than writing each float to DataOutput.
-        
-        ByteArrayOutputStream byteStream = new ByteArrayOutputStream();
-        DataOutputStream dataOut = new DataOutputStream( byteStream );
+    /**
+     * Write the contents of the buffer, from 0 to its limit, in the
+     * same format as writeFloatArray. The buffer position is not changed.
+     */
+    protected void writeFloatArray( DataOutput out, FloatBufferWrapper buf ) throws IOException {
+        FloatBuffer src = ((FloatBuffer)buf.getBuffer()).duplicate();
+        src.position( 0 );
 
-        dataOut.writeInt( array.length );
-        for(int i=0; i<array.length; i++)
-            dataOut.writeFloat( array[i] );
-        dataOut.close();
-        
-        out.writeInt( byteStream.size() );
-        out.write( byteStream.toByteArray() );
+        out.writeInt( 4+src.remaining()*4 );
+        out.writeInt( src.remaining() );
+
+        ByteBuffer chunk = (ByteBuffer)chunkBuffer.get();
+        FloatBuffer dst = chunk.asFloatBuffer();
+        while( src.hasRemaining() ) {
+            int n = Math.min( src.remaining(), dst.capacity() );
+            int limit = src.limit();
+            src.limit( src.position()+n );
+            dst.clear();
+            dst.put( src );
+            src.limit( limit );
+            out.write( chunk.array(), 0, n*4 );
+        }
     }
-    
+
     protected float[] readFloatArray( DataInput in ) throws IOException {
-        byte[] buffer = new byte[ in.readInt() ];
-        in.readFully( buffer );
-        ByteArrayInputStream byteStream = new ByteArrayInputStream( buffer );
-        DataInputStream dataIn = new DataInputStream( byteStream );
-        
-        float[] array = new float[ dataIn.readInt() ];
-        for(int i=0; i<array.length; i++)
-            array[i] = dataIn.readFloat();
-        
-        dataIn.close();
-        
+        int size = in.readInt();
+        float[] array = new float[ readArrayLength( in, size, 4 ) ];
+        readFloats( in, array, 0, array.length );
+        skipFully( in, size-4-array.length*4 );
         return array;
     }
+
+    /**
+     * Read an array written by writeFloatArray straight into a direct
+     * buffer in native byte order.
+     */
+    protected FloatBufferWrapper readFloatBuffer( DataInput in ) throws IOException {
+        int size = in.readInt();
+        int length = readArrayLength( in, size, 4 );
+        FloatBufferWrapper ret = ByteBufferWrapper.allocateDirect( length*4 ).
+            order( ByteOrderWrapper.nativeOrder() ).asFloatBuffer();
+        FloatBuffer dst = (FloatBuffer)ret.getBuffer();
+
+        ByteBuffer chunk = (ByteBuffer)chunkBuffer.get();
+        FloatBuffer src = chunk.asFloatBuffer();
+        while( dst.hasRemaining() ) {
+            int n = Math.min( dst.remaining(), src.capacity() );
+            in.readFully( chunk.array(), 0, n*4 );
+            src.clear();
+            src.limit( n );
+            dst.put( src );
+        }
+        skipFully( in, size-4-length*4 );
+        return ret;
+    }
+
+    // The helpers below convert arrays through a per thread ByteBuffer
+    // so each chunk is encoded with a single bulk put and written with
+    // a single call, instead of going through DataOutputStream one
+    // element at a time. ByteBuffers are big endian, matching the
+    // format written by DataOutput.
+
+    protected static void writeFloats( DataOutput out, float[] array,
+                                       int offset, int length ) throws IOException {
+        ByteBuffer chunk = (ByteBuffer)chunkBuffer.get();
+        FloatBuffer dst = chunk.asFloatBuffer();
+        while( length > 0 ) {
+            int n = Math.min( length, dst.capacity() );
+            dst.clear();
+            dst.put( array, offset, n );
+            out.write( chunk.array(), 0, n*4 );
+            offset += n;
+            length -= n;
+        }
+    }
+
+    protected static void readFloats( DataInput in, float[] array,
+                                      int offset, int length ) throws IOException {
+        ByteBuffer chunk = (ByteBuffer)chunkBuffer.get();
+        FloatBuffer src = chunk.asFloatBuffer();
+        while( length > 0 ) {
+            int n = Math.min( length, src.capacity() );
+            in.readFully( chunk.array(), 0, n*4 );
+            src.clear();
+            src.get( array, offset, n );
+            offset += n;
+            length -= n;
+        }
+    }
+
+    protected static void writeDoubles( DataOutput out, double[] array,
+                                        int offset, int length ) throws IOException {
+        ByteBuffer chunk = (ByteBuffer)chunkBuffer.get();
+        DoubleBuffer dst = chunk.asDoubleBuffer();
+        while( length > 0 ) {
+            int n = Math.min( length, dst.capacity() );
+            dst.clear();
+            dst.put( array, offset, n );
+            out.write( chunk.array(), 0, n*8 );
+            offset += n;
+            length -= n;
+        }
+    }
+
+    protected static void readDoubles( DataInput in, double[] array,
+                                       int offset, int length ) throws IOException {
+        ByteBuffer chunk = (ByteBuffer)chunkBuffer.get();
+        DoubleBuffer src = chunk.asDoubleBuffer();
+        while( length > 0 ) {
+            int n = Math.min( length, src.capacity() );
+            in.readFully( chunk.array(), 0, n*8 );
+            src.clear();
+            src.get( array, offset, n );
+            offset += n;
+            length -= n;
+        }
+    }
+
+    protected static void writeInts( DataOutput out, int[] array,
+                                     int offset, int length ) throws IOException {
+        ByteBuffer chunk = (ByteBuffer)chunkBuffer.get();
+        IntBuffer dst = chunk.asIntBuffer();
+        while( length > 0 ) {
+            int n = Math.min( length, dst.capacity() );
+            dst.clear();
+            dst.put( array, offset, n );
+            out.write( chunk.array(), 0, n*4 );
+            offset += n;
+            length -= n;
+        }
+    }
+
+    protected static void readInts( DataInput in, int[] array,
+                                    int offset, int length ) throws IOException {
+        ByteBuffer chunk = (ByteBuffer)chunkBuffer.get();
+        IntBuffer src = chunk.asIntBuffer();
+        while( length > 0 ) {
+            int n = Math.min( length, src.capacity() );
+            in.readFully( chunk.array(), 0, n*4 );
+            src.clear();
+            src.get( array, offset, n );
+            offset += n;
+            length -= n;
+        }
+    }
+
+    /**
+     * Read the element count that follows the byte size of an array
+     * and check the two agree.
+     */
+    private static int readArrayLength( DataInput in, int size,
+                                        int elementSize ) throws IOException {
+        int length = in.readInt();
+        if ( length < 0 || size-4 < (long)length*elementSize )
+            throw new EOFException( "Array of "+length+
+                                    " elements does not fit in "+size+" bytes" );
+        return length;
+    }
+
+    /**
+     * Discard count bytes of the input.
+     */
+    protected static void skipFully( DataInput in, int count ) throws IOException {
+        ByteBuffer chunk = (ByteBuffer)chunkBuffer.get();
+        while( count > 0 ) {
+            int n = Math.min( count, CHUNK_SIZE );
+            in.readFully( chunk.array(), 0, n );
+            count -= n;
+        }
+    }
 }
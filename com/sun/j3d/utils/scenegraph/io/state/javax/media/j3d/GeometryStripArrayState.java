@@ -67,15 +67,13 @@ public abstract class GeometryStripArrayState extends GeometryArrayState {
         ((GeometryStripArray)node).getStripVertexCounts( stripVertexCounts );
         
 	out.writeInt(stripVertexCounts.length);
-        for(int i=0; i<stripVertexCounts.length; i++)
-            out.writeInt( stripVertexCounts[i] );
+        writeInts( out, stripVertexCounts, 0, stripVertexCounts.length );
     }
 
     protected void readConstructorParams( DataInput in ) throws
 							IOException {
        super.readConstructorParams( in );
        stripVertexCounts = new int[in.readInt()];
-       for(int i=0; i<stripVertexCounts.length; i++)
-           stripVertexCounts[i] = in.readInt();
+       readInts( in, stripVertexCounts, 0, stripVertexCounts.length );
     }
 }
@@ -73,6 +73,10 @@ public class ImageComponent2DState extends ImageComponentState {
     public void writeConstructorParams( DataOutput out ) throws 
 							IOException {
         super.writeConstructorParams( out );    
+        writeEncodedImages( out, false );
+    }
+
+    protected BufferedImage[] getImagesForWrite() {
 	ImageComponent2D ic = ((ImageComponent2D)node);
 
 	// If the BufferedImage is associated with the ImageComponent2D by
@@ -85,7 +89,7 @@ public class ImageComponent2DState extends ImageComponentState {
 	    bufferedImage = noByRef.getImage();
 	} else bufferedImage = ic.getImage();
         
-        writeBufferedImage( out, bufferedImage );
+        return new BufferedImage[] { bufferedImage };
     }
 
     public void readConstructorParams( DataInput in ) throws
@@ -73,7 +73,10 @@ public class ImageComponent3DState extends ImageComponentState {
     public void writeConstructorParams( DataOutput out ) throws 
 							IOException {
         super.writeConstructorParams( out );
+        writeEncodedImages( out, true );
+    }
 
+    protected BufferedImage[] getImagesForWrite() {
 	ImageComponent3D ic = ((ImageComponent3D)node);
 
         // If the BufferedImages are associated with the ImageComponent3D by
@@ -86,11 +89,7 @@ public class ImageComponent3DState extends ImageComponentState {
 	    bufferedImages = noByRef.getImage();
 	} else bufferedImages = ic.getImage();
 
-	out.writeInt( bufferedImages.length );
-
-        for(int i=0; i<bufferedImages.length; i++) {
-            writeBufferedImage( out, bufferedImages[i] );
-	}
+        return bufferedImages;
     }
 
     public void readConstructorParams( DataInput in ) throws
@@ -50,21 +50,27 @@ import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
 import java.util.zip.GZIPInputStream;
 import java.util.zip.GZIPOutputStream;
+import java.util.zip.Inflater;
 import java.io.IOException;
+import java.awt.Graphics2D;
 import java.awt.Point;
 import java.awt.image.*;
 import javax.media.j3d.ImageComponent;
 import com.sun.j3d.utils.scenegraph.io.retained.Controller;
 import com.sun.j3d.utils.scenegraph.io.retained.SymbolTableData;
 import com.sun.j3d.utils.scenegraph.io.retained.SGIORuntimeException;
+import com.sun.j3d.utils.scenegraph.io.retained.LZCodec;
 import java.awt.color.ColorSpace;
 import java.awt.image.DataBuffer;
 import com.sun.image.codec.jpeg.JPEGImageEncoder;
 import com.sun.image.codec.jpeg.JPEGImageDecoder;
 import com.sun.image.codec.jpeg.JPEGCodec;
 import com.sun.image.codec.jpeg.JPEGEncodeParam;
+import javax.imageio.ImageIO;
 
 public abstract class ImageComponentState extends NodeComponentState {
 
@@ -95,16 +101,80 @@ public abstract class ImageComponentState extends NodeComponentState {
     /**
      * Use JPEG compression for images
      *
-     * JPEG compression is currently the default. The file format
-     * supports other compression algorithms but there is currently
-     * no API to select the algorithm. This feature is on hold pending
-     * imageio in Java 1.4
+     * The compression is selected with the j3d.io.ImageCompression
+     * property or setImageCompression on the writer.
      */
     public static final byte JPEG_COMPRESSION = 2;
     
+    /**
+     * Use Deflater to compress images, at the level set with
+     * setImageCompressionLevel on the writer.
+     *
+     * The raster is stored uncompressed and then deflated in one call,
+     * so this is much faster to decompress than GZIP_COMPRESSION.
+     */
+    public static final byte DEFLATE_COMPRESSION = 3;
+    
+    /**
+     * Store images as PNG using ImageIO
+     */
+    public static final byte PNG_COMPRESSION = 4;
+    
+    /**
+     * Use a fast LZ codec to compress images. This compresses less than
+     * DEFLATE_COMPRESSION but is the fastest to decompress.
+     */
+    public static final byte LZ_COMPRESSION = 5;
+    
+    /**
+     * Images encoded by encodeImages() waiting to be written
+     */
+    private byte[][] encodedImages;
+    
     public ImageComponentState( SymbolTableData symbol, Controller control ) {
 	super( symbol, control );
     }
+    
+    /**
+     * Return the images of the ImageComponent to write, in a format
+     * supported by writeBufferedImage. Subclasses which do not write
+     * their images return an empty array.
+     */
+    protected BufferedImage[] getImagesForWrite() {
+        return new BufferedImage[0];
+    }
+    
+    /**
+     * Encode the images of the ImageComponent using the controller's
+     * image compression so they can be written later by
+     * writeEncodedImages. Images from separate ImageComponents
+     * can be encoded concurrently.
+     */
+    public void encodeImages() throws IOException {
+        BufferedImage[] images = getImagesForWrite();
+        byte[][] encoded = new byte[ images.length ][];
+        for(int i=0; i<images.length; i++)
+            encoded[i] = encodeBufferedImage( images[i] );
+        encodedImages = encoded;
+    }
+    
+    /**
+     * Write the images of the ImageComponent, using the images encoded
+     * by encodeImages() if it has been called.
+     *
+     * @param writeCount write the number of images first
+     */
+    protected void writeEncodedImages( DataOutput out, boolean writeCount ) throws IOException {
+        if (encodedImages==null)
+            encodeImages();
+        
+        if (writeCount)
+            out.writeInt( encodedImages.length );
+        for(int i=0; i<encodedImages.length; i++)
+            out.write( encodedImages[i] );
+        
+        encodedImages = null;
+    }
 
 
     protected void writeConstructorParams( DataOutput out ) throws
@@ -129,6 +199,15 @@ public abstract class ImageComponentState extends NodeComponentState {
     
     protected void writeBufferedImage( DataOutput out,
 				       BufferedImage image ) throws IOException {
+        out.write( encodeBufferedImage( image ) );
+    }
+    
+    /**
+     * Return the bytes writeBufferedImage writes for image
+     */
+    private byte[] encodeBufferedImage( BufferedImage image ) throws IOException {
+        ByteArrayOutputStream byteStream = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream( byteStream );
 
         int compressionType = control.getImageCompression();
         
@@ -140,9 +219,30 @@ public abstract class ImageComponentState extends NodeComponentState {
             writeBufferedImageGzipCompression( out, image );
         else if (compressionType==JPEG_COMPRESSION)
             writeBufferedImageJpegCompression( out, image );
+        else if (compressionType==DEFLATE_COMPRESSION)
+            writeBufferedImageDeflateCompression( out, image );
+        else if (compressionType==PNG_COMPRESSION)
+            writeBufferedImagePngCompression( out, image );
+        else if (compressionType==LZ_COMPRESSION)
+            writeBufferedImageLzCompression( out, image );
+        else
+            throw new SGIORuntimeException("Unknown Image Compression "+compressionType);
+        
+        out.close();
+        return byteStream.toByteArray();
     }
     
     private void writeBufferedImageNoCompression( DataOutput out, BufferedImage image ) throws IOException {
+        byte[] buffer = getUncompressedImage( image );
+        out.writeInt( buffer.length );
+        out.write( buffer );
+    }
+    
+    /**
+     * Return the ColorModel, Raster and alpha flag of image, as
+     * written by NO_COMPRESSION
+     */
+    private byte[] getUncompressedImage( BufferedImage image ) throws IOException {
         ByteArrayOutputStream byteStream = new ByteArrayOutputStream();
         DataOutputStream dataOut = new DataOutputStream( byteStream );
         ColorModel colorModel = (ColorModel) image.getColorModel();
@@ -176,9 +276,7 @@ public abstract class ImageComponentState extends NodeComponentState {
         
         dataOut.close();
         
-        byte[] buffer = byteStream.toByteArray();
-        out.writeInt( buffer.length );
-        out.write( buffer );
+        return byteStream.toByteArray();
     }
     
     private void writeBufferedImageGzipCompression( DataOutput out, BufferedImage image ) throws IOException {
@@ -213,6 +311,59 @@ public abstract class ImageComponentState extends NodeComponentState {
         out.write( buffer );
     }
     
+    private void writeBufferedImageDeflateCompression( DataOutput out, BufferedImage image ) throws IOException {
+        byte[] raw = getUncompressedImage( image );
+        
+        Deflater deflater = new Deflater( control.getImageCompressionLevel() );
+        ByteArrayOutputStream byteStream = new ByteArrayOutputStream( raw.length/4+64 );
+        try {
+            deflater.setInput( raw );
+            deflater.finish();
+            byte[] buffer = new byte[ 65536 ];
+            while( !deflater.finished() ) {
+                int n = deflater.deflate( buffer );
+                byteStream.write( buffer, 0, n );
+            }
+        } finally {
+            deflater.end();
+        }
+        
+        out.writeInt( byteStream.size() );
+        out.writeInt( raw.length );
+        out.write( byteStream.toByteArray() );
+    }
+    
+    private void writeBufferedImagePngCompression( DataOutput out, BufferedImage image ) throws IOException {
+        ByteArrayOutputStream byteStream = new ByteArrayOutputStream();
+        if (!ImageIO.write( image, "png", byteStream )) {
+            // No PNG writer accepts this image type, draw it into a
+            // standard RGB image and try again
+            BufferedImage rgb = new BufferedImage( image.getWidth(), image.getHeight(),
+                    image.getColorModel().hasAlpha() ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB );
+            Graphics2D g = rgb.createGraphics();
+            try {
+                g.drawImage( image, 0, 0, null );
+            } finally {
+                g.dispose();
+            }
+            byteStream.reset();
+            if (!ImageIO.write( rgb, "png", byteStream ))
+                throw new SGIORuntimeException("No PNG ImageWriter accepts image type "+image.getType() );
+        }
+        
+        out.writeInt( byteStream.size() );
+        out.write( byteStream.toByteArray() );
+    }
+    
+    private void writeBufferedImageLzCompression( DataOutput out, BufferedImage image ) throws IOException {
+        byte[] raw = getUncompressedImage( image );
+        byte[] buffer = LZCodec.compress( raw, 0, raw.length );
+        
+        out.writeInt( buffer.length );
+        out.writeInt( raw.length );
+        out.write( buffer );
+    }
+    
     protected BufferedImage readBufferedImage( DataInput in ) throws IOException {
         byte compression = in.readByte();
         
@@ -222,6 +373,12 @@ public abstract class ImageComponentState extends NodeComponentState {
             return readBufferedImageGzipCompression( in );
         else if (compression==JPEG_COMPRESSION)
             return readBufferedImageJpegCompression( in );
+        else if (compression==DEFLATE_COMPRESSION)
+            return readBufferedImageDeflateCompression( in );
+        else if (compression==PNG_COMPRESSION)
+            return readBufferedImagePngCompression( in );
+        else if (compression==LZ_COMPRESSION)
+            return readBufferedImageLzCompression( in );
 	throw new SGIORuntimeException("Unknown Image Compression");
     }
         
@@ -229,6 +386,13 @@ public abstract class ImageComponentState extends NodeComponentState {
         int size = in.readInt();
         byte[] buffer = new byte[ size ];
         in.readFully( buffer );
+        return readUncompressedImage( buffer );
+    }
+    
+    /**
+     * Create the image from the data returned by getUncompressedImage
+     */
+    private BufferedImage readUncompressedImage( byte[] buffer ) throws IOException {
         ByteArrayInputStream byteIn = new ByteArrayInputStream( buffer );
         DataInputStream dataIn = new DataInputStream( byteIn );
         
@@ -268,6 +432,50 @@ public abstract class ImageComponentState extends NodeComponentState {
         return decoder.decodeAsBufferedImage();
     }
     
+    private BufferedImage readBufferedImageDeflateCompression( DataInput in ) throws IOException {  
+        byte[] buffer = new byte[ in.readInt() ];
+        byte[] raw = new byte[ in.readInt() ];
+        in.readFully( buffer );
+        
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput( buffer );
+            int n = 0;
+            while( n<raw.length ) {
+                int s = inflater.inflate( raw, n, raw.length-n );
+                if (s==0 && (inflater.finished() || inflater.needsInput() || inflater.needsDictionary()))
+                    throw new SGIORuntimeException("Invalid Image data - file corrupt");
+                n += s;
+            }
+        } catch( DataFormatException e ) {
+            throw new SGIORuntimeException("Invalid Image data - file corrupt");
+        } finally {
+            inflater.end();
+        }
+        
+        return readUncompressedImage( raw );
+    }
+    
+    private BufferedImage readBufferedImagePngCompression( DataInput in ) throws IOException {  
+        byte[] buffer = new byte[ in.readInt() ];
+        in.readFully( buffer );
+        
+        BufferedImage image = ImageIO.read( new ByteArrayInputStream( buffer ) );
+        if (image==null)
+            throw new SGIORuntimeException("Invalid PNG Image - file corrupt");
+        return image;
+    }
+    
+    private BufferedImage readBufferedImageLzCompression( DataInput in ) throws IOException {  
+        byte[] buffer = new byte[ in.readInt() ];
+        byte[] raw = new byte[ in.readInt() ];
+        in.readFully( buffer );
+        
+        LZCodec.decompress( buffer, 0, buffer.length, raw );
+        
+        return readUncompressedImage( raw );
+    }
+    
     private void writeColorModel( DataOutput out, ColorModel colorModel ) throws IOException {
         if (colorModel instanceof DirectColorModel) {
             out.writeInt( DIRECT_COLOR_MODEL );
@@ -386,8 +594,7 @@ public abstract class ImageComponentState extends NodeComponentState {
         out.writeInt( data.length );
         for(int i=0; i<data.length; i++) {
             out.writeInt( data[i].length );
-            for( int j=0; j<data[i].length; j++)
-                out.writeInt( data[i][j] );
+            GeometryArrayState.writeInts( out, data[i], 0, data[i].length );
         }
         
         out.writeInt( buffer.getSize() );
@@ -400,8 +607,7 @@ public abstract class ImageComponentState extends NodeComponentState {
         int[][] data = new int[in.readInt()][];
         for(int i=0; i<data.length; i++) {
             data[i] = new int[ in.readInt() ];
-            for( int j=0; j<data[i].length; j++)
-                data[i][j] = in.readInt();
+            GeometryArrayState.readInts( in, data[i], 0, data[i].length );
         }
         
         
@@ -150,27 +150,16 @@ public abstract class IndexedGeometryArrayState extends GeometryArrayState {
     }
     
     protected void writeIntArray( DataOutput out, int[] array ) throws IOException {
-        ByteArrayOutputStream byteStream = new ByteArrayOutputStream();
-        DataOutputStream dataOut = new DataOutputStream( byteStream );
-
-        for(int i=0; i<array.length; i++)
-            dataOut.writeInt( array[i] );
-        dataOut.close();
-        
-        out.writeInt( byteStream.size() );
-        out.write( byteStream.toByteArray() );
+        out.writeInt( array.length*4 );
+        writeInts( out, array, 0, array.length );
     }
-    
     private void readIntArray( DataInput in, int[] array ) throws IOException {
-        byte[] buffer = new byte[ in.readInt() ];
-        in.readFully( buffer );
-        ByteArrayInputStream byteStream = new ByteArrayInputStream( buffer );
-        DataInputStream dataIn = new DataInputStream( byteStream );
-        
-        for(int i=0; i<array.length; i++)
-            array[i] = dataIn.readInt();
-        
-        dataIn.close();
+        int size = in.readInt();
+        if ( size < array.length*4 )
+            throw new EOFException( "Expected "+array.length+
+                                    " indices but found "+size+" bytes" );
+        readInts( in, array, 0, array.length );
+        skipFully( in, size-array.length*4 );
     }
 
 }
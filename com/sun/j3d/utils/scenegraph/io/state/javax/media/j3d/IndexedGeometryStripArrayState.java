@@ -67,15 +67,13 @@ public abstract class IndexedGeometryStripArrayState extends IndexedGeometryArra
         ((IndexedGeometryStripArray)node).getStripIndexCounts( stripIndexCounts );
         
 	out.writeInt(stripIndexCounts.length);
-        for(int i=0; i<stripIndexCounts.length; i++)
-            out.writeInt( stripIndexCounts[i] );
+        writeInts( out, stripIndexCounts, 0, stripIndexCounts.length );
     }
 
     protected void readConstructorParams( DataInput in ) throws
 							IOException {
        super.readConstructorParams( in );
        stripIndexCounts = new int[in.readInt()];
-       for(int i=0; i<stripIndexCounts.length; i++)
-           stripIndexCounts[i] = in.readInt();
+       readInts( in, stripIndexCounts, 0, stripIndexCounts.length );
     }
 }